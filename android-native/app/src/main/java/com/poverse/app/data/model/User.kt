@@ -64,6 +64,8 @@ data class Company(
     val agentLimit: Int = 45,
     val adminCount: Int = 0,
     val agentCount: Int = 0,
+    // "realtime" or "lowWakeup"; see service.TrackingMode
+    val trackingMode: String = "realtime",
     val isActive: Boolean = true,
     val createdAt: Long = System.currentTimeMillis(),
     val updatedAt: Long = System.currentTimeMillis()
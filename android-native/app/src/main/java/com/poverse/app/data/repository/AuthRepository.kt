@@ -6,12 +6,18 @@ import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.core.edit
 import androidx.datastore.preferences.core.stringPreferencesKey
 import at.favre.lib.crypto.bcrypt.BCrypt
+import com.google.firebase.database.DataSnapshot
+import com.google.firebase.database.DatabaseError
 import com.google.firebase.database.FirebaseDatabase
+import com.google.firebase.database.ValueEventListener
 import com.google.firebase.firestore.FirebaseFirestore
 import com.poverse.app.data.model.SessionData
 import com.poverse.app.data.model.User
 import com.poverse.app.data.model.UserRole
+import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.tasks.await
@@ -213,6 +219,35 @@ class AuthRepository @Inject constructor(
         }
     }
 
+    /** The company's tracking mode name, re-emitted whenever an admin changes it. */
+    fun observeCompanyTrackingMode(companyId: String): Flow<String> = callbackFlow {
+        val registration = firestore.collection("companies").document(companyId)
+            .addSnapshotListener { doc, error ->
+                if (error != null) {
+                    Log.e(TAG, "Error observing company", error)
+                    return@addSnapshotListener
+                }
+                trySend(doc?.getString("trackingMode") ?: "realtime")
+            }
+        awaitClose { registration.remove() }
+    }.distinctUntilChanged()
+
+    /** The company's tracking profile node (null when it has none), re-emitted on every change. */
+    fun observeTrackingProfile(companyId: String): Flow<Map<*, *>?> = callbackFlow {
+        val ref = rtdb.getReference("trackingProfiles/$companyId")
+        val listener = object : ValueEventListener {
+            override fun onDataChange(snapshot: DataSnapshot) {
+                trySend(snapshot.value as? Map<*, *>)
+            }
+
+            override fun onCancelled(error: DatabaseError) {
+                Log.e(TAG, "Error observing tracking profile", error.toException())
+            }
+        }
+        ref.addValueEventListener(listener)
+        awaitClose { ref.removeEventListener(listener) }
+    }.distinctUntilChanged()
+
     suspend fun getCompanyUsers(companyId: String): List<User> {
         return try {
             val snapshot = firestore.collection("users")
@@ -0,0 +1,143 @@
+package com.poverse.app.service
+
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.hypot
+import kotlin.math.sqrt
+
+/**
+ * Kalman smoothing and speed-gate rejection for incoming fixes.
+ *
+ * Mirrors the Capacitor tracker's FixFilter: a constant-velocity Kalman filter in a
+ * local east/north plane, weighted by each fix's accuracy, behind a gate that drops
+ * jumps faster than current speed plus [MAX_ACCELERATION_MPS2] over the gap allows.
+ * [MAX_CONSECUTIVE_REJECTS] rejections in a row or a gap over [MAX_GAP_MS] restart
+ * the track at the new fix. Constant time per fix; callers feed fixes and read the
+ * estimate back.
+ */
+class FixFilter(
+    private val maxSpeedMps: Double = 55.0,
+    private val processNoise: Double = 0.5
+) {
+    companion object {
+        private const val MAX_ACCELERATION_MPS2 = 4.0
+        private const val MAX_CONSECUTIVE_REJECTS = 3
+        private const val MAX_GAP_MS = 10 * 60_000L
+        private const val UNKNOWN_ACCURACY_M = 50f
+        private const val INITIAL_SPEED_SIGMA_MPS = 15.0
+        private const val REANCHOR_DISTANCE_M = 20_000.0
+        private const val FULL_NOISE_SPEED_MPS = 10.0
+        private const val MIN_NOISE_SCALE = 0.1
+        private const val METERS_PER_DEGREE_LAT = 6_371_000.0 * Math.PI / 180
+    }
+
+    private var initialized = false
+    private var originLat = 0.0
+    private var originLng = 0.0
+    private var metersPerDegreeLng = 0.0
+    private var lastTimeMs = 0L
+
+    private var x = 0.0
+    private var y = 0.0
+    private var vx = 0.0
+    private var vy = 0.0
+    private var pp = 0.0
+    private var pv = 0.0
+    private var vv = 0.0
+    private var consecutiveRejects = 0
+
+    var rejectedCount = 0L
+        private set
+
+    val latitude: Double
+        @Synchronized get() = originLat + y / METERS_PER_DEGREE_LAT
+
+    val longitude: Double
+        @Synchronized get() = originLng + x / metersPerDegreeLng
+
+    /** One-sigma position uncertainty of the estimate, in metres. */
+    val accuracy: Float
+        @Synchronized get() = sqrt(pp).toFloat()
+
+    /** Feed one fix; returns false if it was rejected. Pass 0 accuracy when unknown. */
+    @Synchronized
+    fun accept(lat: Double, lng: Double, accuracyMeters: Float, timeMs: Long): Boolean {
+        val acc = if (accuracyMeters > 0f) accuracyMeters.coerceAtLeast(1f) else UNKNOWN_ACCURACY_M
+        if (!initialized || timeMs - lastTimeMs > MAX_GAP_MS) {
+            restart(lat, lng, acc, timeMs)
+            return true
+        }
+        if (timeMs <= lastTimeMs) {
+            rejectedCount++
+            return false
+        }
+
+        if (abs(x) > REANCHOR_DISTANCE_M || abs(y) > REANCHOR_DISTANCE_M) anchor(latitude, longitude)
+        val dt = (timeMs - lastTimeMs) / 1000.0
+        val mx = (lng - originLng) * metersPerDegreeLng
+        val my = (lat - originLat) * METERS_PER_DEGREE_LAT
+
+        val jump = hypot(mx - x, my - y) - acc - sqrt(pp)
+        val limit = minOf(maxSpeedMps, hypot(vx, vy) + 3 * sqrt(vv) + MAX_ACCELERATION_MPS2 * dt)
+        if (jump > limit * dt) {
+            rejectedCount++
+            if (++consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+                restart(lat, lng, acc, timeMs)
+                return true
+            }
+            return false
+        }
+        consecutiveRejects = 0
+
+        x += vx * dt
+        y += vy * dt
+        val q = processNoise * (hypot(vx, vy) / FULL_NOISE_SPEED_MPS).coerceIn(MIN_NOISE_SCALE, 1.0)
+        val dt2 = dt * dt
+        val nextPp = pp + 2 * dt * pv + dt2 * vv + q * dt2 * dt / 3
+        val nextPv = pv + dt * vv + q * dt2 / 2
+        val nextVv = vv + q * dt
+
+        val s = nextPp + acc.toDouble() * acc
+        val kp = nextPp / s
+        val kv = nextPv / s
+        val ex = mx - x
+        val ey = my - y
+        x += kp * ex
+        y += kp * ey
+        vx += kv * ex
+        vy += kv * ey
+        pp = (1 - kp) * nextPp
+        pv = (1 - kp) * nextPv
+        vv = nextVv - kv * nextPv
+
+        lastTimeMs = timeMs
+        return true
+    }
+
+    /** Drop the track; the next fix starts a new one. */
+    @Synchronized
+    fun reset() {
+        initialized = false
+        consecutiveRejects = 0
+    }
+
+    private fun restart(lat: Double, lng: Double, acc: Float, timeMs: Long) {
+        initialized = true
+        anchor(lat, lng)
+        vx = 0.0
+        vy = 0.0
+        pp = acc.toDouble() * acc
+        pv = 0.0
+        vv = INITIAL_SPEED_SIGMA_MPS * INITIAL_SPEED_SIGMA_MPS
+        lastTimeMs = timeMs
+        consecutiveRejects = 0
+    }
+
+    private fun anchor(lat: Double, lng: Double) {
+        originLat = lat
+        originLng = lng
+        metersPerDegreeLng = METERS_PER_DEGREE_LAT * cos(Math.toRadians(lat)).coerceAtLeast(0.01)
+        x = 0.0
+        y = 0.0
+    }
+}
@@ -0,0 +1,25 @@
+package com.poverse.app.service
+
+import kotlin.math.atan2
+import kotlin.math.cos
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+/**
+ * Spherical-earth helpers shared by the tracking pipeline, as in the Capacitor tracker's
+ * GeoMath. Plain Kotlin rather than Location.distanceBetween, so the pipeline runs in
+ * local unit tests.
+ */
+object GeoMath {
+    const val EARTH_RADIUS_M = 6_371_000.0
+    const val METERS_PER_DEGREE_LAT = EARTH_RADIUS_M * Math.PI / 180
+
+    /** Great-circle distance in metres. */
+    fun distanceMeters(lat1: Double, lng1: Double, lat2: Double, lng2: Double): Double {
+        val dLat = Math.toRadians(lat2 - lat1)
+        val dLng = Math.toRadians(lng2 - lng1)
+        val a = sin(dLat / 2) * sin(dLat / 2) +
+            cos(Math.toRadians(lat1)) * cos(Math.toRadians(lat2)) * sin(dLng / 2) * sin(dLng / 2)
+        return 2 * EARTH_RADIUS_M * atan2(sqrt(a), sqrt(1 - a))
+    }
+}
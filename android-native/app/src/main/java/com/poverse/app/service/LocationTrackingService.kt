@@ -1,23 +1,55 @@
 package com.poverse.app.service
 
+import android.app.AlarmManager
 import android.app.Notification
 import android.app.NotificationChannel
 import android.app.NotificationManager
 import android.app.PendingIntent
 import android.app.Service
+import android.content.Context
 import android.content.Intent
+import android.location.Location
 import android.os.Build
+import android.os.Handler
+import android.os.HandlerThread
 import android.os.IBinder
 import android.os.Looper
+import android.os.Process
+import android.os.SystemClock
 import android.util.Log
 import androidx.core.app.NotificationCompat
 import com.google.android.gms.location.*
 import com.google.firebase.database.FirebaseDatabase
+import com.poverse.app.BuildConfig
 import com.poverse.app.R
+import com.poverse.app.data.repository.AuthRepository
+import com.poverse.app.data.repository.TargetRepository
 import com.poverse.app.ui.MainActivity
 import dagger.hilt.android.AndroidEntryPoint
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.android.asCoroutineDispatcher
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import java.io.File
 import javax.inject.Inject
 
+/**
+ * Foreground location tracker. Fix callbacks, sampling, trail simplification and RTDB
+ * writes all run on the "poverse-tracking" HandlerThread, which owns the tracking
+ * state; the main thread only posts start/stop requests to it.
+ *
+ * Tracking runs for one shift: [start] takes the shift's end ([ShiftWindow]), after which
+ * the service stops by itself and drops later fixes. The session is kept in prefs so a
+ * sticky restart resumes it only while the shift is still on.
+ *
+ * The company's [TrackingProfile] is followed live: a change re-issues the location
+ * request on the running service, with the same callback.
+ *
+ * Debug builds can be started with a recorded trace in place of the fused provider;
+ * [TraceReplay] feeds it to the same location callback, for lab runs of a field day.
+ */
 @AndroidEntryPoint
 class LocationTrackingService : Service() {
 
@@ -25,41 +57,154 @@ class LocationTrackingService : Service() {
         private const val TAG = "LocationTracking"
         private const val CHANNEL_ID = "poverse_location_tracking"
         private const val NOTIFICATION_ID = 1001
-        private const val LOCATION_INTERVAL = 30_000L // 30 seconds
-        private const val FASTEST_INTERVAL = 15_000L // 15 seconds
         const val ACTION_START = "com.poverse.app.START_TRACKING"
         const val ACTION_STOP = "com.poverse.app.STOP_TRACKING"
         const val EXTRA_USER_ID = "user_id"
         const val EXTRA_COMPANY_ID = "company_id"
+        const val EXTRA_SHIFT_ENDS_AT = "shift_ends_at"
+        const val EXTRA_REPLAY_TRACE = "replay_trace"
+        const val EXTRA_REPLAY_SPEED = "replay_speed"
+        private const val PREFS_NAME = "poverse_tracking"
+
+        /** True from onCreate to onDestroy; main thread only. */
+        var isRunning = false
+            private set
+
+        /**
+         * Track [userId] until [shiftEndsAt] (ms since epoch) or [stop]. Debug builds may
+         * pass a GPX, CSV or NMEA [replayTrace] file to play at [replaySpeed] times real
+         * time (0 as fast as possible) instead of the GPS; it is not resumed on restart.
+         */
+        fun start(
+            context: Context,
+            userId: String,
+            companyId: String,
+            shiftEndsAt: Long,
+            replayTrace: String? = null,
+            replaySpeed: Double = 1.0
+        ) {
+            val intent = Intent(context, LocationTrackingService::class.java).apply {
+                action = ACTION_START
+                putExtra(EXTRA_USER_ID, userId)
+                putExtra(EXTRA_COMPANY_ID, companyId)
+                putExtra(EXTRA_SHIFT_ENDS_AT, shiftEndsAt)
+                if (replayTrace != null) {
+                    putExtra(EXTRA_REPLAY_TRACE, replayTrace)
+                    putExtra(EXTRA_REPLAY_SPEED, replaySpeed)
+                }
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent)
+            } else {
+                context.startService(intent)
+            }
+        }
+
+        /**
+         * End tracking. A stopped service is not started just to stop it (which throws
+         * from the background); its saved session and end alarm are cleared instead.
+         */
+        fun stop(context: Context) {
+            if (!isRunning) {
+                clearSession(context)
+                return
+            }
+            val intent = Intent(context, LocationTrackingService::class.java).apply {
+                action = ACTION_STOP
+            }
+            context.startService(intent)
+        }
+
+        private fun clearSession(context: Context) {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply()
+            context.getSystemService(AlarmManager::class.java)?.cancel(shiftEndIntent(context))
+        }
+
+        private fun shiftEndIntent(context: Context): PendingIntent {
+            val stopIntent = Intent(context, LocationTrackingService::class.java).apply {
+                action = ACTION_STOP
+            }
+            return PendingIntent.getService(
+                context, 2, stopIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
+            )
+        }
     }
 
     @Inject
     lateinit var rtdb: FirebaseDatabase
 
+    @Inject
+    lateinit var targetRepository: TargetRepository
+
+    @Inject
+    lateinit var authRepository: AuthRepository
+
     private lateinit var fusedLocationClient: FusedLocationProviderClient
+    private lateinit var trackingThread: HandlerThread
+    private lateinit var trackingHandler: Handler
+    // Assignment updates are collected on the tracking thread, next to the fixes
+    private lateinit var trackingScope: CoroutineScope
+    private var assignmentsJob: Job? = null
+    private var companyJob: Job? = null
+    private var profileJob: Job? = null
+    private var replayJob: Job? = null
+    // Set while a recorded trace stands in for the fused provider
+    private var replay: TraceReplay? = null
     private var locationCallback: LocationCallback? = null
+    private var trackingProfile = TrackingProfile.NONE
+    private val samplingEngine = SamplingEngine(object : SamplingPolicy by DefaultSamplingPolicy {
+        override fun profileFor(state: MotionState): SamplingProfile =
+            trackingProfile.apply(state, DefaultSamplingPolicy.profileFor(state))
+    })
+    private val fixFilter = FixFilter()
+    private val trailSimplifier = TrajectorySimplifier()
+    private val geofences = TargetGeofences()
+    private val targetLocations = HashMap<String, GeofenceTarget?>()
+    private var requestedProfile: SamplingProfile? = null
+    private var trackingMode = TrackingMode.REALTIME
     private var userId: String = ""
     private var companyId: String = ""
+    private var shiftEndsAt = 0L
 
     override fun onCreate() {
         super.onCreate()
+        isRunning = true
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this)
+        trackingThread = HandlerThread("poverse-tracking", Process.THREAD_PRIORITY_BACKGROUND).apply { start() }
+        trackingHandler = Handler(trackingThread.looper)
+        trackingScope = CoroutineScope(SupervisorJob() + trackingHandler.asCoroutineDispatcher())
     }
 
     override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
         when (intent?.action) {
             ACTION_START -> {
-                userId = intent.getStringExtra(EXTRA_USER_ID) ?: ""
-                companyId = intent.getStringExtra(EXTRA_COMPANY_ID) ?: ""
-                if (userId.isNotEmpty()) {
-                    startForeground(NOTIFICATION_ID, createNotification())
-                    startLocationUpdates()
+                val newUserId = intent.getStringExtra(EXTRA_USER_ID) ?: ""
+                val newCompanyId = intent.getStringExtra(EXTRA_COMPANY_ID) ?: ""
+                val newShiftEndsAt = intent.getLongExtra(EXTRA_SHIFT_ENDS_AT, 0L)
+                val replayTrace = intent.getStringExtra(EXTRA_REPLAY_TRACE)?.takeIf { BuildConfig.DEBUG }
+                if (newUserId.isNotEmpty()) {
+                    saveSession(newUserId, newCompanyId, newShiftEndsAt)
+                    startShift(
+                        newUserId, newCompanyId, newShiftEndsAt,
+                        replayTrace, intent.getDoubleExtra(EXTRA_REPLAY_SPEED, 1.0)
+                    )
                 }
             }
-            ACTION_STOP -> {
-                stopLocationUpdates()
-                stopForeground(STOP_FOREGROUND_REMOVE)
-                stopSelf()
+            ACTION_STOP -> endShift()
+            // Sticky restart after the process was killed
+            null -> {
+                val prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                val savedUserId = prefs.getString(EXTRA_USER_ID, null)
+                if (savedUserId.isNullOrEmpty()) {
+                    stopSelf()
+                } else {
+                    startShift(
+                        savedUserId,
+                        prefs.getString(EXTRA_COMPANY_ID, null) ?: "",
+                        prefs.getLong(EXTRA_SHIFT_ENDS_AT, 0L)
+                    )
+                }
             }
         }
         return START_STICKY
@@ -67,27 +212,251 @@ class LocationTrackingService : Service() {
 
     override fun onBind(intent: Intent?): IBinder? = null
 
+    private fun startShift(
+        newUserId: String,
+        newCompanyId: String,
+        newShiftEndsAt: Long,
+        replayTrace: String? = null,
+        replaySpeed: Double = 1.0
+    ) {
+        // Owed to startForegroundService even when there turns out to be nothing to track
+        startForeground(NOTIFICATION_ID, createNotification())
+        if (newShiftEndsAt > 0 && System.currentTimeMillis() >= newShiftEndsAt) {
+            Log.d(TAG, "Shift already over, not tracking")
+            clearSession()
+            stopForeground(STOP_FOREGROUND_REMOVE)
+            stopSelf()
+            return
+        }
+        scheduleShiftEnd(newShiftEndsAt)
+        trackingHandler.post {
+            // Close the previous session's trail under its own ids before they change
+            trailSimplifier.flush()?.let { appendTrailPoint(it) }
+            resetSessionState()
+            userId = newUserId
+            companyId = newCompanyId
+            shiftEndsAt = newShiftEndsAt
+            replay = replayTrace?.let { loadReplay(it, replaySpeed) }
+            if (replayTrace != null && replay == null) {
+                endShift()
+                return@post
+            }
+            startLocationUpdates()
+        }
+    }
+
+    /** Start the next shift from scratch: no trail anchor, motion history or targets carry over. */
+    private fun resetSessionState() {
+        trailSimplifier.reset()
+        samplingEngine.reset()
+        geofences.reset()
+        targetLocations.clear()
+    }
+
+    /** Stop for good: checked out, the shift is over, or the agent tapped Stop. Any thread. */
+    private fun endShift() {
+        clearSession()
+        trackingHandler.post { stopLocationUpdates() }
+        stopForeground(STOP_FOREGROUND_REMOVE)
+        stopSelf()
+    }
+
+    private fun saveSession(userId: String, companyId: String, shiftEndsAt: Long) {
+        getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+            .putString(EXTRA_USER_ID, userId)
+            .putString(EXTRA_COMPANY_ID, companyId)
+            .putLong(EXTRA_SHIFT_ENDS_AT, shiftEndsAt)
+            .apply()
+    }
+
+    private fun clearSession() = clearSession(this)
+
+    /** Wake up to stop at [endsAt]; 0 cancels an alarm left from an earlier shift. */
+    private fun scheduleShiftEnd(endsAt: Long) {
+        val alarmManager = getSystemService(AlarmManager::class.java) ?: return
+        val pi = shiftEndIntent(this)
+        if (endsAt > 0) {
+            // Inexact is enough: fixes past the end are dropped whenever the alarm comes
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, endsAt, pi)
+        } else {
+            alarmManager.cancel(pi)
+        }
+    }
+
     private fun startLocationUpdates() {
-        val locationRequest = LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, LOCATION_INTERVAL)
-            .setMinUpdateIntervalMillis(FASTEST_INTERVAL)
-            .setWaitForAccurateLocation(false)
-            .build()
+        locationCallback?.let { fusedLocationClient.removeLocationUpdates(it) }
+        replayJob?.cancel()
+        requestedProfile = null
+        fixFilter.reset()
 
         locationCallback = object : LocationCallback() {
             override fun onLocationResult(result: LocationResult) {
-                result.lastLocation?.let { location ->
-                    updateLocationInDatabase(location.latitude, location.longitude, location.accuracy)
+                assertNotMainThread("onLocationResult")
+                // Batched requests hand over every fix since the last wake-up, oldest first
+                var resample = false
+                for (location in result.locations) {
+                    resample = onFix(location) || resample
+                }
+                // Backs up the end alarm, which Doze may deliver late
+                if (shiftEndsAt > 0 && System.currentTimeMillis() >= shiftEndsAt) {
+                    Log.d(TAG, "Shift over, stopping location tracking")
+                    endShift()
+                    return
                 }
+                if (resample) refreshLocationRequest()
             }
         }
 
+        refreshLocationRequest()
+        replay?.let { startReplay(it) }
+        observeAssignments()
+        observeTrackingMode()
+        observeTrackingProfile()
+    }
+
+    /**
+     * Run one fix through the filter into the database, motion and geofence state.
+     * Returns true when the location request should be re-evaluated.
+     */
+    private fun onFix(location: Location): Boolean {
+        // A batched delivery can carry fixes taken after the shift ended
+        if (shiftEndsAt > 0 && location.time >= shiftEndsAt) return false
+        // Multipath jumps are dropped and jitter smoothed before anything is written
+        val accuracy = if (location.hasAccuracy()) location.accuracy else 0f
+        if (!fixFilter.accept(location.latitude, location.longitude, accuracy, location.time)) {
+            Log.d(TAG, "Rejected implausible fix (${fixFilter.rejectedCount} so far)")
+            return false
+        }
+        val lat = fixFilter.latitude
+        val lng = fixFilter.longitude
+        updateLocationInDatabase(lat, lng, fixFilter.accuracy, location.time)
+
+        val speed = if (location.hasSpeed()) location.speed else -1f
+        var resample = samplingEngine.onFix(lat, lng, speed, location.time)
+        if (resample) Log.d(TAG, "Motion state ${samplingEngine.state}, resampling")
+        if (geofences.onFix(lat, lng, fixFilter.accuracy)) {
+            Log.d(TAG, geofences.inside?.let { "Entered target ${it.id}" } ?: "Left target area")
+            resample = true
+        }
+        return resample
+    }
+
+    /** Read a trace to replay; null when it cannot be played, rather than tracking for real. */
+    private fun loadReplay(path: String, speed: Double): TraceReplay? = try {
+        val points = File(path).bufferedReader().use { TraceReplay.parse(it, path) }
+        Log.i(TAG, "Replaying ${points.size} fixes from $path")
+        TraceReplay(points, speed, trackingMode.maxUpdateDelayMs)
+    } catch (e: Exception) {
+        Log.e(TAG, "Cannot replay $path", e)
+        null
+    }
+
+    /** Play the trace into the location callback the way the fused provider would; fix times start now. */
+    private fun startReplay(trace: TraceReplay) {
+        replayJob = trace.play(trackingScope, System.currentTimeMillis()) { fixes ->
+            locationCallback?.onLocationResult(LocationResult.create(fixes.map { it.toLocation() }))
+        }.also { job ->
+            job.invokeOnCompletion { if (it == null) Log.i(TAG, "Replay finished: ${trace.size} fixes") }
+        }
+    }
+
+    private fun TracePoint.toLocation() = Location("replay").also {
+        it.latitude = latitude
+        it.longitude = longitude
+        it.accuracy = accuracy
+        it.time = timeMs
+        it.elapsedRealtimeNanos = SystemClock.elapsedRealtimeNanos()
+        if (speedMps >= 0) it.speed = speedMps
+    }
+
+    /** Follow the company's tracking mode; a change re-issues the location request. */
+    private fun observeTrackingMode() {
+        companyJob?.cancel()
+        if (companyId.isEmpty()) return
+        val cid = companyId
+        companyJob = trackingScope.launch {
+            authRepository.observeCompanyTrackingMode(cid).collect { name ->
+                val mode = TrackingMode.fromWireName(name)
+                if (mode == trackingMode) return@collect
+                trackingMode = mode
+                Log.d(TAG, "Tracking mode ${mode.wireName}")
+                requestedProfile?.let { requestLocationUpdates(it) }
+            }
+        }
+    }
+
+    /** Follow the company's tracking profile; a change re-issues the location request. */
+    private fun observeTrackingProfile() {
+        profileJob?.cancel()
+        trackingProfile = TrackingProfile.NONE
+        if (companyId.isEmpty()) return
+        val cid = companyId
+        profileJob = trackingScope.launch {
+            authRepository.observeTrackingProfile(cid).collect { node ->
+                val profile = TrackingProfile.fromNode(node)
+                if (profile == trackingProfile) return@collect
+                trackingProfile = profile
+                Log.d(TAG, "Tracking profile $profile")
+                refreshLocationRequest()
+            }
+        }
+    }
+
+    /** Request the motion profile, capped to balanced power away from assigned targets. */
+    private fun refreshLocationRequest() {
+        val profile = geofences.adjust(samplingEngine.profile)
+        if (profile != requestedProfile) requestLocationUpdates(profile)
+    }
+
+    /**
+     * Keep the geofences in step with the agent's open assignments. Target locations
+     * are fetched once per target and cached for the session.
+     */
+    private fun observeAssignments() {
+        assignmentsJob?.cancel()
+        val uid = userId
+        assignmentsJob = trackingScope.launch {
+            targetRepository.observeAssignedTargets(uid).collect { assignments ->
+                val open = assignments.filter { it.status == "pending" || it.status == "in_progress" }
+                val targets = open.mapNotNull { assignment ->
+                    targetLocations.getOrPut(assignment.targetId) {
+                        targetRepository.getTarget(assignment.targetId)?.location?.let {
+                            GeofenceTarget(assignment.targetId, it.latitude, it.longitude)
+                        }
+                    }
+                }
+                if (geofences.update(targets)) {
+                    Log.d(TAG, "Geofences updated: ${geofences.size} targets")
+                    refreshLocationRequest()
+                }
+            }
+        }
+    }
+
+    /** (Re)issue the location request; the same callback replaces the previous one. */
+    private fun requestLocationUpdates(profile: SamplingProfile) {
+        val callback = locationCallback ?: return
+        if (replay != null) {
+            // The trace decides when fixes come; only the choice is recorded
+            requestedProfile = profile
+            Log.d(TAG, "Replay, location updates would be: $profile (${trackingMode.wireName})")
+            return
+        }
+        val locationRequest = LocationRequest.Builder(profile.priority, profile.intervalMs)
+            .setMinUpdateIntervalMillis(profile.minUpdateIntervalMs)
+            .setMinUpdateDistanceMeters(profile.minDistanceMeters)
+            .setWaitForAccurateLocation(false)
+            .setMaxUpdateDelayMillis(trackingMode.maxUpdateDelayMs)
+            .build()
+
         try {
             fusedLocationClient.requestLocationUpdates(
                 locationRequest,
-                locationCallback!!,
-                Looper.getMainLooper()
+                callback,
+                trackingThread.looper
             )
-            Log.d(TAG, "Location updates started for user: $userId")
+            requestedProfile = profile
+            Log.d(TAG, "Location updates requested for user: $userId ($profile, ${trackingMode.wireName})")
         } catch (e: SecurityException) {
             Log.e(TAG, "Location permission missing", e)
             stopSelf()
@@ -95,10 +464,21 @@ class LocationTrackingService : Service() {
     }
 
     private fun stopLocationUpdates() {
+        assignmentsJob?.cancel()
+        assignmentsJob = null
+        companyJob?.cancel()
+        companyJob = null
+        profileJob?.cancel()
+        profileJob = null
+        replayJob?.cancel()
+        replayJob = null
+        replay = null
         locationCallback?.let {
             fusedLocationClient.removeLocationUpdates(it)
             locationCallback = null
         }
+        // Close the trail with the last held-back fix
+        trailSimplifier.flush()?.let { appendTrailPoint(it) }
         // Update user status to offline
         if (userId.isNotEmpty()) {
             rtdb.getReference("users/$userId/isTracking").setValue(false)
@@ -106,10 +486,11 @@ class LocationTrackingService : Service() {
         Log.d(TAG, "Location updates stopped")
     }
 
-    private fun updateLocationInDatabase(lat: Double, lng: Double, accuracy: Float) {
+    /** [timestamp] is the fix time: batched fixes arrive up to minutes after they were taken. */
+    private fun updateLocationInDatabase(lat: Double, lng: Double, accuracy: Float, timestamp: Long) {
+        assertNotMainThread("updateLocationInDatabase")
         if (userId.isEmpty()) return
 
-        val timestamp = System.currentTimeMillis()
         val locationData = mapOf(
             "latitude" to lat,
             "longitude" to lng,
@@ -120,11 +501,8 @@ class LocationTrackingService : Service() {
         // Update real-time location
         rtdb.getReference("locations/$companyId/$userId/current").setValue(locationData)
 
-        // Add to location trail
-        val today = java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault()).format(java.util.Date())
-        rtdb.getReference("locations/$companyId/$userId/trail/$today")
-            .push()
-            .setValue(locationData)
+        // Add to location trail only the fixes needed to keep it within tolerance
+        trailSimplifier.add(lat, lng, accuracy, timestamp)?.let { appendTrailPoint(it) }
 
         // Update user's last known location
         rtdb.getReference("users/$userId").updateChildren(
@@ -138,6 +516,22 @@ class LocationTrackingService : Service() {
         Log.d(TAG, "Location updated: $lat, $lng (accuracy: ${accuracy}m)")
     }
 
+    private fun appendTrailPoint(point: TrailPoint) {
+        if (userId.isEmpty()) return
+        val day = java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault())
+            .format(java.util.Date(point.timestamp))
+        rtdb.getReference("locations/$companyId/$userId/trail/$day")
+            .push()
+            .setValue(
+                mapOf(
+                    "latitude" to point.latitude,
+                    "longitude" to point.longitude,
+                    "accuracy" to point.accuracy.toDouble(),
+                    "timestamp" to point.timestamp
+                )
+            )
+    }
+
     private fun createNotification(): Notification {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             val channel = NotificationChannel(
@@ -180,8 +574,23 @@ class LocationTrackingService : Service() {
             .build()
     }
 
+    /** Debug builds crash on tracking work that slips back onto the UI thread. */
+    private fun assertNotMainThread(operation: String) {
+        if (BuildConfig.DEBUG) {
+            check(Looper.myLooper() != Looper.getMainLooper()) {
+                "$operation must not run on the main thread"
+            }
+        }
+    }
+
     override fun onDestroy() {
-        stopLocationUpdates()
+        isRunning = false
+        // Runs after any fixes already queued on the tracking thread, then lets it exit
+        trackingHandler.post {
+            stopLocationUpdates()
+            trackingScope.cancel()
+        }
+        trackingThread.quitSafely()
         super.onDestroy()
     }
 }
@@ -0,0 +1,131 @@
+package com.poverse.app.service
+
+import com.google.android.gms.location.Priority
+
+/**
+ * Motion-aware sampling for [LocationTrackingService].
+ *
+ * Mirrors the Capacitor tracker's SamplingEngine: recent fixes are classified as
+ * stationary, walking or driving, and each state maps to its own LocationRequest
+ * parameters. A new state has to win [confirmations] consecutive votes before it is
+ * adopted so a single noisy fix cannot flip the request.
+ */
+enum class MotionState { STATIONARY, WALKING, DRIVING }
+
+data class SamplingProfile(
+    val priority: Int,
+    val intervalMs: Long,
+    val minUpdateIntervalMs: Long,
+    val minDistanceMeters: Float
+)
+
+interface SamplingPolicy {
+    fun classify(speedMps: Float, displacementMeters: Double, windowMs: Long): MotionState
+    fun profileFor(state: MotionState): SamplingProfile
+}
+
+object DefaultSamplingPolicy : SamplingPolicy {
+    private const val STATIONARY_SPEED_MPS = 0.6f
+    private const val STATIONARY_DISPLACEMENT_M = 30.0
+    private const val DRIVING_SPEED_MPS = 4.0f
+
+    private val stationary = SamplingProfile(Priority.PRIORITY_BALANCED_POWER_ACCURACY, 120_000L, 60_000L, 50f)
+    private val walking = SamplingProfile(Priority.PRIORITY_HIGH_ACCURACY, 30_000L, 15_000L, 10f)
+    private val driving = SamplingProfile(Priority.PRIORITY_HIGH_ACCURACY, 15_000L, 10_000L, 50f)
+
+    override fun classify(speedMps: Float, displacementMeters: Double, windowMs: Long): MotionState {
+        val averageSpeed = if (windowMs > 0) displacementMeters * 1000.0 / windowMs else 0.0
+        return when {
+            speedMps >= DRIVING_SPEED_MPS && averageSpeed >= DRIVING_SPEED_MPS / 2 -> MotionState.DRIVING
+            speedMps < STATIONARY_SPEED_MPS && displacementMeters < STATIONARY_DISPLACEMENT_M -> MotionState.STATIONARY
+            else -> MotionState.WALKING
+        }
+    }
+
+    override fun profileFor(state: MotionState): SamplingProfile = when (state) {
+        MotionState.STATIONARY -> stationary
+        MotionState.WALKING -> walking
+        MotionState.DRIVING -> driving
+    }
+}
+
+class SamplingEngine(
+    private val policy: SamplingPolicy = DefaultSamplingPolicy,
+    private val initialState: MotionState = MotionState.WALKING,
+    private val confirmations: Int = 2
+) {
+    companion object {
+        private const val WINDOW_SIZE = 6
+        private const val MAX_WINDOW_MS = 3 * 60_000L
+    }
+
+    private val latitudes = DoubleArray(WINDOW_SIZE)
+    private val longitudes = DoubleArray(WINDOW_SIZE)
+    private val times = LongArray(WINDOW_SIZE)
+    private var head = 0
+    private var count = 0
+    private var candidate: MotionState? = null
+    private var candidateVotes = 0
+
+    var state: MotionState = initialState
+        private set
+
+    val profile: SamplingProfile
+        get() = policy.profileFor(state)
+
+    /**
+     * Feed one fix; [speedMps] is negative when the fix carries no speed.
+     * Returns true when the location request must be reissued with [profile].
+     */
+    @Synchronized
+    fun onFix(lat: Double, lng: Double, speedMps: Float, timeMs: Long): Boolean {
+        val newest = (head + count - 1 + WINDOW_SIZE) % WINDOW_SIZE
+        var speed = speedMps
+        if (speed < 0 && count > 0 && timeMs > times[newest]) {
+            speed = (GeoMath.distanceMeters(latitudes[newest], longitudes[newest], lat, lng) * 1000.0 /
+                (timeMs - times[newest])).toFloat()
+        }
+
+        val slot = (head + count) % WINDOW_SIZE
+        if (count == WINDOW_SIZE) head = (head + 1) % WINDOW_SIZE else count++
+        latitudes[slot] = lat
+        longitudes[slot] = lng
+        times[slot] = timeMs
+
+        var oldest = head
+        for (i in 0 until count - 1) {
+            val idx = (head + i) % WINDOW_SIZE
+            if (timeMs - times[idx] <= MAX_WINDOW_MS) break
+            oldest = (idx + 1) % WINDOW_SIZE
+        }
+        val displacement = GeoMath.distanceMeters(latitudes[oldest], longitudes[oldest], lat, lng)
+        val vote = policy.classify(speed.coerceAtLeast(0f), displacement, timeMs - times[oldest])
+
+        if (vote == state) {
+            candidate = null
+            candidateVotes = 0
+            return false
+        }
+        if (vote != candidate) {
+            candidate = vote
+            candidateVotes = 0
+        }
+        if (++candidateVotes < confirmations) return false
+
+        val previous = policy.profileFor(state)
+        state = vote
+        candidate = null
+        candidateVotes = 0
+        return previous != policy.profileFor(vote)
+    }
+
+    /** Forget the motion history and go back to the initial state, e.g. for a new shift. */
+    @Synchronized
+    fun reset() {
+        head = 0
+        count = 0
+        candidate = null
+        candidateVotes = 0
+        state = initialState
+    }
+}
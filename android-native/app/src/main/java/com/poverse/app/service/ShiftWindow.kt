@@ -0,0 +1,48 @@
+package com.poverse.app.service
+
+import java.util.Calendar
+import java.util.TimeZone
+
+/**
+ * When tracking for a check-in stops: the end of the shift after check-in plus a grace
+ * period for overtime and the trip out.
+ *
+ * Same rule as the web app's getShiftEndsAt: an overnight shift (end before start) ends
+ * on the next day unless the check-in was already past midnight, and a check-in made
+ * after the shift still gets the grace period.
+ */
+object ShiftWindow {
+    const val GRACE_MINUTES = 30
+
+    /** [shiftStartTime] and [shiftEndTime] are "HH:mm", as in AttendanceSettings. */
+    fun endsAt(
+        checkInMs: Long,
+        shiftStartTime: String,
+        shiftEndTime: String,
+        graceMinutes: Int = GRACE_MINUTES,
+        zone: TimeZone = TimeZone.getDefault()
+    ): Long {
+        val startMinutes = minutesOf(shiftStartTime)
+        val endMinutes = minutesOf(shiftEndTime)
+        val shiftEnd = Calendar.getInstance(zone).apply { timeInMillis = checkInMs }
+        val checkInMinutes = shiftEnd.get(Calendar.HOUR_OF_DAY) * 60 + shiftEnd.get(Calendar.MINUTE)
+        shiftEnd.set(Calendar.HOUR_OF_DAY, endMinutes / 60)
+        shiftEnd.set(Calendar.MINUTE, endMinutes % 60)
+        shiftEnd.set(Calendar.SECOND, 0)
+        shiftEnd.set(Calendar.MILLISECOND, 0)
+        if (endMinutes <= startMinutes && checkInMinutes > endMinutes) {
+            shiftEnd.add(Calendar.DAY_OF_MONTH, 1)
+        }
+        return maxOf(shiftEnd.timeInMillis, checkInMs) + graceMinutes * 60_000L
+    }
+
+    private fun minutesOf(time: String): Int {
+        val parts = time.split(":")
+        val hours = parts.getOrNull(0)?.trim()?.toIntOrNull()
+        val minutes = parts.getOrNull(1)?.trim()?.toIntOrNull()
+        require(hours != null && minutes != null && hours in 0..23 && minutes in 0..59) {
+            "Not an HH:mm time: $time"
+        }
+        return hours * 60 + minutes
+    }
+}
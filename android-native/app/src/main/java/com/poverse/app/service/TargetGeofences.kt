@@ -0,0 +1,94 @@
+package com.poverse.app.service
+
+import com.google.android.gms.location.Priority
+
+/**
+ * On-device geofences around the agent's pending target assignments.
+ *
+ * Mirrors the Capacitor tracker's TargetGeofences: once targets are known, high accuracy
+ * is capped to balanced power except inside an enter radius, and a fence is only left
+ * beyond [EXIT_FACTOR] times its radius. A fix whose accuracy circle reaches a fence
+ * already counts as entering it, since balanced fixes are coarse. [update] takes the
+ * full list and applies only the difference.
+ */
+data class GeofenceTarget(
+    val id: String,
+    val latitude: Double,
+    val longitude: Double,
+    val radiusMeters: Float = TargetGeofences.DEFAULT_ENTER_RADIUS_M
+)
+
+class TargetGeofences {
+    companion object {
+        const val DEFAULT_ENTER_RADIUS_M = 250f
+        private const val EXIT_FACTOR = 1.5f
+    }
+
+    private val targets = LinkedHashMap<String, GeofenceTarget>()
+
+    var enabled = false
+        private set
+
+    /** Target whose fence the agent is in, or null. */
+    var inside: GeofenceTarget? = null
+        private set
+
+    val size: Int
+        @Synchronized get() = targets.size
+
+    /** Replace the target set; returns true if anything was added, moved or removed. */
+    @Synchronized
+    fun update(next: Collection<GeofenceTarget>): Boolean {
+        enabled = true
+        val incoming = next.associateBy { it.id }
+        var changed = targets.keys.retainAll(incoming.keys)
+        for ((id, target) in incoming) {
+            if (targets.put(id, target) != target) changed = true
+        }
+        inside = inside?.let { targets[it.id] }
+        return changed
+    }
+
+    /** Drop every fence and disable capping until targets are supplied again. */
+    @Synchronized
+    fun reset() {
+        targets.clear()
+        inside = null
+        enabled = false
+    }
+
+    /** Check one fix; returns true when the agent entered or left a fence. */
+    @Synchronized
+    fun onFix(lat: Double, lng: Double, accuracyMeters: Float): Boolean {
+        if (!enabled) return false
+        val wasInside = inside != null
+
+        inside?.let { current ->
+            if (distanceTo(current, lat, lng) <= current.radiusMeters * EXIT_FACTOR) return false
+            inside = null
+        }
+
+        var best = Float.MAX_VALUE
+        for (target in targets.values) {
+            val d = distanceTo(target, lat, lng)
+            val reach = target.radiusMeters + accuracyMeters.coerceIn(0f, target.radiusMeters)
+            if (d <= reach && d < best) {
+                best = d
+                inside = target
+            }
+        }
+        return wasInside != (inside != null)
+    }
+
+    /** The profile to request: unchanged inside a fence, otherwise capped to balanced power. */
+    @Synchronized
+    fun adjust(base: SamplingProfile): SamplingProfile =
+        if (!enabled || inside != null || base.priority != Priority.PRIORITY_HIGH_ACCURACY) {
+            base
+        } else {
+            base.copy(priority = Priority.PRIORITY_BALANCED_POWER_ACCURACY)
+        }
+
+    private fun distanceTo(target: GeofenceTarget, lat: Double, lng: Double): Float =
+        GeoMath.distanceMeters(lat, lng, target.latitude, target.longitude).toFloat()
+}
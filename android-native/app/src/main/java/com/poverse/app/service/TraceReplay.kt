@@ -0,0 +1,253 @@
+package com.poverse.app.service
+
+import android.util.Xml
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import org.xmlpull.v1.XmlPullParser
+import java.io.BufferedReader
+import java.io.IOException
+import java.io.Reader
+import java.util.Calendar
+import java.util.Locale
+import java.util.TimeZone
+
+/**
+ * Plays a recorded trace (GPX, CSV or NMEA) back as if the fused provider delivered it.
+ *
+ * Mirrors the Capacitor tracker's TraceReplay: fix times keep the trace's spacing but
+ * start at the replay's base time, [speed] only shortens the waits (0 plays as fast as
+ * possible), and with [maxDelayMs] fixes are held and handed over together like a
+ * batched request would.
+ */
+class TraceReplay(
+    private val points: List<TracePoint>,
+    private val speed: Double = 1.0,
+    private val maxDelayMs: Long = 0L
+) {
+    init {
+        require(points.isNotEmpty()) { "Trace has no points" }
+    }
+
+    val size: Int get() = points.size
+
+    /** Deliver on [scope], oldest first; [onFixes] gets each delivery, restamped from [baseTimeMs]. */
+    fun play(scope: CoroutineScope, baseTimeMs: Long, onFixes: (List<TracePoint>) -> Unit): Job = scope.launch {
+        val first = points.first().timeMs
+        val last = points.last().timeMs
+        val startMs = System.nanoTime() / 1_000_000
+        var next = 0
+        while (next < points.size) {
+            val due = minOf(points[next].timeMs + maxDelayMs, last)
+            if (speed > 0) {
+                delay(startMs + ((due - first) / speed).toLong() - System.nanoTime() / 1_000_000)
+            }
+            val batch = ArrayList<TracePoint>()
+            while (next < points.size && points[next].timeMs <= due) {
+                val point = points[next++]
+                batch.add(point.copy(timeMs = baseTimeMs + point.timeMs - first))
+            }
+            onFixes(batch)
+        }
+    }
+
+    companion object {
+        /** Accuracy of points whose trace carries none (GPX, NMEA RMC). */
+        const val DEFAULT_ACCURACY_M = 10f
+
+        private const val KNOTS_TO_MPS = 0.514444
+        private val ISO_TIME = Regex(
+            """(\d{4})-(\d{2})-(\d{2})[T ](\d{2}):(\d{2}):(\d{2})(?:\.(\d+))?(Z|[+-]\d{2}:?\d{2})?"""
+        )
+        private val POINT_TAGS = setOf("trkpt", "rtept", "wpt")
+
+        /**
+         * Read a trace; [name]'s extension picks the format, anything else is sniffed.
+         * Points out of time order are dropped.
+         */
+        fun parse(reader: Reader, name: String): List<TracePoint> {
+            val input = reader as? BufferedReader ?: BufferedReader(reader)
+            val lower = name.lowercase(Locale.US)
+            val points = when {
+                lower.endsWith(".gpx") -> parseGpx(input)
+                lower.endsWith(".nmea") -> parseNmea(input)
+                lower.endsWith(".csv") -> parseCsv(input)
+                else -> {
+                    input.mark(1)
+                    val first = input.read()
+                    input.reset()
+                    when (first) {
+                        '<'.code -> parseGpx(input)
+                        '$'.code -> parseNmea(input)
+                        else -> parseCsv(input)
+                    }
+                }
+            }
+            var lastTimeMs = Long.MIN_VALUE
+            val ordered = points.filter { point ->
+                (point.timeMs > lastTimeMs).also { if (it) lastTimeMs = point.timeMs }
+            }
+            if (ordered.isEmpty()) throw IOException("No timed points in $name")
+            return ordered
+        }
+
+        private fun parseGpx(reader: Reader): List<TracePoint> {
+            val points = ArrayList<TracePoint>()
+            val parser = Xml.newPullParser()
+            parser.setInput(reader)
+            var lat = 0.0
+            var lng = 0.0
+            var timeMs: Long? = null
+            var speedMps = -1f
+            var inPoint = false
+            var tag: String? = null
+            while (true) {
+                when (parser.next()) {
+                    XmlPullParser.END_DOCUMENT -> return points
+                    XmlPullParser.START_TAG -> {
+                        tag = parser.name
+                        if (tag in POINT_TAGS) {
+                            lat = parser.getAttributeValue(null, "lat")?.toDoubleOrNull()
+                                ?: throw IOException("GPX point without lat")
+                            lng = parser.getAttributeValue(null, "lon")?.toDoubleOrNull()
+                                ?: throw IOException("GPX point without lon")
+                            timeMs = null
+                            speedMps = -1f
+                            inPoint = true
+                        }
+                    }
+                    XmlPullParser.TEXT -> if (inPoint) {
+                        val text = parser.text.trim()
+                        when (tag) {
+                            "time" -> timeMs = parseTime(text) ?: throw IOException("Bad GPX time: $text")
+                            "speed" -> speedMps = text.toFloatOrNull() ?: -1f
+                        }
+                    }
+                    XmlPullParser.END_TAG -> {
+                        if (parser.name in POINT_TAGS) {
+                            inPoint = false
+                            // Untimed points cannot be replayed
+                            timeMs?.let { points.add(TracePoint(it, lat, lng, DEFAULT_ACCURACY_M, speedMps)) }
+                        }
+                        tag = null
+                    }
+                }
+            }
+        }
+
+        /**
+         * Rows of time, lat, lng and optionally accuracy and speed, or any order named by
+         * a header (time/timestamp, lat/latitude, lng/lon/longitude, accuracy, speed).
+         * Times are epoch milliseconds or ISO 8601.
+         */
+        private fun parseCsv(reader: BufferedReader): List<TracePoint> {
+            var columns = intArrayOf(0, 1, 2, 3, 4)
+            var first = true
+            val points = ArrayList<TracePoint>()
+            reader.lineSequence().map { it.trim() }.filter { it.isNotEmpty() && !it.startsWith("#") }.forEach { line ->
+                val cols = line.split(",").map { it.trim() }
+                if (first) {
+                    first = false
+                    if (!cols[0].first().isDigit()) {
+                        fun find(vararg names: String) = cols.indexOfFirst { col ->
+                            val c = col.lowercase(Locale.US)
+                            c in names || ("timestamp" in names && c.startsWith("timestamp"))
+                        }
+                        columns = intArrayOf(
+                            find("time", "timestamp"), find("lat", "latitude"), find("lng", "lon", "longitude"),
+                            find("accuracy"), find("speed")
+                        )
+                        if (columns[0] < 0 || columns[1] < 0 || columns[2] < 0) {
+                            throw IOException("CSV header needs time, lat and lng columns")
+                        }
+                        return@forEach
+                    }
+                }
+                fun col(i: Int) = columns[i].takeIf { it >= 0 }?.let { cols.getOrNull(it) }?.takeIf { it.isNotEmpty() }
+                points.add(
+                    TracePoint(
+                        timeMs = col(0)?.let { parseTime(it) } ?: throw IOException("Bad CSV row: $line"),
+                        latitude = col(1)?.toDoubleOrNull() ?: throw IOException("Bad CSV row: $line"),
+                        longitude = col(2)?.toDoubleOrNull() ?: throw IOException("Bad CSV row: $line"),
+                        accuracy = col(3)?.toFloatOrNull() ?: DEFAULT_ACCURACY_M,
+                        speedMps = col(4)?.toFloatOrNull() ?: -1f
+                    )
+                )
+            }
+            return points
+        }
+
+        /** Valid RMC sentences with a matching checksum; everything else is skipped. */
+        private fun parseNmea(reader: BufferedReader): List<TracePoint> =
+            reader.lineSequence().mapNotNull { raw ->
+                var line = raw.trim()
+                if (line.length < 7 || line[0] != '$' || !line.startsWith("RMC", 3)) return@mapNotNull null
+                val star = line.indexOf('*')
+                if (star > 0) {
+                    val sum = line.substring(1, star).fold(0) { acc, c -> acc xor c.code }
+                    if (line.substring(star + 1).trim().toIntOrNull(16) != sum) return@mapNotNull null
+                    line = line.substring(0, star)
+                }
+                // $xxRMC,time,status,lat,N/S,lon,E/W,knots,course,date,...
+                val f = line.split(",")
+                if (f.size < 10 || f[2] != "A" || f[1].length < 6 || f[9].length != 6) return@mapNotNull null
+                try {
+                    val year = f[9].substring(4, 6).toInt()
+                    val calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US).apply {
+                        clear()
+                        // RMC has a two-digit year
+                        set(
+                            if (year < 80) 2000 + year else 1900 + year,
+                            f[9].substring(2, 4).toInt() - 1, f[9].substring(0, 2).toInt(),
+                            f[1].substring(0, 2).toInt(), f[1].substring(2, 4).toInt(), f[1].substring(4, 6).toInt()
+                        )
+                    }
+                    val fraction = if (f[1].length > 7 && f[1][6] == '.') Math.round(f[1].substring(6).toDouble() * 1000) else 0L
+                    TracePoint(
+                        timeMs = calendar.timeInMillis + fraction,
+                        latitude = degrees(f[3], 2) * if (f[4] == "S") -1 else 1,
+                        longitude = degrees(f[5], 3) * if (f[6] == "W") -1 else 1,
+                        accuracy = DEFAULT_ACCURACY_M,
+                        speedMps = f[7].toDoubleOrNull()?.let { (it * KNOTS_TO_MPS).toFloat() } ?: -1f
+                    )
+                } catch (e: NumberFormatException) {
+                    // A garbled sentence; receivers emit those
+                    null
+                } catch (e: StringIndexOutOfBoundsException) {
+                    null
+                }
+            }.toList()
+
+        /** Epoch milliseconds or ISO 8601 (UTC unless an offset is given). */
+        fun parseTime(value: String): Long? {
+            val m = ISO_TIME.matchEntire(value) ?: return value.toLongOrNull()
+            val g = m.groupValues
+            val calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US).apply {
+                clear()
+                set(g[1].toInt(), g[2].toInt() - 1, g[3].toInt(), g[4].toInt(), g[5].toInt(), g[6].toInt())
+            }
+            var timeMs = calendar.timeInMillis
+            if (g[7].isNotEmpty()) timeMs += (g[7] + "00").substring(0, 3).toInt()
+            val zone = g[8]
+            if (zone.isNotEmpty() && zone != "Z") {
+                val digits = zone.replace(":", "")
+                val offsetMinutes = digits.substring(1, 3).toInt() * 60 + digits.substring(3, 5).toInt()
+                timeMs -= (if (zone[0] == '-') -1 else 1) * offsetMinutes * 60_000L
+            }
+            return timeMs
+        }
+
+        private fun degrees(value: String, degreeDigits: Int): Double =
+            value.substring(0, degreeDigits).toInt() + value.substring(degreeDigits).toDouble() / 60
+    }
+}
+
+/** One recorded fix; [speedMps] is negative when the trace has none. */
+data class TracePoint(
+    val timeMs: Long,
+    val latitude: Double,
+    val longitude: Double,
+    val accuracy: Float,
+    val speedMps: Float
+)
@@ -0,0 +1,20 @@
+package com.poverse.app.service
+
+/**
+ * How eagerly fixes are delivered, chosen per company (`companies/{id}.trackingMode`).
+ *
+ * Mirrors the Capacitor tracker's TrackingMode: [LOW_WAKEUP] lets the location provider
+ * hold fixes, in the GNSS chip where supported, and hand them over together at most
+ * [maxUpdateDelayMs] late, so the device wakes far less often while the trail still
+ * gets every point.
+ */
+enum class TrackingMode(val wireName: String, val maxUpdateDelayMs: Long) {
+    REALTIME("realtime", 0L),
+    LOW_WAKEUP("lowWakeup", 2 * 60_000L);
+
+    companion object {
+        /** Unknown or missing values fall back to [REALTIME]. */
+        fun fromWireName(name: String?): TrackingMode =
+            values().firstOrNull { it.wireName == name } ?: REALTIME
+    }
+}
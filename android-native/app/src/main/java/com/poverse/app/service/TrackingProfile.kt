@@ -0,0 +1,65 @@
+package com.poverse.app.service
+
+import com.google.android.gms.location.Priority
+
+/**
+ * Company-wide sampling overrides pushed from the server (`trackingProfiles/{companyId}`
+ * in RTDB), so fleets can be tuned without an app release.
+ *
+ * Mirrors the Capacitor tracker's TrackingProfile: interval, minimum distance and
+ * priority replace the motion profile while the agent moves; standing still keeps the
+ * less demanding of the two. Values are clamped to sane ranges. The node's batch window
+ * and heartbeat fields only concern the Capacitor tracker, which batches uploads; this
+ * service writes each fix as it comes.
+ */
+data class TrackingProfile(
+    val intervalMs: Long? = null,
+    val minDistanceMeters: Float? = null,
+    val priority: Int? = null
+) {
+    companion object {
+        val NONE = TrackingProfile()
+
+        private const val MIN_INTERVAL_MS = 1000L
+        private const val MAX_INTERVAL_MS = 60 * 60_000L
+        private const val MAX_MIN_DISTANCE_M = 1000f
+
+        /** The node's value as read from RTDB; null or anything malformed means no overrides. */
+        fun fromNode(node: Map<*, *>?): TrackingProfile {
+            if (node == null) return NONE
+            return TrackingProfile(
+                intervalMs = (node["intervalMs"] as? Number)?.toLong()
+                    ?.takeIf { it >= 0 }?.coerceIn(MIN_INTERVAL_MS, MAX_INTERVAL_MS),
+                minDistanceMeters = (node["minDistanceMeters"] as? Number)?.toFloat()
+                    ?.takeIf { it >= 0 }?.coerceAtMost(MAX_MIN_DISTANCE_M),
+                priority = priorityOf(node["priority"] as? String)
+            )
+        }
+
+        private fun priorityOf(name: String?): Int? = when (name) {
+            "high" -> Priority.PRIORITY_HIGH_ACCURACY
+            "balanced" -> Priority.PRIORITY_BALANCED_POWER_ACCURACY
+            "low" -> Priority.PRIORITY_LOW_POWER
+            else -> null
+        }
+    }
+
+    /** The request for [state], given what the motion policy asks for it. */
+    fun apply(state: MotionState, requested: SamplingProfile): SamplingProfile {
+        if (this == NONE) return requested
+        val stationary = state == MotionState.STATIONARY
+        val interval = intervalMs?.let { if (stationary) maxOf(it, requested.intervalMs) else it }
+            ?: requested.intervalMs
+        return SamplingProfile(
+            // Higher priority values draw less power
+            priority = priority?.let { if (stationary) maxOf(it, requested.priority) else it }
+                ?: requested.priority,
+            intervalMs = interval,
+            // As the motion profiles do: accept fixes other apps asked for at twice the rate
+            minUpdateIntervalMs = if (interval == requested.intervalMs) requested.minUpdateIntervalMs else interval / 2,
+            minDistanceMeters = minDistanceMeters?.let {
+                if (stationary) maxOf(it, requested.minDistanceMeters) else it
+            } ?: requested.minDistanceMeters
+        )
+    }
+}
@@ -0,0 +1,101 @@
+package com.poverse.app.service
+
+import java.io.ByteArrayOutputStream
+import java.util.Base64
+import kotlin.math.roundToLong
+
+/**
+ * Compact binary trail format, byte-compatible with the Capacitor tracker's TrailCodec
+ * and the web admin's trailCodec.ts.
+ *
+ * E7 coordinates, decimetre accuracy and millisecond time; the first point is absolute
+ * and later points are zig-zag varint deltas, so a fix costs 6-9 bytes instead of ~100
+ * for the JSON map form. Chunks are stored as unpadded base64url strings.
+ */
+object TrailCodec {
+    const val VERSION = 1
+    private const val E7 = 1e7
+    private const val MAX_ACCURACY_DM = 65535L
+
+    fun encode(points: List<TrailPoint>): ByteArray {
+        val out = ByteArrayOutputStream(8 + points.size * 8)
+        out.write(VERSION)
+        writeVarint(out, points.size.toLong())
+        var prevLat = 0L
+        var prevLng = 0L
+        var prevTime = 0L
+        points.forEachIndexed { i, point ->
+            val lat = (point.latitude * E7).roundToLong()
+            val lng = (point.longitude * E7).roundToLong()
+            if (i == 0) {
+                writeVarint(out, zigzag(lat))
+                writeVarint(out, zigzag(lng))
+                writeVarint(out, point.timestamp)
+            } else {
+                writeVarint(out, zigzag(lat - prevLat))
+                writeVarint(out, zigzag(lng - prevLng))
+                writeVarint(out, zigzag(point.timestamp - prevTime))
+            }
+            writeVarint(out, (point.accuracy * 10.0).roundToLong().coerceIn(0L, MAX_ACCURACY_DM))
+            prevLat = lat
+            prevLng = lng
+            prevTime = point.timestamp
+        }
+        return out.toByteArray()
+    }
+
+    fun decode(data: ByteArray): List<TrailPoint> {
+        require(data.size >= 2 && data[0].toInt() == VERSION) { "Unsupported trail chunk" }
+        var pos = 1
+        fun readVarint(): Long {
+            var result = 0L
+            var shift = 0
+            while (pos < data.size && shift < 64) {
+                val b = data[pos++].toInt()
+                result = result or ((b and 0x7f).toLong() shl shift)
+                if (b and 0x80 == 0) return result
+                shift += 7
+            }
+            throw IllegalArgumentException("Truncated trail chunk")
+        }
+
+        val count = readVarint().toInt()
+        require(count >= 0 && count <= data.size) { "Corrupt trail chunk" }
+        val points = ArrayList<TrailPoint>(count)
+        var lat = 0L
+        var lng = 0L
+        var time = 0L
+        for (i in 0 until count) {
+            if (i == 0) {
+                lat = unzigzag(readVarint())
+                lng = unzigzag(readVarint())
+                time = readVarint()
+            } else {
+                lat += unzigzag(readVarint())
+                lng += unzigzag(readVarint())
+                time += unzigzag(readVarint())
+            }
+            val accuracy = readVarint() / 10f
+            points.add(TrailPoint(lat / E7, lng / E7, accuracy, time))
+        }
+        return points
+    }
+
+    fun toBase64(data: ByteArray): String =
+        Base64.getUrlEncoder().withoutPadding().encodeToString(data)
+
+    fun fromBase64(text: String): ByteArray = Base64.getUrlDecoder().decode(text)
+
+    private fun zigzag(value: Long): Long = (value shl 1) xor (value shr 63)
+
+    private fun unzigzag(value: Long): Long = (value ushr 1) xor -(value and 1)
+
+    private fun writeVarint(out: ByteArrayOutputStream, value: Long) {
+        var v = value
+        while (v and 0x7fL.inv() != 0L) {
+            out.write(((v and 0x7f) or 0x80).toInt())
+            v = v ushr 7
+        }
+        out.write(v.toInt())
+    }
+}
@@ -0,0 +1,82 @@
+package com.poverse.app.service
+
+import kotlin.math.cos
+
+data class TrailPoint(
+    val latitude: Double,
+    val longitude: Double,
+    val accuracy: Float,
+    val timestamp: Long
+)
+
+/**
+ * Streaming, error-bounded trail simplifier (opening-window Douglas-Peucker), the same
+ * algorithm the Capacitor tracker uses.
+ *
+ * Fixes since the last kept point are held back in a bounded buffer; a point is only
+ * emitted once a straight line from the previous kept point can no longer cover the
+ * held-back fixes within [toleranceMeters]. [add] and [flush] return the point to
+ * persist, or null when nothing needs writing yet.
+ */
+class TrajectorySimplifier(
+    private val toleranceMeters: Double = DEFAULT_TOLERANCE_METERS,
+    private val maxBufferedPoints: Int = 32,
+    private val maxIntervalMs: Long = 5 * 60_000L
+) {
+    companion object {
+        const val DEFAULT_TOLERANCE_METERS = 10.0
+        private const val METERS_PER_DEGREE = 6_371_000.0 * Math.PI / 180.0
+    }
+
+    private var anchor: TrailPoint? = null
+    private var anchorCos = 1.0
+    private val buffer = ArrayDeque<TrailPoint>(maxBufferedPoints)
+
+    @Synchronized
+    fun add(latitude: Double, longitude: Double, accuracy: Float, timestamp: Long): TrailPoint? {
+        val point = TrailPoint(latitude, longitude, accuracy, timestamp)
+        val current = anchor ?: return emit(point)
+
+        var emitted: TrailPoint? = null
+        if (buffer.isNotEmpty() && (buffer.size >= maxBufferedPoints ||
+                timestamp - current.timestamp > maxIntervalMs ||
+                exceedsTolerance(current, point))
+        ) {
+            emitted = emit(buffer.last())
+        }
+        buffer.addLast(point)
+        return emitted
+    }
+
+    /** Emit the newest held-back fix, e.g. when tracking stops. */
+    @Synchronized
+    fun flush(): TrailPoint? = buffer.lastOrNull()?.let { emit(it) }
+
+    @Synchronized
+    fun reset() {
+        anchor = null
+        buffer.clear()
+    }
+
+    private fun emit(point: TrailPoint): TrailPoint {
+        anchor = point
+        anchorCos = cos(Math.toRadians(point.latitude))
+        buffer.clear()
+        return point
+    }
+
+    private fun exceedsTolerance(a: TrailPoint, b: TrailPoint): Boolean {
+        val ex = (b.longitude - a.longitude) * anchorCos * METERS_PER_DEGREE
+        val ey = (b.latitude - a.latitude) * METERS_PER_DEGREE
+        val lengthSq = ex * ex + ey * ey
+        val toleranceSq = toleranceMeters * toleranceMeters
+        return buffer.any { p ->
+            val px = (p.longitude - a.longitude) * anchorCos * METERS_PER_DEGREE
+            val py = (p.latitude - a.latitude) * METERS_PER_DEGREE
+            val t = if (lengthSq > 0) ((px * ex + py * ey) / lengthSq).coerceIn(0.0, 1.0) else 0.0
+            val dx = px - t * ex
+            val dy = py - t * ey
+            dx * dx + dy * dy > toleranceSq
+        }
+    }
+}
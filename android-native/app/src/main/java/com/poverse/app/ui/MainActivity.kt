@@ -1,7 +1,6 @@
 package com.poverse.app.ui
 
 import android.Manifest
-import android.content.Intent
 import android.os.Build
 import android.os.Bundle
 import androidx.activity.ComponentActivity
@@ -61,24 +60,12 @@ class MainActivity : ComponentActivity() {
         }
     }
 
-    fun startLocationTracking(userId: String, companyId: String) {
-        val intent = Intent(this, LocationTrackingService::class.java).apply {
-            action = LocationTrackingService.ACTION_START
-            putExtra(LocationTrackingService.EXTRA_USER_ID, userId)
-            putExtra(LocationTrackingService.EXTRA_COMPANY_ID, companyId)
-        }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(intent)
-        } else {
-            startService(intent)
-        }
+    fun startLocationTracking(userId: String, companyId: String, shiftEndsAt: Long) {
+        LocationTrackingService.start(this, userId, companyId, shiftEndsAt)
     }
 
     fun stopLocationTracking() {
-        val intent = Intent(this, LocationTrackingService::class.java).apply {
-            action = LocationTrackingService.ACTION_STOP
-        }
-        startService(intent)
+        LocationTrackingService.stop(this)
     }
 }
 
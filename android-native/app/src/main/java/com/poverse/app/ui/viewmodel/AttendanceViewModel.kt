@@ -1,12 +1,16 @@
 package com.poverse.app.ui.viewmodel
 
+import android.content.Context
 import android.net.Uri
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.poverse.app.data.model.*
 import com.poverse.app.data.repository.AttendanceRepository
 import com.poverse.app.data.repository.AuthRepository
+import com.poverse.app.service.LocationTrackingService
+import com.poverse.app.service.ShiftWindow
 import dagger.hilt.android.lifecycle.HiltViewModel
+import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
 import javax.inject.Inject
@@ -25,12 +29,16 @@ data class AttendanceUiState(
 @HiltViewModel
 class AttendanceViewModel @Inject constructor(
     private val attendanceRepository: AttendanceRepository,
-    private val authRepository: AuthRepository
+    private val authRepository: AuthRepository,
+    @ApplicationContext private val context: Context
 ) : ViewModel() {
 
     private val _uiState = MutableStateFlow(AttendanceUiState())
     val uiState: StateFlow<AttendanceUiState> = _uiState.asStateFlow()
 
+    // Shift end tracking was last started for; 0 when this screen has not started it
+    private var trackedShiftEndsAt = 0L
+
     init {
         loadData()
     }
@@ -51,6 +59,7 @@ class AttendanceViewModel @Inject constructor(
             // Observe today's attendance
             attendanceRepository.observeTodayAttendance(userId).collect { record ->
                 _uiState.update { it.copy(todayRecord = record, isLoading = false) }
+                syncTracking(userId, companyId, record, settings)
             }
         }
     }
@@ -114,6 +123,34 @@ class AttendanceViewModel @Inject constructor(
         }
     }
 
+    /**
+     * Track only on shift: from check-in until check-out or the shift's end plus grace,
+     * after which the service stops by itself.
+     */
+    private fun syncTracking(
+        userId: String,
+        companyId: String,
+        record: AttendanceRecord?,
+        settings: AttendanceSettings
+    ) {
+        val checkIn = record?.checkIn
+        if (checkIn != null && checkIn.timestamp > 0 && record?.checkOut == null) {
+            val endsAt = try {
+                ShiftWindow.endsAt(checkIn.timestamp, settings.shiftStartTime, settings.shiftEndTime)
+            } catch (e: IllegalArgumentException) {
+                val defaults = AttendanceSettings()
+                ShiftWindow.endsAt(checkIn.timestamp, defaults.shiftStartTime, defaults.shiftEndTime)
+            }
+            if (endsAt > System.currentTimeMillis() && endsAt != trackedShiftEndsAt) {
+                LocationTrackingService.start(context, userId, companyId, endsAt)
+                trackedShiftEndsAt = endsAt
+            }
+        } else if (trackedShiftEndsAt != 0L || LocationTrackingService.isRunning) {
+            LocationTrackingService.stop(context)
+            trackedShiftEndsAt = 0L
+        }
+    }
+
     fun clearMessages() {
         _uiState.update { it.copy(error = null, successMessage = null) }
     }
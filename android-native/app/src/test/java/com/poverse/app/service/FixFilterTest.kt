@@ -0,0 +1,205 @@
+package com.poverse.app.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.sin
+
+class FixFilterTest {
+    companion object {
+        private const val LAT = 12.9716
+        private const val LNG = 77.5946
+        private val M_PER_DEG_LNG = GeoMath.METERS_PER_DEGREE_LAT * cos(Math.toRadians(LAT))
+        private const val MAX_GAP_MS = 10 * 60_000L
+    }
+
+    /** A recorded-style trace: ground truth plus what the provider reported. */
+    private class Trace(n: Int) {
+        val trueLat = DoubleArray(n)
+        val trueLng = DoubleArray(n)
+        val lat = DoubleArray(n)
+        val lng = DoubleArray(n)
+        val accuracy = FloatArray(n)
+        val times = LongArray(n)
+        var glitches = 0
+    }
+
+    /**
+     * Walks or drives a route of straight legs with 90 degree turns at the given speed.
+     * Every fix carries Gaussian noise consistent with its accuracy; every [glitchEvery]
+     * fixes a multipath burst of one or two fixes lands ~200 m off, claiming
+     * [glitchAccuracy] (a random 20-150 m when 0).
+     */
+    private fun route(
+        seed: Long, fixes: Int, intervalMs: Long, speedMps: Double, legMeters: Double,
+        accuracy: Float, glitchEvery: Int, glitchAccuracy: Float
+    ): Trace {
+        val random = Random(seed)
+        val trace = Trace(fixes)
+        var east = 0.0
+        var north = 0.0
+        var heading = 0.0
+        var legLeft = legMeters
+        var burst = 0
+        var burstAngle = 0.0
+        for (i in 0 until fixes) {
+            if (i > 0) {
+                var step = speedMps * intervalMs / 1000.0
+                while (step > 0) {
+                    val move = minOf(step, legLeft)
+                    east += sin(heading) * move
+                    north += cos(heading) * move
+                    step -= move
+                    legLeft -= move
+                    if (legLeft <= 0) {
+                        heading += if (random.nextBoolean()) Math.PI / 2 else -Math.PI / 2
+                        legLeft = legMeters
+                    }
+                }
+            }
+            trace.times[i] = 1_700_000_000_000L + i * intervalMs
+            trace.trueLat[i] = LAT + north / GeoMath.METERS_PER_DEGREE_LAT
+            trace.trueLng[i] = LNG + east / M_PER_DEG_LNG
+
+            var noiseEast = random.nextGaussian() * accuracy / 1.5
+            var noiseNorth = random.nextGaussian() * accuracy / 1.5
+            var reported = accuracy
+            if (burst == 0 && glitchEvery > 0 && i > 5 && i % glitchEvery == 0) {
+                burst = 1 + random.nextInt(2)
+                burstAngle = random.nextDouble() * 2 * Math.PI
+            }
+            if (burst > 0) {
+                noiseEast = sin(burstAngle) * 200
+                noiseNorth = cos(burstAngle) * 200
+                reported = if (glitchAccuracy > 0) glitchAccuracy else (20 + random.nextInt(131)).toFloat()
+                trace.glitches++
+                burst--
+            }
+            trace.lat[i] = trace.trueLat[i] + noiseNorth / GeoMath.METERS_PER_DEGREE_LAT
+            trace.lng[i] = trace.trueLng[i] + noiseEast / M_PER_DEG_LNG
+            trace.accuracy[i] = reported
+        }
+        return trace
+    }
+
+    private fun pathLength(lat: DoubleArray, lng: DoubleArray, n: Int): Double =
+        (1 until n).sumOf { GeoMath.distanceMeters(lat[it - 1], lng[it - 1], lat[it], lng[it]) }
+
+    /** Replays the trace through a filter; returns the filtered path length. */
+    private fun filteredLength(trace: Trace, filter: FixFilter): Double {
+        val n = trace.times.size
+        val lat = DoubleArray(n)
+        val lng = DoubleArray(n)
+        var kept = 0
+        for (i in 0 until n) {
+            if (filter.accept(trace.lat[i], trace.lng[i], trace.accuracy[i], trace.times[i])) {
+                lat[kept] = filter.latitude
+                lng[kept] = filter.longitude
+                kept++
+            }
+        }
+        return pathLength(lat, lng, kept)
+    }
+
+    @Test
+    fun noisyWalkPathLengthStaysCloseToTruth() {
+        // 40 minutes on foot, a fix every 5 s, indoor-style jumps every ~40 fixes
+        val trace = route(1, 480, 5000, 1.4, 150.0, 8f, 40, 0f)
+        val n = trace.times.size
+        val truth = pathLength(trace.trueLat, trace.trueLng, n)
+        val raw = pathLength(trace.lat, trace.lng, n)
+        val filter = FixFilter()
+        val filtered = filteredLength(trace, filter)
+
+        val rawError = abs(raw - truth) / truth
+        val filteredError = abs(filtered - truth) / truth
+        assertTrue("raw error $rawError", rawError > 1.0)
+        assertTrue("filtered error $filteredError", filteredError < 0.2)
+        assertTrue(filter.rejectedCount > 0)
+    }
+
+    @Test
+    fun noisyDrivePathLengthStaysCloseToTruth() {
+        // 20 minutes at 50 km/h, a fix every 2 s, glitches claiming a confident 10 m
+        val trace = route(2, 600, 2000, 14.0, 800.0, 6f, 40, 10f)
+        val n = trace.times.size
+        val truth = pathLength(trace.trueLat, trace.trueLng, n)
+        val raw = pathLength(trace.lat, trace.lng, n)
+        val filter = FixFilter()
+        val filtered = filteredLength(trace, filter)
+
+        val rawError = abs(raw - truth) / truth
+        val filteredError = abs(filtered - truth) / truth
+        assertTrue("raw error $rawError", rawError > 0.25)
+        assertTrue("filtered error $filteredError", filteredError < 0.03)
+        // Confident glitches cannot be weighed down, only gated out
+        assertTrue(
+            "rejected ${filter.rejectedCount} of ${trace.glitches}",
+            filter.rejectedCount >= trace.glitches * 0.9
+        )
+    }
+
+    @Test
+    fun firstFixPassesThroughUnchanged() {
+        val filter = FixFilter()
+        assertTrue(filter.accept(LAT, LNG, 12f, 1000))
+        assertEquals(LAT, filter.latitude, 1e-9)
+        assertEquals(LNG, filter.longitude, 1e-9)
+        assertEquals(12f, filter.accuracy, 1e-3f)
+    }
+
+    @Test
+    fun inaccurateFixBarelyMovesTheEstimate() {
+        val filter = FixFilter()
+        for (i in 0 until 10) {
+            filter.accept(LAT, LNG, 5f, i * 10_000L)
+        }
+        // 200 m north, but claiming 150 m accuracy
+        assertTrue(filter.accept(LAT + 200 / GeoMath.METERS_PER_DEGREE_LAT, LNG, 150f, 100_000))
+        val moved = GeoMath.distanceMeters(LAT, LNG, filter.latitude, filter.longitude)
+        assertTrue("moved $moved", moved < 30)
+        assertTrue(filter.accuracy < 150)
+    }
+
+    @Test
+    fun rejectsImpossibleJump() {
+        val filter = FixFilter()
+        for (i in 0 until 10) {
+            filter.accept(LAT, LNG, 5f, i * 1000L)
+        }
+        // 200 m in one second from standstill
+        assertFalse(filter.accept(LAT + 200 / GeoMath.METERS_PER_DEGREE_LAT, LNG, 5f, 10_000))
+        assertEquals(LAT, filter.latitude, 1e-5)
+        assertTrue(filter.accept(LAT, LNG, 5f, 11_000))
+    }
+
+    @Test
+    fun restartsAfterRepeatedRejectionsOrLongGap() {
+        val filter = FixFilter()
+        for (i in 0 until 10) {
+            filter.accept(LAT, LNG, 5f, i * 1000L)
+        }
+        val farLat = LAT + 0.05
+        assertFalse(filter.accept(farLat, LNG, 5f, 10_000))
+        assertFalse(filter.accept(farLat, LNG, 5f, 11_000))
+        assertTrue(filter.accept(farLat, LNG, 5f, 12_000))
+        assertEquals(farLat, filter.latitude, 1e-9)
+        assertEquals(3L, filter.rejectedCount)
+
+        assertTrue(filter.accept(LAT, LNG, 5f, 12_000 + MAX_GAP_MS + 1))
+        assertEquals(LAT, filter.latitude, 1e-9)
+        assertEquals(3L, filter.rejectedCount)
+    }
+
+    @Test
+    fun rejectsOutOfOrderFixes() {
+        val filter = FixFilter()
+        filter.accept(LAT, LNG, 5f, 2000)
+        assertFalse(filter.accept(LAT, LNG, 5f, 2000))
+        assertFalse(filter.accept(LAT, LNG, 5f, 1000))
+    }
+}
@@ -0,0 +1,124 @@
+package com.poverse.app.service
+
+import com.google.android.gms.location.Priority
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Replays a recorded shop / walk / drive / walk / shop trace through a simulated fused
+ * provider that honours the engine's current interval and min-distance.
+ */
+class MotionSamplingTest {
+    companion object {
+        private const val FIXED_INTERVAL_MS = 10_000L
+    }
+
+    @Test
+    fun followsRecordedTraceThroughEveryMotionState() {
+        val trace = Traces.load(Traces.SHOP_WALK_DRIVE)
+        val engine = SamplingEngine()
+        val states = mutableListOf(engine.state)
+
+        val adaptiveFixes = replay(trace, engine) { if (it != states.last()) states.add(it) }
+        val fixedFixes = replay(trace, null) {}
+
+        assertEquals(
+            listOf(
+                MotionState.WALKING,
+                MotionState.STATIONARY,
+                MotionState.WALKING,
+                MotionState.DRIVING,
+                MotionState.WALKING,
+                MotionState.STATIONARY
+            ),
+            states
+        )
+        assertEquals(194, fixedFixes)
+        assertEquals(48, adaptiveFixes)
+    }
+
+    @Test
+    fun stationaryUsesBalancedPower() {
+        val profile = DefaultSamplingPolicy.profileFor(MotionState.STATIONARY)
+        assertEquals(Priority.PRIORITY_BALANCED_POWER_ACCURACY, profile.priority)
+    }
+
+    @Test
+    fun singleOutlierDoesNotSwitchState() {
+        val engine = SamplingEngine(DefaultSamplingPolicy, MotionState.STATIONARY, 2)
+        var t = 0L
+        repeat(5) {
+            t += 60_000
+            assertFalse(engine.onFix(12.9716, 77.5946, 0.1f, t))
+        }
+        t += 10_000
+        assertFalse(engine.onFix(12.9726, 77.5946, 9f, t))
+        t += 60_000
+        assertFalse(engine.onFix(12.9716, 77.5946, 0.1f, t))
+        assertEquals(MotionState.STATIONARY, engine.state)
+    }
+
+    @Test
+    fun resetForgetsHistoryAndState() {
+        val engine = SamplingEngine(DefaultSamplingPolicy, MotionState.WALKING, 2)
+        var t = 0L
+        repeat(5) {
+            t += 60_000
+            engine.onFix(12.9716, 77.5946, 0.1f, t)
+        }
+        assertEquals(MotionState.STATIONARY, engine.state)
+
+        engine.reset()
+        assertEquals(MotionState.WALKING, engine.state)
+        // A single still fix is one vote again, not a continuation of the last shift
+        assertFalse(engine.onFix(12.9716, 77.5946, 0.1f, t + 86_400_000L))
+        assertEquals(MotionState.WALKING, engine.state)
+    }
+
+    @Test
+    fun acceptsPluggablePolicy() {
+        val slow = SamplingProfile(Priority.PRIORITY_LOW_POWER, 300_000L, 150_000L, 100f)
+        val alwaysStill = object : SamplingPolicy {
+            override fun classify(speedMps: Float, displacementMeters: Double, windowMs: Long) =
+                MotionState.STATIONARY
+
+            override fun profileFor(state: MotionState) = slow
+        }
+        val engine = SamplingEngine(alwaysStill, MotionState.STATIONARY, 1)
+        val fixes = replay(Traces.load(Traces.SHOP_WALK_DRIVE), engine) {}
+        assertEquals(MotionState.STATIONARY, engine.state)
+        assertTrue("fixes: $fixes", fixes <= 8)
+    }
+
+    /**
+     * Deliver trace points the way the fused provider would for the current request.
+     * A null engine replays the old fixed 10 s / 5 m request.
+     */
+    private fun replay(trace: List<DoubleArray>, engine: SamplingEngine?, onState: (MotionState) -> Unit): Int {
+        var delivered = 0
+        var lastTime = Long.MIN_VALUE / 2
+        var lastLat = 0.0
+        var lastLng = 0.0
+        for (p in trace) {
+            val time = p[Traces.TIME].toLong()
+            val interval = engine?.profile?.intervalMs ?: FIXED_INTERVAL_MS
+            val minDistance = engine?.profile?.minDistanceMeters ?: 5f
+            if (time - lastTime < interval) continue
+            if (delivered > 0 &&
+                GeoMath.distanceMeters(lastLat, lastLng, p[Traces.LAT], p[Traces.LNG]) < minDistance
+            ) continue
+
+            delivered++
+            lastTime = time
+            lastLat = p[Traces.LAT]
+            lastLng = p[Traces.LNG]
+            if (engine != null) {
+                engine.onFix(p[Traces.LAT], p[Traces.LNG], p[Traces.SPEED].toFloat(), time)
+                onState(engine.state)
+            }
+        }
+        return delivered
+    }
+}
@@ -0,0 +1,62 @@
+package com.poverse.app.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Calendar
+import java.util.TimeZone
+
+class ShiftWindowTest {
+    private val utc = TimeZone.getTimeZone("UTC")
+
+    @Test
+    fun dayShiftEndsAtShiftEndPlusGrace() {
+        val endsAt = ShiftWindow.endsAt(at(3, 9, 5), "09:00", "18:00", zone = utc)
+        assertEquals(at(3, 18, 30), endsAt)
+    }
+
+    @Test
+    fun overnightShiftEndsNextMorning() {
+        val endsAt = ShiftWindow.endsAt(at(3, 21, 55), "22:00", "06:00", zone = utc)
+        assertEquals(at(4, 6, 30), endsAt)
+    }
+
+    @Test
+    fun overnightCheckInAfterMidnightEndsSameMorning() {
+        val endsAt = ShiftWindow.endsAt(at(4, 1, 0), "22:00", "06:00", zone = utc)
+        assertEquals(at(4, 6, 30), endsAt)
+    }
+
+    @Test
+    fun lateCheckInStillGetsGracePeriod() {
+        val checkIn = at(3, 19, 0)
+        assertEquals(
+            checkIn + ShiftWindow.GRACE_MINUTES * 60_000L,
+            ShiftWindow.endsAt(checkIn, "09:00", "18:00", zone = utc)
+        )
+        assertEquals(checkIn, ShiftWindow.endsAt(checkIn, "09:00", "18:00", graceMinutes = 0, zone = utc))
+    }
+
+    @Test
+    fun followsTheGivenZone() {
+        // 09:05 in Kolkata is 03:35 UTC; the shift ends 18:30 local, 13:00 UTC
+        val kolkata = TimeZone.getTimeZone("Asia/Kolkata")
+        assertEquals(at(3, 13, 0), ShiftWindow.endsAt(at(3, 3, 35), "09:00", "18:00", zone = kolkata))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsMalformedTime() {
+        ShiftWindow.endsAt(at(3, 9, 0), "9am", "18:00", zone = utc)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsOutOfRangeTime() {
+        ShiftWindow.endsAt(at(3, 9, 0), "09:00", "24:00", zone = utc)
+    }
+
+    /** June [day], 2024 at [hour]:[minute] UTC. */
+    private fun at(day: Int, hour: Int, minute: Int): Long =
+        Calendar.getInstance(utc).apply {
+            clear()
+            set(2024, Calendar.JUNE, day, hour, minute)
+        }.timeInMillis
+}
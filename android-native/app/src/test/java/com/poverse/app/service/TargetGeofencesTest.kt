@@ -0,0 +1,139 @@
+package com.poverse.app.service
+
+import com.google.android.gms.location.Priority
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TargetGeofencesTest {
+    companion object {
+        // ~111 m per 0.001 degree of latitude
+        private const val LAT = 12.9716
+        private const val LNG = 77.5946
+
+        private val HIGH = SamplingProfile(Priority.PRIORITY_HIGH_ACCURACY, 10_000L, 5_000L, 5f)
+    }
+
+    @Test
+    fun disabledUntilTargetsAreSupplied() {
+        val fences = TargetGeofences()
+        assertFalse(fences.onFix(LAT, LNG, 10f))
+        assertSame(HIGH, fences.adjust(HIGH))
+
+        fences.update(emptyList())
+        assertTrue(fences.enabled)
+        assertEquals(Priority.PRIORITY_BALANCED_POWER_ACCURACY, fences.adjust(HIGH).priority)
+        assertEquals(HIGH.intervalMs, fences.adjust(HIGH).intervalMs)
+    }
+
+    @Test
+    fun entersWithinRadiusAndLeavesPastHysteresis() {
+        val fences = TargetGeofences()
+        fences.update(listOf(GeofenceTarget("shop", LAT, LNG, 100f)))
+
+        assertFalse(fences.onFix(LAT + 0.002, LNG, 5f))     // ~222 m out
+        assertTrue(fences.onFix(LAT + 0.0008, LNG, 5f))     // ~89 m
+        assertEquals("shop", fences.inside?.id)
+        assertSame(HIGH, fences.adjust(HIGH))
+
+        assertFalse(fences.onFix(LAT + 0.0012, LNG, 5f))    // ~133 m, inside 1.5x
+        assertNotNull(fences.inside)
+        assertTrue(fences.onFix(LAT + 0.0016, LNG, 5f))     // ~178 m
+        assertNull(fences.inside)
+    }
+
+    @Test
+    fun coarseFixCountsWhenItsAccuracyReachesTheFence() {
+        val fences = TargetGeofences()
+        fences.update(listOf(GeofenceTarget("shop", LAT, LNG, 100f)))
+        assertFalse(fences.onFix(LAT + 0.0015, LNG, 20f))   // ~167 m, +/-20 m
+        assertTrue(fences.onFix(LAT + 0.0015, LNG, 80f))    // +/-80 m reaches the fence
+    }
+
+    @Test
+    fun resetDropsFencesAndDisablesCapping() {
+        val fences = TargetGeofences()
+        fences.update(listOf(GeofenceTarget("shop", LAT, LNG, 100f)))
+        assertTrue(fences.onFix(LAT, LNG, 5f))
+
+        fences.reset()
+        assertFalse(fences.enabled)
+        assertNull(fences.inside)
+        assertEquals(0, fences.size)
+        assertSame(HIGH, fences.adjust(HIGH))
+    }
+
+    @Test
+    fun updateAppliesOnlyTheDifference() {
+        val fences = TargetGeofences()
+        val a = GeofenceTarget("a", LAT, LNG)
+        val b = GeofenceTarget("b", LAT + 0.01, LNG)
+        assertEquals(TargetGeofences.DEFAULT_ENTER_RADIUS_M, a.radiusMeters, 0f)
+
+        assertTrue(fences.update(listOf(a, b)))
+        assertFalse(fences.update(listOf(b, GeofenceTarget("a", LAT, LNG))))
+        assertTrue(fences.onFix(LAT, LNG, 5f))
+
+        // Unrelated changes keep the agent inside "a"
+        assertTrue(fences.update(listOf(a, GeofenceTarget("b", LAT + 0.02, LNG))))
+        assertEquals("a", fences.inside?.id)
+
+        // Completing "a" drops its fence at once
+        assertTrue(fences.update(listOf(b)))
+        assertNull(fences.inside)
+        assertEquals(1, fences.size)
+    }
+
+    @Test
+    fun replayKeepsHighAccuracyOnlyNearTheDestination() {
+        val trace = Traces.load(Traces.SHOP_WALK_DRIVE)
+        val destination = trace.last()
+        val target = GeofenceTarget("dest", destination[Traces.LAT], destination[Traces.LNG])
+
+        val baseline = replayHighAccuracyFixes(trace, null)
+        val fences = TargetGeofences().apply { update(listOf(target)) }
+        var entered = 0
+        val geofenced = replayHighAccuracyFixes(trace, fences) { if (fences.inside != null) entered++ }
+
+        assertEquals(1, entered)
+        assertTrue("baseline $baseline, geofenced $geofenced", geofenced < baseline / 3)
+
+        // Arrival is still sampled precisely: every fix near the destination was high accuracy
+        val arrival = TargetGeofences().apply { update(listOf(target)) }
+        val engine = SamplingEngine()
+        for (fix in trace) {
+            engine.onFix(fix[Traces.LAT], fix[Traces.LNG], fix[Traces.SPEED].toFloat(), fix[Traces.TIME].toLong())
+            arrival.onFix(fix[Traces.LAT], fix[Traces.LNG], fix[Traces.ACCURACY].toFloat())
+            val distance = GeoMath.distanceMeters(
+                fix[Traces.LAT], fix[Traces.LNG], destination[Traces.LAT], destination[Traces.LNG]
+            )
+            if (distance < 150 && engine.state != MotionState.STATIONARY) {
+                assertEquals(Priority.PRIORITY_HIGH_ACCURACY, arrival.adjust(engine.profile).priority)
+            }
+        }
+    }
+
+    /** Fixes during which high accuracy would have been requested; [onChange] runs on each fence crossing. */
+    private fun replayHighAccuracyFixes(
+        trace: List<DoubleArray>,
+        fences: TargetGeofences?,
+        onChange: () -> Unit = {}
+    ): Int {
+        val engine = SamplingEngine()
+        var high = 0
+        for (fix in trace) {
+            engine.onFix(fix[Traces.LAT], fix[Traces.LNG], fix[Traces.SPEED].toFloat(), fix[Traces.TIME].toLong())
+            var profile = engine.profile
+            if (fences != null) {
+                if (fences.onFix(fix[Traces.LAT], fix[Traces.LNG], fix[Traces.ACCURACY].toFloat())) onChange()
+                profile = fences.adjust(profile)
+            }
+            if (profile.priority == Priority.PRIORITY_HIGH_ACCURACY) high++
+        }
+        return high
+    }
+}
@@ -0,0 +1,115 @@
+package com.poverse.app.service
+
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.StringReader
+
+/** GPX needs the platform's XML parser and is left to the Capacitor tracker's tests. */
+class TraceReplayTest {
+    companion object {
+        private const val BASE = 1_800_000_000_000L
+    }
+
+    @Test
+    fun readsCsvByHeader() {
+        val points = javaClass.getResourceAsStream(Traces.SHOP_WALK_DRIVE)!!.bufferedReader().use {
+            TraceReplay.parse(it, "shop_walk_drive.csv")
+        }
+
+        assertEquals(Traces.load(Traces.SHOP_WALK_DRIVE).size, points.size)
+        val first = points.first()
+        assertEquals(1717400000000L, first.timeMs)
+        assertEquals(12.9715961, first.latitude, 1e-9)
+        assertEquals(77.5945952, first.longitude, 1e-9)
+        assertEquals(11.3f, first.accuracy, 1e-6f)
+        assertEquals(0.04f, first.speedMps, 1e-6f)
+
+        val reordered = "lng,lat,time\n77.5,12.9,2024-06-03T07:33:20Z\n"
+        val point = TraceReplay.parse(StringReader(reordered), "day.csv").single()
+        assertEquals(1717400000000L, point.timeMs)
+        assertEquals(12.9, point.latitude, 1e-9)
+        assertEquals(TraceReplay.DEFAULT_ACCURACY_M, point.accuracy, 0f)
+        assertTrue(point.speedMps < 0)
+    }
+
+    @Test
+    fun readsValidRmcSentences() {
+        val nmea = "\$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47\n" +
+            "\$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A\n" +
+            "\$GPRMC,123520,V,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W\n" +
+            "\$GPRMC,123521,A,4807.038,S,01131.000,W,022.4,084.4,230394,003.1,W*00\n" +
+            "\$GNRMC,123522.50,A,4807.038,S,01131.000,W,,,230394,,\n"
+
+        // Sniffed: no extension
+        val points = TraceReplay.parse(StringReader(nmea), "capture")
+        assertEquals(2, points.size)
+        val first = points[0]
+        assertEquals(764426119000L, first.timeMs)
+        assertEquals(48.1173, first.latitude, 1e-9)
+        assertEquals(11.516666, first.longitude, 1e-6)
+        assertEquals(22.4f * 0.514444f, first.speedMps, 1e-4f)
+        assertEquals(764426122500L, points[1].timeMs)
+        assertEquals(-48.1173, points[1].latitude, 1e-9)
+        assertEquals(-11.516666, points[1].longitude, 1e-6)
+        assertTrue(points[1].speedMps < 0)
+    }
+
+    @Test
+    fun dropsPointsOutOfTimeOrder() {
+        val points = TraceReplay.parse(StringReader("1000,1,1\n3000,1,1\n2000,1,1\n3000,1,1\n4000,1,1\n"), "t.csv")
+        assertEquals(3, points.size)
+        assertEquals(4000L, points[2].timeMs)
+    }
+
+    @Test
+    fun holdsFixesUpToMaxDelayAndRebasesTimes() = runBlocking {
+        val points = (0 until 10).map { TracePoint(5000 + it * 10_000L, 12.97, 77.59, 5f, 1f) }
+        val deliveries = mutableListOf<List<TracePoint>>()
+        TraceReplay(points, speed = 0.0, maxDelayMs = 30_000L).play(this, BASE) { deliveries.add(it) }.join()
+
+        assertEquals(listOf(4, 4, 2), deliveries.map { it.size })
+        assertEquals(BASE, deliveries[0][0].timeMs)
+        assertEquals(BASE + 90_000, deliveries[2][1].timeMs)
+    }
+
+    @Test
+    fun replayedLowWakeupShiftKeepsFixesAndMotionStates() = runBlocking {
+        // The recorded day through the filter and motion engine, as the service feeds them
+        val trace = javaClass.getResourceAsStream(Traces.SHOP_WALK_DRIVE)!!.bufferedReader().use {
+            TraceReplay.parse(it, "shop_walk_drive.csv")
+        }
+        val filter = FixFilter()
+        val engine = SamplingEngine()
+        val states = mutableListOf(engine.state)
+        var deliveries = 0
+        var accepted = 0
+        TraceReplay(trace, speed = 0.0, maxDelayMs = TrackingMode.LOW_WAKEUP.maxUpdateDelayMs)
+            .play(this, BASE) { fixes ->
+                deliveries++
+                for (fix in fixes) {
+                    if (!filter.accept(fix.latitude, fix.longitude, fix.accuracy, fix.timeMs)) continue
+                    accepted++
+                    engine.onFix(filter.latitude, filter.longitude, fix.speedMps, fix.timeMs)
+                    if (engine.state != states.last()) states.add(engine.state)
+                }
+            }.join()
+
+        assertEquals(trace.size.toLong(), accepted + filter.rejectedCount)
+        assertEquals(1078, accepted)
+        // One delivery per two minutes of a 36 minute trace
+        assertEquals(18, deliveries)
+        assertEquals(
+            listOf(
+                MotionState.WALKING,
+                MotionState.STATIONARY,
+                MotionState.WALKING,
+                MotionState.DRIVING,
+                MotionState.WALKING,
+                MotionState.STATIONARY
+            ),
+            states
+        )
+    }
+}
@@ -0,0 +1,21 @@
+package com.poverse.app.service
+
+/**
+ * Recorded traces under src/test/resources/traces, shared with the Capacitor tracker's tests.
+ * Each row is {timestamp_ms, latitude, longitude, accuracy, speed}.
+ */
+object Traces {
+    const val SHOP_WALK_DRIVE = "/traces/shop_walk_drive.csv"
+
+    const val TIME = 0
+    const val LAT = 1
+    const val LNG = 2
+    const val ACCURACY = 3
+    const val SPEED = 4
+
+    fun load(resource: String): List<DoubleArray> =
+        Traces::class.java.getResourceAsStream(resource)!!.bufferedReader().useLines { lines ->
+            // Skip the header
+            lines.drop(1).map { line -> line.split(",").map { it.toDouble() }.toDoubleArray() }.toList()
+        }
+}
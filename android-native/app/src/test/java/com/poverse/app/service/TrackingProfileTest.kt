@@ -0,0 +1,91 @@
+package com.poverse.app.service
+
+import com.google.android.gms.location.Priority
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class TrackingProfileTest {
+    companion object {
+        private val WALKING = DefaultSamplingPolicy.profileFor(MotionState.WALKING)
+        private val STATIONARY = DefaultSamplingPolicy.profileFor(MotionState.STATIONARY)
+    }
+
+    @Test
+    fun emptyProfileKeepsPolicyRequest() {
+        assertSame(TrackingProfile.NONE, TrackingProfile.fromNode(null))
+        assertEquals(TrackingProfile.NONE, TrackingProfile.fromNode(emptyMap<String, Any>()))
+        assertSame(WALKING, TrackingProfile.NONE.apply(MotionState.WALKING, WALKING))
+    }
+
+    @Test
+    fun replacesMovingRequestField() {
+        val throttle = TrackingProfile.fromNode(mapOf("intervalMs" to 60_000L, "priority" to "balanced"))
+
+        val moving = throttle.apply(MotionState.DRIVING, WALKING)
+        assertEquals(Priority.PRIORITY_BALANCED_POWER_ACCURACY, moving.priority)
+        assertEquals(60_000L, moving.intervalMs)
+        assertEquals(30_000L, moving.minUpdateIntervalMs)
+        assertEquals(WALKING.minDistanceMeters, moving.minDistanceMeters, 0f)
+
+        // Faster than the app default is allowed too
+        val eager = TrackingProfile.fromNode(mapOf("intervalMs" to 2000, "minDistanceMeters" to 0))
+        assertEquals(2000L, eager.apply(MotionState.WALKING, WALKING).intervalMs)
+        assertEquals(0f, eager.apply(MotionState.WALKING, WALKING).minDistanceMeters, 0f)
+    }
+
+    @Test
+    fun neverSamplesStationaryAgentHarder() {
+        val eager = TrackingProfile(intervalMs = 2000L, minDistanceMeters = 1f, priority = Priority.PRIORITY_HIGH_ACCURACY)
+        assertEquals(STATIONARY, eager.apply(MotionState.STATIONARY, STATIONARY))
+
+        val lazy = TrackingProfile(intervalMs = 600_000L, minDistanceMeters = 100f, priority = Priority.PRIORITY_LOW_POWER)
+        assertEquals(
+            SamplingProfile(Priority.PRIORITY_LOW_POWER, 600_000L, 300_000L, 100f),
+            lazy.apply(MotionState.STATIONARY, STATIONARY)
+        )
+    }
+
+    @Test
+    fun clampsOutOfRangeValues() {
+        val typo = TrackingProfile.fromNode(
+            mapOf("intervalMs" to 5, "minDistanceMeters" to 1e6, "priority" to "turbo")
+        )
+        assertEquals(1000L, typo.intervalMs)
+        assertEquals(1000f, typo.minDistanceMeters!!, 0f)
+        assertNull(typo.priority)
+    }
+
+    @Test
+    fun ignoresMalformedFields() {
+        val profile = TrackingProfile.fromNode(
+            mapOf("intervalMs" to "fast", "minDistanceMeters" to -5, "priority" to 100)
+        )
+        assertEquals(TrackingProfile.NONE, profile)
+    }
+
+    @Test
+    fun parsesPriorityNames() {
+        fun priorityOf(name: String) = TrackingProfile.fromNode(mapOf("priority" to name)).priority
+        assertEquals(Priority.PRIORITY_HIGH_ACCURACY, priorityOf("high"))
+        assertEquals(Priority.PRIORITY_BALANCED_POWER_ACCURACY, priorityOf("balanced"))
+        assertEquals(Priority.PRIORITY_LOW_POWER, priorityOf("low"))
+    }
+
+    @Test
+    fun engineFollowsProfileSwappedLive() {
+        var profile = TrackingProfile.NONE
+        val engine = SamplingEngine(object : SamplingPolicy by DefaultSamplingPolicy {
+            override fun profileFor(state: MotionState): SamplingProfile =
+                profile.apply(state, DefaultSamplingPolicy.profileFor(state))
+        })
+        val before = engine.profile.intervalMs
+
+        profile = TrackingProfile(intervalMs = 45_000L)
+        assertEquals(45_000L, engine.profile.intervalMs)
+
+        profile = TrackingProfile.NONE
+        assertEquals(before, engine.profile.intervalMs)
+    }
+}
@@ -0,0 +1,77 @@
+package com.poverse.app.service
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Base64
+import java.util.Random
+
+class TrailCodecTest {
+
+    @Test
+    fun roundTripsRecordedTraceWithinE7() {
+        val trace = Traces.load(Traces.SHOP_WALK_DRIVE)
+        val points = trace.map {
+            TrailPoint(it[Traces.LAT], it[Traces.LNG], it[Traces.ACCURACY].toFloat(), it[Traces.TIME].toLong())
+        }
+        val chunk = TrailCodec.encode(points)
+        val decoded = TrailCodec.decode(chunk)
+
+        assertEquals(points.size, decoded.size)
+        points.zip(decoded).forEach { (p, d) ->
+            assertEquals(p.latitude, d.latitude, 1e-7)
+            assertEquals(p.longitude, d.longitude, 1e-7)
+            assertEquals(p.accuracy, d.accuracy, 0.05f)
+            assertEquals(p.timestamp, d.timestamp)
+        }
+        assertTrue("bytes/point ${chunk.size.toDouble() / points.size}", chunk.size < points.size * 10)
+    }
+
+    @Test
+    fun handlesHemispheresAndOutOfOrderTimes() {
+        val points = listOf(
+            TrailPoint(-33.8688, 151.2093, 3.5f, 1_700_000_000_000L),
+            TrailPoint(51.5074, -0.1278, 0f, 1_699_999_000_000L),
+            TrailPoint(0.0, -179.9999999, 6553.5f, 1_700_000_500_000L),
+            TrailPoint(89.9999999, 179.9999999, 10000f, 1_700_000_500_001L)
+        )
+        val decoded = TrailCodec.decode(TrailCodec.encode(points))
+
+        points.zip(decoded).forEach { (p, d) ->
+            assertEquals(p.latitude, d.latitude, 1e-7)
+            assertEquals(p.longitude, d.longitude, 1e-7)
+            assertEquals(p.timestamp, d.timestamp)
+        }
+        assertEquals(6553.5f, decoded[3].accuracy, 0f) // clamped
+    }
+
+    @Test
+    fun decodesChunksFromTheCapacitorTracker() {
+        // Byte-compatible: the same point encodes to the same bytes as TrailCodec.java
+        val chunk = TrailCodec.encode(listOf(TrailPoint(12.97, 77.59, 5f, 1_700_000_000_000L)))
+        assertEquals("AQHAwth7wK364wWA0JX_vDEy", TrailCodec.toBase64(chunk))
+    }
+
+    @Test
+    fun base64IsUnpaddedUrlEncoding() {
+        val random = Random(7)
+        for (length in 0 until 40) {
+            val data = ByteArray(length).also { random.nextBytes(it) }
+            val expected = Base64.getUrlEncoder().withoutPadding().encodeToString(data)
+            assertEquals(expected, TrailCodec.toBase64(data))
+            assertArrayEquals(data, TrailCodec.fromBase64(expected))
+        }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsTruncatedChunk() {
+        val chunk = TrailCodec.encode(listOf(TrailPoint(12.97, 77.59, 5f, 1_700_000_000_000L)))
+        TrailCodec.decode(chunk.copyOf(chunk.size - 2))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun rejectsUnknownVersion() {
+        TrailCodec.decode(byteArrayOf(9, 0))
+    }
+}
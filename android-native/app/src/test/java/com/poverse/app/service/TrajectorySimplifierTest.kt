@@ -0,0 +1,88 @@
+package com.poverse.app.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.cos
+import kotlin.math.hypot
+
+class TrajectorySimplifierTest {
+    companion object {
+        private const val TOLERANCE_M = 10.0
+    }
+
+    @Test
+    fun straightSegmentCollapsesToEndpoints() {
+        val simplifier = TrajectorySimplifier(TOLERANCE_M)
+        val kept = (0..20).mapNotNull { simplifier.add(12.97 + it * 0.0001, 77.59, 5f, it * 10_000L) } +
+            listOfNotNull(simplifier.flush())
+
+        assertEquals(2, kept.size)
+        assertEquals(12.97, kept[0].latitude, 1e-9)
+        assertEquals(12.972, kept[1].latitude, 1e-9)
+    }
+
+    @Test
+    fun keepsCorner() {
+        val simplifier = TrajectorySimplifier(TOLERANCE_M)
+        val kept = mutableListOf<TrailPoint>()
+        for (i in 0..10) {
+            simplifier.add(12.97 + i * 0.0001, 77.59, 5f, i * 10_000L)?.let { kept.add(it) }
+        }
+        for (i in 1..10) {
+            simplifier.add(12.971, 77.59 + i * 0.0001, 5f, (10 + i) * 10_000L)?.let { kept.add(it) }
+        }
+        simplifier.flush()?.let { kept.add(it) }
+
+        assertEquals(3, kept.size)
+        assertEquals(12.971, kept[1].latitude, 1e-9)
+        assertEquals(77.59, kept[1].longitude, 1e-9)
+    }
+
+    @Test
+    fun everyDroppedPointStaysWithinTolerance() {
+        val trace = Traces.load(Traces.SHOP_WALK_DRIVE)
+        val simplifier = TrajectorySimplifier(TOLERANCE_M)
+        val kept = trace.mapNotNull {
+            simplifier.add(it[Traces.LAT], it[Traces.LNG], it[Traces.ACCURACY].toFloat(), it[Traces.TIME].toLong())
+        } + listOfNotNull(simplifier.flush())
+
+        var segment = 0
+        for (p in trace) {
+            val time = p[Traces.TIME].toLong()
+            while (segment < kept.size - 2 && time > kept[segment + 1].timestamp) {
+                segment++
+            }
+            val error = distanceToSegment(p[Traces.LAT], p[Traces.LNG], kept[segment], kept[segment + 1])
+            assertTrue("error ${error}m at $time", error <= TOLERANCE_M + 0.01)
+        }
+    }
+
+    @Test
+    fun forcesPointWhenBufferIsFull() {
+        val simplifier = TrajectorySimplifier(TOLERANCE_M, maxBufferedPoints = 4, maxIntervalMs = Long.MAX_VALUE)
+        val kept = (0..10).mapNotNull { simplifier.add(12.97 + it * 0.0001, 77.59, 5f, it * 1000L) }
+        // Anchor, then one point every time four are held back
+        assertEquals(3, kept.size)
+    }
+
+    @Test
+    fun forcesPointAfterMaxInterval() {
+        val simplifier = TrajectorySimplifier(TOLERANCE_M, maxBufferedPoints = 32, maxIntervalMs = 60_000L)
+        val kept = (0..12).mapNotNull { simplifier.add(12.97, 77.59, 5f, it * 10_000L) }
+        assertEquals(2, kept.size)
+        assertEquals(60_000L, kept[1].timestamp)
+    }
+
+    private fun distanceToSegment(lat: Double, lng: Double, a: TrailPoint, b: TrailPoint): Double {
+        val metersPerDegree = GeoMath.METERS_PER_DEGREE_LAT
+        val cos = cos(Math.toRadians(a.latitude))
+        val ex = (b.longitude - a.longitude) * cos * metersPerDegree
+        val ey = (b.latitude - a.latitude) * metersPerDegree
+        val px = (lng - a.longitude) * cos * metersPerDegree
+        val py = (lat - a.latitude) * metersPerDegree
+        val lengthSq = ex * ex + ey * ey
+        val t = if (lengthSq > 0) ((px * ex + py * ey) / lengthSq).coerceIn(0.0, 1.0) else 0.0
+        return hypot(px - t * ex, py - t * ey)
+    }
+}
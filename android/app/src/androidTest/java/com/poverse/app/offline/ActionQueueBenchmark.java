@@ -0,0 +1,76 @@
+package com.poverse.app.offline;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Enqueue and ack throughput of the offline action queue on a device, for 10,000
+ * queued actions drained the way the sync engine does: peek a batch, ack it.
+ * Run with: ./gradlew :app:connectedDebugAndroidTest
+ *   -Pandroid.testInstrumentationRunnerArguments.class=com.poverse.app.offline.ActionQueueBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class ActionQueueBenchmark {
+    private static final String TAG = "ActionQueueBenchmark";
+    private static final int ACTIONS = 10_000;
+    private static final int BATCH = 50;
+
+    private ActionQueue queue;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        queue = ActionQueue.get(context);
+        queue.clear(null);
+    }
+
+    @After
+    public void tearDown() {
+        queue.clear(null);
+    }
+
+    @Test
+    public void enqueueThenDrain() {
+        // A check-in sized action: ids, a location and a few fields
+        String template = "{\"id\":\"%s\",\"type\":\"attendance_checkin\",\"userId\":\"agent-0001\","
+            + "\"companyId\":\"company-01\",\"timestamp\":\"2026-10-16T09:00:00.000Z\",\"status\":\"pending\","
+            + "\"retryCount\":0,\"maxRetries\":3,\"payload\":{\"checkinTime\":\"2026-10-16T09:00:00.000Z\","
+            + "\"location\":{\"latitude\":12.9716,\"longitude\":77.5946,\"accuracy\":8}}}";
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ACTIONS; i++) {
+            String id = "offline_" + i;
+            queue.enqueue(id, "agent-0001", "attendance_checkin", String.format(Locale.US, template, id), null, null);
+        }
+        long enqueueNs = System.nanoTime() - start;
+        assertEquals(ACTIONS, queue.counts(null).pending);
+
+        int drained = 0;
+        start = System.nanoTime();
+        while (true) {
+            List<ActionQueue.Action> batch = queue.peekBatch("agent-0001", false, BATCH);
+            if (batch.isEmpty()) break;
+            List<String> ids = new ArrayList<>(batch.size());
+            for (ActionQueue.Action action : batch) ids.add(action.id);
+            drained += queue.ack(ids);
+        }
+        long drainNs = System.nanoTime() - start;
+        assertEquals(ACTIONS, drained);
+
+        Log.i(TAG, String.format(Locale.US,
+            "%d actions: enqueue %.0f/s (%.1f ms total), peek+ack in batches of %d %.0f/s (%.1f ms total)",
+            ACTIONS, ACTIONS / (enqueueNs / 1e9), enqueueNs / 1e6, BATCH, ACTIONS / (drainNs / 1e9), drainNs / 1e6));
+    }
+}
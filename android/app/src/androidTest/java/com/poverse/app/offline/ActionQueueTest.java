@@ -0,0 +1,103 @@
+package com.poverse.app.offline;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class ActionQueueTest {
+    private ActionQueue queue;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        queue = ActionQueue.get(context);
+        queue.clear(null);
+    }
+
+    @After
+    public void tearDown() {
+        queue.clear(null);
+    }
+
+    private long enqueue(String id, String userId, String writePath) {
+        return queue.enqueue(id, userId, writePath != null ? "location_update" : "visit_start",
+            "{\"id\":\"" + id + "\"}", writePath, writePath != null ? "{\"latitude\":12.97}" : null);
+    }
+
+    @Test
+    public void peekKeepsOrderUntilAcked() {
+        enqueue("a", "u1", null);
+        enqueue("b", "u1", null);
+        enqueue("c", "u1", null);
+        // Same id again is ignored
+        assertEquals(-1, enqueue("a", "u1", null));
+
+        List<ActionQueue.Action> batch = queue.peekBatch("u1", false, 2);
+        assertEquals(2, batch.size());
+        assertEquals("a", batch.get(0).id);
+        assertEquals("b", batch.get(1).id);
+        assertEquals(2, queue.peekBatch("u1", false, 2).size());
+
+        assertEquals(2, queue.ack(Arrays.asList("a", "b", "missing")));
+        batch = queue.peekBatch("u1", false, 10);
+        assertEquals(1, batch.size());
+        assertEquals("c", batch.get(0).id);
+    }
+
+    @Test
+    public void nativeWritesAreKeptApartFromTheWebAppsActions() {
+        enqueue("visit", "u1", null);
+        enqueue("fix", "u1", "locations/u1");
+        enqueue("other", "u2", null);
+
+        assertEquals(Arrays.asList("visit"), ids(queue.peekBatch("u1", false, 10)));
+        List<ActionQueue.Action> nativeBatch = queue.peekBatch(null, true, 10);
+        assertEquals(Arrays.asList("fix"), ids(nativeBatch));
+        assertEquals("locations/u1", nativeBatch.get(0).writePath);
+
+        ActionQueue.Counts counts = queue.counts(null);
+        assertEquals(3, counts.pending);
+        assertEquals(1, counts.nativePending);
+        assertEquals(2, queue.counts("u1").pending);
+    }
+
+    @Test
+    public void conflictsAndRepeatedFailuresAreParked() {
+        enqueue("a", "u1", null);
+        enqueue("b", "u1", null);
+
+        assertTrue(queue.markConflict("a", "{\"serverData\":{}}"));
+        assertTrue(queue.markFailed("b", "timeout", 2));
+        assertEquals(Arrays.asList("b"), ids(queue.peekBatch("u1", false, 10)));
+        assertTrue(queue.markFailed("b", "timeout", 2));
+        assertTrue(queue.peekBatch("u1", false, 10).isEmpty());
+
+        ActionQueue.Counts counts = queue.counts("u1");
+        assertEquals(1, counts.conflict);
+        assertEquals(1, counts.failed);
+        ActionQueue.Action failed = queue.list("u1", ActionQueue.STATUS_FAILED).get(0);
+        assertEquals(2, failed.retryCount);
+        assertEquals("timeout", failed.lastError);
+
+        assertTrue(queue.requeue("a", "{\"id\":\"a\",\"merged\":true}"));
+        List<ActionQueue.Action> batch = queue.peekBatch("u1", false, 10);
+        assertEquals(Arrays.asList("a"), ids(batch));
+        assertEquals("{\"id\":\"a\",\"merged\":true}", batch.get(0).json);
+    }
+
+    private static List<String> ids(List<ActionQueue.Action> actions) {
+        String[] ids = new String[actions.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = actions.get(i).id;
+        return Arrays.asList(ids);
+    }
+}
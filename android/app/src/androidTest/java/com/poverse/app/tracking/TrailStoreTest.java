@@ -0,0 +1,66 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+
+@RunWith(AndroidJUnit4.class)
+public class TrailStoreTest {
+    private TrailStore store;
+    private long dayStartMs;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        store = TrailStore.get(context);
+        store.clear();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 8);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayStartMs = calendar.getTimeInMillis();
+    }
+
+    @After
+    public void tearDown() {
+        store.clear();
+    }
+
+    @Test
+    public void straightWalkSimplifiesToItsEnds() {
+        // 10 minutes due north at 1.4 m/s, one fix per 10 s
+        for (int i = 0; i <= 60; i++) {
+            store.append(12.9716 + i * 14 / 111_195.0, 77.5946, 5f, dayStartMs + i * 10_000L);
+        }
+        TrailStore.Trail trail = store.query(TrailStore.dayKey(dayStartMs), 0, Long.MAX_VALUE, 10);
+        assertEquals(61, trail.rawCount);
+        assertTrue(trail.count >= 2 && trail.count <= 4);
+        assertEquals(dayStartMs, trail.times[0]);
+        assertEquals(dayStartMs + 600_000L, trail.times[trail.count - 1]);
+    }
+
+    @Test
+    public void rangeAndDayBoundTheQuery() {
+        for (int i = 0; i < 10; i++) {
+            store.append(12.97, 77.59 + i * 1e-3, 5f, dayStartMs + i * 60_000L);
+        }
+        store.append(12.97, 77.59, 5f, dayStartMs - 24 * 3600_000L);
+        // Same time twice is stored once
+        store.append(12.97, 77.59, 5f, dayStartMs);
+
+        int day = TrailStore.dayKey(dayStartMs);
+        assertEquals(10, store.query(day, 0, Long.MAX_VALUE, 0).rawCount);
+        TrailStore.Trail range = store.query(day, dayStartMs + 120_000L, dayStartMs + 300_000L, 0);
+        assertEquals(4, range.rawCount);
+        assertEquals(dayStartMs + 120_000L, range.times[0]);
+    }
+}
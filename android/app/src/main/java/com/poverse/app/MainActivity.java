@@ -3,12 +3,14 @@ package com.poverse.app;
 import android.os.Bundle;
 import com.getcapacitor.BridgeActivity;
 import com.poverse.app.plugins.NativeServicesPlugin;
+import com.poverse.app.plugins.OfflineQueuePlugin;
 
 public class MainActivity extends BridgeActivity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         // Register custom plugins before calling super
         registerPlugin(NativeServicesPlugin.class);
+        registerPlugin(OfflineQueuePlugin.class);
         
         super.onCreate(savedInstanceState);
     }
@@ -0,0 +1,286 @@
+package com.poverse.app.offline;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Durable queue of the web app's offline actions (check-ins, visits, expenses...),
+ * kept in app-private SQLite instead of WebView IndexedDB, which Android may evict.
+ *
+ * Actions leave in enqueue order. {@link #peekBatch} reads without removing; the
+ * consumer {@link #ack}s what the server took, so a crash mid-sync replays instead of
+ * losing. Actions the server contradicted are parked with {@link #markConflict} until
+ * the user resolves them; failures count retries and park at maxRetries.
+ *
+ * An action may carry a native write: a database path and the JSON value to set there.
+ * Those are owned by {@link com.poverse.app.services.ActionSyncJobService}, which drains
+ * them without the WebView; the rest need the web app's sync handlers and are only
+ * handed to it. The database runs in WAL mode so the plugin and the job never block
+ * each other. One instance per process.
+ */
+public final class ActionQueue extends SQLiteOpenHelper {
+    private static final String DB_NAME = "poverse_actions.db";
+    private static final int DB_VERSION = 1;
+
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_CONFLICT = 1;
+    public static final int STATUS_FAILED = 2;
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /** One queued action as stored. */
+    public static final class Action {
+        public long seq;
+        public String id;
+        public String userId;
+        public String type;
+        /** The action as the web app queued it, JSON. */
+        public String json;
+        /** Native write target relative to the database root, or null. */
+        public String writePath;
+        /** JSON value for writePath. */
+        public String writeValue;
+        public int status;
+        public int retryCount;
+        public String lastError;
+        /** What the action conflicted with, JSON as the web app recorded it, or null. */
+        public String conflict;
+        public long enqueuedMs;
+    }
+
+    /** Actions per status. */
+    public static final class Counts {
+        public int pending;
+        public int conflict;
+        public int failed;
+        /** Pending actions the background job can deliver on its own. */
+        public int nativePending;
+    }
+
+    private static ActionQueue instance;
+
+    private SQLiteStatement insert;
+    private SQLiteStatement delete;
+
+    public static synchronized ActionQueue get(Context context) {
+        if (instance == null) {
+            instance = new ActionQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ActionQueue(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE actions ("
+            + "seq INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "id TEXT NOT NULL UNIQUE, "
+            + "user_id TEXT NOT NULL, "
+            + "type TEXT NOT NULL, "
+            + "json TEXT NOT NULL, "
+            + "write_path TEXT, "
+            + "write_value TEXT, "
+            + "status INTEGER NOT NULL DEFAULT 0, "
+            + "retry_count INTEGER NOT NULL DEFAULT 0, "
+            + "last_error TEXT, "
+            + "conflict TEXT, "
+            + "enqueued_ms INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX actions_status ON actions (status, seq)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Nothing to migrate yet
+    }
+
+    /**
+     * Queue an action; returns its sequence number, or -1 when an action with the same
+     * id is already queued (enqueue is idempotent per id).
+     */
+    public synchronized long enqueue(String id, String userId, String type, String json,
+                                     String writePath, String writeValue) {
+        if (insert == null) {
+            insert = getWritableDatabase().compileStatement(
+                "INSERT OR IGNORE INTO actions (id, user_id, type, json, write_path, write_value, enqueued_ms)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+        }
+        insert.bindString(1, id);
+        insert.bindString(2, userId);
+        insert.bindString(3, type);
+        insert.bindString(4, json);
+        bindOrNull(insert, 5, writePath);
+        bindOrNull(insert, 6, writeValue);
+        insert.bindLong(7, System.currentTimeMillis());
+        return insert.executeInsert();
+    }
+
+    /**
+     * Up to limit pending actions, oldest first, without removing them. nativeWrites
+     * picks the background job's actions (any user) or the web app's (userId, or all
+     * users when null).
+     */
+    public List<Action> peekBatch(String userId, boolean nativeWrites, int limit) {
+        StringBuilder where = new StringBuilder("status = ").append(STATUS_PENDING)
+            .append(nativeWrites ? " AND write_path IS NOT NULL" : " AND write_path IS NULL");
+        String[] args = null;
+        if (userId != null) {
+            where.append(" AND user_id = ?");
+            args = new String[] {userId};
+        }
+        return select(where.toString(), args, Math.max(1, limit));
+    }
+
+    /** Every action of userId (all users when null) with the given status, or any status when negative. */
+    public List<Action> list(String userId, int status) {
+        StringBuilder where = new StringBuilder("1");
+        List<String> args = new ArrayList<>();
+        if (status >= 0) {
+            where.append(" AND status = ").append(status);
+        }
+        if (userId != null) {
+            where.append(" AND user_id = ?");
+            args.add(userId);
+        }
+        return select(where.toString(), args.toArray(new String[0]), 0);
+    }
+
+    /** The server took these actions: remove them, in one transaction. Returns how many were queued. */
+    public synchronized int ack(Collection<String> ids) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (delete == null) {
+            delete = db.compileStatement("DELETE FROM actions WHERE id = ?");
+        }
+        int removed = 0;
+        db.beginTransactionNonExclusive();
+        try {
+            for (String id : ids) {
+                delete.bindString(1, id);
+                removed += delete.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return removed;
+    }
+
+    /** Park an action until the user picks a side; conflictJson describes both sides. */
+    public boolean markConflict(String id, String conflictJson) {
+        ContentValues values = new ContentValues();
+        values.put("status", STATUS_CONFLICT);
+        values.put("conflict", conflictJson);
+        return update(id, values);
+    }
+
+    /**
+     * Count a failed delivery. The action stays pending for another try until it has
+     * failed maxRetries times, then it is parked as failed.
+     */
+    public boolean markFailed(String id, String error, int maxRetries) {
+        try (SQLiteStatement statement = getWritableDatabase().compileStatement(
+                "UPDATE actions SET retry_count = retry_count + 1, last_error = ?,"
+                    + " status = CASE WHEN retry_count + 1 >= ? THEN " + STATUS_FAILED + " ELSE status END"
+                    + " WHERE id = ?")) {
+            bindOrNull(statement, 1, error);
+            statement.bindLong(2, maxRetries);
+            statement.bindString(3, id);
+            return statement.executeUpdateDelete() > 0;
+        }
+    }
+
+    /**
+     * Put a conflicted or failed action back in line, with json replacing the queued
+     * action when not null (a merge). Keeps its place in the order.
+     */
+    public boolean requeue(String id, String json) {
+        ContentValues values = new ContentValues();
+        values.put("status", STATUS_PENDING);
+        values.put("retry_count", 0);
+        values.putNull("last_error");
+        if (json != null) {
+            values.put("json", json);
+        }
+        return update(id, values);
+    }
+
+    public Counts counts(String userId) {
+        Counts counts = new Counts();
+        String sql = "SELECT status, write_path IS NOT NULL, COUNT(*) FROM actions"
+            + (userId != null ? " WHERE user_id = ?" : "") + " GROUP BY 1, 2";
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, userId != null ? new String[] {userId} : null)) {
+            while (cursor.moveToNext()) {
+                int count = cursor.getInt(2);
+                switch (cursor.getInt(0)) {
+                    case STATUS_PENDING:
+                        counts.pending += count;
+                        if (cursor.getInt(1) != 0) counts.nativePending += count;
+                        break;
+                    case STATUS_CONFLICT:
+                        counts.conflict += count;
+                        break;
+                    default:
+                        counts.failed += count;
+                        break;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /** Drop every action of userId, or all actions when null. */
+    public int clear(String userId) {
+        return userId != null
+            ? getWritableDatabase().delete("actions", "user_id = ?", new String[] {userId})
+            : getWritableDatabase().delete("actions", null, null);
+    }
+
+    private boolean update(String id, ContentValues values) {
+        return getWritableDatabase().update("actions", values, "id = ?", new String[] {id}) > 0;
+    }
+
+    private List<Action> select(String where, String[] args, int limit) {
+        List<Action> actions = new ArrayList<>();
+        String sql = "SELECT seq, id, user_id, type, json, write_path, write_value, status, retry_count,"
+            + " last_error, conflict, enqueued_ms FROM actions WHERE " + where + " ORDER BY seq"
+            + (limit > 0 ? " LIMIT " + limit : "");
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                Action action = new Action();
+                action.seq = cursor.getLong(0);
+                action.id = cursor.getString(1);
+                action.userId = cursor.getString(2);
+                action.type = cursor.getString(3);
+                action.json = cursor.getString(4);
+                action.writePath = cursor.getString(5);
+                action.writeValue = cursor.getString(6);
+                action.status = cursor.getInt(7);
+                action.retryCount = cursor.getInt(8);
+                action.lastError = cursor.getString(9);
+                action.conflict = cursor.getString(10);
+                action.enqueuedMs = cursor.getLong(11);
+                actions.add(action);
+            }
+        }
+        return actions;
+    }
+
+    private static void bindOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.poverse.app.plugins;
+
+import com.poverse.app.tracking.TrackingMetrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-method latency and error counts of a plugin's bridge calls, from the moment the
+ * method starts on the plugin thread until the call is resolved or rejected, on
+ * whatever thread and however much later that happens (a permission prompt, an
+ * executor). Each call is also an async trace section named after the method, so a
+ * system trace shows where a slow call spent its time.
+ *
+ * A call that never settles (the JS side has no use for the answer, or an exception
+ * escaped into the bridge) is given up once {@link #MAX_IN_FLIGHT} newer calls are
+ * waiting, and counted as abandoned instead of leaking.
+ */
+public final class BridgeMetrics {
+    /** Bridge calls run from well under a millisecond up to a permission dialog. */
+    public static final long[] LATENCY_BOUNDS_MS = {
+        1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 10000, 30000
+    };
+    public static final int MAX_IN_FLIGHT = 64;
+
+    public interface Tracer {
+        void beginAsyncSection(String name, int cookie);
+
+        void endAsyncSection(String name, int cookie);
+    }
+
+    /** Counters of one method; written under the owning BridgeMetrics' lock. */
+    public static final class MethodStats {
+        private final TrackingMetrics.Histogram latency = new TrackingMetrics.Histogram(LATENCY_BOUNDS_MS);
+        private volatile long calls;
+        private volatile long errors;
+        private volatile long abandoned;
+        private volatile String lastError;
+
+        /** Calls started, settled or not. */
+        public long getCalls() {
+            return calls;
+        }
+
+        /** Calls rejected; their latency is recorded too. */
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getAbandoned() {
+            return abandoned;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public TrackingMetrics.Histogram getLatency() {
+            return latency;
+        }
+    }
+
+    private static final class InFlight {
+        final String method;
+        final MethodStats stats;
+        final long startNs;
+        final int cookie;
+
+        InFlight(String method, MethodStats stats, long startNs, int cookie) {
+            this.method = method;
+            this.stats = stats;
+            this.startNs = startNs;
+            this.cookie = cookie;
+        }
+    }
+
+    private final String sectionPrefix;
+    private final Tracer tracer;
+    private final Map<String, MethodStats> methods = new TreeMap<>();
+    // Insertion order, so the oldest waiting call is the first to give up
+    private final LinkedHashMap<String, InFlight> inFlight = new LinkedHashMap<>();
+    private int nextCookie = 1;
+
+    /** sectionPrefix names the trace sections, e.g. "NativeServices." */
+    public BridgeMetrics(String sectionPrefix, Tracer tracer) {
+        this.sectionPrefix = sectionPrefix;
+        this.tracer = tracer;
+    }
+
+    /** A call of method started; callId identifies it until it settles. */
+    public synchronized void begin(String method, String callId, long nowNs) {
+        MethodStats stats = methods.get(method);
+        if (stats == null) {
+            stats = new MethodStats();
+            methods.put(method, stats);
+        }
+        stats.calls++;
+        InFlight call = new InFlight(method, stats, nowNs, nextCookie++);
+        InFlight replaced = inFlight.put(callId, call);
+        if (replaced != null) {
+            abandon(replaced);
+        }
+        tracer.beginAsyncSection(sectionPrefix + method, call.cookie);
+
+        Iterator<InFlight> oldest = inFlight.values().iterator();
+        while (inFlight.size() > MAX_IN_FLIGHT) {
+            abandon(oldest.next());
+            oldest.remove();
+        }
+    }
+
+    /**
+     * The call resolved (error null) or was rejected with error. Unknown or already
+     * settled ids are ignored, so settling twice is harmless.
+     */
+    public synchronized void settle(String callId, String error, long nowNs) {
+        InFlight call = inFlight.remove(callId);
+        if (call == null) return;
+        call.stats.latency.record((nowNs - call.startNs) / 1_000_000);
+        if (error != null) {
+            call.stats.errors++;
+            call.stats.lastError = error;
+        }
+        tracer.endAsyncSection(sectionPrefix + call.method, call.cookie);
+    }
+
+    /** Every method called so far, by name. */
+    public synchronized Map<String, MethodStats> getMethods() {
+        return new TreeMap<>(methods);
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void abandon(InFlight call) {
+        call.stats.abandoned++;
+        tracer.endAsyncSection(sectionPrefix + call.method, call.cookie);
+    }
+}
@@ -1,14 +1,22 @@
 package com.poverse.app.plugins;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.tracing.Trace;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
@@ -19,14 +27,39 @@ import com.getcapacitor.annotation.PermissionCallback;
 
 import com.poverse.app.services.LocationTrackingService;
 import com.poverse.app.services.CallNotificationService;
+import com.poverse.app.tracking.FixEventStream;
+import com.poverse.app.tracking.GeoEngine;
+import com.poverse.app.tracking.LocationBatcher;
+import com.poverse.app.tracking.RtdbTransport;
+import com.poverse.app.tracking.TraceReplay;
+import com.poverse.app.tracking.TrackingMetrics;
+import com.poverse.app.tracking.TrackingProfile;
+import com.poverse.app.tracking.TrailStore;
+import com.poverse.app.tracking.TrajectorySimplifier;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Capacitor Plugin to bridge native Android services with the web app
  * Provides methods for:
  * - Starting/stopping background location tracking
  * - Managing presence updates
+ * - Geofencing the agent's assigned targets for GPS precision
  * - Triggering native call notifications
  * - Handling call actions
+ * - Reporting background tracking health
+ * - Streaming the tracker's fixes to the web app
+ * - Reading the agent's own trail from the on-device store
+ * - Ordering route stops off the WebView thread
+ * - Reporting the latency of its own bridge calls
  */
 @CapacitorPlugin(
     name = "NativeServices",
@@ -53,10 +86,46 @@ public class NativeServicesPlugin extends Plugin {
     // Permission request codes
     private static final int LOCATION_PERMISSION_CODE = 1001;
     private static final int BACKGROUND_LOCATION_CODE = 1002;
+    private static final String PERMISSION_PROMPT_SECTION = "NativeServices.permissionPrompt";
+    
+    // How often trackingStats is pushed while tracking runs and the web app listens
+    private static final long STATS_EVENT_INTERVAL_MS = 30000;
     
     // Store pending call for permission callbacks
     private PluginCall pendingLocationCall;
     
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable statsTick = new Runnable() {
+        @Override
+        public void run() {
+            if (hasListeners("trackingStats") && LocationTrackingService.isServiceRunning()) {
+                notifyListeners("trackingStats", buildTrackingStats());
+            }
+            mainHandler.postDelayed(this, STATS_EVENT_INTERVAL_MS);
+        }
+    };
+    
+    // The stream asks for a poll when a batch is due; batches go out on the main thread
+    private final Runnable locationBatchTick = this::emitLocationBatch;
+    private final FixEventStream.Listener fixStreamListener =
+        delayMs -> mainHandler.postDelayed(locationBatchTick, delayMs);
+    
+    // Every @PluginMethod starts with begin(call) and settles through resolve()/reject()
+    private final BridgeMetrics bridgeMetrics = new BridgeMetrics("NativeServices.", new BridgeMetrics.Tracer() {
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+        
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    });
+    
+    // Route planning can take a second; the plugin thread serves every other bridge call
+    private final ExecutorService geoExecutor = Executors.newSingleThreadExecutor();
+    
     @Override
     public void load() {
         super.load();
@@ -67,6 +136,31 @@ public class NativeServicesPlugin extends Plugin {
         if (intent != null) {
             handleCallIntent(intent);
         }
+        
+        mainHandler.postDelayed(statsTick, STATS_EVENT_INTERVAL_MS);
+        LocationTrackingService.getFixStream().setForeground(true, SystemClock.uptimeMillis());
+    }
+    
+    @Override
+    protected void handleOnResume() {
+        super.handleOnResume();
+        LocationTrackingService.getFixStream().setForeground(true, SystemClock.uptimeMillis());
+    }
+    
+    @Override
+    protected void handleOnPause() {
+        // Nothing crosses the bridge while the WebView is hidden
+        LocationTrackingService.getFixStream().setForeground(false, SystemClock.uptimeMillis());
+        super.handleOnPause();
+    }
+    
+    @Override
+    protected void handleOnDestroy() {
+        mainHandler.removeCallbacks(statsTick);
+        mainHandler.removeCallbacks(locationBatchTick);
+        LocationTrackingService.getFixStream().unsubscribe();
+        geoExecutor.shutdownNow();
+        super.handleOnDestroy();
     }
 
     @Override
@@ -78,28 +172,52 @@ public class NativeServicesPlugin extends Plugin {
     /**
      * Start background location tracking service
      * Requires userId, companyId, and firebaseUrl
+     * Optional batchWindowMs / maxBatchSize coalesce writes into one multi-path PATCH
+     * and keep a locationHistory trail (without a window only the live position is written);
+     * gzipThresholdBytes sets the smallest batch sent compressed (-1, the default, disables);
+     * trackingMode "lowWakeup" takes fixes in hardware batches up to 2 minutes late;
+     * shiftEndsAt (ms since epoch) stops tracking at the end of the agent's shift
      */
     @PluginMethod
     public void startLocationTracking(PluginCall call) {
+        begin(call);
         String userId = call.getString("userId");
         String companyId = call.getString("companyId");
         String firebaseUrl = call.getString("firebaseUrl");
-        String userName = call.getString("userName", "User");
         
         if (userId == null || userId.isEmpty()) {
-            call.reject("userId is required");
+            reject(call, "userId is required");
             return;
         }
         
         if (companyId == null || companyId.isEmpty()) {
-            call.reject("companyId is required");
+            reject(call, "companyId is required");
             return;
         }
         
         if (firebaseUrl == null || firebaseUrl.isEmpty()) {
-            call.reject("firebaseUrl is required");
+            reject(call, "firebaseUrl is required");
             return;
         }
+        
+        Long shiftEndsAt = call.getLong("shiftEndsAt");
+        if (shiftEndsAt != null && shiftEndsAt <= System.currentTimeMillis()) {
+            reject(call, "shiftEndsAt has already passed");
+            return;
+        }
+        
+        JSObject replay = call.getObject("replay");
+        if (replay != null) {
+            if ((getContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+                reject(call, "replay is only available in debuggable builds");
+                return;
+            }
+            File trace = replayTrace(replay.getString("path"));
+            if (trace == null || !trace.isFile()) {
+                reject(call, "replay.path must name a GPX, CSV or NMEA file");
+                return;
+            }
+        }
 
         if (!ensureActivity(call)) {
             return;
@@ -109,7 +227,7 @@ public class NativeServicesPlugin extends Plugin {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             if (ContextCompat.checkSelfPermission(getContext(), Manifest.permission.POST_NOTIFICATIONS)
                 != PackageManager.PERMISSION_GRANTED) {
-                call.reject("Notification permission is required to start background tracking");
+                reject(call, "Notification permission is required to start background tracking");
                 return;
             }
         }
@@ -121,12 +239,12 @@ public class NativeServicesPlugin extends Plugin {
             return;
         }
         
-        startLocationService(userId, companyId, firebaseUrl, userName);
+        startLocationService(call);
         
         JSObject result = new JSObject();
         result.put("success", true);
         result.put("message", "Location tracking started");
-        call.resolve(result);
+        resolve(call, result);
     }
     
     /**
@@ -134,9 +252,10 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void stopLocationTracking(PluginCall call) {
+        begin(call);
         try {
             if (getContext() == null) {
-                call.reject("Context not available");
+                reject(call, "Context not available");
                 return;
             }
             // If service isn't running, don't start it just to stop (avoids FGS crash)
@@ -144,7 +263,7 @@ public class NativeServicesPlugin extends Plugin {
                 JSObject result = new JSObject();
                 result.put("success", true);
                 result.put("message", "Location tracking already stopped");
-                call.resolve(result);
+                resolve(call, result);
                 return;
             }
             Intent intent = new Intent(getContext(), LocationTrackingService.class);
@@ -154,9 +273,9 @@ public class NativeServicesPlugin extends Plugin {
             JSObject result = new JSObject();
             result.put("success", true);
             result.put("message", "Location tracking stopped");
-            call.resolve(result);
+            resolve(call, result);
         } catch (Exception e) {
-            call.reject("Failed to stop location tracking: " + e.getMessage());
+            reject(call, "Failed to stop location tracking: " + e.getMessage());
         }
     }
     
@@ -165,9 +284,302 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void isLocationTrackingActive(PluginCall call) {
+        begin(call);
         JSObject result = new JSObject();
         result.put("active", LocationTrackingService.isServiceRunning());
-        call.resolve(result);
+        result.put("wakeLockHeldMs", LocationTrackingService.getWakeLockHeldMs());
+        result.put("wakeLockAcquisitions", LocationTrackingService.getWakeLockAcquireCount());
+        resolve(call, result);
+    }
+    
+    /**
+     * Replace the targets the tracker geofences: high-accuracy GPS is used only near
+     * them. Takes the agent's full pending list each time; the service applies the
+     * difference. Stored per user so restarts keep it without the web app.
+     */
+    @PluginMethod
+    public void setTrackingTargets(PluginCall call) {
+        begin(call);
+        String userId = call.getString("userId");
+        JSArray targets = call.getArray("targets");
+        if (userId == null || userId.isEmpty()) {
+            reject(call, "userId is required");
+            return;
+        }
+        if (targets == null) {
+            reject(call, "targets is required");
+            return;
+        }
+        if (getContext() == null) {
+            reject(call, "Context not available");
+            return;
+        }
+        
+        // Normalise to the fields the service reads, skipping targets without coordinates
+        JSONArray normalised = new JSONArray();
+        try {
+            for (int i = 0; i < targets.length(); i++) {
+                JSONObject target = targets.optJSONObject(i);
+                if (target == null || !target.has("id") || !target.has("latitude") || !target.has("longitude")) {
+                    continue;
+                }
+                JSONObject entry = new JSONObject();
+                entry.put("id", target.getString("id"));
+                entry.put("latitude", target.getDouble("latitude"));
+                entry.put("longitude", target.getDouble("longitude"));
+                if (target.has("radiusMeters")) {
+                    entry.put("radiusMeters", target.getDouble("radiusMeters"));
+                }
+                normalised.put(entry);
+            }
+        } catch (JSONException e) {
+            reject(call, "Invalid targets: " + e.getMessage());
+            return;
+        }
+        
+        String targetsJson = normalised.toString();
+        getContext().getSharedPreferences(LocationTrackingService.PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(LocationTrackingService.EXTRA_TARGETS, targetsJson)
+            .putString(LocationTrackingService.PREF_TARGETS_USER_ID, userId)
+            .apply();
+        
+        if (LocationTrackingService.isServiceRunning()) {
+            Intent intent = new Intent(getContext(), LocationTrackingService.class);
+            intent.setAction(LocationTrackingService.ACTION_UPDATE_TARGETS);
+            intent.putExtra(LocationTrackingService.EXTRA_TARGETS, targetsJson);
+            intent.putExtra("userId", userId);
+            try {
+                getContext().startService(intent);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to hand targets to the tracking service: " + e.getMessage());
+            }
+        }
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("count", normalised.length());
+        resolve(call, result);
+    }
+    
+    /**
+     * Counters and latency histograms of the current (or last) tracking session.
+     * The same object is pushed as the trackingStats event every 30 s while tracking.
+     */
+    @PluginMethod
+    public void getTrackingStats(PluginCall call) {
+        begin(call);
+        resolve(call, buildTrackingStats());
+    }
+    
+    /**
+     * Latency histogram, error and abandoned counts per bridge method of this plugin,
+     * from the method starting natively until the call settles, since the app started.
+     */
+    @PluginMethod
+    public void getBridgeMetrics(PluginCall call) {
+        begin(call);
+        JSObject methods = new JSObject();
+        for (Map.Entry<String, BridgeMetrics.MethodStats> entry : bridgeMetrics.getMethods().entrySet()) {
+            BridgeMetrics.MethodStats stats = entry.getValue();
+            JSObject method = new JSObject();
+            method.put("calls", stats.getCalls());
+            method.put("errors", stats.getErrors());
+            method.put("abandoned", stats.getAbandoned());
+            if (stats.getLastError() != null) {
+                method.put("lastError", stats.getLastError());
+            }
+            method.put("latency", histogramToJs(stats.getLatency()));
+            methods.put(entry.getKey(), method);
+        }
+        JSObject result = new JSObject();
+        result.put("methods", methods);
+        result.put("inFlight", bridgeMetrics.getInFlightCount());
+        resolve(call, result);
+    }
+    
+    /**
+     * Push the tracker's filtered fixes as locationBatch events, coalesced to at most
+     * maxEventsPerSecond (default 1) and held back while the app is in the background.
+     * The first event carries the newest fix already known.
+     */
+    @PluginMethod
+    public void startLocationStream(PluginCall call) {
+        begin(call);
+        int maxEventsPerSecond = call.getInt("maxEventsPerSecond", FixEventStream.DEFAULT_MAX_EVENTS_PER_SECOND);
+        if (maxEventsPerSecond <= 0) {
+            reject(call, "maxEventsPerSecond must be > 0");
+            return;
+        }
+        mainHandler.removeCallbacks(locationBatchTick);
+        LocationTrackingService.getFixStream().subscribe(fixStreamListener, maxEventsPerSecond,
+            SystemClock.uptimeMillis());
+        JSObject result = new JSObject();
+        result.put("success", true);
+        resolve(call, result);
+    }
+    
+    @PluginMethod
+    public void stopLocationStream(PluginCall call) {
+        begin(call);
+        LocationTrackingService.getFixStream().unsubscribe();
+        mainHandler.removeCallbacks(locationBatchTick);
+        JSObject result = new JSObject();
+        result.put("success", true);
+        resolve(call, result);
+    }
+    
+    /**
+     * The agent's trail for one local day straight from the on-device store, simplified
+     * to simplifyMeters (default 10). date is YYYY-MM-DD (default today); from and to
+     * optionally narrow it to a time range in epoch ms. Works offline.
+     */
+    @PluginMethod
+    public void getTrail(PluginCall call) {
+        begin(call);
+        String date = call.getString("date");
+        int day;
+        if (date == null) {
+            day = TrailStore.dayKey(System.currentTimeMillis());
+        } else if (date.matches("\\d{4}-\\d{2}-\\d{2}")) {
+            day = Integer.parseInt(date.replace("-", ""));
+        } else {
+            reject(call, "date must be YYYY-MM-DD");
+            return;
+        }
+        Long from = call.getLong("from");
+        Long to = call.getLong("to");
+        double simplifyMeters = call.getDouble("simplifyMeters", TrajectorySimplifier.DEFAULT_TOLERANCE_METERS);
+        
+        TrailStore.Trail trail;
+        try {
+            trail = TrailStore.get(getContext()).query(day,
+                from != null ? from : 0, to != null ? to : Long.MAX_VALUE, simplifyMeters);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Trail query failed", e);
+            reject(call, "Trail store unavailable: " + e.getMessage());
+            return;
+        }
+        
+        JSArray points = new JSArray();
+        for (int i = 0; i < trail.count; i++) {
+            JSObject point = new JSObject();
+            point.put("latitude", trail.latitudes[i]);
+            point.put("longitude", trail.longitudes[i]);
+            point.put("accuracy", (double) trail.accuracies[i]);
+            point.put("timestamp", trail.times[i]);
+            points.put(point);
+        }
+        JSObject result = new JSObject();
+        result.put("points", points);
+        result.put("rawCount", trail.rawCount);
+        result.put("queryMs", trail.queryMs);
+        // The store is cleared when another user starts tracking, so it holds the last tracked user's fixes
+        result.put("userId", getContext().getSharedPreferences(LocationTrackingService.PREFS_NAME, Context.MODE_PRIVATE)
+            .getString("userId", null));
+        resolve(call, result);
+    }
+    
+    /**
+     * Order stops for a visit from origin: nearest neighbour improved by 2-opt over a
+     * straight-line distance matrix, computed on a background executor. Each stop is
+     * {id, latitude, longitude, dwellSeconds?}; speedMps (straight-line, default 6),
+     * returnToOrigin (default false) and timeBudgetMs (default 2000) are optional.
+     * Resolves the stops in visiting order with their leg and ETA in seconds from start.
+     */
+    @PluginMethod
+    public void optimizeRoute(PluginCall call) {
+        begin(call);
+        JSObject origin = call.getObject("origin");
+        JSArray stops = call.getArray("stops");
+        if (origin == null || !origin.has("latitude") || !origin.has("longitude")) {
+            reject(call, "origin with latitude and longitude is required");
+            return;
+        }
+        if (stops == null) {
+            reject(call, "stops is required");
+            return;
+        }
+        double speedMps = call.getDouble("speedMps", GeoEngine.DEFAULT_SPEED_MPS);
+        if (!(speedMps > 0)) {
+            reject(call, "speedMps must be > 0");
+            return;
+        }
+        boolean returnToOrigin = call.getBoolean("returnToOrigin", false);
+        long timeBudgetMs = call.getLong("timeBudgetMs", GeoEngine.DEFAULT_TIME_BUDGET_MS);
+        
+        int count = stops.length();
+        String[] ids = new String[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        double[] dwellSeconds = new double[count];
+        double originLatitude;
+        double originLongitude;
+        try {
+            originLatitude = origin.getDouble("latitude");
+            originLongitude = origin.getDouble("longitude");
+            for (int i = 0; i < count; i++) {
+                JSONObject stop = stops.getJSONObject(i);
+                ids[i] = stop.getString("id");
+                latitudes[i] = stop.getDouble("latitude");
+                longitudes[i] = stop.getDouble("longitude");
+                dwellSeconds[i] = stop.optDouble("dwellSeconds", GeoEngine.DEFAULT_DWELL_SECONDS);
+            }
+        } catch (JSONException e) {
+            reject(call, "Invalid stops: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            geoExecutor.execute(() -> {
+                GeoEngine.Plan plan;
+                try {
+                    plan = GeoEngine.plan(originLatitude, originLongitude, latitudes, longitudes,
+                        dwellSeconds, speedMps, returnToOrigin, timeBudgetMs);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Route optimisation failed", e);
+                    reject(call, "Route optimisation failed: " + e.getMessage());
+                    return;
+                }
+                JSArray ordered = new JSArray();
+                for (int k = 0; k < plan.size(); k++) {
+                    JSObject stop = new JSObject();
+                    stop.put("id", ids[plan.order[k]]);
+                    stop.put("index", plan.order[k]);
+                    stop.put("distanceFromPrevious", plan.legMeters[k]);
+                    stop.put("durationFromPrevious", plan.legSeconds[k]);
+                    stop.put("etaSeconds", plan.etaSeconds[k]);
+                    ordered.put(stop);
+                }
+                JSObject result = new JSObject();
+                result.put("stops", ordered);
+                result.put("totalDistance", plan.totalMeters);
+                result.put("nearestNeighbourDistance", plan.nearestNeighbourMeters);
+                result.put("improvements", plan.improvements);
+                result.put("converged", plan.converged);
+                result.put("computeMs", plan.computeMs);
+                resolve(call, result);
+            });
+        } catch (RejectedExecutionException e) {
+            reject(call, "Plugin is shutting down");
+        }
+    }
+    
+    private void emitLocationBatch() {
+        FixEventStream.Batch batch = LocationTrackingService.getFixStream().poll(SystemClock.uptimeMillis());
+        if (batch == null) return;
+        JSArray fixes = new JSArray();
+        for (int i = 0; i < batch.size(); i++) {
+            JSObject fix = new JSObject();
+            fix.put("latitude", batch.latitudes[i]);
+            fix.put("longitude", batch.longitudes[i]);
+            fix.put("accuracy", (double) batch.accuracies[i]);
+            fix.put("timestamp", batch.timesMs[i]);
+            fixes.put(fix);
+        }
+        JSObject event = new JSObject();
+        event.put("fixes", fixes);
+        event.put("dropped", batch.dropped);
+        notifyListeners("locationBatch", event);
     }
     
     /**
@@ -175,6 +587,7 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void showIncomingCall(PluginCall call) {
+        begin(call);
         String callId = call.getString("callId");
         String callerId = call.getString("callerId");
         String callerName = call.getString("callerName", "Unknown");
@@ -183,7 +596,7 @@ public class NativeServicesPlugin extends Plugin {
         String chatId = call.getString("chatId", "");
         
         if (callId == null || callId.isEmpty()) {
-            call.reject("callId is required");
+            reject(call, "callId is required");
             return;
         }
         
@@ -198,15 +611,20 @@ public class NativeServicesPlugin extends Plugin {
         callIntent.putExtra("callType", callType);
         callIntent.putExtra("chatId", chatId);
         
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            getContext().startForegroundService(callIntent);
-        } else {
-            getContext().startService(callIntent);
+        Trace.beginSection("NativeServices.startCallService");
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                getContext().startForegroundService(callIntent);
+            } else {
+                getContext().startService(callIntent);
+            }
+        } finally {
+            Trace.endSection();
         }
         
         JSObject result = new JSObject();
         result.put("success", true);
-        call.resolve(result);
+        resolve(call, result);
     }
     
     /**
@@ -214,13 +632,14 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void showOngoingCall(PluginCall call) {
+        begin(call);
         String callId = call.getString("callId");
         String callerId = call.getString("callerId");
         String callerName = call.getString("callerName", "Unknown");
         String callType = call.getString("callType", "audio");
         
         if (callId == null || callId.isEmpty()) {
-            call.reject("callId is required");
+            reject(call, "callId is required");
             return;
         }
         
@@ -233,15 +652,20 @@ public class NativeServicesPlugin extends Plugin {
         callIntent.putExtra("callerName", callerName);
         callIntent.putExtra("callType", callType);
         
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            getContext().startForegroundService(callIntent);
-        } else {
-            getContext().startService(callIntent);
+        Trace.beginSection("NativeServices.startCallService");
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                getContext().startForegroundService(callIntent);
+            } else {
+                getContext().startService(callIntent);
+            }
+        } finally {
+            Trace.endSection();
         }
         
         JSObject result = new JSObject();
         result.put("success", true);
-        call.resolve(result);
+        resolve(call, result);
     }
     
     /**
@@ -249,6 +673,7 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void endCall(PluginCall call) {
+        begin(call);
         String callId = call.getString("callId");
         
         Log.d(TAG, "Ending call: " + callId);
@@ -262,7 +687,7 @@ public class NativeServicesPlugin extends Plugin {
         
         JSObject result = new JSObject();
         result.put("success", true);
-        call.resolve(result);
+        resolve(call, result);
     }
     
     /**
@@ -270,6 +695,7 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void cancelIncomingCall(PluginCall call) {
+        begin(call);
         String callId = call.getString("callId");
         
         Log.d(TAG, "Cancelling incoming call: " + callId);
@@ -283,7 +709,7 @@ public class NativeServicesPlugin extends Plugin {
         
         JSObject result = new JSObject();
         result.put("success", true);
-        call.resolve(result);
+        resolve(call, result);
     }
     
     /**
@@ -291,10 +717,11 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void checkLocationPermission(PluginCall call) {
+        begin(call);
         JSObject result = new JSObject();
         result.put("granted", hasLocationPermission());
         result.put("backgroundGranted", hasBackgroundLocationPermission());
-        call.resolve(result);
+        resolve(call, result);
     }
     
     /**
@@ -302,10 +729,11 @@ public class NativeServicesPlugin extends Plugin {
      */
     @PluginMethod
     public void requestLocationPermission(PluginCall call) {
+        begin(call);
         if (hasLocationPermission()) {
             JSObject result = new JSObject();
             result.put("granted", true);
-            call.resolve(result);
+            resolve(call, result);
             return;
         }
         
@@ -319,6 +747,20 @@ public class NativeServicesPlugin extends Plugin {
     
     // ==================== Helper Methods ====================
     
+    private void begin(PluginCall call) {
+        bridgeMetrics.begin(call.getMethodName(), call.getCallbackId(), SystemClock.elapsedRealtimeNanos());
+    }
+    
+    private void resolve(PluginCall call, JSObject result) {
+        bridgeMetrics.settle(call.getCallbackId(), null, SystemClock.elapsedRealtimeNanos());
+        call.resolve(result);
+    }
+    
+    private void reject(PluginCall call, String message) {
+        bridgeMetrics.settle(call.getCallbackId(), message, SystemClock.elapsedRealtimeNanos());
+        call.reject(message);
+    }
+    
     private boolean hasLocationPermission() {
         return ContextCompat.checkSelfPermission(getContext(), 
             Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
@@ -335,7 +777,7 @@ public class NativeServicesPlugin extends Plugin {
     private void requestLocationPermission() {
         if (getActivity() == null) {
             if (pendingLocationCall != null) {
-                pendingLocationCall.reject("Activity not available to request permissions");
+                reject(pendingLocationCall, "Activity not available to request permissions");
                 pendingLocationCall = null;
             }
             return;
@@ -353,9 +795,90 @@ public class NativeServicesPlugin extends Plugin {
             };
         }
         
+        Trace.beginAsyncSection(PERMISSION_PROMPT_SECTION, LOCATION_PERMISSION_CODE);
         ActivityCompat.requestPermissions(getActivity(), permissions, LOCATION_PERMISSION_CODE);
     }
 
+    private JSObject buildTrackingStats() {
+        JSObject stats = new JSObject();
+        stats.put("active", LocationTrackingService.isServiceRunning());
+        stats.put("wakeLockHeldMs", LocationTrackingService.getWakeLockHeldMs());
+        stats.put("wakeLockAcquisitions", LocationTrackingService.getWakeLockAcquireCount());
+        stats.put("trackingMode", LocationTrackingService.getTrackingMode().wireName);
+        TrackingProfile profile = LocationTrackingService.getTrackingProfile();
+        if (!profile.isEmpty()) {
+            JSObject profileJs = new JSObject();
+            if (profile.intervalMs != TrackingProfile.UNSET) profileJs.put("intervalMs", profile.intervalMs);
+            if (profile.minDistanceMeters >= 0) profileJs.put("minDistanceMeters", profile.minDistanceMeters);
+            if (profile.priority != 0) profileJs.put("priority", profile.priority);
+            if (profile.batchWindowMs != TrackingProfile.UNSET) profileJs.put("batchWindowMs", profile.batchWindowMs);
+            if (profile.heartbeatIntervalMs != TrackingProfile.UNSET) {
+                profileJs.put("heartbeatIntervalMs", profile.heartbeatIntervalMs);
+            }
+            stats.put("trackingProfile", profileJs);
+        }
+        TraceReplay replay = LocationTrackingService.getReplay();
+        if (replay != null) {
+            JSObject replayJs = new JSObject();
+            replayJs.put("fixes", replay.size());
+            replayJs.put("delivered", replay.getDelivered());
+            replayJs.put("finished", replay.isFinished());
+            stats.put("replay", replayJs);
+        }
+        
+        TrackingMetrics metrics = LocationTrackingService.getMetrics();
+        if (metrics == null) {
+            return stats;
+        }
+        stats.put("sinceMs", metrics.getStartedMs());
+        
+        JSObject fixes = new JSObject();
+        fixes.put("received", metrics.getFixesReceived());
+        fixes.put("deliveries", metrics.getDeliveries());
+        fixes.put("largestDelivery", metrics.getLargestDelivery());
+        fixes.put("filtered", metrics.getFixesFiltered());
+        fixes.put("queued", metrics.getFixesQueued());
+        fixes.put("uploaded", metrics.getFixesUploaded());
+        fixes.put("dropped", metrics.getFixesDropped());
+        fixes.put("pending", metrics.getPendingFixes());
+        stats.put("fixes", fixes);
+        
+        JSObject requests = new JSObject();
+        requests.put("sent", metrics.getRequestsSent());
+        requests.put("failed", metrics.getRequestsFailed());
+        requests.put("retries", metrics.getRetries());
+        requests.put("bytesSent", metrics.getBytesSent());
+        requests.put("compressed", metrics.getRequestsCompressed());
+        requests.put("bytesSaved", metrics.getBytesSaved());
+        stats.put("requests", requests);
+        
+        stats.put("httpLatency", histogramToJs(metrics.getHttpLatency()));
+        stats.put("commitLatency", histogramToJs(metrics.getCommitLatency()));
+        return stats;
+    }
+    
+    private static JSObject histogramToJs(TrackingMetrics.Histogram histogram) {
+        JSObject result = new JSObject();
+        result.put("count", histogram.getCount());
+        result.put("meanMs", histogram.getMeanMs());
+        result.put("p50Ms", histogram.percentileMs(0.5));
+        result.put("p90Ms", histogram.percentileMs(0.9));
+        result.put("p99Ms", histogram.percentileMs(0.99));
+        result.put("maxMs", histogram.getMaxMs());
+        
+        JSArray bounds = new JSArray();
+        for (long bound : histogram.getBoundsMs()) {
+            bounds.put(bound);
+        }
+        JSArray counts = new JSArray();
+        for (long count : histogram.getBucketCounts()) {
+            counts.put(count);
+        }
+        result.put("boundsMs", bounds);
+        result.put("counts", counts);
+        return result;
+    }
+    
     private void handleCallIntent(Intent intent) {
         if (intent == null) return;
 
@@ -374,18 +897,37 @@ public class NativeServicesPlugin extends Plugin {
         notifyListeners("callAction", payload, true);
     }
     
-    private void startLocationService(String userId, String companyId, String firebaseUrl, String userName) {
+    private void startLocationService(PluginCall call) {
         if (getContext() == null) {
             Log.e(TAG, "Context not available, cannot start location service");
             return;
         }
+        String userId = call.getString("userId");
         Intent intent = new Intent(getContext(), LocationTrackingService.class);
         intent.setAction(LocationTrackingService.ACTION_START_TRACKING);
         intent.putExtra("userId", userId);
-        intent.putExtra("companyId", companyId);
-        intent.putExtra("firebaseUrl", firebaseUrl);
-        intent.putExtra("userName", userName);
+        intent.putExtra("companyId", call.getString("companyId"));
+        intent.putExtra("firebaseUrl", call.getString("firebaseUrl"));
+        intent.putExtra("userName", call.getString("userName", "User"));
+        intent.putExtra(LocationTrackingService.EXTRA_BATCH_WINDOW_MS, (long) call.getInt("batchWindowMs", 0));
+        intent.putExtra(LocationTrackingService.EXTRA_MAX_BATCH_SIZE,
+            call.getInt("maxBatchSize", LocationBatcher.DEFAULT_MAX_BATCH_SIZE));
+        intent.putExtra(LocationTrackingService.EXTRA_GZIP_THRESHOLD_BYTES,
+            call.getInt("gzipThresholdBytes", RtdbTransport.DEFAULT_GZIP_THRESHOLD_BYTES));
+        if (call.getString("trackingMode") != null) {
+            intent.putExtra(LocationTrackingService.EXTRA_TRACKING_MODE, call.getString("trackingMode"));
+        }
+        Long shiftEndsAt = call.getLong("shiftEndsAt");
+        if (shiftEndsAt != null) {
+            intent.putExtra(LocationTrackingService.EXTRA_SHIFT_ENDS_AT_MS, (long) shiftEndsAt);
+        }
+        JSObject replay = call.getObject("replay");
+        if (replay != null) {
+            intent.putExtra(LocationTrackingService.EXTRA_REPLAY_TRACE, replayTrace(replay.getString("path")).getPath());
+            intent.putExtra(LocationTrackingService.EXTRA_REPLAY_SPEED, replay.optDouble("speed", 1));
+        }
 
+        Trace.beginSection("NativeServices.startTrackingService");
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 getContext().startForegroundService(intent);
@@ -395,12 +937,24 @@ public class NativeServicesPlugin extends Plugin {
             Log.d(TAG, "Location tracking service started for user: " + userId);
         } catch (Exception e) {
             Log.e(TAG, "Failed to start location service: " + e.getMessage());
+        } finally {
+            Trace.endSection();
         }
     }
 
+    /** Absolute, or relative to the app's external files dir (where adb push can write). */
+    @Nullable
+    private File replayTrace(@Nullable String path) {
+        if (path == null || path.isEmpty()) return null;
+        File file = new File(path);
+        if (file.isAbsolute()) return file;
+        File dir = getContext().getExternalFilesDir(null);
+        return dir != null ? new File(dir, path) : null;
+    }
+
     private boolean ensureActivity(PluginCall call) {
         if (getActivity() == null) {
-            call.reject("Activity not available");
+            reject(call, "Activity not available");
             return false;
         }
         return true;
@@ -409,6 +963,7 @@ public class NativeServicesPlugin extends Plugin {
     @Override
     protected void handleRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         super.handleRequestPermissionsResult(requestCode, permissions, grantResults);
+        Trace.endAsyncSection(PERMISSION_PROMPT_SECTION, requestCode);
         
         if (requestCode == LOCATION_PERMISSION_CODE) {
             boolean granted = grantResults.length > 0 && 
@@ -419,6 +974,7 @@ public class NativeServicesPlugin extends Plugin {
                     // Check if background location is needed (Android 10+)
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && !hasBackgroundLocationPermission()) {
                         // Request background location separately
+                        Trace.beginAsyncSection(PERMISSION_PROMPT_SECTION, BACKGROUND_LOCATION_CODE);
                         ActivityCompat.requestPermissions(getActivity(),
                             new String[]{Manifest.permission.ACCESS_BACKGROUND_LOCATION},
                             BACKGROUND_LOCATION_CODE);
@@ -426,38 +982,28 @@ public class NativeServicesPlugin extends Plugin {
                     }
                     
                     // Start location service
-                    String userId = pendingLocationCall.getString("userId");
-                    String companyId = pendingLocationCall.getString("companyId");
-                    String firebaseUrl = pendingLocationCall.getString("firebaseUrl");
-                    String userName = pendingLocationCall.getString("userName", "User");
-                    
-                    startLocationService(userId, companyId, firebaseUrl, userName);
+                    startLocationService(pendingLocationCall);
                     
                     JSObject result = new JSObject();
                     result.put("success", true);
                     result.put("message", "Location tracking started");
-                    pendingLocationCall.resolve(result);
+                    resolve(pendingLocationCall, result);
                 } else {
-                    pendingLocationCall.reject("Location permission denied");
+                    reject(pendingLocationCall, "Location permission denied");
                 }
                 pendingLocationCall = null;
             }
         } else if (requestCode == BACKGROUND_LOCATION_CODE) {
             // Background location result - proceed regardless
             if (pendingLocationCall != null) {
-                String userId = pendingLocationCall.getString("userId");
-                String companyId = pendingLocationCall.getString("companyId");
-                String firebaseUrl = pendingLocationCall.getString("firebaseUrl");
-                String userName = pendingLocationCall.getString("userName", "User");
-                
-                startLocationService(userId, companyId, firebaseUrl, userName);
+                startLocationService(pendingLocationCall);
                 
                 JSObject result = new JSObject();
                 result.put("success", true);
                 result.put("message", "Location tracking started");
                 result.put("backgroundPermission", grantResults.length > 0 && 
                     grantResults[0] == PackageManager.PERMISSION_GRANTED);
-                pendingLocationCall.resolve(result);
+                resolve(pendingLocationCall, result);
                 pendingLocationCall = null;
             }
         }
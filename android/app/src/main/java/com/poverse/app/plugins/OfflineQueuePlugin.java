@@ -0,0 +1,285 @@
+package com.poverse.app.plugins;
+
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import com.poverse.app.offline.ActionQueue;
+import com.poverse.app.services.ActionSyncJobService;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Capacitor Plugin giving the web app a durable offline action queue
+ * Provides methods for:
+ * - Queueing actions, optionally with a native write the app can deliver by itself
+ * - Reading pending actions in batches and acknowledging what was synced
+ * - Marking conflicts and failures, and putting actions back in line
+ * - Counting and clearing the queue
+ */
+@CapacitorPlugin(name = "OfflineQueue")
+public class OfflineQueuePlugin extends Plugin {
+    private static final String TAG = "OfflineQueuePlugin";
+    private static final int DEFAULT_BATCH_SIZE = 20;
+    // Database keys may not hold '.', '$', '#', '[' or ']'
+    private static final Pattern WRITE_PATH = Pattern.compile("[^./$#\\[\\]\\s]+(/[^./$#\\[\\]\\s]+)*");
+    private static final String[] STATUS_NAMES = {"pending", "conflict", "failed"};
+
+    private ActionQueue queue;
+
+    @Override
+    public void load() {
+        super.load();
+        queue = ActionQueue.get(getContext());
+        // Pick up anything left from before the app was last killed
+        try {
+            if (queue.counts(null).nativePending > 0) {
+                ActionSyncJobService.schedule(getContext());
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read the offline queue: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue an action (the web app's OfflineAction object). With write {path, value},
+     * the app merges value's fields into path in the database itself, in the background,
+     * and the action never shows up in peekBatch. databaseUrl is remembered for those.
+     */
+    @PluginMethod
+    public void enqueue(PluginCall call) {
+        JSObject action = call.getObject("action");
+        if (action == null || action.optString("id").isEmpty() || action.optString("userId").isEmpty()
+                || action.optString("type").isEmpty()) {
+            call.reject("action with id, userId and type is required");
+            return;
+        }
+        JSObject write = call.getObject("write");
+        String writePath = null;
+        String writeValue = null;
+        if (write != null) {
+            writePath = write.optString("path");
+            if (!WRITE_PATH.matcher(writePath).matches()) {
+                call.reject("write.path must be a database path without a leading '/'");
+                return;
+            }
+            JSONObject value = write.optJSONObject("value");
+            if (value == null || value.length() == 0) {
+                call.reject("write.value must be an object with at least one field");
+                return;
+            }
+            Iterator<String> keys = value.keys();
+            while (keys.hasNext()) {
+                if (!WRITE_PATH.matcher(keys.next()).matches()) {
+                    call.reject("write.value has a field that is not a database key");
+                    return;
+                }
+            }
+            writeValue = value.toString();
+        }
+        String databaseUrl = call.getString("databaseUrl");
+        if (databaseUrl != null && !databaseUrl.isEmpty()) {
+            ActionSyncJobService.setDatabaseUrl(getContext(), databaseUrl);
+        }
+
+        long seq;
+        try {
+            seq = queue.enqueue(action.getString("id"), action.getString("userId"), action.getString("type"),
+                action.toString(), writePath, writeValue);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not queue action", e);
+            call.reject("Could not queue action: " + e.getMessage());
+            return;
+        }
+        if (writePath != null && seq != -1) {
+            ActionSyncJobService.schedule(getContext());
+        }
+        JSObject result = new JSObject();
+        result.put("queued", seq != -1);
+        result.put("seq", seq);
+        call.resolve(result);
+    }
+
+    /** Oldest pending actions the web app has to sync itself, at most limit (default 20). */
+    @PluginMethod
+    public void peekBatch(PluginCall call) {
+        int limit = call.getInt("limit", DEFAULT_BATCH_SIZE);
+        try {
+            call.resolve(toResult(queue.peekBatch(call.getString("userId"), false, limit)));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+        }
+    }
+
+    /** Every queued action, optionally only one user's or one status. */
+    @PluginMethod
+    public void list(PluginCall call) {
+        String statusName = call.getString("status");
+        int status = -1;
+        if (statusName != null) {
+            status = statusOf(statusName);
+            if (status < 0) {
+                call.reject("status must be pending, conflict or failed");
+                return;
+            }
+        }
+        try {
+            call.resolve(toResult(queue.list(call.getString("userId"), status)));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+        }
+    }
+
+    /** Remove actions the server took. */
+    @PluginMethod
+    public void ack(PluginCall call) {
+        JSArray ids = call.getArray("ids");
+        if (ids == null) {
+            call.reject("ids is required");
+            return;
+        }
+        List<String> list = new ArrayList<>(ids.length());
+        for (int i = 0; i < ids.length(); i++) {
+            String id = ids.optString(i, null);
+            if (id != null) list.add(id);
+        }
+        JSObject result = new JSObject();
+        try {
+            result.put("removed", queue.ack(list));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+            return;
+        }
+        call.resolve(result);
+    }
+
+    /** Park an action until the user resolves it; conflictData is kept as given. */
+    @PluginMethod
+    public void markConflict(PluginCall call) {
+        String id = call.getString("id");
+        JSObject conflictData = call.getObject("conflictData");
+        if (id == null || conflictData == null) {
+            call.reject("id and conflictData are required");
+            return;
+        }
+        try {
+            resolveUpdated(call, queue.markConflict(id, conflictData.toString()));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+        }
+    }
+
+    /** Count a failed attempt; parks the action once it has failed maxRetries (default 3) times. */
+    @PluginMethod
+    public void markFailed(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+        try {
+            resolveUpdated(call, queue.markFailed(id, call.getString("error"),
+                call.getInt("maxRetries", ActionQueue.DEFAULT_MAX_RETRIES)));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+        }
+    }
+
+    /** Put a parked action back in line, replaced by action when given (a merge). */
+    @PluginMethod
+    public void requeue(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+        JSObject action = call.getObject("action");
+        try {
+            resolveUpdated(call, queue.requeue(id, action != null ? action.toString() : null));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getCounts(PluginCall call) {
+        ActionQueue.Counts counts;
+        try {
+            counts = queue.counts(call.getString("userId"));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("pending", counts.pending);
+        result.put("conflict", counts.conflict);
+        result.put("failed", counts.failed);
+        result.put("nativePending", counts.nativePending);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        JSObject result = new JSObject();
+        try {
+            result.put("removed", queue.clear(call.getString("userId")));
+        } catch (RuntimeException e) {
+            call.reject("Offline queue unavailable: " + e.getMessage());
+            return;
+        }
+        call.resolve(result);
+    }
+
+    /** Drain native writes now if a network is up, instead of at the job's next slot. */
+    @PluginMethod
+    public void syncNow(PluginCall call) {
+        ActionSyncJobService.schedule(getContext());
+        JSObject result = new JSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    private static void resolveUpdated(PluginCall call, boolean updated) {
+        JSObject result = new JSObject();
+        result.put("success", updated);
+        call.resolve(result);
+    }
+
+    /** The stored action with the queue's own status, retries and conflict on top. */
+    private static JSObject toResult(List<ActionQueue.Action> actions) {
+        JSArray list = new JSArray();
+        for (ActionQueue.Action stored : actions) {
+            try {
+                JSObject action = new JSObject(stored.json);
+                action.put("status", STATUS_NAMES[stored.status]);
+                action.put("retryCount", stored.retryCount);
+                if (stored.lastError != null) action.put("lastError", stored.lastError);
+                if (stored.conflict != null) action.put("conflictData", new JSONObject(stored.conflict));
+                list.put(action);
+            } catch (JSONException e) {
+                Log.w(TAG, "Skipping unreadable action " + stored.id);
+            }
+        }
+        JSObject result = new JSObject();
+        result.put("actions", list);
+        return result;
+    }
+
+    private static int statusOf(String name) {
+        for (int i = 0; i < STATUS_NAMES.length; i++) {
+            if (STATUS_NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+}
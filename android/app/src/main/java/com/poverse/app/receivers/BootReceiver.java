@@ -8,14 +8,16 @@ import android.os.Build;
 import android.util.Log;
 
 import com.poverse.app.services.LocationTrackingService;
+import com.poverse.app.tracking.LocationBatcher;
 
 /**
  * Boot Receiver for PO-VERSE
- * Restarts location tracking service after device reboot
+ * Restarts location tracking service after device reboot, if it was not stopped and the
+ * agent's shift (if any) is still on; the service then resumes draining any fixes still
+ * waiting in its on-disk buffer
  */
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "POVerseBootReceiver";
-    private static final String PREFS_NAME = "POVerseLocationPrefs";
 
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -30,12 +32,18 @@ public class BootReceiver extends BroadcastReceiver {
             Log.d(TAG, "Device boot completed, checking if location tracking was active");
             
             // Check if location tracking was previously active
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            SharedPreferences prefs = context.getSharedPreferences(LocationTrackingService.PREFS_NAME, Context.MODE_PRIVATE);
             String userId = prefs.getString("userId", "");
             String companyId = prefs.getString("companyId", "");
             String firebaseUrl = prefs.getString("firebaseUrl", "");
             
-            if (!userId.isEmpty() && !companyId.isEmpty() && !firebaseUrl.isEmpty()) {
+            if (userId.isEmpty() || companyId.isEmpty() || firebaseUrl.isEmpty()) {
+                Log.d(TAG, "No previous location tracking session found");
+            } else if (!LocationTrackingService.canResume(prefs, System.currentTimeMillis())) {
+                // Stopped, checked out or shift over: wait for the next start
+                Log.d(TAG, "Tracking session ended, not restarting location tracking");
+                LocationTrackingService.clearShift(context);
+            } else {
                 Log.d(TAG, "Restarting location tracking for user: " + userId);
                 
                 // Restart the location tracking service
@@ -45,6 +53,12 @@ public class BootReceiver extends BroadcastReceiver {
                 serviceIntent.putExtra("companyId", companyId);
                 serviceIntent.putExtra("firebaseUrl", firebaseUrl);
                 serviceIntent.putExtra("userName", prefs.getString("userName", "User"));
+                serviceIntent.putExtra(LocationTrackingService.EXTRA_BATCH_WINDOW_MS,
+                    prefs.getLong(LocationTrackingService.EXTRA_BATCH_WINDOW_MS, 0));
+                serviceIntent.putExtra(LocationTrackingService.EXTRA_MAX_BATCH_SIZE,
+                    prefs.getInt(LocationTrackingService.EXTRA_MAX_BATCH_SIZE, LocationBatcher.DEFAULT_MAX_BATCH_SIZE));
+                serviceIntent.putExtra(LocationTrackingService.EXTRA_SHIFT_ENDS_AT_MS,
+                    prefs.getLong(LocationTrackingService.EXTRA_SHIFT_ENDS_AT_MS, 0));
                 
                 try {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -56,8 +70,6 @@ public class BootReceiver extends BroadcastReceiver {
                 } catch (Exception e) {
                     Log.e(TAG, "Failed to restart location tracking: " + e.getMessage());
                 }
-            } else {
-                Log.d(TAG, "No previous location tracking session found");
             }
         }
     }
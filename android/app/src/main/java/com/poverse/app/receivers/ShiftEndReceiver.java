@@ -0,0 +1,34 @@
+package com.poverse.app.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.poverse.app.services.LocationTrackingService;
+
+/**
+ * Shift End Receiver for PO-VERSE
+ * Fired by the alarm LocationTrackingService sets for the end of the agent's shift;
+ * stops tracking if it is still running and forgets the shift either way
+ */
+public class ShiftEndReceiver extends BroadcastReceiver {
+    private static final String TAG = "POVerseShiftEnd";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        LocationTrackingService.clearShift(context);
+        
+        // Never start the service just to stop it
+        if (!LocationTrackingService.isServiceRunning()) return;
+        
+        Log.d(TAG, "Shift ended, stopping location tracking");
+        Intent stopIntent = new Intent(context, LocationTrackingService.class);
+        stopIntent.setAction(LocationTrackingService.ACTION_STOP_TRACKING);
+        try {
+            context.startService(stopIntent);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to stop location tracking: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.poverse.app.services;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import com.poverse.app.offline.ActionQueue;
+import com.poverse.app.tracking.RtdbTransport;
+import com.poverse.app.tracking.UploadRequest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Drains the offline actions that carry a native write (see {@link ActionQueue}) to the
+ * Realtime Database, whether or not the WebView is alive. JobScheduler runs it once a
+ * network is up, keeps the job across reboots and backs off exponentially when the
+ * server is unreachable.
+ *
+ * A native write merges the fields of its value into its path, like an RTDB update().
+ * Each batch goes out as one multi-path PATCH at the database root, so a batch lands or
+ * fails as a whole and costs one request. A batch the server refuses outright (say one
+ * path the rules reject) is resent action by action, so only the offending actions
+ * count a failure; the run then ends and the rest waits for the job's backoff. Actions
+ * queued while a drain runs are picked up by the same run.
+ */
+public class ActionSyncJobService extends JobService {
+    private static final String TAG = "ActionSyncJob";
+    private static final int JOB_ID = 4201;
+    private static final String PREFS_NAME = "poverse_offline";
+    private static final String PREF_DATABASE_URL = "databaseUrl";
+    private static final long BACKOFF_MS = 30000;
+
+    public static final int BATCH_SIZE = 50;
+
+    // Set while a drain runs in this process; a new action then needs no new job
+    private static volatile boolean draining = false;
+
+    private volatile boolean stopped = false;
+
+    /** Remember where native writes go; the job may run long after the web app is gone. */
+    public static void setDatabaseUrl(Context context, String databaseUrl) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(PREF_DATABASE_URL, databaseUrl)
+            .apply();
+    }
+
+    /** Ask for a drain as soon as a network is available. */
+    public static void schedule(Context context) {
+        if (draining) return;
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) return;
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, ActionSyncJobService.class))
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+            .setBackoffCriteria(BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+            .setPersisted(true)
+            .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.w(TAG, "Could not schedule offline action sync");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        String databaseUrl = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .getString(PREF_DATABASE_URL, null);
+        if (databaseUrl == null || databaseUrl.isEmpty()) {
+            Log.w(TAG, "No database URL yet, leaving actions queued");
+            return false;
+        }
+        draining = true;
+        Thread worker = new Thread(() -> {
+            ActionQueue queue = ActionQueue.get(this);
+            boolean retry;
+            try {
+                retry = drain(queue, new RtdbTransport(databaseUrl));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Offline action sync failed", e);
+                retry = true;
+            } finally {
+                draining = false;
+            }
+            if (stopped) return;
+            jobFinished(params, retry);
+            // An action queued between the last peek and clearing the flag scheduled nothing
+            if (!retry && !queue.peekBatch(null, true, 1).isEmpty()) {
+                schedule(this);
+            }
+        }, "poverse-action-sync");
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Lost the network or the system wants the slot back; acked batches stay acked
+        stopped = true;
+        return true;
+    }
+
+    /** Returns true when actions are left that need another attempt later. */
+    private boolean drain(ActionQueue queue, RtdbTransport transport) {
+        int sent = 0;
+        while (!stopped) {
+            List<ActionQueue.Action> batch = queue.peekBatch(null, true, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                if (sent > 0) Log.d(TAG, "Synced " + sent + " offline actions");
+                return false;
+            }
+            int code;
+            try {
+                code = transport.send(UploadRequest.patch("/.json", batchBody(batch)));
+            } catch (IOException e) {
+                Log.w(TAG, "Offline action batch failed: " + e.getMessage());
+                return true;
+            }
+            if (code < 300) {
+                queue.ack(ids(batch));
+                sent += batch.size();
+            } else if (isTransient(code)) {
+                Log.w(TAG, "Offline action batch deferred, HTTP " + code);
+                return true;
+            } else if (!sendEach(queue, transport, batch)) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One write per action; returns false when the server stopped answering or refused an
+     * action. Refused actions stay pending until their retries run out, so the next attempt
+     * waits for JobScheduler's backoff instead of resending them at once.
+     */
+    private boolean sendEach(ActionQueue queue, RtdbTransport transport, List<ActionQueue.Action> batch) {
+        boolean refused = false;
+        for (ActionQueue.Action action : batch) {
+            if (stopped) return false;
+            int code;
+            try {
+                code = transport.send(UploadRequest.patch("/" + action.writePath + ".json", action.writeValue));
+            } catch (IOException e) {
+                return false;
+            }
+            if (code < 300) {
+                List<String> id = new ArrayList<>(1);
+                id.add(action.id);
+                queue.ack(id);
+            } else if (isTransient(code)) {
+                return false;
+            } else {
+                Log.w(TAG, "Offline action " + action.id + " refused, HTTP " + code);
+                queue.markFailed(action.id, "HTTP " + code, ActionQueue.DEFAULT_MAX_RETRIES);
+                refused = true;
+            }
+        }
+        return !refused;
+    }
+
+    private static boolean isTransient(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * {"path/field": value, ...} over every action's fields; a later action's field wins,
+     * as it would have written one by one.
+     */
+    static String batchBody(List<ActionQueue.Action> batch) {
+        JSONObject body = new JSONObject();
+        for (ActionQueue.Action action : batch) {
+            try {
+                JSONObject fields = new JSONObject(action.writeValue);
+                Iterator<String> keys = fields.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    body.put(action.writePath + "/" + key, fields.get(key));
+                }
+            } catch (JSONException e) {
+                // Checked at enqueue; an unreadable value has nothing to write
+                Log.w(TAG, "Skipping unreadable write of " + action.id);
+            }
+        }
+        return body.toString();
+    }
+
+    private static List<String> ids(List<ActionQueue.Action> batch) {
+        List<String> ids = new ArrayList<>(batch.size());
+        for (ActionQueue.Action action : batch) {
+            ids.add(action.id);
+        }
+        return ids;
+    }
+}
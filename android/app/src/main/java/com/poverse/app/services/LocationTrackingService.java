@@ -1,18 +1,26 @@
 package com.poverse.app.services;
 
+import android.app.AlarmManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.location.Location;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -22,54 +30,169 @@ import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
 import com.poverse.app.MainActivity;
 import com.poverse.app.R;
+import com.poverse.app.receivers.ShiftEndReceiver;
+import com.poverse.app.tracking.ConnectivityMonitor;
+import com.poverse.app.tracking.DefaultSamplingPolicy;
+import com.poverse.app.tracking.FixEventStream;
+import com.poverse.app.tracking.FixFilter;
+import com.poverse.app.tracking.FixRingBuffer;
+import com.poverse.app.tracking.LocationBatcher;
+import com.poverse.app.tracking.MainThreadGuard;
+import com.poverse.app.tracking.MotionState;
+import com.poverse.app.tracking.PayloadWriter;
+import com.poverse.app.tracking.PresenceHeartbeat;
+import com.poverse.app.tracking.ProfiledSamplingPolicy;
+import com.poverse.app.tracking.RtdbEventStream;
+import com.poverse.app.tracking.RtdbTransport;
+import com.poverse.app.tracking.RtdbUploader;
+import com.poverse.app.tracking.SamplingEngine;
+import com.poverse.app.tracking.SamplingProfile;
+import com.poverse.app.tracking.ScopedWakeLock;
+import com.poverse.app.tracking.TargetGeofences;
+import com.poverse.app.tracking.TraceReplay;
+import com.poverse.app.tracking.TrackingMetrics;
+import com.poverse.app.tracking.TrackingMode;
+import com.poverse.app.tracking.TrackingProfile;
+import com.poverse.app.tracking.TrailStore;
+import com.poverse.app.tracking.UploadRequest;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Foreground Service for continuous location tracking
  * Runs even when app is closed or killed
+ *
+ * Everything past onStartCommand (fix callbacks, sampling, ring buffer, payload
+ * building and enqueueing) runs on the "poverse-tracking" HandlerThread, which owns the
+ * tracking state below; the main thread only hands work over.
+ *
+ * A session started with a shift end (EXTRA_SHIFT_ENDS_AT_MS) stops by itself at that
+ * time, drops fixes taken after it, and is only resumed by BootReceiver before it. A
+ * session without one runs until stopped and is resumed by BootReceiver until then.
+ *
+ * The company's TrackingProfile (trackingProfiles/{companyId}) is followed live: a change
+ * re-issues the LocationRequest and replaces the batcher and heartbeat in place, without
+ * restarting the service. The last profile seen is kept for starts without a network.
+ *
+ * Debuggable builds can be started with a recorded trace (EXTRA_REPLAY_TRACE) in place of
+ * the fused provider: TraceReplay feeds it to the same LocationCallback, so a field day
+ * can be re-run and its writes, bytes and wake-ups compared between builds.
  */
 public class LocationTrackingService extends Service {
     private static final String TAG = "LocationTrackingService";
     private static final String CHANNEL_ID = "poverse_location_tracking";
     private static final int NOTIFICATION_ID = 1001;
-    private static final int LOCATION_INTERVAL_MS = 10000; // 10 seconds
-    private static final int PRESENCE_INTERVAL_MS = 15000; // 15 seconds
     
     // Static variable to track if service is running
     private static boolean isRunning = false;
     
+    // Kept after onDestroy so the last session's wake lock cost stays readable
+    private static volatile ScopedWakeLock lastWakeLock;
+    private static volatile TrackingMetrics lastMetrics;
+    private static volatile TrackingMode currentMode = TrackingMode.REALTIME;
+    private static volatile TrackingProfile currentProfile = TrackingProfile.NONE;
+    private static volatile TraceReplay lastReplay;
+    // Process-wide so the plugin can subscribe whether or not the service is up
+    private static final FixEventStream fixStream = new FixEventStream();
+    
     // Public actions for starting/stopping
     public static final String ACTION_START_TRACKING = "com.poverse.app.START_LOCATION_TRACKING";
     public static final String ACTION_STOP_TRACKING = "com.poverse.app.STOP_LOCATION_TRACKING";
+    public static final String ACTION_UPDATE_TARGETS = "com.poverse.app.UPDATE_TRACKING_TARGETS";
+    
+    // Shared with BootReceiver so a reboot can resume the same session
+    public static final String PREFS_NAME = "poverse_tracking";
+    
+    // Optional batching extras; a window of 0 flushes on every update
+    public static final String EXTRA_BATCH_WINDOW_MS = "batchWindowMs";
+    public static final String EXTRA_MAX_BATCH_SIZE = "maxBatchSize";
+    // Smallest body sent gzipped, if the endpoint takes it; -1 disables compression
+    public static final String EXTRA_GZIP_THRESHOLD_BYTES = "gzipThresholdBytes";
+    // Company's TrackingMode wire name: "realtime" (default) or "lowWakeup"
+    public static final String EXTRA_TRACKING_MODE = "trackingMode";
+    // End of the agent's shift, ms since epoch; kept in prefs until the session stops
+    public static final String EXTRA_SHIFT_ENDS_AT_MS = "shiftEndsAtMs";
+    // Set while a started session has not been stopped or reached its shift end
+    private static final String PREF_SESSION_OPEN = "sessionOpen";
+    // Debuggable builds only: GPX, CSV or NMEA file replayed instead of the fused
+    // provider, at this many times real time (default 1, 0 as fast as possible).
+    // Not kept in prefs, so a restarted service tracks for real.
+    public static final String EXTRA_REPLAY_TRACE = "replayTrace";
+    public static final String EXTRA_REPLAY_SPEED = "replaySpeed";
     
+    // JSON array of {id, latitude, longitude, radiusMeters?}; kept in prefs per user
+    public static final String EXTRA_TARGETS = "targets";
+    public static final String PREF_TARGETS_USER_ID = "targetsUserId";
+    // Last server profile JSON and the company it belongs to
+    private static final String PREF_PROFILE = "trackingProfile";
+    private static final String PREF_PROFILE_COMPANY_ID = "trackingProfileCompanyId";
+    
+    private HandlerThread trackingThread;
+    private Handler trackingHandler;
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
-    private PowerManager.WakeLock wakeLock;
-    private Timer presenceTimer;
+    private SamplingEngine samplingEngine;
+    private final ProfiledSamplingPolicy samplingPolicy = new ProfiledSamplingPolicy(new DefaultSamplingPolicy());
+    private RtdbEventStream profileStream;
+    private final FixFilter fixFilter = new FixFilter();
+    private final TargetGeofences geofences = new TargetGeofences();
+    private SamplingProfile requestedProfile;
+    private ScopedWakeLock wakeLock;
+    private TrackingMetrics metrics;
+    private PresenceHeartbeat heartbeat;
+    private BroadcastReceiver idleReceiver;
+    private ConnectivityMonitor connectivityMonitor;
+    private RtdbUploader uploader;
+    private String uploaderUrl;
+    private LocationBatcher batcher;
+    // One scheduler for all periodic tracking work: batch windows, retries, heartbeat
+    private ScheduledExecutorService scheduler;
+    private FixRingBuffer fixBuffer;
+    // Each user's unsent fixes live in a ring of their own, so a switch loses none
+    private String fixBufferUserId;
+    private TrailStore trailStore;
+    // Unbatched fallback and offline payloads; tracking thread only
+    private final PayloadWriter payload = new PayloadWriter();
     
     private String userId;
     private String userName;
     private String companyId;
     private String firebaseUrl;
+    private long batchWindowMs = 0;
+    private int maxBatchSize = LocationBatcher.DEFAULT_MAX_BATCH_SIZE;
+    private int gzipThresholdBytes = RtdbTransport.DEFAULT_GZIP_THRESHOLD_BYTES;
+    private TrackingMode trackingMode = TrackingMode.REALTIME;
+    // 0 without a shift: tracking then runs until stopped
+    private long shiftEndsAtMs = 0;
+    // Set while a recorded trace stands in for the fused provider
+    private TraceReplay replay;
     
     private double lastLatitude = 0;
     private double lastLongitude = 0;
     private float lastAccuracy = 0;
+    private long lastFixTimeMs = 0;
 
-    private boolean stopRequested = false;
+    // Set by the stop action or, on the tracking thread, by the shift ending
+    private volatile boolean stopRequested = false;
+    // Whether this instance was handed a session to track; main thread only
+    private boolean sessionStarted = false;
     
     /**
      * Check if the service is currently running
@@ -78,15 +201,114 @@ public class LocationTrackingService extends Service {
         return isRunning;
     }
     
+    /**
+     * Cumulative CPU wake lock time of the current (or last) tracking session
+     */
+    public static long getWakeLockHeldMs() {
+        ScopedWakeLock lock = lastWakeLock;
+        return lock != null ? lock.getHeldTimeMs() : 0;
+    }
+    
+    public static long getWakeLockAcquireCount() {
+        ScopedWakeLock lock = lastWakeLock;
+        return lock != null ? lock.getAcquireCount() : 0;
+    }
+    
+    /**
+     * Counters and latency histograms of the current (or last) tracking session,
+     * null if tracking never started in this process
+     */
+    @Nullable
+    public static TrackingMetrics getMetrics() {
+        return lastMetrics;
+    }
+    
+    /**
+     * Delivery mode of the current (or last) tracking session
+     */
+    public static TrackingMode getTrackingMode() {
+        return currentMode;
+    }
+    
+    /**
+     * Server profile of the current (or last) tracking session; NONE when the company
+     * has none and the app defaults apply
+     */
+    public static TrackingProfile getTrackingProfile() {
+        return currentProfile;
+    }
+    
+    /**
+     * Trace replay of the current (or last) session, null if none was replayed
+     */
+    @Nullable
+    public static TraceReplay getReplay() {
+        return lastReplay;
+    }
+    
+    /**
+     * Filtered fixes for the web app, so it needs no GPS session of its own
+     */
+    public static FixEventStream getFixStream() {
+        return fixStream;
+    }
+    
+    /**
+     * Whether a reboot may resume the saved session: it was not stopped, and it is still
+     * inside the shift it was started for or was started without a shift
+     */
+    public static boolean canResume(SharedPreferences prefs, long nowMs) {
+        if (!prefs.getBoolean(PREF_SESSION_OPEN, false)) return false;
+        long shiftEndsAtMs = prefs.getLong(EXTRA_SHIFT_ENDS_AT_MS, 0);
+        return shiftEndsAtMs <= 0 || shiftEndsAtMs > nowMs;
+    }
+    
+    /**
+     * Forget the saved shift and its end alarm and close the session; nothing resumes
+     * tracking until the next start
+     */
+    public static void clearShift(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .remove(EXTRA_SHIFT_ENDS_AT_MS)
+            .putBoolean(PREF_SESSION_OPEN, false)
+            .apply();
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(shiftEndIntent(context));
+        }
+    }
+    
+    private static PendingIntent shiftEndIntent(Context context) {
+        return PendingIntent.getBroadcast(context, 0, new Intent(context, ShiftEndReceiver.class),
+            PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+    
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "LocationTrackingService created");
         isRunning = true;
         
+        // Debuggable builds crash on tracking work that slips back onto the UI thread
+        MainThreadGuard.install(Looper.getMainLooper().getThread(), isDebuggable());
+        trailStore = TrailStore.get(this);
+        
+        trackingThread = new HandlerThread("poverse-tracking", Process.THREAD_PRIORITY_BACKGROUND);
+        trackingThread.start();
+        trackingHandler = new Handler(trackingThread.getLooper());
+        
+        metrics = new TrackingMetrics();
+        lastMetrics = metrics;
+        
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         createNotificationChannel();
-        acquireWakeLock();
+        createWakeLock();
+        registerIdleReceiver();
+        
+        // No attempts without a validated network; the backlog drains when it returns
+        connectivityMonitor = new ConnectivityMonitor(this, (online, metered) ->
+            trackingHandler.post(this::applyConnectivity));
+        connectivityMonitor.start();
     }
     
     @Override
@@ -118,17 +340,85 @@ public class LocationTrackingService extends Service {
             // Handle stop action
             if (ACTION_STOP_TRACKING.equals(action)) {
                 Log.d(TAG, "Stop tracking action received");
+                clearShift(this);
                 stopRequested = true;
+                sessionStarted = false;
                 stopForeground(STOP_FOREGROUND_REMOVE);
                 stopSelf();
                 return START_NOT_STICKY;
             }
             
+            // Assignment changes only touch the geofences of a running session
+            if (ACTION_UPDATE_TARGETS.equals(action)) {
+                final String targetsJson = intent.getStringExtra(EXTRA_TARGETS);
+                if (!sessionStarted) {
+                    // Nothing to geofence: keep the targets for the next start and go away
+                    String targetsUserId = intent.getStringExtra("userId");
+                    if (targetsJson != null && targetsUserId != null) {
+                        getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                            .putString(EXTRA_TARGETS, targetsJson)
+                            .putString(PREF_TARGETS_USER_ID, targetsUserId)
+                            .apply();
+                    }
+                    stopForeground(STOP_FOREGROUND_REMOVE);
+                    stopSelf();
+                    return START_NOT_STICKY;
+                }
+                trackingHandler.post(() -> applyTargets(targetsJson));
+                return START_STICKY;
+            }
+        }
+        
+        // Prefs, ring buffer and uploader work stay off the main thread
+        final Intent startIntent = intent;
+        sessionStarted = true;
+        trackingHandler.post(() -> startTracking(startIntent));
+        
+        // Service will be restarted if killed
+        return START_STICKY;
+    }
+    
+    private void startTracking(@Nullable Intent intent) {
+        ScopedWakeLock.Scope scope = openWakeScope();
+        try {
+            doStartTracking(intent);
+        } finally {
+            if (scope != null) scope.close();
+        }
+    }
+    
+    private void doStartTracking(@Nullable Intent intent) {
+        migrateLegacyFixBuffer();
+        if (intent != null) {
             // Handle start action or default
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String previousUserId = prefs.getString("userId", null);
             userId = intent.getStringExtra("userId");
             userName = intent.getStringExtra("userName");
             companyId = intent.getStringExtra("companyId");
             firebaseUrl = intent.getStringExtra("firebaseUrl");
+            batchWindowMs = intent.getLongExtra(EXTRA_BATCH_WINDOW_MS, 0);
+            maxBatchSize = intent.getIntExtra(EXTRA_MAX_BATCH_SIZE, LocationBatcher.DEFAULT_MAX_BATCH_SIZE);
+            // Restarts (e.g. after boot) carry no threshold; keep the one the session was started with
+            gzipThresholdBytes = intent.hasExtra(EXTRA_GZIP_THRESHOLD_BYTES)
+                ? intent.getIntExtra(EXTRA_GZIP_THRESHOLD_BYTES, RtdbTransport.DEFAULT_GZIP_THRESHOLD_BYTES)
+                : prefs.getInt(EXTRA_GZIP_THRESHOLD_BYTES, RtdbTransport.DEFAULT_GZIP_THRESHOLD_BYTES);
+            // Without the company's mode (e.g. started offline) keep the last one seen
+            trackingMode = TrackingMode.fromWireName(intent.hasExtra(EXTRA_TRACKING_MODE)
+                ? intent.getStringExtra(EXTRA_TRACKING_MODE) : prefs.getString(EXTRA_TRACKING_MODE, null));
+            shiftEndsAtMs = intent.getLongExtra(EXTRA_SHIFT_ENDS_AT_MS, 0);
+            if (!loadReplay(intent)) {
+                stopRequested = true;
+                stopForeground(STOP_FOREGROUND_REMOVE);
+                stopSelf();
+                return;
+            }
+            
+            // The local trail belongs to whoever recorded it; unsent fixes stay in their
+            // owner's ring (see ensureFixBuffer) until that user tracks here again
+            if (previousUserId != null && !previousUserId.equals(userId)) {
+                trailStore.clear();
+            }
             
             // Save to preferences for service restarts
             saveUserData();
@@ -141,17 +431,32 @@ public class LocationTrackingService extends Service {
             Log.e(TAG, "No userId provided, stopping service");
             stopForeground(STOP_FOREGROUND_REMOVE);
             stopSelf();
-            return START_NOT_STICKY;
+            return;
         }
         
+        // A new session sets its own presence; a parked offline write would only undo it
+        OfflinePresenceJobService.cancel(this);
+        
+        // A restart or a late start after the shift has nothing left to track
+        if (shiftEndsAtMs > 0 && System.currentTimeMillis() >= shiftEndsAtMs) {
+            endShift();
+            return;
+        }
+        scheduleShiftEnd();
+        
+        loadProfile();
+        ensureUploader();
+        ensureFixBuffer();
+        ensureBatcher();
+        loadTargets();
+        
         // Start location updates
         startLocationUpdates();
         
         // Start presence heartbeat
         startPresenceHeartbeat();
         
-        // Service will be restarted if killed
-        return START_STICKY;
+        watchProfile();
     }
     
     private void createNotificationChannel() {
@@ -191,153 +496,644 @@ public class LocationTrackingService extends Service {
             .build();
     }
     
-    private void acquireWakeLock() {
+    /**
+     * The CPU is held only while a fix is processed or a request is on the wire; the
+     * fused provider wakes us for the next fix, so the device can sleep in between.
+     */
+    private void createWakeLock() {
         PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (powerManager != null) {
-            wakeLock = powerManager.newWakeLock(
-                PowerManager.PARTIAL_WAKE_LOCK,
-                "POVerse::LocationWakeLock"
-            );
-            wakeLock.acquire(24 * 60 * 60 * 1000L); // 24 hours max
-            Log.d(TAG, "WakeLock acquired");
+        if (powerManager == null) return;
+        
+        final PowerManager.WakeLock platformLock = powerManager.newWakeLock(
+            PowerManager.PARTIAL_WAKE_LOCK,
+            "POVerse::LocationWakeLock"
+        );
+        // ScopedWakeLock does the counting; a timed-out lock must not be released twice
+        platformLock.setReferenceCounted(false);
+        wakeLock = new ScopedWakeLock(new ScopedWakeLock.Lock() {
+            @Override
+            public void acquire(long timeoutMs) {
+                platformLock.acquire(timeoutMs);
+            }
+            
+            @Override
+            public void release() {
+                if (platformLock.isHeld()) {
+                    platformLock.release();
+                }
+            }
+        });
+        lastWakeLock = wakeLock;
+    }
+    
+    @Nullable
+    private ScopedWakeLock.Scope openWakeScope() {
+        return wakeLock != null ? wakeLock.open() : null;
+    }
+    
+    private void ensureUploader() {
+        if (firebaseUrl == null) return;
+        if (uploader != null && firebaseUrl.equals(uploaderUrl)) {
+            uploader.getTransport().setGzipThreshold(gzipThresholdBytes);
+            return;
+        }
+        retireBatcher();
+        if (uploader != null) {
+            uploader.shutdown(0);
+        }
+        RtdbTransport transport = new RtdbTransport(firebaseUrl);
+        transport.setGzipThreshold(gzipThresholdBytes);
+        uploader = new RtdbUploader(transport);
+        uploader.setWakeLock(wakeLock);
+        uploader.setMetrics(metrics);
+        uploaderUrl = firebaseUrl;
+        Log.d(TAG, "Uploader ready for " + firebaseUrl);
+        applyConnectivity();
+    }
+    
+    /** Pass the monitor's current view of the network to the uploader and batcher. */
+    private void applyConnectivity() {
+        if (connectivityMonitor == null) return;
+        boolean online = connectivityMonitor.isOnline();
+        boolean metered = connectivityMonitor.isMetered();
+        if (uploader != null) {
+            uploader.setNetworkAvailable(online);
+        }
+        if (batcher != null) {
+            batcher.setNetwork(online, metered);
         }
     }
     
+    /**
+     * Open the current user's ring. Another user's batcher first sends what it holds to
+     * their paths and stops; whatever it could not send stays on disk in their ring.
+     */
+    private void ensureFixBuffer() {
+        if (fixBuffer != null && userId.equals(fixBufferUserId)) return;
+        retireBatcher();
+        closeFixBuffer();
+        try {
+            fixBuffer = new FixRingBuffer(fixBufferFile(userId), FixRingBuffer.DEFAULT_CAPACITY);
+            fixBufferUserId = userId;
+            Log.d(TAG, "Fix buffer opened, " + fixBuffer.getPendingCount() + " unsent fixes");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open fix buffer, sending fixes unbuffered: " + e.getMessage());
+        }
+    }
+    
+    /** Anything unconfirmed stays on disk for that user's next start. */
+    private void closeFixBuffer() {
+        if (fixBuffer == null) return;
+        fixBuffer.sync();
+        try {
+            // A batch still in flight may commit later; the mapping outlives the descriptor
+            fixBuffer.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close fix buffer: " + e.getMessage());
+        }
+        fixBuffer = null;
+        fixBufferUserId = null;
+    }
+    
+    private File fixBufferFile(String owner) {
+        return new File(getFilesDir(), "tracking/fixes-" + owner.replaceAll("[^A-Za-z0-9_-]", "_") + ".ring");
+    }
+    
+    /** The shared ring of earlier versions belongs to the user of the saved session. */
+    private void migrateLegacyFixBuffer() {
+        File legacy = new File(getFilesDir(), "tracking/fixes.ring");
+        if (!legacy.exists()) return;
+        String owner = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString("userId", null);
+        File target = owner != null && !owner.isEmpty() ? fixBufferFile(owner) : null;
+        if (target == null || target.exists() || !legacy.renameTo(target)) {
+            if (!legacy.delete()) Log.w(TAG, "Failed to remove old fix buffer");
+        }
+    }
+    
+    private void ensureBatcher() {
+        if (batcher != null) {
+            if (batcher.getWindowMs() == effectiveBatchWindowMs() && batcher.getMaxBatchSize() == maxBatchSize
+                    && batcher.getUserId().equals(userId)) {
+                return;
+            }
+            retireBatcher();
+        }
+        if (uploader == null || fixBuffer == null) return;
+        
+        long windowMs = effectiveBatchWindowMs();
+        batcher = new LocationBatcher(uploader, ensureScheduler(), fixBuffer, userId, windowMs, Math.max(1, maxBatchSize));
+        // locationHistory is never pruned, so only sessions that opted into batching keep a trail
+        batcher.setTrailEnabled(windowMs > 0);
+        batcher.setMetrics(metrics);
+        applyConnectivity();
+        Log.d(TAG, "Batcher ready: window=" + windowMs + "ms, max=" + maxBatchSize + ", trail=" + (windowMs > 0));
+        
+        // Resume draining fixes left over from a dead zone, crash or reboot
+        batcher.flush();
+    }
+    
+    /** Send what the batcher holds, then stop it for good; the ring outlives it. */
+    private void retireBatcher() {
+        if (batcher == null) return;
+        batcher.flush();
+        batcher.close();
+        batcher = null;
+    }
+    
+    private ScheduledExecutorService ensureScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return scheduler;
+    }
+    
     private void startLocationUpdates() {
-        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, LOCATION_INTERVAL_MS)
-            .setMinUpdateIntervalMillis(LOCATION_INTERVAL_MS / 2)
-            .setMinUpdateDistanceMeters(5)
-            .build();
+        // onStartCommand can run again for the same instance; never register twice
+        if (locationCallback != null) {
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+        }
+        if (replay != null) {
+            replay.stop();
+        }
+        
+        samplingEngine = new SamplingEngine(samplingPolicy);
+        fixFilter.reset();
+        samplingEngine.setListener((from, to, profile) -> {
+            Log.d(TAG, "Motion " + from + " -> " + to + ", sampling " + profile);
+            updateHeartbeatIdle();
+        });
         
+        requestedProfile = null;
+        currentMode = trackingMode;
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(LocationResult locationResult) {
+                MainThreadGuard.assertNotMainThread("onLocationResult");
                 if (locationResult == null) return;
                 
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    lastLatitude = location.getLatitude();
-                    lastLongitude = location.getLongitude();
-                    lastAccuracy = location.getAccuracy();
-                    
-                    Log.d(TAG, String.format("Location update: %.6f, %.6f (accuracy: %.1fm)", 
-                        lastLatitude, lastLongitude, lastAccuracy));
-                    
-                    // Send location to Firebase
-                    sendLocationToFirebase();
+                // Batched requests hand over every fix since the last wake-up, oldest first
+                List<Location> locations = locationResult.getLocations();
+                if (locations.isEmpty()) return;
+                metrics.recordDelivery(locations.size());
+                ScopedWakeLock.Scope scope = openWakeScope();
+                try {
+                    long acceptedBefore = fixFilter.getAcceptedCount();
+                    boolean resample = false;
+                    for (int i = 0, n = locations.size(); i < n; i++) {
+                        resample |= onFix(locations.get(i));
+                    }
+                    // Without a trail only the newest position is worth a write
+                    if (batcher == null && fixFilter.getAcceptedCount() > acceptedBefore) {
+                        sendLocationToFirebase();
+                    }
+                    if (resample) {
+                        refreshLocationRequest();
+                    }
+                } finally {
+                    if (scope != null) scope.close();
+                }
+                // Backs up the end alarm, which Doze may deliver late
+                if (shiftEndsAtMs > 0 && System.currentTimeMillis() >= shiftEndsAtMs) {
+                    endShift();
                 }
             }
         };
         
+        refreshLocationRequest();
+        if (replay != null) {
+            startReplay();
+        }
+    }
+    
+    private boolean isDebuggable() {
+        return (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+    
+    /**
+     * Read the trace a start intent asks to replay, if any. Returns false when one was
+     * asked for but cannot be played, rather than silently tracking for real.
+     */
+    private boolean loadReplay(Intent intent) {
+        if (replay != null) {
+            replay.stop();
+            replay = null;
+        }
+        String path = intent.getStringExtra(EXTRA_REPLAY_TRACE);
+        if (path == null) return true;
+        if (!isDebuggable()) {
+            Log.w(TAG, "Trace replay is only available in debuggable builds");
+            return false;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+            List<TraceReplay.Point> points = TraceReplay.parse(reader, path);
+            replay = new TraceReplay(points, intent.getDoubleExtra(EXTRA_REPLAY_SPEED, 1),
+                trackingMode.maxUpdateDelayMs);
+            lastReplay = replay;
+            Log.i(TAG, "Replaying " + points.size() + " fixes from " + path);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Cannot replay " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Play the trace into the location callback, delivery by delivery, the way the fused
+     * provider would; fix times start now.
+     */
+    private void startReplay() {
+        final TraceReplay current = replay;
+        current.start(ensureScheduler(), System.currentTimeMillis(), new TraceReplay.Sink() {
+            @Override
+            public void onFixes(List<TraceReplay.Point> fixes) {
+                final List<Location> locations = new ArrayList<>(fixes.size());
+                for (int i = 0, n = fixes.size(); i < n; i++) {
+                    locations.add(toLocation(fixes.get(i)));
+                }
+                trackingHandler.post(() -> {
+                    if (replay == current && locationCallback != null) {
+                        locationCallback.onLocationResult(LocationResult.create(locations));
+                    }
+                });
+            }
+            
+            @Override
+            public void onFinished() {
+                Log.i(TAG, "Replay finished: " + current.size() + " fixes");
+            }
+        });
+    }
+    
+    private static Location toLocation(TraceReplay.Point point) {
+        Location location = new Location("replay");
+        location.setLatitude(point.latitude);
+        location.setLongitude(point.longitude);
+        location.setAccuracy(point.accuracy);
+        location.setTime(point.timeMs);
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        if (point.speedMps >= 0) {
+            location.setSpeed(point.speedMps);
+        }
+        return location;
+    }
+    
+    /**
+     * Run one fix through the filters into the trail, motion and geofence state.
+     * Returns true when the location request should be re-evaluated.
+     */
+    private boolean onFix(Location location) {
+        metrics.recordFixReceived();
+        // Replayed or out-of-order fixes would rewrite the trail backwards
+        if (location.getTime() <= lastFixTimeMs) {
+            metrics.recordFixFiltered();
+            return false;
+        }
+        lastFixTimeMs = location.getTime();
+        // A batched delivery can carry fixes taken after the shift ended
+        if (shiftEndsAtMs > 0 && lastFixTimeMs >= shiftEndsAtMs) {
+            metrics.recordFixFiltered();
+            return false;
+        }
+        // Multipath jumps are dropped and jitter smoothed before anything is sent
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : 0f;
+        if (!fixFilter.accept(location.getLatitude(), location.getLongitude(), accuracy, location.getTime())) {
+            metrics.recordFixFiltered();
+            return false;
+        }
+        lastLatitude = fixFilter.getLatitude();
+        lastLongitude = fixFilter.getLongitude();
+        lastAccuracy = fixFilter.getAccuracy();
+        fixStream.offer(lastLatitude, lastLongitude, lastAccuracy, lastFixTimeMs, SystemClock.uptimeMillis());
+        trailStore.append(lastLatitude, lastLongitude, lastAccuracy, lastFixTimeMs);
+        
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Location update: " + lastLatitude + ", " + lastLongitude
+                + " (accuracy: " + lastAccuracy + "m)");
+        }
+        
+        if (batcher != null) {
+            sendLocationToFirebase();
+        }
+        
+        float speed = location.hasSpeed() ? location.getSpeed() : -1f;
+        boolean resample = samplingEngine.onFix(lastLatitude, lastLongitude, speed, location.getTime());
+        if (geofences.onFix(lastLatitude, lastLongitude, lastAccuracy)) {
+            Log.d(TAG, geofences.isInside()
+                ? "Entered target " + geofences.getInsideTargetId() : "Left target area");
+            resample = true;
+        }
+        return resample;
+    }
+    
+    /** Wake up to stop at the end of the shift, or forget an alarm left from an earlier one. */
+    private void scheduleShiftEnd() {
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) return;
+        PendingIntent intent = shiftEndIntent(this);
+        if (shiftEndsAtMs > 0) {
+            // Inexact is enough: fixes past the end are dropped whenever the alarm comes
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, shiftEndsAtMs, intent);
+        } else {
+            alarmManager.cancel(intent);
+        }
+    }
+    
+    /** Stop at the end of the shift as if the agent had stopped tracking; any thread. */
+    private void endShift() {
+        if (stopRequested) return;
+        Log.d(TAG, "Shift over, stopping location tracking");
+        clearShift(this);
+        stopRequested = true;
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+    
+    /**
+     * Request the motion profile, capped to balanced power away from assigned targets.
+     * No-op when that is what is already requested.
+     */
+    private void refreshLocationRequest() {
+        if (locationCallback == null || samplingEngine == null) return;
+        SamplingProfile profile = geofences.adjust(samplingEngine.getProfile());
+        if (profile.equals(requestedProfile)) return;
+        requestLocationUpdates(profile);
+    }
+    
+    /**
+     * (Re)issue the location request; calling again with the same callback replaces it.
+     */
+    private void requestLocationUpdates(SamplingProfile profile) {
+        if (replay != null) {
+            // The trace decides when fixes come; only the choice is recorded
+            requestedProfile = profile;
+            Log.d(TAG, "Replay, location updates would be: " + profile + " mode=" + trackingMode.wireName);
+            return;
+        }
+        LocationRequest locationRequest = new LocationRequest.Builder(profile.priority, profile.intervalMs)
+            .setMinUpdateIntervalMillis(profile.getMinUpdateIntervalMs())
+            .setMinUpdateDistanceMeters(profile.minDistanceMeters)
+            .setMaxUpdateDelayMillis(trackingMode.maxUpdateDelayMs)
+            .build();
+        
         try {
             fusedLocationClient.requestLocationUpdates(
                 locationRequest,
                 locationCallback,
-                Looper.getMainLooper()
+                trackingThread.getLooper()
             );
-            Log.d(TAG, "Location updates started");
+            requestedProfile = profile;
+            Log.d(TAG, "Location updates requested: " + profile + " mode=" + trackingMode.wireName);
         } catch (SecurityException e) {
             Log.e(TAG, "Location permission denied: " + e.getMessage());
         }
     }
     
+    /**
+     * Batched sessions let the batcher answer for presence, so ticks after a recent fix
+     * batch are skipped; the unbatched fallback writes on every tick.
+     */
     private void startPresenceHeartbeat() {
-        presenceTimer = new Timer();
-        presenceTimer.scheduleAtFixedRate(new TimerTask() {
+        if (heartbeat != null) {
+            heartbeat.stop();
+        }
+        PresenceHeartbeat.Target target = batcher;
+        if (target == null) {
+            target = new PresenceHeartbeat.Target() {
+                @Override
+                public long getLastPresenceMs() {
+                    return 0;
+                }
+                
+                @Override
+                public void sendPresence(long timeMs) {
+                    trackingHandler.post(LocationTrackingService.this::sendPresenceToFirebase);
+                }
+            };
+        }
+        long intervalMs = samplingPolicy.getTrackingProfile().heartbeatIntervalMs(PresenceHeartbeat.DEFAULT_INTERVAL_MS);
+        heartbeat = new PresenceHeartbeat(ensureScheduler(), target, intervalMs, new Random());
+        updateHeartbeatIdle();
+        heartbeat.start();
+        Log.d(TAG, "Presence heartbeat started");
+    }
+    
+    /**
+     * Stretch the heartbeat while nothing is changing: standing still or in Doze.
+     * Receiver broadcasts are delivered on the tracking thread.
+     */
+    private void registerIdleReceiver() {
+        idleReceiver = new BroadcastReceiver() {
             @Override
-            public void run() {
-                sendPresenceToFirebase();
+            public void onReceive(Context context, Intent intent) {
+                updateHeartbeatIdle();
             }
-        }, 0, PRESENCE_INTERVAL_MS);
-        Log.d(TAG, "Presence heartbeat started");
+        };
+        registerReceiver(idleReceiver, new IntentFilter(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED),
+            null, trackingHandler);
+    }
+    
+    private void updateHeartbeatIdle() {
+        if (heartbeat == null) return;
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        boolean dozing = powerManager != null && powerManager.isDeviceIdleMode();
+        boolean stationary = samplingEngine != null && samplingEngine.getState() == MotionState.STATIONARY;
+        heartbeat.setIdle(dozing || stationary);
     }
     
     private void sendLocationToFirebase() {
-        if (firebaseUrl == null || userId == null) return;
+        if (firebaseUrl == null || userId == null || uploader == null) return;
         
-        new Thread(() -> {
-            try {
-                String url = firebaseUrl + "/userLocations/" + userId + ".json";
-                
-                JSONObject locationData = new JSONObject();
-                locationData.put("latitude", lastLatitude);
-                locationData.put("longitude", lastLongitude);
-                locationData.put("accuracy", lastAccuracy);
-                locationData.put("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).format(new Date()));
-                locationData.put("source", "native_service");
-                
-                sendToFirebase(url, locationData.toString());
-                Log.d(TAG, "Location sent to Firebase");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send location: " + e.getMessage());
+        if (batcher != null) {
+            // Fix time, not now: a batched delivery carries fixes minutes old that must keep distinct keys
+            batcher.addFix(lastLatitude, lastLongitude, lastAccuracy, lastFixTimeMs);
+            return;
+        }
+        
+        final long fixTimeMs = lastFixTimeMs;
+        payload.reset().beginObject()
+            .key("latitude").value(lastLatitude)
+            .key("longitude").value(lastLongitude)
+            .key("accuracy").value(lastAccuracy, 2)
+            .key("timestamp").isoTimestamp(fixTimeMs)
+            .key("source").value("native_service")
+            .endObject();
+        // Unbatched fixes are not buffered, so a failed write loses the fix
+        metrics.recordFixQueued();
+        uploader.enqueue(UploadRequest.put("/userLocations/" + userId + ".json", payload, success -> {
+            if (success) {
+                metrics.recordFixUploaded(System.currentTimeMillis() - fixTimeMs);
+            } else {
+                metrics.recordFixesDropped(1);
             }
-        }).start();
+        }));
     }
     
     private void sendPresenceToFirebase() {
-        if (firebaseUrl == null || userId == null) return;
+        if (firebaseUrl == null || userId == null || uploader == null) return;
         
-        new Thread(() -> {
-            try {
-                String url = firebaseUrl + "/presence/" + userId + ".json";
-                
-                JSONObject presenceData = new JSONObject();
-                presenceData.put("isOnline", true);
-                presenceData.put("lastActive", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).format(new Date()));
-                presenceData.put("source", "native_service");
-                
-                sendToFirebase(url, presenceData.toString());
-                Log.d(TAG, "Presence sent to Firebase");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send presence: " + e.getMessage());
-            }
-        }).start();
+        payload.reset().beginObject()
+            .key("isOnline").value(true)
+            .key("lastActive").isoTimestamp(System.currentTimeMillis())
+            .key("source").value("native_service")
+            .endObject();
+        uploader.enqueue(UploadRequest.put("/presence/" + userId + ".json", payload));
     }
     
-    private void sendToFirebase(String urlString, String jsonData) {
-        HttpURLConnection connection = null;
+    /**
+     * Replace the geofenced targets with the given JSON list and persist it, so a
+     * restart or reboot keeps precision switching without the web app.
+     */
+    private void applyTargets(@Nullable String targetsJson) {
+        if (targetsJson == null || userId == null) return;
+        List<TargetGeofences.Target> targets = parseTargets(targetsJson);
+        if (targets == null) return;
+        getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(EXTRA_TARGETS, targetsJson)
+            .putString(PREF_TARGETS_USER_ID, userId)
+            .apply();
+        if (geofences.update(targets)) {
+            Log.d(TAG, "Geofences updated: " + geofences.size() + " targets");
+            refreshLocationRequest();
+        }
+    }
+    
+    /** The app's batch window unless the company's profile sets one. */
+    private long effectiveBatchWindowMs() {
+        return samplingPolicy.getTrackingProfile().batchWindowMs(batchWindowMs);
+    }
+    
+    /** Start from the last profile seen for this company, until the server answers. */
+    private void loadProfile() {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        TrackingProfile profile = companyId != null && companyId.equals(prefs.getString(PREF_PROFILE_COMPANY_ID, null))
+            ? parseProfile(prefs.getString(PREF_PROFILE, null)) : TrackingProfile.NONE;
+        samplingPolicy.setTrackingProfile(profile);
+        currentProfile = profile;
+    }
+    
+    /** Follow trackingProfiles/{companyId}; keeps an open stream for the same node. */
+    private void watchProfile() {
+        if (companyId == null || companyId.isEmpty() || firebaseUrl == null || firebaseUrl.isEmpty()) return;
+        final String profileCompanyId = companyId;
+        RtdbEventStream stream = new RtdbEventStream(firebaseUrl, "/trackingProfiles/" + profileCompanyId,
+            json -> trackingHandler.post(() -> applyProfile(profileCompanyId, json)));
+        if (profileStream != null) {
+            if (profileStream.getUrl().equals(stream.getUrl())) return;
+            profileStream.stop();
+        }
+        profileStream = stream;
+        profileStream.start();
+    }
+    
+    /**
+     * Apply a profile pushed by the server: same service, same location callback, only
+     * the request, the batcher and the heartbeat are replaced.
+     */
+    private void applyProfile(String profileCompanyId, String json) {
+        if (!profileCompanyId.equals(companyId)) return;
+        getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(PREF_PROFILE, json)
+            .putString(PREF_PROFILE_COMPANY_ID, profileCompanyId)
+            .apply();
+        TrackingProfile profile = parseProfile(json);
+        if (profile.equals(samplingPolicy.getTrackingProfile())) return;
+        Log.d(TAG, "Tracking profile: " + profile);
+        samplingPolicy.setTrackingProfile(profile);
+        currentProfile = profile;
+        ScopedWakeLock.Scope scope = openWakeScope();
         try {
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("PUT");
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setDoOutput(true);
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            
-            OutputStream os = connection.getOutputStream();
-            os.write(jsonData.getBytes("UTF-8"));
-            os.close();
-            
-            int responseCode = connection.getResponseCode();
-            if (responseCode != 200) {
-                Log.w(TAG, "Firebase response: " + responseCode);
+            refreshLocationRequest();
+            ensureBatcher();
+            // The heartbeat asks the batcher when presence last went out
+            if (heartbeat != null) {
+                startPresenceHeartbeat();
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Firebase request failed: " + e.getMessage());
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            if (scope != null) scope.close();
+        }
+    }
+    
+    /** The node's JSON; anything but an object (no profile, "null") means app defaults. */
+    private static TrackingProfile parseProfile(@Nullable String json) {
+        if (json == null) return TrackingProfile.NONE;
+        try {
+            Object value = new JSONTokener(json).nextValue();
+            if (!(value instanceof JSONObject)) return TrackingProfile.NONE;
+            JSONObject node = (JSONObject) value;
+            return new TrackingProfile(
+                node.optLong("intervalMs", TrackingProfile.UNSET),
+                (float) node.optDouble("minDistanceMeters", TrackingProfile.UNSET),
+                TrackingProfile.priorityOf(node.optString("priority", null)),
+                node.optLong("batchWindowMs", TrackingProfile.UNSET),
+                node.optLong("heartbeatIntervalMs", TrackingProfile.UNSET));
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed tracking profile: " + e.getMessage());
+            return TrackingProfile.NONE;
+        }
+    }
+    
+    private void loadTargets() {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // Another user's targets say nothing about where this one needs precision
+        if (!userId.equals(prefs.getString(PREF_TARGETS_USER_ID, null))) {
+            geofences.disable();
+            return;
+        }
+        String targetsJson = prefs.getString(EXTRA_TARGETS, null);
+        List<TargetGeofences.Target> targets = targetsJson != null ? parseTargets(targetsJson) : null;
+        if (targets != null) {
+            geofences.update(targets);
+            Log.d(TAG, "Restored " + geofences.size() + " geofenced targets");
+        }
+    }
+    
+    @Nullable
+    private static List<TargetGeofences.Target> parseTargets(String targetsJson) {
+        try {
+            JSONArray array = new JSONArray(targetsJson);
+            List<TargetGeofences.Target> targets = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject target = array.getJSONObject(i);
+                targets.add(new TargetGeofences.Target(
+                    target.getString("id"),
+                    target.getDouble("latitude"),
+                    target.getDouble("longitude"),
+                    (float) target.optDouble("radiusMeters", 0)));
             }
+            return targets;
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed targets: " + e.getMessage());
+            return null;
         }
     }
     
     private void saveUserData() {
-        SharedPreferences prefs = getSharedPreferences("poverse_tracking", Context.MODE_PRIVATE);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         prefs.edit()
             .putString("userId", userId)
             .putString("userName", userName)
             .putString("companyId", companyId)
             .putString("firebaseUrl", firebaseUrl)
+            .putLong(EXTRA_BATCH_WINDOW_MS, batchWindowMs)
+            .putInt(EXTRA_MAX_BATCH_SIZE, maxBatchSize)
+            .putInt(EXTRA_GZIP_THRESHOLD_BYTES, gzipThresholdBytes)
+            .putString(EXTRA_TRACKING_MODE, trackingMode.wireName)
+            .putLong(EXTRA_SHIFT_ENDS_AT_MS, shiftEndsAtMs)
+            .putBoolean(PREF_SESSION_OPEN, true)
             .apply();
     }
     
     private void loadUserData() {
-        SharedPreferences prefs = getSharedPreferences("poverse_tracking", Context.MODE_PRIVATE);
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         userId = prefs.getString("userId", null);
         userName = prefs.getString("userName", null);
         companyId = prefs.getString("companyId", null);
         firebaseUrl = prefs.getString("firebaseUrl", null);
+        batchWindowMs = prefs.getLong(EXTRA_BATCH_WINDOW_MS, 0);
+        maxBatchSize = prefs.getInt(EXTRA_MAX_BATCH_SIZE, LocationBatcher.DEFAULT_MAX_BATCH_SIZE);
+        gzipThresholdBytes = prefs.getInt(EXTRA_GZIP_THRESHOLD_BYTES, RtdbTransport.DEFAULT_GZIP_THRESHOLD_BYTES);
+        trackingMode = TrackingMode.fromWireName(prefs.getString(EXTRA_TRACKING_MODE, null));
+        shiftEndsAtMs = prefs.getLong(EXTRA_SHIFT_ENDS_AT_MS, 0);
     }
     
     @Override
@@ -345,44 +1141,101 @@ public class LocationTrackingService extends Service {
         Log.d(TAG, "LocationTrackingService destroyed");
         isRunning = false;
         
+        if (idleReceiver != null) {
+            unregisterReceiver(idleReceiver);
+            idleReceiver = null;
+        }
+        if (connectivityMonitor != null) {
+            connectivityMonitor.stop();
+        }
+        
+        // Tear down on the tracking thread after any queued fixes, then let it exit
+        final boolean goOffline = stopRequested;
+        trackingHandler.post(() -> stopTracking(goOffline));
+        trackingThread.quitSafely();
+        
+        super.onDestroy();
+    }
+    
+    private void stopTracking(boolean goOffline) {
+        ScopedWakeLock.Scope scope = openWakeScope();
+        try {
+            doStopTracking(goOffline);
+        } finally {
+            if (scope != null) scope.close();
+        }
+        if (wakeLock != null) {
+            Log.d(TAG, "Wake lock held " + wakeLock.getHeldTimeMs() + "ms over "
+                + wakeLock.getAcquireCount() + " acquisitions");
+        }
+    }
+    
+    private void doStopTracking(boolean goOffline) {
+        if (profileStream != null) {
+            profileStream.stop();
+            profileStream = null;
+        }
+        
+        if (replay != null) {
+            replay.stop();
+            replay = null;
+        }
+        
         // Stop location updates
         if (fusedLocationClient != null && locationCallback != null) {
             fusedLocationClient.removeLocationUpdates(locationCallback);
+            locationCallback = null;
         }
         
-        // Stop presence timer
-        if (presenceTimer != null) {
-            presenceTimer.cancel();
-            presenceTimer = null;
+        // Stop presence heartbeat
+        if (heartbeat != null) {
+            heartbeat.stop();
+            heartbeat = null;
         }
         
-        // Release wake lock
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
+        // Hand any buffered batch to the uploader before it stops accepting work
+        retireBatcher();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
         }
         
-        // Set user offline only when explicitly stopped
-        if (stopRequested) {
+        // Set user offline only when explicitly stopped (queued after the last batch)
+        if (goOffline) {
             setUserOffline();
         }
         
-        super.onDestroy();
+        // Worker flushes whatever is still queued, then exits; offline it sends nothing and
+        // the presence write above is parked for OfflinePresenceJobService instead
+        if (uploader != null) {
+            uploader.shutdown(0);
+            uploader = null;
+        }
+        
+        closeFixBuffer();
     }
     
     private void setUserOffline() {
-        if (firebaseUrl == null || userId == null) return;
-        
-        new Thread(() -> {
-            try {
-                String url = firebaseUrl + "/presence/" + userId + ".json";
-                JSONObject presenceData = new JSONObject();
-                presenceData.put("isOnline", false);
-                presenceData.put("lastActive", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).format(new Date()));
-                sendToFirebase(url, presenceData.toString());
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to set user offline: " + e.getMessage());
+        if (firebaseUrl == null || userId == null || uploader == null) return;
+        
+        payload.reset().beginObject()
+            .key("isOnline").value(false)
+            .key("lastActive").isoTimestamp(System.currentTimeMillis())
+            .endObject();
+        // The uploader is shutting down and sends nothing while offline; a write it cannot
+        // deliver is parked and sent by a job once a network is up
+        final Context appContext = getApplicationContext();
+        final String offlineUserId = userId;
+        final String offlineUrl = firebaseUrl;
+        final String offlineValue = new String(payload.toByteArray(), StandardCharsets.UTF_8);
+        uploader.enqueue(UploadRequest.put("/presence/" + userId + ".json", payload, success -> {
+            // A session started since then sets presence itself
+            boolean restarted = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(PREF_SESSION_OPEN, false);
+            if (!success && !restarted) {
+                OfflinePresenceJobService.park(appContext, offlineUrl, offlineUserId, offlineValue);
             }
-        }).start();
+        }));
     }
     
     @Nullable
@@ -0,0 +1,108 @@
+package com.poverse.app.services;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.poverse.app.tracking.RtdbTransport;
+import com.poverse.app.tracking.UploadRequest;
+
+import java.io.IOException;
+
+/**
+ * Sends the isOnline=false presence write that {@link LocationTrackingService} could not
+ * deliver when it stopped offline. The write is parked in a small store of its own, not
+ * in the user's offline action queue, and JobScheduler sends it once a network is up,
+ * whether or not the app is running. Only the last stop's write is kept, and the next
+ * tracking session drops it, since that session sets presence itself.
+ */
+public class OfflinePresenceJobService extends JobService {
+    private static final String TAG = "OfflinePresenceJob";
+    private static final int JOB_ID = 4202;
+    private static final String PREFS_NAME = "poverse_offline_presence";
+    private static final String PREF_DATABASE_URL = "databaseUrl";
+    private static final String PREF_USER_ID = "userId";
+    private static final String PREF_VALUE = "value";
+    private static final long BACKOFF_MS = 30000;
+
+    private volatile boolean stopped = false;
+
+    /** Keep a presence value for userId and send it as soon as a network is available. */
+    public static void park(Context context, String databaseUrl, String userId, String value) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(PREF_DATABASE_URL, databaseUrl)
+            .putString(PREF_USER_ID, userId)
+            .putString(PREF_VALUE, value)
+            .apply();
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) return;
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, OfflinePresenceJobService.class))
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+            .setBackoffCriteria(BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+            .setPersisted(true)
+            .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.w(TAG, "Could not schedule offline presence write");
+        }
+    }
+
+    /** Drop a parked write, e.g. because a new session is setting presence itself. */
+    public static void cancel(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler != null) {
+            scheduler.cancel(JOB_ID);
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String databaseUrl = prefs.getString(PREF_DATABASE_URL, null);
+        String userId = prefs.getString(PREF_USER_ID, null);
+        String value = prefs.getString(PREF_VALUE, null);
+        if (databaseUrl == null || userId == null || value == null) return false;
+        Thread worker = new Thread(() -> {
+            boolean retry = send(new RtdbTransport(databaseUrl), userId, value);
+            // Unless a newer stop parked another value meanwhile
+            if (!retry && value.equals(prefs.getString(PREF_VALUE, null))) {
+                prefs.edit().clear().apply();
+            }
+            if (!stopped) jobFinished(params, retry);
+        }, "poverse-offline-presence");
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        return true;
+    }
+
+    /** Returns true when the write should be tried again later. */
+    private static boolean send(RtdbTransport transport, String userId, String value) {
+        int code;
+        try {
+            code = transport.send(UploadRequest.put("/presence/" + userId + ".json", value));
+        } catch (IOException e) {
+            Log.w(TAG, "Offline presence write failed: " + e.getMessage());
+            return true;
+        }
+        if (code < 300) {
+            Log.d(TAG, "Offline presence sent for " + userId);
+            return false;
+        }
+        if (code == 408 || code == 429 || code >= 500) {
+            return true;
+        }
+        // Refused (rules, auth): another attempt would be refused too
+        Log.w(TAG, "Offline presence refused, HTTP " + code);
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package com.poverse.app.tracking;
+
+/**
+ * Stops the uploader hammering an endpoint that is clearly down.
+ *
+ * After {@code failureThreshold} consecutive transient failures the breaker opens and
+ * every request waits out the cooldown instead of hitting the network. When the
+ * cooldown ends a single probe is let through (half-open): success closes the breaker,
+ * failure re-opens it with the cooldown doubled, up to {@code maxCooldownMs}.
+ * Times are passed in so the state machine can be tested without sleeping.
+ */
+public class CircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_COOLDOWN_MS = 30000;
+    public static final long DEFAULT_MAX_COOLDOWN_MS = 5 * 60000;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long baseCooldownMs;
+    private final long maxCooldownMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long cooldownMs;
+    private long openUntilMs = 0;
+    private long openCount = 0;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_COOLDOWN_MS, DEFAULT_MAX_COOLDOWN_MS);
+    }
+
+    public CircuitBreaker(int failureThreshold, long cooldownMs, long maxCooldownMs) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be >= 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.baseCooldownMs = cooldownMs;
+        this.maxCooldownMs = Math.max(cooldownMs, maxCooldownMs);
+        this.cooldownMs = cooldownMs;
+    }
+
+    /**
+     * How long the caller must wait before sending, 0 to send now. Moves an expired
+     * OPEN breaker to HALF_OPEN so the next send acts as the probe.
+     */
+    public synchronized long delayBeforeSendMs(long nowMs) {
+        if (state != State.OPEN) return 0;
+        if (nowMs >= openUntilMs) {
+            state = State.HALF_OPEN;
+            return 0;
+        }
+        return openUntilMs - nowMs;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        cooldownMs = baseCooldownMs;
+    }
+
+    /** Forget past failures, e.g. once a different network is available. */
+    public synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        cooldownMs = baseCooldownMs;
+    }
+
+    /** Record a transient failure; auth and client errors say nothing about availability. */
+    public synchronized void onFailure(long nowMs) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            cooldownMs = Math.min(maxCooldownMs, cooldownMs * 2);
+            open(nowMs);
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open(nowMs);
+        }
+    }
+
+    private void open(long nowMs) {
+        state = State.OPEN;
+        openUntilMs = nowMs + cooldownMs;
+        openCount++;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+}
@@ -0,0 +1,124 @@
+package com.poverse.app.tracking;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Watches the default network and reports whether uploads can reach the internet.
+ *
+ * Only a network the system has validated counts as online, so a captive portal or a
+ * cell connection without data does not trigger uploads that are bound to fail. The
+ * listener is told about changes only, from the ConnectivityManager callback thread,
+ * together with whether the network is metered.
+ */
+public class ConnectivityMonitor {
+    private static final String TAG = "ConnectivityMonitor";
+
+    public interface Listener {
+        void onConnectivityChanged(boolean online, boolean metered);
+    }
+
+    private final ConnectivityManager connectivity;
+    private final Listener listener;
+    private final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            refresh();
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            refresh();
+        }
+
+        @Override
+        public void onLost(Network network) {
+            refresh();
+        }
+    };
+
+    private boolean registered = false;
+    private boolean online;
+    private boolean metered;
+
+    public ConnectivityMonitor(Context context, Listener listener) {
+        this.connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+        readState();
+    }
+
+    public synchronized void start() {
+        if (registered || connectivity == null) return;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivity.registerDefaultNetworkCallback(callback);
+            } else {
+                NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+                connectivity.registerNetworkCallback(request, callback);
+            }
+            registered = true;
+        } catch (RuntimeException e) {
+            // Registration can fail if the app holds too many callbacks; assume online
+            Log.w(TAG, "Could not register network callback", e);
+        }
+        refresh();
+    }
+
+    public synchronized void stop() {
+        if (!registered) return;
+        try {
+            connectivity.unregisterNetworkCallback(callback);
+        } catch (IllegalArgumentException e) {
+            // Already unregistered
+        }
+        registered = false;
+    }
+
+    public synchronized boolean isOnline() {
+        return online;
+    }
+
+    public synchronized boolean isMetered() {
+        return metered;
+    }
+
+    /** Re-read the active network and notify the listener if anything changed. */
+    private void refresh() {
+        boolean changed;
+        boolean nowOnline;
+        boolean nowMetered;
+        synchronized (this) {
+            boolean wasOnline = online;
+            boolean wasMetered = metered;
+            readState();
+            nowOnline = online;
+            nowMetered = metered;
+            changed = nowOnline != wasOnline || nowMetered != wasMetered;
+        }
+        if (changed) {
+            Log.i(TAG, "Network " + (nowOnline ? "online" : "offline") + (nowMetered ? " (metered)" : ""));
+            listener.onConnectivityChanged(nowOnline, nowMetered);
+        }
+    }
+
+    private void readState() {
+        if (connectivity == null) {
+            online = true;
+            metered = false;
+            return;
+        }
+        Network network = connectivity.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivity.getNetworkCapabilities(network) : null;
+        online = capabilities != null
+            && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+            && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        metered = online && connectivity.isActiveNetworkMetered();
+    }
+}
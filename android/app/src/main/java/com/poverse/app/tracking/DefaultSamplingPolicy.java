@@ -0,0 +1,43 @@
+package com.poverse.app.tracking;
+
+/**
+ * Thresholds tuned for field agents: a shop visit shows little net displacement, walking
+ * stays under roughly 2.5 m/s, anything faster is treated as a vehicle.
+ */
+public class DefaultSamplingPolicy implements SamplingPolicy {
+    static final float STATIONARY_SPEED_MPS = 0.6f;
+    static final double STATIONARY_DISPLACEMENT_M = 30;
+    static final float DRIVING_SPEED_MPS = 4.0f;
+
+    private static final SamplingProfile STATIONARY = new SamplingProfile(
+        SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, 60000, 25);
+    private static final SamplingProfile WALKING = new SamplingProfile(
+        SamplingProfile.PRIORITY_HIGH_ACCURACY, 10000, 5);
+    private static final SamplingProfile DRIVING = new SamplingProfile(
+        SamplingProfile.PRIORITY_HIGH_ACCURACY, 10000, 50);
+
+    @Override
+    public MotionState classify(float speedMps, double displacementMeters, long windowMs) {
+        double averageSpeed = windowMs > 0 ? displacementMeters * 1000.0 / windowMs : 0;
+        if (speedMps >= DRIVING_SPEED_MPS && averageSpeed >= DRIVING_SPEED_MPS / 2) {
+            return MotionState.DRIVING;
+        }
+        if (speedMps < STATIONARY_SPEED_MPS && displacementMeters < STATIONARY_DISPLACEMENT_M) {
+            return MotionState.STATIONARY;
+        }
+        return MotionState.WALKING;
+    }
+
+    @Override
+    public SamplingProfile profileFor(MotionState state) {
+        switch (state) {
+            case STATIONARY:
+                return STATIONARY;
+            case DRIVING:
+                return DRIVING;
+            case WALKING:
+            default:
+                return WALKING;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.poverse.app.tracking;
+
+/**
+ * Hands the tracker's filtered fixes to the web app in coalesced batches, so pages can
+ * show the agent's position without running a second GPS session in the WebView.
+ *
+ * Fixes are buffered in a bounded ring and released as one batch per event, at most
+ * maxEventsPerSecond while the app is in the foreground and not at all while it is
+ * in the background; a full ring drops its oldest fix and the next batch reports how
+ * many were lost. The stream never schedules anything itself: the {@link Listener} is
+ * told once per pending batch how long to wait before calling {@link #poll(long)}.
+ * The newest fix is kept even with no subscriber, so a new one gets a position at
+ * once. Times passed in are a monotonic clock, not wall time.
+ */
+public final class FixEventStream {
+    public static final int DEFAULT_MAX_EVENTS_PER_SECOND = 1;
+    public static final int DEFAULT_CAPACITY = 64;
+
+    public interface Listener {
+        /** A batch is waiting; call {@link #poll(long)} after delayMs. */
+        void onBatchPending(long delayMs);
+    }
+
+    /** Fixes released in one event, oldest first. */
+    public static final class Batch {
+        public final double[] latitudes;
+        public final double[] longitudes;
+        public final float[] accuracies;
+        public final long[] timesMs;
+        /** Fixes overwritten in a full buffer since the previous batch. */
+        public final int dropped;
+
+        Batch(int count, int dropped) {
+            latitudes = new double[count];
+            longitudes = new double[count];
+            accuracies = new float[count];
+            timesMs = new long[count];
+            this.dropped = dropped;
+        }
+
+        public int size() {
+            return timesMs.length;
+        }
+    }
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final long[] timesMs;
+    private int head = 0;
+    private int count = 0;
+    private int dropped = 0;
+
+    private boolean hasLatest = false;
+    private double latestLatitude;
+    private double latestLongitude;
+    private float latestAccuracy;
+    private long latestTimeMs;
+
+    private Listener listener;
+    private long minIntervalMs = 1000 / DEFAULT_MAX_EVENTS_PER_SECOND;
+    private boolean foreground = false;
+    private boolean wakeupPending = false;
+    private long lastEmitMs = Long.MIN_VALUE / 2;
+    private long emittedCount = 0;
+    private long droppedCount = 0;
+
+    public FixEventStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FixEventStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        accuracies = new float[capacity];
+        timesMs = new long[capacity];
+    }
+
+    /** A fix the tracker accepted. Cheap enough for the per-fix path; never allocates. */
+    public synchronized void offer(double latitude, double longitude, float accuracy, long timeMs, long nowMs) {
+        hasLatest = true;
+        latestLatitude = latitude;
+        latestLongitude = longitude;
+        latestAccuracy = accuracy;
+        latestTimeMs = timeMs;
+        if (listener == null) return;
+        append(latitude, longitude, accuracy, timeMs);
+        maybeWake(nowMs);
+    }
+
+    /**
+     * Start delivering to listener, replacing any previous one. The first batch holds
+     * the newest known fix, if any.
+     */
+    public synchronized void subscribe(Listener listener, int maxEventsPerSecond, long nowMs) {
+        if (maxEventsPerSecond <= 0) {
+            throw new IllegalArgumentException("maxEventsPerSecond must be > 0");
+        }
+        this.listener = listener;
+        minIntervalMs = 1000 / Math.min(1000, maxEventsPerSecond);
+        clear();
+        wakeupPending = false;
+        if (hasLatest) {
+            append(latestLatitude, latestLongitude, latestAccuracy, latestTimeMs);
+        }
+        maybeWake(nowMs);
+    }
+
+    public synchronized void unsubscribe() {
+        listener = null;
+        wakeupPending = false;
+        clear();
+    }
+
+    public synchronized boolean isSubscribed() {
+        return listener != null;
+    }
+
+    /** Backgrounded, fixes keep buffering (bounded) and go out together on return. */
+    public synchronized void setForeground(boolean foreground, long nowMs) {
+        this.foreground = foreground;
+        maybeWake(nowMs);
+    }
+
+    public synchronized boolean isForeground() {
+        return foreground;
+    }
+
+    /**
+     * Take everything buffered as one batch, or null when there is nothing to send, the
+     * app is in the background, or the rate limit says wait (the listener is then told
+     * when to come back).
+     */
+    public synchronized Batch poll(long nowMs) {
+        wakeupPending = false;
+        if (listener == null || !foreground || count == 0) return null;
+        if (nowMs - lastEmitMs < minIntervalMs) {
+            maybeWake(nowMs);
+            return null;
+        }
+        Batch batch = new Batch(count, dropped);
+        int capacity = timesMs.length;
+        int start = head - count;
+        if (start < 0) start += capacity;
+        for (int i = 0; i < count; i++) {
+            int at = (start + i) % capacity;
+            batch.latitudes[i] = latitudes[at];
+            batch.longitudes[i] = longitudes[at];
+            batch.accuracies[i] = accuracies[at];
+            batch.timesMs[i] = timesMs[at];
+        }
+        clear();
+        lastEmitMs = nowMs;
+        emittedCount++;
+        return batch;
+    }
+
+    public synchronized int getPendingCount() {
+        return count;
+    }
+
+    /** Batches handed out since this stream was created. */
+    public synchronized long getEmittedCount() {
+        return emittedCount;
+    }
+
+    /** Fixes lost to a full buffer since this stream was created. */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private void append(double latitude, double longitude, float accuracy, long timeMs) {
+        latitudes[head] = latitude;
+        longitudes[head] = longitude;
+        accuracies[head] = accuracy;
+        timesMs[head] = timeMs;
+        head = (head + 1) % timesMs.length;
+        if (count < timesMs.length) {
+            count++;
+        } else {
+            dropped++;
+            droppedCount++;
+        }
+    }
+
+    private void clear() {
+        count = 0;
+        dropped = 0;
+    }
+
+    private void maybeWake(long nowMs) {
+        if (listener == null || !foreground || count == 0 || wakeupPending) return;
+        wakeupPending = true;
+        listener.onBatchPending(Math.max(0, lastEmitMs + minIntervalMs - nowMs));
+    }
+}
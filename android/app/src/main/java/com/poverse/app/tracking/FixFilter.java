@@ -0,0 +1,199 @@
+package com.poverse.app.tracking;
+
+/**
+ * Smooths incoming fixes and drops the ones that cannot be real, before they reach
+ * the upload queue.
+ *
+ * A constant-velocity Kalman filter runs in a local east/north plane anchored at the
+ * first fix, with each fix weighted by its reported accuracy: a 150 m indoor fix barely
+ * moves the estimate, a 5 m fix pulls it almost all the way. Before the update a speed
+ * gate compares the jump from the current estimate, less both uncertainties, with the
+ * fastest the agent could plausibly have gone: current speed plus
+ * {@link #DEFAULT_MAX_ACCELERATION_MPS2} over the gap, never above the hard limit.
+ *
+ * Measurement noise is isotropic, so both axes share one covariance matrix and an
+ * update is a fixed handful of arithmetic operations. Process noise grows with speed,
+ * so a walker's jitter is smoothed harder than a car's turns. After
+ * {@link #MAX_CONSECUTIVE_REJECTS} rejections in a row, or a gap longer than
+ * {@link #MAX_GAP_MS}, the filter restarts at the new fix rather than trusting a stale
+ * estimate. Callers only feed fixes in and read the estimate back.
+ */
+public class FixFilter {
+    public static final double DEFAULT_MAX_SPEED_MPS = 55;          // ~200 km/h
+    public static final double DEFAULT_MAX_ACCELERATION_MPS2 = 4;
+    // Spectral density of the white-noise acceleration, m^2/s^3
+    public static final double DEFAULT_PROCESS_NOISE = 0.5;
+    static final int MAX_CONSECUTIVE_REJECTS = 3;
+    static final long MAX_GAP_MS = 10 * 60000;
+    // Accuracy assumed for fixes that report none
+    static final float UNKNOWN_ACCURACY_M = 50;
+    private static final float MIN_ACCURACY_M = 1;
+    // Velocity uncertainty of a fresh track
+    private static final double INITIAL_SPEED_SIGMA_MPS = 15;
+    // Beyond this the plane is re-centred on the estimate
+    private static final double REANCHOR_DISTANCE_M = 20000;
+    // A walker's velocity changes by less in absolute terms than a driver's, so the
+    // process noise ramps up to its full value at this speed, from a tenth at rest
+    private static final double FULL_NOISE_SPEED_MPS = 10;
+    private static final double MIN_NOISE_SCALE = 0.1;
+
+    private final double maxSpeedMps;
+    private final double maxAccelerationMps2;
+    private final double processNoise;
+
+    private boolean initialized = false;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLng;
+    private long lastTimeMs;
+
+    // State per axis (east, north): position in metres from the origin, velocity in m/s
+    private double x;
+    private double y;
+    private double vx;
+    private double vy;
+    // Shared covariance [[pp, pv], [pv, vv]]
+    private double pp;
+    private double pv;
+    private double vv;
+
+    private int consecutiveRejects = 0;
+    private long acceptedCount = 0;
+    private long rejectedCount = 0;
+    private long resetCount = 0;
+
+    public FixFilter() {
+        this(DEFAULT_MAX_SPEED_MPS, DEFAULT_MAX_ACCELERATION_MPS2, DEFAULT_PROCESS_NOISE);
+    }
+
+    public FixFilter(double maxSpeedMps, double maxAccelerationMps2, double processNoise) {
+        this.maxSpeedMps = maxSpeedMps;
+        this.maxAccelerationMps2 = maxAccelerationMps2;
+        this.processNoise = processNoise;
+    }
+
+    /**
+     * Feed one fix.
+     * @param accuracyMeters reported horizontal accuracy, or 0 when the fix has none
+     * @return false if the fix was rejected; otherwise the estimate now includes it
+     */
+    public synchronized boolean accept(double latitude, double longitude, float accuracyMeters, long timeMs) {
+        float accuracy = accuracyMeters > 0 ? Math.max(accuracyMeters, MIN_ACCURACY_M) : UNKNOWN_ACCURACY_M;
+        if (!initialized || timeMs - lastTimeMs > MAX_GAP_MS) {
+            restart(latitude, longitude, accuracy, timeMs);
+            return true;
+        }
+        if (timeMs <= lastTimeMs) {
+            rejectedCount++;
+            return false;
+        }
+
+        if (Math.abs(x) > REANCHOR_DISTANCE_M || Math.abs(y) > REANCHOR_DISTANCE_M) {
+            anchor(getLatitude(), getLongitude());
+        }
+        double dt = (timeMs - lastTimeMs) / 1000.0;
+        double mx = (longitude - originLongitude) * metersPerDegreeLng;
+        double my = (latitude - originLatitude) * GeoMath.METERS_PER_DEGREE_LAT;
+
+        // Speed gate: the jump that cannot be explained by either position's uncertainty
+        double jump = Math.hypot(mx - x, my - y) - accuracy - Math.sqrt(pp);
+        double limit = Math.min(maxSpeedMps,
+            Math.hypot(vx, vy) + 3 * Math.sqrt(vv) + maxAccelerationMps2 * dt);
+        if (jump > limit * dt) {
+            rejectedCount++;
+            if (++consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+                // Several "impossible" fixes in a row: the estimate is what went wrong
+                restart(latitude, longitude, accuracy, timeMs);
+                return true;
+            }
+            return false;
+        }
+        consecutiveRejects = 0;
+
+        // Predict with continuous white-noise acceleration, scaled by speed
+        x += vx * dt;
+        y += vy * dt;
+        double q = processNoise * Math.max(MIN_NOISE_SCALE, Math.min(1, Math.hypot(vx, vy) / FULL_NOISE_SPEED_MPS));
+        double dt2 = dt * dt;
+        double nextPp = pp + 2 * dt * pv + dt2 * vv + q * dt2 * dt / 3;
+        double nextPv = pv + dt * vv + q * dt2 / 2;
+        double nextVv = vv + q * dt;
+
+        // Update with the fix; the gain is the same for both axes
+        double s = nextPp + (double) accuracy * accuracy;
+        double kp = nextPp / s;
+        double kv = nextPv / s;
+        double ex = mx - x;
+        double ey = my - y;
+        x += kp * ex;
+        y += kp * ey;
+        vx += kv * ex;
+        vy += kv * ey;
+        pp = (1 - kp) * nextPp;
+        pv = (1 - kp) * nextPv;
+        vv = nextVv - kv * nextPv;
+
+        lastTimeMs = timeMs;
+        acceptedCount++;
+        return true;
+    }
+
+    /** Drop the track; the next fix starts a new one. */
+    public synchronized void reset() {
+        initialized = false;
+        consecutiveRejects = 0;
+    }
+
+    public synchronized double getLatitude() {
+        return originLatitude + y / GeoMath.METERS_PER_DEGREE_LAT;
+    }
+
+    public synchronized double getLongitude() {
+        return originLongitude + x / metersPerDegreeLng;
+    }
+
+    /** One-sigma position uncertainty of the estimate, in metres; never above the fix's own. */
+    public synchronized float getAccuracy() {
+        return (float) Math.sqrt(pp);
+    }
+
+    public synchronized double getSpeedMps() {
+        return Math.hypot(vx, vy);
+    }
+
+    public synchronized long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /** Times the filter started a new track after a gap or a run of rejections. */
+    public synchronized long getResetCount() {
+        return resetCount;
+    }
+
+    private void restart(double latitude, double longitude, float accuracy, long timeMs) {
+        if (initialized) resetCount++;
+        initialized = true;
+        anchor(latitude, longitude);
+        vx = 0;
+        vy = 0;
+        pp = (double) accuracy * accuracy;
+        pv = 0;
+        vv = INITIAL_SPEED_SIGMA_MPS * INITIAL_SPEED_SIGMA_MPS;
+        lastTimeMs = timeMs;
+        consecutiveRejects = 0;
+        acceptedCount++;
+    }
+
+    /** Centre the local plane on the given point, which becomes the position estimate. */
+    private void anchor(double latitude, double longitude) {
+        originLatitude = latitude;
+        originLongitude = longitude;
+        metersPerDegreeLng = GeoMath.METERS_PER_DEGREE_LAT * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+        x = 0;
+        y = 0;
+    }
+}
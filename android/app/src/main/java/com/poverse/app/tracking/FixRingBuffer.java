@@ -0,0 +1,164 @@
+package com.poverse.app.tracking;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size, memory-mapped ring buffer of unsent location fixes.
+ *
+ * Layout: a 32-byte header (magic, version, capacity, record size, write sequence,
+ * read sequence) followed by capacity records of 32 bytes each
+ * (latitude, longitude, time, accuracy, reserved). Sequences grow monotonically and a
+ * record lives at (seq % capacity). Because the file is mapped, appended fixes survive
+ * a process kill; the read cursor only moves forward via {@link #commit(long)}, which is
+ * called once the server has confirmed a write. When the buffer is full the oldest
+ * unsent fix is overwritten.
+ *
+ * append() writes primitives straight into the mapping and never allocates.
+ */
+public class FixRingBuffer implements Closeable {
+    public static final int DEFAULT_CAPACITY = 8192; // ~22h at one fix per 10s
+
+    private static final int MAGIC = 0x50465842; // "PFXB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_RECORD_SIZE = 12;
+    private static final int OFF_WRITE_SEQ = 16;
+    private static final int OFF_READ_SEQ = 24;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+
+    private long writeSeq;
+    private long readSeq;
+
+    public FixRingBuffer(File path, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        File parent = path.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(path, "rw");
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        this.map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        boolean valid = map.getInt(OFF_MAGIC) == MAGIC
+            && map.getInt(OFF_VERSION) == VERSION
+            && map.getInt(OFF_CAPACITY) == capacity
+            && map.getInt(OFF_RECORD_SIZE) == RECORD_SIZE;
+        if (valid) {
+            writeSeq = map.getLong(OFF_WRITE_SEQ);
+            readSeq = map.getLong(OFF_READ_SEQ);
+            valid = readSeq >= 0 && readSeq <= writeSeq && writeSeq - readSeq <= capacity;
+        }
+        if (!valid) {
+            map.putInt(OFF_MAGIC, MAGIC);
+            map.putInt(OFF_VERSION, VERSION);
+            map.putInt(OFF_CAPACITY, capacity);
+            map.putInt(OFF_RECORD_SIZE, RECORD_SIZE);
+            writeSeq = 0;
+            readSeq = 0;
+            map.putLong(OFF_WRITE_SEQ, 0);
+            map.putLong(OFF_READ_SEQ, 0);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Append one fix. Overwrites the oldest unsent fix when full.
+     * @return true if an unsent fix was overwritten to make room
+     */
+    public synchronized boolean append(double latitude, double longitude, float accuracy, long timeMs) {
+        int offset = HEADER_SIZE + (int) (writeSeq % capacity) * RECORD_SIZE;
+        map.putDouble(offset, latitude);
+        map.putDouble(offset + 8, longitude);
+        map.putLong(offset + 16, timeMs);
+        map.putFloat(offset + 24, accuracy);
+        map.putInt(offset + 28, 0);
+
+        writeSeq++;
+        boolean overwrote = writeSeq - readSeq > capacity;
+        if (overwrote) {
+            readSeq = writeSeq - capacity;
+            map.putLong(OFF_READ_SEQ, readSeq);
+        }
+        // Record first, then the sequence that publishes it
+        map.putLong(OFF_WRITE_SEQ, writeSeq);
+        return overwrote;
+    }
+
+    /**
+     * Copy up to max fixes starting at fromSeq into the caller's arrays.
+     * fromSeq is clamped to the read cursor if older records were overwritten.
+     * @return number of fixes copied
+     */
+    public synchronized int read(long fromSeq, int max, double[] latitudes, double[] longitudes,
+                                 float[] accuracies, long[] times) {
+        long start = Math.max(fromSeq, readSeq);
+        int count = (int) Math.min(max, writeSeq - start);
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_SIZE + (int) ((start + i) % capacity) * RECORD_SIZE;
+            latitudes[i] = map.getDouble(offset);
+            longitudes[i] = map.getDouble(offset + 8);
+            times[i] = map.getLong(offset + 16);
+            accuracies[i] = map.getFloat(offset + 24);
+        }
+        return Math.max(count, 0);
+    }
+
+    /**
+     * Advance the persisted read cursor to upToSeq (exclusive) after the server has
+     * confirmed every fix before it. Never moves the cursor backwards.
+     */
+    public synchronized void commit(long upToSeq) {
+        long target = Math.min(upToSeq, writeSeq);
+        if (target <= readSeq) return;
+        readSeq = target;
+        map.putLong(OFF_READ_SEQ, readSeq);
+    }
+
+    /** Drop every unsent fix, e.g. when a different user signs in. */
+    public synchronized void clear() {
+        readSeq = writeSeq;
+        map.putLong(OFF_READ_SEQ, readSeq);
+    }
+
+    public synchronized long getReadSeq() {
+        return readSeq;
+    }
+
+    public synchronized long getWriteSeq() {
+        return writeSeq;
+    }
+
+    public synchronized int getPendingCount() {
+        return (int) (writeSeq - readSeq);
+    }
+
+    /** Flush dirty pages to storage so pending fixes also survive a power loss. */
+    public void sync() {
+        map.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping stays valid until collected; closing only releases the descriptor
+        file.close();
+    }
+}
@@ -0,0 +1,216 @@
+package com.poverse.app.tracking;
+
+/**
+ * Stop ordering for an agent's assigned targets, so the web app does not block its
+ * thread on hundreds of haversine calls per stop.
+ *
+ * The origin and stops go into one flat (n + 1) x (n + 1) haversine matrix of doubles,
+ * origin at index 0. A nearest-neighbour tour from the origin is then improved with
+ * 2-opt segment reversals until no reversal shortens it or the time budget runs out,
+ * whichever comes first; the tour is open (ends at the last stop) unless asked to return
+ * to the origin. ETAs are straight-line distance over an effective speed that already
+ * allows for road detours, plus a dwell at each earlier stop, the same model as
+ * calculateETAs in the web app. Stateless, but a 1,000-stop plan takes a while: call it
+ * off the main thread.
+ */
+public final class GeoEngine {
+    /** Straight-line speed; about 30 km/h on city roads once detours are counted. */
+    public static final double DEFAULT_SPEED_MPS = 6.0;
+    /** Time spent at each stop, as calculateETAs assumes. */
+    public static final double DEFAULT_DWELL_SECONDS = 15 * 60;
+    public static final long DEFAULT_TIME_BUDGET_MS = 2000;
+
+    // Reversals that save less than this are noise from floating point
+    private static final double MIN_GAIN_METERS = 1e-6;
+
+    /** An ordered visit plan. Arrays are indexed by visit position, not stop index. */
+    public static final class Plan {
+        /** Stop indexes (into the caller's arrays) in visiting order. */
+        public final int[] order;
+        /** Distance from the previous stop, or from the origin for the first one. */
+        public final double[] legMeters;
+        public final double[] legSeconds;
+        /** Arrival after leaving the origin, including dwell at every earlier stop. */
+        public final double[] etaSeconds;
+        /** Whole tour, including the leg home when returning to the origin. */
+        public double totalMeters;
+        public double nearestNeighbourMeters;
+        public int improvements;
+        /** False when the time budget cut 2-opt short. */
+        public boolean converged;
+        public long computeMs;
+
+        Plan(int count) {
+            order = new int[count];
+            legMeters = new double[count];
+            legSeconds = new double[count];
+            etaSeconds = new double[count];
+        }
+
+        public int size() {
+            return order.length;
+        }
+    }
+
+    private GeoEngine() {
+    }
+
+    /**
+     * Symmetric great-circle distances in metres between every pair of points, row-major:
+     * the distance from i to j is at [i * n + j].
+     */
+    public static double[] distanceMatrix(double[] latitudes, double[] longitudes) {
+        int n = latitudes.length;
+        if (longitudes.length != n) {
+            throw new IllegalArgumentException("latitudes and longitudes differ in length");
+        }
+        double[] phi = new double[n];
+        double[] lambda = new double[n];
+        double[] cosPhi = new double[n];
+        for (int i = 0; i < n; i++) {
+            phi[i] = Math.toRadians(latitudes[i]);
+            lambda[i] = Math.toRadians(longitudes[i]);
+            cosPhi[i] = Math.cos(phi[i]);
+        }
+        double[] matrix = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double sinDPhi = Math.sin((phi[j] - phi[i]) / 2);
+                double sinDLambda = Math.sin((lambda[j] - lambda[i]) / 2);
+                double a = sinDPhi * sinDPhi + cosPhi[i] * cosPhi[j] * sinDLambda * sinDLambda;
+                double d = 2 * GeoMath.EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+                matrix[i * n + j] = d;
+                matrix[j * n + i] = d;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Plan a visit order for the stops starting at the origin. dwellSeconds may be null
+     * (every stop gets {@link #DEFAULT_DWELL_SECONDS}) or hold one value per stop.
+     */
+    public static Plan plan(double originLatitude, double originLongitude,
+                            double[] latitudes, double[] longitudes, double[] dwellSeconds,
+                            double speedMps, boolean returnToOrigin, long timeBudgetMs) {
+        long startNs = System.nanoTime();
+        int stops = latitudes.length;
+        if (longitudes.length != stops || (dwellSeconds != null && dwellSeconds.length != stops)) {
+            throw new IllegalArgumentException("stop arrays differ in length");
+        }
+        if (speedMps <= 0) {
+            throw new IllegalArgumentException("speedMps must be > 0");
+        }
+
+        int n = stops + 1;
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        lats[0] = originLatitude;
+        lngs[0] = originLongitude;
+        System.arraycopy(latitudes, 0, lats, 1, stops);
+        System.arraycopy(longitudes, 0, lngs, 1, stops);
+        double[] matrix = distanceMatrix(lats, lngs);
+
+        int[] tour = nearestNeighbour(matrix, n);
+        Plan plan = new Plan(stops);
+        plan.nearestNeighbourMeters = tourLength(matrix, n, tour, returnToOrigin);
+        long deadlineNs = startNs + Math.max(0, timeBudgetMs) * 1_000_000L;
+        plan.converged = twoOpt(matrix, n, tour, returnToOrigin, deadlineNs, plan);
+
+        double elapsed = 0;
+        for (int k = 0; k < stops; k++) {
+            int stop = tour[k + 1] - 1;
+            double meters = matrix[tour[k] * n + tour[k + 1]];
+            plan.order[k] = stop;
+            plan.legMeters[k] = meters;
+            plan.legSeconds[k] = meters / speedMps;
+            elapsed += plan.legSeconds[k];
+            plan.etaSeconds[k] = elapsed;
+            elapsed += dwellSeconds != null ? Math.max(0, dwellSeconds[stop]) : DEFAULT_DWELL_SECONDS;
+        }
+        plan.totalMeters = tourLength(matrix, n, tour, returnToOrigin);
+        plan.computeMs = (System.nanoTime() - startNs) / 1_000_000;
+        return plan;
+    }
+
+    /** Greedy tour over matrix nodes starting at node 0; returns node ids in order. */
+    static int[] nearestNeighbour(double[] matrix, int n) {
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        int current = 0;
+        for (int k = 1; k < n; k++) {
+            int row = current * n;
+            int nearest = -1;
+            double nearestMeters = Double.POSITIVE_INFINITY;
+            for (int j = 1; j < n; j++) {
+                if (!visited[j] && matrix[row + j] < nearestMeters) {
+                    nearestMeters = matrix[row + j];
+                    nearest = j;
+                }
+            }
+            visited[nearest] = true;
+            tour[k] = nearest;
+            current = nearest;
+        }
+        return tour;
+    }
+
+    /**
+     * Reverse tour segments while any reversal shortens it. Node 0 stays first. Returns
+     * true when no improving reversal is left, false when the deadline stopped the search.
+     */
+    static boolean twoOpt(double[] matrix, int n, int[] tour, boolean closed, long deadlineNs, Plan plan) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 1; i < n - 1; i++) {
+                // Checking the clock once per row keeps it out of the inner loop
+                if (System.nanoTime() - deadlineNs > 0) return false;
+                int a = tour[i - 1];
+                int b = tour[i];
+                int rowA = a * n;
+                int rowB = b * n;
+                double ab = matrix[rowA + b];
+                for (int j = i + 1; j < n; j++) {
+                    int c = tour[j];
+                    int e = j + 1 < n ? tour[j + 1] : (closed ? 0 : -1);
+                    double before = ab;
+                    double after = matrix[rowA + c];
+                    if (e >= 0) {
+                        before += matrix[c * n + e];
+                        after += matrix[rowB + e];
+                    }
+                    if (after < before - MIN_GAIN_METERS) {
+                        reverse(tour, i, j);
+                        plan.improvements++;
+                        improved = true;
+                        b = tour[i];
+                        rowB = b * n;
+                        ab = matrix[rowA + b];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    static double tourLength(double[] matrix, int n, int[] tour, boolean closed) {
+        double meters = 0;
+        for (int k = 1; k < n; k++) {
+            meters += matrix[tour[k - 1] * n + tour[k]];
+        }
+        if (closed && n > 1) {
+            meters += matrix[tour[n - 1] * n];
+        }
+        return meters;
+    }
+
+    private static void reverse(int[] tour, int from, int to) {
+        while (from < to) {
+            int swap = tour[from];
+            tour[from++] = tour[to];
+            tour[to--] = swap;
+        }
+    }
+}
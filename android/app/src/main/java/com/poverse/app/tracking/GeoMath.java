@@ -0,0 +1,22 @@
+package com.poverse.app.tracking;
+
+/**
+ * Spherical-earth helpers shared by the tracking pipeline.
+ */
+public final class GeoMath {
+    public static final double EARTH_RADIUS_M = 6371000.0;
+    public static final double METERS_PER_DEGREE_LAT = EARTH_RADIUS_M * Math.PI / 180;
+
+    private GeoMath() {
+    }
+
+    /** Great-circle distance in metres. */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,91 @@
+package com.poverse.app.tracking;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip (RFC 1952) encoder that compresses into a recycled byte buffer.
+ *
+ * GZIPOutputStream allocates a Deflater, its buffers and a stream stack per payload;
+ * here one raw Deflater and CRC32 are reset and reused, and the header and trailer are
+ * written by hand, so a warmed-up encoder compresses without allocating. Not
+ * thread-safe; the transport's single worker owns one. {@link #close()} frees the
+ * Deflater's native memory.
+ */
+public final class GzipEncoder implements AutoCloseable {
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer;
+    private int length = 0;
+
+    public GzipEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public GzipEncoder(int level) {
+        // nowrap: raw deflate, the gzip framing is written below
+        deflater = new Deflater(level, true);
+        buffer = new byte[4096];
+    }
+
+    /** Compress the first length bytes of input; the result is {@link #buffer()} up to {@link #length()}. */
+    public GzipEncoder encode(byte[] input, int offset, int length) {
+        deflater.reset();
+        crc.reset();
+        crc.update(input, offset, length);
+        // Worst case deflate output is input + 5 bytes per 16 KB block
+        ensureCapacity(HEADER_SIZE + length + (length >> 12) + 32 + TRAILER_SIZE);
+
+        // Magic, CM=deflate, no flags, no mtime, XFL=0, OS=unknown
+        buffer[0] = (byte) 0x1f;
+        buffer[1] = (byte) 0x8b;
+        buffer[2] = 8;
+        Arrays.fill(buffer, 3, 9, (byte) 0);
+        buffer[9] = (byte) 0xff;
+        int out = HEADER_SIZE;
+
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (out + TRAILER_SIZE >= buffer.length) {
+                ensureCapacity(buffer.length * 2);
+            }
+            out += deflater.deflate(buffer, out, buffer.length - out - TRAILER_SIZE);
+        }
+
+        writeIntLE(out, (int) crc.getValue());
+        writeIntLE(out + 4, length);
+        this.length = out + TRAILER_SIZE;
+        return this;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private void writeIntLE(int at, int v) {
+        buffer[at] = (byte) v;
+        buffer[at + 1] = (byte) (v >>> 8);
+        buffer[at + 2] = (byte) (v >>> 16);
+        buffer[at + 3] = (byte) (v >>> 24);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+    }
+}
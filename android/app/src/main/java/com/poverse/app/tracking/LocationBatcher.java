@@ -0,0 +1,401 @@
+package com.poverse.app.tracking;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains buffered location fixes and presence heartbeats as one multi-path PATCH at the
+ * database root:
+ *
+ *   userLocations/{uid}              newest buffered fix
+ *   locationHistory/{uid}/{timeMs}   one entry per buffered fix, if the trail is enabled
+ *   presence/{uid}                   latest heartbeat
+ *
+ * Nothing prunes locationHistory, so the trail is {@link #setTrailEnabled(boolean) opt-in}
+ * for callers that batch; without it a batch writes only the newest fix and the older
+ * ones it supersedes are confirmed with it.
+ *
+ * Fixes live in a {@link FixRingBuffer} until the server confirms the batch that carried
+ * them, so a failed upload or a killed process only delays them. A batch is flushed when
+ * the window opened by its first entry elapses or when maxBatchSize fixes are pending;
+ * a window of 0 flushes on every update. At most one batch is in flight at a time.
+ *
+ * While {@link #setNetwork(boolean, boolean) offline} nothing is sent and fixes simply
+ * accumulate in the ring. A backlog left by a dead zone or restart is drained in batches
+ * of up to drainBatchSize fixes as soon as the network is back. On a metered network a
+ * backlog of largeBacklog fixes or more is drained one regular batch per
+ * meteredDrainIntervalMs instead, leaving the bulk for Wi-Fi; in between, batches carry
+ * only the newest fix and presence so the live position stays current.
+ *
+ * While online, every batch that carries fixes also refreshes presence, so the
+ * {@link PresenceHeartbeat} only has to write when no fixes are flowing.
+ *
+ * Because only one batch is ever in flight, the payload buffer and the request that
+ * carries it are reused: once warmed up, a flush allocates nothing.
+ *
+ * A batcher writes for the one user it was built for; once {@link #close() closed} it
+ * sends nothing more, so a replacement can take over the same ring.
+ */
+public class LocationBatcher implements PresenceHeartbeat.Target {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+    public static final int DEFAULT_DRAIN_BATCH_SIZE = 200;
+    public static final int DEFAULT_LARGE_BACKLOG = 1000;
+    public static final long DEFAULT_METERED_DRAIN_INTERVAL_MS = 60000;
+    static final long FAILURE_RETRY_MS = 30000;
+    // Generous per-fix estimate used to presize the payload buffer
+    private static final int BYTES_PER_FIX = 192;
+    private static final String SOURCE = "native_service";
+
+    private final RtdbUploader uploader;
+    private final ScheduledExecutorService scheduler;
+    private final FixRingBuffer fixes;
+    private final String userId;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final int drainBatchSize;
+    private final int largeBacklog;
+    private final long meteredDrainIntervalMs;
+
+    // Scratch arrays a batch is read into; reused for every flush
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final long[] times;
+
+    // Newest fix, written to userLocations; reused for every flush
+    private final double[] liveLatitude = new double[1];
+    private final double[] liveLongitude = new double[1];
+    private final float[] liveAccuracy = new float[1];
+    private final long[] liveTime = new long[1];
+
+    private final PayloadWriter payload;
+    private final UploadRequest batchRequest;
+
+    private boolean presencePending = false;
+    private boolean presenceOnline = false;
+    private long presenceTimeMs = 0;
+    private boolean online = true;
+    private long lastPresenceMs = 0;
+
+    private boolean networkAvailable = true;
+    private boolean networkMetered = false;
+    private long lastDrainMs = 0;
+    // Sequence after the newest fix confirmed as the live position
+    private long liveSeq = 0;
+
+    private boolean trailEnabled = true;
+    private boolean closed = false;
+    private boolean inFlight = false;
+    private long inFlightEndSeq = 0;
+    private long inFlightLiveSeq = 0;
+    private int inFlightFixCount = 0;
+    private boolean inFlightPresence = false;
+    private boolean inFlightPresenceOnline = false;
+    private long inFlightPresenceTimeMs = 0;
+    private long inFlightPresenceSentMs = 0;
+    private boolean flushAfterInFlight = false;
+
+    private ScheduledFuture<?> scheduledFlush;
+    private TrackingMetrics metrics;
+
+    public LocationBatcher(RtdbUploader uploader, ScheduledExecutorService scheduler, FixRingBuffer fixes,
+                           String userId, long windowMs, int maxBatchSize) {
+        this(uploader, scheduler, fixes, userId, windowMs, maxBatchSize,
+            Math.max(maxBatchSize, DEFAULT_DRAIN_BATCH_SIZE), DEFAULT_LARGE_BACKLOG,
+            DEFAULT_METERED_DRAIN_INTERVAL_MS);
+    }
+
+    LocationBatcher(RtdbUploader uploader, ScheduledExecutorService scheduler, FixRingBuffer fixes,
+                    String userId, long windowMs, int maxBatchSize, int drainBatchSize,
+                    int largeBacklog, long meteredDrainIntervalMs) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be >= 1");
+        }
+        if (drainBatchSize < maxBatchSize) {
+            throw new IllegalArgumentException("drainBatchSize must be >= maxBatchSize");
+        }
+        this.uploader = uploader;
+        this.scheduler = scheduler;
+        this.fixes = fixes;
+        this.userId = userId;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.drainBatchSize = drainBatchSize;
+        this.largeBacklog = largeBacklog;
+        this.meteredDrainIntervalMs = meteredDrainIntervalMs;
+        this.latitudes = new double[drainBatchSize];
+        this.longitudes = new double[drainBatchSize];
+        this.accuracies = new float[drainBatchSize];
+        this.times = new long[drainBatchSize];
+        // Sized for regular batches; a drain batch grows the buffer once
+        this.payload = new PayloadWriter(256 + (maxBatchSize + 1) * BYTES_PER_FIX);
+        this.batchRequest = new UploadRequest(UploadRequest.METHOD_PATCH, "/.json", payload.buffer(), 0,
+            this::onBatchComplete);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getDrainBatchSize() {
+        return drainBatchSize;
+    }
+
+    /** Whether batches write every fix to locationHistory or only the newest to userLocations. */
+    public synchronized void setTrailEnabled(boolean enabled) {
+        trailEnabled = enabled;
+    }
+
+    public synchronized boolean isTrailEnabled() {
+        return trailEnabled;
+    }
+
+    /** Count queued, overwritten and confirmed fixes, and their commit latency. */
+    public synchronized void setMetrics(TrackingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public synchronized void addFix(double latitude, double longitude, float accuracy, long timeMs) {
+        MainThreadGuard.assertNotMainThread("LocationBatcher.addFix");
+        boolean overwrote = fixes.append(latitude, longitude, accuracy, timeMs);
+        if (metrics != null) {
+            metrics.recordFixQueued();
+            if (overwrote) metrics.recordFixesDropped(1);
+            metrics.setPendingFixes(fixes.getPendingCount());
+        }
+        if (windowMs <= 0 || (fixes.getPendingCount() >= maxBatchSize && !isThrottled())) {
+            flush();
+        } else {
+            scheduleFlush(windowMs);
+        }
+    }
+
+    public synchronized void addPresence(boolean online, long timeMs) {
+        MainThreadGuard.assertNotMainThread("LocationBatcher.addPresence");
+        presencePending = true;
+        presenceOnline = online;
+        presenceTimeMs = timeMs;
+        this.online = online;
+        if (windowMs <= 0) {
+            flush();
+        } else {
+            scheduleFlush(windowMs);
+        }
+    }
+
+    /**
+     * Report connectivity. Going offline stops flushing; coming back, or moving from a
+     * metered to an unmetered network, starts draining the backlog at once.
+     */
+    public synchronized void setNetwork(boolean available, boolean metered) {
+        boolean wasThrottled = isThrottled();
+        boolean restored = available && !networkAvailable;
+        networkAvailable = available;
+        networkMetered = metered;
+        if (available && (restored || (wasThrottled && !isThrottled()))) {
+            flush();
+        }
+    }
+
+    public synchronized boolean isNetworkAvailable() {
+        return networkAvailable;
+    }
+
+    /**
+     * Send whatever is buffered right now, e.g. a backlog found after a restart.
+     * Safe to call with nothing pending; does nothing while offline.
+     */
+    public synchronized void flush() {
+        MainThreadGuard.assertNotMainThread("LocationBatcher.flush");
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (closed) return;
+        if (inFlight) {
+            flushAfterInFlight = true;
+            return;
+        }
+        if (!networkAvailable) {
+            // Everything stays in the ring; setNetwork() flushes when the network is back
+            return;
+        }
+
+        long nowMs = System.currentTimeMillis();
+        boolean throttled = isThrottled();
+        long startSeq = fixes.getReadSeq();
+        int count = 0;
+        // Without a trail the live write below stands in for every pending fix
+        if (trailEnabled && !throttled) {
+            count = fixes.read(startSeq, drainBatchSize, latitudes, longitudes, accuracies, times);
+        } else if (trailEnabled && nowMs - lastDrainMs >= meteredDrainIntervalMs) {
+            count = fixes.read(startSeq, maxBatchSize, latitudes, longitudes, accuracies, times);
+            lastDrainMs = nowMs;
+        }
+        long newestSeq = fixes.getWriteSeq() - 1;
+        boolean withLive = newestSeq >= liveSeq
+            && fixes.read(newestSeq, 1, liveLatitude, liveLongitude, liveAccuracy, liveTime) == 1;
+        if (count == 0 && !withLive && !presencePending) {
+            if (throttled) {
+                scheduleFlush(throttledDelayMs(nowMs));
+            }
+            return;
+        }
+
+        boolean withPresence = presencePending || ((count > 0 || withLive) && online);
+        writePatch(count, withLive, withPresence, presencePending ? presenceOnline : true,
+            presencePending ? presenceTimeMs : nowMs);
+        batchRequest.reuse(payload.buffer(), payload.length());
+        inFlight = true;
+        inFlightEndSeq = trailEnabled || !withLive ? startSeq + count : newestSeq + 1;
+        inFlightLiveSeq = withLive ? newestSeq + 1 : liveSeq;
+        inFlightFixCount = count;
+        inFlightPresence = presencePending;
+        inFlightPresenceOnline = presenceOnline;
+        inFlightPresenceTimeMs = presenceTimeMs;
+        inFlightPresenceSentMs = withPresence ? nowMs : 0;
+        presencePending = false;
+        flushAfterInFlight = false;
+
+        uploader.enqueue(batchRequest);
+    }
+
+    public int getPendingFixCount() {
+        return fixes.getPendingCount();
+    }
+
+    /** When a confirmed batch last carried presence, explicit or folded into fixes. */
+    @Override
+    public synchronized long getLastPresenceMs() {
+        return lastPresenceMs;
+    }
+
+    @Override
+    public void sendPresence(long timeMs) {
+        addPresence(true, timeMs);
+    }
+
+    /**
+     * Stop sending, e.g. before another user's batcher takes over the ring. A batch
+     * already in flight still completes, but nothing is flushed or retried after it.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private synchronized void onBatchComplete(boolean success) {
+        inFlight = false;
+        if (closed) {
+            // Confirmed fixes are still done with; whoever owns the ring now sends the rest
+            if (success) fixes.commit(inFlightEndSeq);
+            return;
+        }
+        if (success) {
+            fixes.commit(inFlightEndSeq);
+            long liveSeqBefore = liveSeq;
+            liveSeq = Math.max(liveSeq, inFlightLiveSeq);
+            if (metrics != null) {
+                // The scratch arrays still hold the batch that was just confirmed
+                long nowMs = System.currentTimeMillis();
+                for (int i = 0; i < inFlightFixCount; i++) {
+                    metrics.recordFixUploaded(nowMs - times[i]);
+                }
+                if (!trailEnabled && inFlightLiveSeq > liveSeqBefore) {
+                    metrics.recordFixUploaded(nowMs - liveTime[0]);
+                }
+                metrics.setPendingFixes(fixes.getPendingCount());
+            }
+            if (inFlightPresenceSentMs > lastPresenceMs) {
+                lastPresenceMs = inFlightPresenceSentMs;
+            }
+            if (isThrottled() && !flushAfterInFlight) {
+                scheduleFlush(throttledDelayMs(System.currentTimeMillis()));
+            } else if (flushAfterInFlight || fixes.getPendingCount() >= maxBatchSize || isOldestFixOverdue()) {
+                flush();
+            } else if (fixes.getPendingCount() > 0 || presencePending) {
+                scheduleFlush(windowMs);
+            }
+        } else {
+            // Fixes are still in the ring; only a superseded heartbeat needs restoring
+            if (inFlightPresence && !presencePending) {
+                presencePending = true;
+                presenceOnline = inFlightPresenceOnline;
+                presenceTimeMs = inFlightPresenceTimeMs;
+            }
+            scheduleFlush(Math.max(windowMs, FAILURE_RETRY_MS));
+        }
+    }
+
+    /** On a metered network with a large backlog, history is drained at a slower pace. */
+    private boolean isThrottled() {
+        return networkMetered && fixes.getPendingCount() >= largeBacklog;
+    }
+
+    /** Next wake-up while throttled: the next drain, or one window to pick up a new live fix. */
+    private long throttledDelayMs(long nowMs) {
+        long untilDrainMs = Math.max(0, lastDrainMs + meteredDrainIntervalMs - nowMs);
+        return windowMs > 0 ? Math.min(windowMs, untilDrainMs) : untilDrainMs;
+    }
+
+    /** True when the oldest pending fix has already waited a full window, e.g. a backlog tail. */
+    private boolean isOldestFixOverdue() {
+        if (fixes.read(fixes.getReadSeq(), 1, latitudes, longitudes, accuracies, times) == 0) return false;
+        return System.currentTimeMillis() - times[0] >= windowMs;
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (scheduledFlush != null || inFlight || closed) return;
+        try {
+            scheduledFlush = scheduler.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Scheduler is shutting down; pending fixes stay in the ring for the next start
+        }
+    }
+
+    private void writePatch(int fixCount, boolean withLive, boolean withPresence, boolean isOnline,
+                            long activeMs) {
+        PayloadWriter json = payload.reset().beginObject();
+        if (withLive) {
+            json.key("userLocations/", userId, "");
+            writeFix(liveLatitude[0], liveLongitude[0], liveAccuracy[0], liveTime[0], true);
+        }
+        for (int i = 0; i < fixCount; i++) {
+            json.key("locationHistory/", userId, times[i]);
+            writeFix(latitudes[i], longitudes[i], accuracies[i], times[i], false);
+        }
+        if (withPresence) {
+            json.key("presence/", userId, "").beginObject()
+                .key("isOnline").value(isOnline)
+                .key("lastActive").isoTimestamp(activeMs)
+                .key("source").value(SOURCE)
+                .endObject();
+        }
+        json.endObject();
+    }
+
+    private void writeFix(double latitude, double longitude, float accuracy, long timeMs, boolean withSource) {
+        payload.beginObject()
+            .key("latitude").value(latitude)
+            .key("longitude").value(longitude)
+            .key("accuracy").value(accuracy, 2)
+            .key("timestamp").isoTimestamp(timeMs);
+        if (withSource) {
+            payload.key("source").value(SOURCE);
+        }
+        payload.endObject();
+    }
+}
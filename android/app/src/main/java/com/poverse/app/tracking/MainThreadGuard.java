@@ -0,0 +1,51 @@
+package com.poverse.app.tracking;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flags tracking-path work that runs on the UI thread.
+ *
+ * The tracking service installs the main thread once; hot-path entry points then call
+ * {@link #assertNotMainThread(String)}. In strict mode (debuggable builds) a violation
+ * throws so it surfaces in development; otherwise it is counted and logged once.
+ * Until {@link #install(Thread, boolean)} is called every check is a no-op.
+ */
+public final class MainThreadGuard {
+    private static final String TAG = "MainThreadGuard";
+
+    private static volatile Thread mainThread;
+    private static volatile boolean strict;
+    private static final AtomicLong violations = new AtomicLong();
+
+    private MainThreadGuard() {
+    }
+
+    public static void install(Thread main, boolean strictMode) {
+        mainThread = main;
+        strict = strictMode;
+    }
+
+    public static void uninstall() {
+        mainThread = null;
+        strict = false;
+    }
+
+    public static void assertNotMainThread(String operation) {
+        Thread main = mainThread;
+        if (main == null || Thread.currentThread() != main) return;
+
+        long count = violations.incrementAndGet();
+        if (strict) {
+            throw new IllegalStateException(operation + " must not run on the main thread");
+        }
+        if (count == 1) {
+            Log.w(TAG, operation + " ran on the main thread");
+        }
+    }
+
+    public static long getViolationCount() {
+        return violations.get();
+    }
+}
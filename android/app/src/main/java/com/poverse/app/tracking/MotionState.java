@@ -0,0 +1,10 @@
+package com.poverse.app.tracking;
+
+/**
+ * Coarse movement class used to pick a location sampling profile.
+ */
+public enum MotionState {
+    STATIONARY,
+    WALKING,
+    DRIVING
+}
@@ -0,0 +1,334 @@
+package com.poverse.app.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Minimal JSON writer that encodes straight into a recycled UTF-8 byte buffer.
+ *
+ * Doubles, longs and ISO-8601 UTC timestamps are formatted digit by digit, and strings
+ * are encoded char by char, so a warmed-up writer produces a payload without creating
+ * a single object: no StringBuilder, SimpleDateFormat, Date, String or getBytes() copy.
+ * Commas between members are inserted automatically. Not thread-safe; each owner keeps
+ * its own writer and calls {@link #reset()} before building the next payload.
+ *
+ * Doubles are written with at most {@link #COORDINATE_DECIMALS} decimals (~1 cm for
+ * coordinates) and trailing zeros trimmed; NaN and infinities become null.
+ */
+public final class PayloadWriter {
+    public static final int COORDINATE_DECIMALS = 7;
+    private static final int MAX_DEPTH = 8;
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private byte[] buffer;
+    private int length = 0;
+    private int depth = 0;
+    // Per nesting level: does the next member need a leading comma
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private boolean afterKey = false;
+
+    public PayloadWriter() {
+        this(512);
+    }
+
+    public PayloadWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public PayloadWriter reset() {
+        length = 0;
+        depth = 0;
+        afterKey = false;
+        Arrays.fill(needsComma, false);
+        return this;
+    }
+
+    /** The backing array; valid up to {@link #length()} and replaced if the writer grows. */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /** Copy of the payload, for callers that must hand it off (allocates). */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public PayloadWriter beginObject() {
+        beforeValue();
+        if (depth + 1 >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested too deeply");
+        }
+        writeByte('{');
+        needsComma[++depth] = false;
+        return this;
+    }
+
+    public PayloadWriter endObject() {
+        if (depth == 0) {
+            throw new IllegalStateException("endObject without beginObject");
+        }
+        writeByte('}');
+        depth--;
+        return this;
+    }
+
+    public PayloadWriter key(CharSequence name) {
+        if (needsComma[depth]) writeByte(',');
+        needsComma[depth] = true;
+        writeQuoted(name);
+        writeByte(':');
+        afterKey = true;
+        return this;
+    }
+
+    /** Key made of a prefix, an id and a suffix, e.g. "presence/" + uid; avoids concatenation. */
+    public PayloadWriter key(CharSequence prefix, CharSequence id, CharSequence suffix) {
+        if (needsComma[depth]) writeByte(',');
+        needsComma[depth] = true;
+        writeByte('"');
+        writeEscaped(prefix);
+        writeEscaped(id);
+        writeEscaped(suffix);
+        writeByte('"');
+        writeByte(':');
+        afterKey = true;
+        return this;
+    }
+
+    /** Key "prefix + id + '/' + number", used for history entries keyed by fix time. */
+    public PayloadWriter key(CharSequence prefix, CharSequence id, long number) {
+        if (needsComma[depth]) writeByte(',');
+        needsComma[depth] = true;
+        writeByte('"');
+        writeEscaped(prefix);
+        writeEscaped(id);
+        writeByte('/');
+        writeLong(number);
+        writeByte('"');
+        writeByte(':');
+        afterKey = true;
+        return this;
+    }
+
+    public PayloadWriter value(CharSequence text) {
+        beforeValue();
+        if (text == null) {
+            writeAscii("null");
+        } else {
+            writeQuoted(text);
+        }
+        return this;
+    }
+
+    public PayloadWriter value(boolean flag) {
+        beforeValue();
+        writeAscii(flag ? "true" : "false");
+        return this;
+    }
+
+    public PayloadWriter value(long number) {
+        beforeValue();
+        writeLong(number);
+        return this;
+    }
+
+    public PayloadWriter value(double number) {
+        return value(number, COORDINATE_DECIMALS);
+    }
+
+    public PayloadWriter value(double number, int maxDecimals) {
+        beforeValue();
+        writeDouble(number, Math.max(0, Math.min(maxDecimals, POW10.length - 1)));
+        return this;
+    }
+
+    /** Quoted ISO-8601 UTC timestamp with milliseconds, e.g. "2024-03-09T14:05:07.042Z". */
+    public PayloadWriter isoTimestamp(long epochMs) {
+        beforeValue();
+        writeByte('"');
+        writeIso(epochMs);
+        writeByte('"');
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+        // Array-less writer: a bare value is only legal at the top level
+        if (depth > 0) {
+            throw new IllegalStateException("value without key");
+        }
+    }
+
+    private void writeDouble(double v, int decimals) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            writeAscii("null");
+            return;
+        }
+        long scale = POW10[decimals];
+        if (Math.abs(v) >= (double) (Long.MAX_VALUE / scale)) {
+            writeLong((long) v);
+            return;
+        }
+        long scaled = Math.round(Math.abs(v) * scale);
+        if (v < 0 && scaled != 0) writeByte('-');
+        writeLong(scaled / scale);
+        long fraction = scaled % scale;
+        if (fraction == 0) return;
+
+        // Trim trailing zeros, then emit the remaining digits with leading zeros kept
+        int digits = decimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        writeByte('.');
+        ensureCapacity(digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        length += digits;
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (v < 0) {
+            writeByte('-');
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        length += digits;
+    }
+
+    /** Civil-from-days conversion (proleptic Gregorian, UTC). */
+    private void writeIso(long epochMs) {
+        long days = floorDiv(epochMs, 86400000L);
+        long msOfDay = epochMs - days * 86400000L;
+
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        writePadded(year, 4);
+        writeByte('-');
+        writePadded(month, 2);
+        writeByte('-');
+        writePadded(day, 2);
+        writeByte('T');
+        writePadded(msOfDay / 3600000L, 2);
+        writeByte(':');
+        writePadded(msOfDay / 60000L % 60, 2);
+        writeByte(':');
+        writePadded(msOfDay / 1000L % 60, 2);
+        writeByte('.');
+        writePadded(msOfDay % 1000, 3);
+        writeByte('Z');
+    }
+
+    // Math.floorDiv needs API 24
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    private void writePadded(long v, int width) {
+        if (v < 0 || v >= POW10[width]) {
+            writeLong(v);
+            return;
+        }
+        ensureCapacity(width);
+        for (int i = width - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        length += width;
+    }
+
+    private void writeQuoted(CharSequence text) {
+        writeByte('"');
+        writeEscaped(text);
+        writeByte('"');
+    }
+
+    /** JSON-escape and UTF-8 encode without an intermediate String or byte[]. */
+    private void writeEscaped(CharSequence text) {
+        int n = text.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeAscii("\\u00");
+                writeByte(hexDigit(c >> 4));
+                writeByte(hexDigit(c & 0xF));
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                writeByte(0xF0 | (cp >> 18));
+                writeByte(0x80 | ((cp >> 12) & 0x3F));
+                writeByte(0x80 | ((cp >> 6) & 0x3F));
+                writeByte(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate: same replacement String.getBytes(UTF_8) uses
+                writeByte('?');
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static int hexDigit(int v) {
+        return v < 10 ? '0' + v : 'a' + v - 10;
+    }
+
+    private void writeAscii(String s) {
+        int n = s.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) {
+        if (length == buffer.length) ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra <= buffer.length) return;
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+}
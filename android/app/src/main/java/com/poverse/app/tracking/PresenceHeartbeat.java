@@ -0,0 +1,139 @@
+package com.poverse.app.tracking;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presence heartbeat that only writes when nothing else has proved the agent alive.
+ *
+ * Each tick asks the {@link Target} when presence last went out (a location batch
+ * carries presence too). If that was less than an interval ago the tick is skipped and
+ * the next one lines up with the interval after that write. Delays are jittered so a
+ * fleet started together does not write in lockstep, and the interval is stretched by
+ * {@link #IDLE_MULTIPLIER} while the device is idle (stationary or in Doze).
+ * Runs on the tracking scheduler shared with {@link LocationBatcher}.
+ */
+public class PresenceHeartbeat {
+    public static final long DEFAULT_INTERVAL_MS = 15000;
+    public static final int IDLE_MULTIPLIER = 4;
+    static final double JITTER = 0.1;
+
+    public interface Target {
+        /** Wall-clock time presence was last handed to the uploader, 0 if never. */
+        long getLastPresenceMs();
+
+        void sendPresence(long timeMs);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Target target;
+    private final long intervalMs;
+    private final Random random;
+
+    private volatile boolean idle = false;
+    private ScheduledFuture<?> nextTick;
+    private boolean running = false;
+    private long sentCount = 0;
+    private long skippedCount = 0;
+
+    public PresenceHeartbeat(ScheduledExecutorService scheduler, Target target) {
+        this(scheduler, target, DEFAULT_INTERVAL_MS, new Random());
+    }
+
+    public PresenceHeartbeat(ScheduledExecutorService scheduler, Target target, long intervalMs, Random random) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be > 0");
+        }
+        this.scheduler = scheduler;
+        this.target = target;
+        this.intervalMs = intervalMs;
+        this.random = random;
+    }
+
+    /** Starts ticking immediately; the first tick announces presence unless a write just went out. */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        schedule(0);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (nextTick != null) {
+            nextTick.cancel(false);
+            nextTick = null;
+        }
+    }
+
+    /**
+     * Stretch (or restore) the interval. Takes effect from the next tick, so a device
+     * waking up is re-announced within one stretched interval at most.
+     */
+    public void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+
+    public boolean isIdle() {
+        return idle;
+    }
+
+    public long getCurrentIntervalMs() {
+        return idle ? intervalMs * IDLE_MULTIPLIER : intervalMs;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    private void tick() {
+        synchronized (this) {
+            nextTick = null;
+            if (!running) return;
+        }
+        long delay = onTick(System.currentTimeMillis());
+        synchronized (this) {
+            if (running) schedule(delay);
+        }
+    }
+
+    /**
+     * Runs one heartbeat decision at nowMs.
+     * @return delay until the next tick
+     */
+    long onTick(long nowMs) {
+        long interval = getCurrentIntervalMs();
+        long dueAt = target.getLastPresenceMs() + interval;
+        if (nowMs < dueAt) {
+            synchronized (this) {
+                skippedCount++;
+            }
+            return (dueAt - nowMs) + Math.abs(jitter(interval));
+        }
+        target.sendPresence(nowMs);
+        synchronized (this) {
+            sentCount++;
+        }
+        return interval + jitter(interval);
+    }
+
+    /** Uniform in [-JITTER, +JITTER] of the interval. */
+    private long jitter(long interval) {
+        return (long) ((random.nextDouble() * 2 - 1) * JITTER * interval);
+    }
+
+    private void schedule(long delayMs) {
+        try {
+            nextTick = scheduler.schedule(this::tick, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Scheduler is shutting down with the service
+            running = false;
+        }
+    }
+}
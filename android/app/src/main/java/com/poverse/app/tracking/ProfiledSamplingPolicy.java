@@ -0,0 +1,33 @@
+package com.poverse.app.tracking;
+
+/**
+ * A sampling policy with the company's {@link TrackingProfile} laid over its profiles.
+ * Classification is the base policy's; for a given profile it stays a pure function,
+ * and swapping the profile takes effect on the next {@link SamplingEngine#getProfile()}.
+ */
+public class ProfiledSamplingPolicy implements SamplingPolicy {
+    private final SamplingPolicy base;
+    private volatile TrackingProfile profile = TrackingProfile.NONE;
+
+    public ProfiledSamplingPolicy(SamplingPolicy base) {
+        this.base = base;
+    }
+
+    public TrackingProfile getTrackingProfile() {
+        return profile;
+    }
+
+    public void setTrackingProfile(TrackingProfile profile) {
+        this.profile = profile != null ? profile : TrackingProfile.NONE;
+    }
+
+    @Override
+    public MotionState classify(float speedMps, double displacementMeters, long windowMs) {
+        return base.classify(speedMps, displacementMeters, windowMs);
+    }
+
+    @Override
+    public SamplingProfile profileFor(MotionState state) {
+        return profile.apply(state, base.profileFor(state));
+    }
+}
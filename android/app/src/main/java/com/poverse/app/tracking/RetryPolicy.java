@@ -0,0 +1,74 @@
+package com.poverse.app.tracking;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Decides whether a failed RTDB write is worth repeating, and how long to wait first.
+ *
+ * Only transient failures are retried: network errors, timeouts, 408, 429 and 5xx.
+ * Auth failures (401/403) need a new token and client errors (other 4xx) will fail the
+ * same way again, so both are reported straight away. Delays grow exponentially with
+ * "equal jitter" (half fixed, half random) so retries from many devices spread out
+ * without collapsing to zero.
+ *
+ * Retrying is safe because every tracking write is idempotent: PUT and PATCH replace
+ * values at fixed paths, and history entries are keyed by fix time.
+ */
+public final class RetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_BASE_DELAY_MS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MS = 30000;
+
+    public enum Failure {
+        TRANSIENT,
+        AUTH,
+        CLIENT
+    }
+
+    public final int maxAttempts;
+    public final long baseDelayMs;
+    public final long maxDelayMs;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be >= 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = Math.max(baseDelayMs, maxDelayMs);
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    /** Classify a non-2xx status code. */
+    public static Failure classify(int responseCode) {
+        if (responseCode == 401 || responseCode == 403) return Failure.AUTH;
+        if (responseCode == 408 || responseCode == 429 || responseCode >= 500) return Failure.TRANSIENT;
+        return Failure.CLIENT;
+    }
+
+    /** Classify an exception thrown by the transport. */
+    public static Failure classify(Exception error) {
+        // IOExceptions cover refused connections, resets, DNS and timeouts
+        return error instanceof IOException ? Failure.TRANSIENT : Failure.CLIENT;
+    }
+
+    /** @param attempt the attempt that just failed, starting at 1 */
+    public boolean shouldRetry(Failure failure, int attempt) {
+        return failure == Failure.TRANSIENT && attempt < maxAttempts;
+    }
+
+    /**
+     * Delay before attempt + 1: base * 2^(attempt-1), capped, with the upper half
+     * randomised.
+     */
+    public long backoffMs(int attempt, Random random) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 20);
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << shift);
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+}
@@ -0,0 +1,190 @@
+package com.poverse.app.tracking;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Follows one Realtime Database node over the REST streaming API (Server-Sent Events),
+ * for a service that has no Firebase SDK.
+ *
+ * The listener gets the node's whole value as JSON ("null" when it does not exist):
+ * once when the stream connects and again whenever the server reports a change, read
+ * with a plain GET so put and patch events never have to be merged locally. Values equal
+ * to the last one delivered are skipped. A dropped stream reconnects with jittered
+ * exponential backoff; RTDB sends a keep-alive every 30 seconds, so a silent socket is
+ * given up after {@link #READ_TIMEOUT_MS}. Runs on its own thread.
+ */
+public class RtdbEventStream {
+    static final int CONNECT_TIMEOUT_MS = 10000;
+    static final int READ_TIMEOUT_MS = 90000;
+
+    public interface Listener {
+        /** Called on the stream thread. */
+        void onValue(String json);
+    }
+
+    private final String url;
+    private final Listener listener;
+    private final RetryPolicy retryPolicy;
+    private final Random random = new Random();
+
+    private Thread thread;
+    private volatile boolean running = false;
+    private volatile HttpURLConnection connection;
+    private String lastValue;
+
+    /** path is the node's path from the database root, e.g. "/trackingProfiles/c1". */
+    public RtdbEventStream(String baseUrl, String path, Listener listener) {
+        this(baseUrl, path, listener, new RetryPolicy(Integer.MAX_VALUE, 5000, 10 * 60_000L));
+    }
+
+    RtdbEventStream(String baseUrl, String path, Listener listener, RetryPolicy retryPolicy) {
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.url = base + path + ".json";
+        this.listener = listener;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, "poverse-rtdb-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Closes the stream and waits briefly for its thread to notice. */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        HttpURLConnection open = connection;
+        if (open != null) {
+            open.disconnect();
+        }
+        thread.interrupt();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        thread = null;
+    }
+
+    private void run() {
+        int attempt = 0;
+        while (running) {
+            try {
+                if (follow()) {
+                    attempt = 0;
+                }
+            } catch (IOException e) {
+                // Reconnect below
+            }
+            if (!running) return;
+            attempt++;
+            try {
+                Thread.sleep(retryPolicy.backoffMs(attempt, random));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /** Reads one stream until it ends; returns true if it delivered anything. */
+    private boolean follow() throws IOException {
+        HttpURLConnection stream = open(true);
+        connection = stream;
+        boolean delivered = false;
+        try {
+            if (stream.getResponseCode() != 200) {
+                drain(stream.getErrorStream());
+                return false;
+            }
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream.getInputStream(), StandardCharsets.UTF_8));
+            String event = null;
+            String line;
+            while (running && (line = reader.readLine()) != null) {
+                if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if ("put".equals(event) || "patch".equals(event)) {
+                        deliver(read());
+                        delivered = true;
+                    } else if ("cancel".equals(event) || "auth_revoked".equals(event)) {
+                        // Rules refused the read or the token expired; back off and retry
+                        return delivered;
+                    }
+                }
+            }
+            return delivered;
+        } finally {
+            connection = null;
+            stream.disconnect();
+        }
+    }
+
+    private String read() throws IOException {
+        HttpURLConnection get = open(false);
+        try {
+            int code = get.getResponseCode();
+            if (code != 200) {
+                drain(get.getErrorStream());
+                throw new IOException("HTTP " + code);
+            }
+            return readFully(get.getInputStream());
+        } finally {
+            get.disconnect();
+        }
+    }
+
+    private void deliver(String value) {
+        if (!running || value.equals(lastValue)) return;
+        lastValue = value;
+        listener.onValue(value);
+    }
+
+    private HttpURLConnection open(boolean streaming) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        c.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        c.setReadTimeout(READ_TIMEOUT_MS);
+        if (streaming) {
+            // RTDB may answer with a 307 to the node's host; GETs follow it
+            c.setRequestProperty("Accept", "text/event-stream");
+        }
+        return c;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in != null) {
+            readFully(in);
+        }
+    }
+}
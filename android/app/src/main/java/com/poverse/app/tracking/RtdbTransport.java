@@ -0,0 +1,175 @@
+package com.poverse.app.tracking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * HTTP/1.1 transport for Realtime Database REST writes.
+ *
+ * Connections are never disconnect()ed: the response body is always read to the end
+ * and closed, which hands the socket back to HttpURLConnection's keep-alive pool so the
+ * next write to the same host skips the TCP and TLS handshakes.
+ *
+ * Compression is off by default: RTDB REST does not advertise gzip request bodies, and
+ * every refused attempt costs the body twice. For an endpoint known to take them, bodies
+ * of at least {@link #setGzipThreshold(int) gzipThreshold} bytes, i.e. backlog drains
+ * rather than live batches, are sent with Content-Encoding: gzip unless the endpoint is
+ * known to refuse it. A response listing Accept-Encoding (RFC 7694) settles support
+ * either way, and a gzip body answered with 415, or with 400 before support is
+ * confirmed, is resent uncompressed at once and gzip is never tried again.
+ */
+public class RtdbTransport {
+    /** Compression off, see the class comment. */
+    public static final int DEFAULT_GZIP_THRESHOLD_BYTES = -1;
+    /** Threshold that compresses backlog drains only, for endpoints that accept gzip. */
+    public static final int RECOMMENDED_GZIP_THRESHOLD_BYTES = 4096;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 10000;
+
+    public enum GzipSupport {
+        UNKNOWN,
+        SUPPORTED,
+        UNSUPPORTED
+    }
+
+    private final String baseUrl;
+    private final byte[] drainBuffer = new byte[512];
+    private GzipEncoder gzip;
+    private volatile int gzipThresholdBytes = DEFAULT_GZIP_THRESHOLD_BYTES;
+    private volatile GzipSupport gzipSupport = GzipSupport.UNKNOWN;
+    private volatile int lastWireBytes = -1;
+    private volatile int lastBytesSaved = 0;
+    private volatile long compressedCount = 0;
+    private volatile long bytesSaved = 0;
+
+    public RtdbTransport(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /** Smallest body sent compressed; negative disables compression. */
+    public void setGzipThreshold(int bytes) {
+        gzipThresholdBytes = bytes;
+    }
+
+    public int getGzipThreshold() {
+        return gzipThresholdBytes;
+    }
+
+    public GzipSupport getGzipSupport() {
+        return gzipSupport;
+    }
+
+    /**
+     * Body bytes put on the wire by the last send(), including a plain resend after a
+     * refused gzip body; -1 before the first.
+     */
+    public int getLastWireBytes() {
+        return lastWireBytes;
+    }
+
+    /** Body bytes compression saved on the last send(); 0 unless it went out gzipped and succeeded. */
+    public int getLastBytesSaved() {
+        return lastBytesSaved;
+    }
+
+    /** Requests the endpoint accepted compressed. */
+    public long getCompressedCount() {
+        return compressedCount;
+    }
+
+    /** Body bytes compression kept off the wire, over accepted compressed requests. */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * Execute the request and return the HTTP status code.
+     * Not thread-safe; RtdbUploader calls it from its single worker only.
+     */
+    public int send(UploadRequest request) throws IOException {
+        lastWireBytes = 0;
+        lastBytesSaved = 0;
+        int threshold = gzipThresholdBytes;
+        if (threshold < 0 || request.bodyLength < threshold || gzipSupport == GzipSupport.UNSUPPORTED) {
+            return execute(request, request.body, request.bodyLength, false);
+        }
+
+        if (gzip == null) {
+            gzip = new GzipEncoder();
+        }
+        gzip.encode(request.body, 0, request.bodyLength);
+        int code = execute(request, gzip.buffer(), gzip.length(), true);
+        boolean refused = code == 415 || (code == 400 && gzipSupport == GzipSupport.UNKNOWN);
+        if (!refused) {
+            if (code < 300) {
+                gzipSupport = GzipSupport.SUPPORTED;
+                lastBytesSaved = request.bodyLength - gzip.length();
+                compressedCount++;
+                bytesSaved += lastBytesSaved;
+            }
+            return code;
+        }
+
+        // Whatever the plain body gets, another gzip attempt would cost the body twice again
+        gzipSupport = GzipSupport.UNSUPPORTED;
+        return execute(request, request.body, request.bodyLength, false);
+    }
+
+    private int execute(UploadRequest request, byte[] body, int bodyLength, boolean gzipped) throws IOException {
+        URL url = new URL(baseUrl + request.path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Connection", "keep-alive");
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (gzipped) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+
+        // HttpURLConnection rejects PATCH, RTDB accepts it as a POST override
+        if (UploadRequest.METHOD_PATCH.equals(request.method)) {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+        } else {
+            connection.setRequestMethod(request.method);
+        }
+
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(bodyLength);
+        lastWireBytes += bodyLength;
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(body, 0, bodyLength);
+        }
+
+        int responseCode = connection.getResponseCode();
+        learnGzipSupport(connection.getHeaderField("Accept-Encoding"));
+        drain(responseCode >= 400 ? connection.getErrorStream() : connection.getInputStream());
+        return responseCode;
+    }
+
+    /** RFC 7694: a response may list the content codings the server accepts in requests. */
+    private void learnGzipSupport(String acceptEncoding) {
+        if (acceptEncoding == null) return;
+        gzipSupport = acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip")
+            ? GzipSupport.SUPPORTED : GzipSupport.UNSUPPORTED;
+    }
+
+    private void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        try {
+            while (in.read(drainBuffer) != -1) {
+                // Discard; RTDB echoes the written value back
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.poverse.app.tracking;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-worker uploader for native tracking writes.
+ *
+ * Requests are queued in a bounded FIFO; when it is full the oldest request is dropped,
+ * since a newer location or presence value supersedes it anyway. One long-lived worker
+ * thread drains the queue through a shared keep-alive RtdbTransport, so upload cost no
+ * longer scales with the number of threads the callers would otherwise spawn.
+ *
+ * Transient failures are retried in place with exponential backoff (see
+ * {@link RetryPolicy}), which keeps writes in order; auth and client errors fail at
+ * once. A {@link CircuitBreaker} holds the worker back during outages instead of
+ * burning radio time on requests that cannot succeed. Outcomes are exposed as counters.
+ *
+ * While {@link #setNetworkAvailable(boolean) no validated network} is reported, the
+ * worker makes no attempts at all and requests simply wait in the queue.
+ */
+public class RtdbUploader {
+    private static final String TAG = "RtdbUploader";
+    public static final int DEFAULT_CAPACITY = 64;
+
+    public interface Listener {
+        void onUploaded(UploadRequest request, int responseCode);
+
+        void onFailed(UploadRequest request, int responseCode, Exception error);
+    }
+
+    private final RtdbTransport transport;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker breaker;
+    private final Random random = new Random();
+    private final int capacity;
+    private final ArrayDeque<UploadRequest> queue;
+    private final Object lock = new Object();
+    private final Thread worker;
+
+    private volatile Listener listener;
+    private volatile ScopedWakeLock wakeLock;
+    private volatile TrackingMetrics metrics;
+    private boolean shuttingDown = false;
+    private boolean networkAvailable = true;
+    private long droppedCount = 0;
+    private long offlineWaitCount = 0;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong transientFailureCount = new AtomicLong();
+    private final AtomicLong authFailureCount = new AtomicLong();
+    private final AtomicLong clientErrorCount = new AtomicLong();
+    private final AtomicLong shortCircuitedCount = new AtomicLong();
+
+    public RtdbUploader(RtdbTransport transport) {
+        this(transport, DEFAULT_CAPACITY);
+    }
+
+    public RtdbUploader(RtdbTransport transport, int capacity) {
+        this(transport, capacity, RetryPolicy.defaults(), new CircuitBreaker());
+    }
+
+    public RtdbUploader(RtdbTransport transport, int capacity, RetryPolicy retryPolicy, CircuitBreaker breaker) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        this.transport = transport;
+        this.retryPolicy = retryPolicy;
+        this.breaker = breaker;
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<>(capacity);
+        this.worker = new Thread(this::runLoop, "poverse-uploader");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Hold the CPU awake for each attempt and completion callback. Backoff and
+     * circuit-breaker waits run without it.
+     */
+    public void setWakeLock(ScopedWakeLock wakeLock) {
+        this.wakeLock = wakeLock;
+    }
+
+    /** Record bytes, HTTP latency, retries and failures of every attempt. */
+    public void setMetrics(TrackingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Pause or resume network attempts. Coming back online also closes the circuit
+     * breaker, since failures from before the outage say nothing about the new network.
+     */
+    public void setNetworkAvailable(boolean available) {
+        boolean restored;
+        synchronized (lock) {
+            restored = available && !networkAvailable;
+            networkAvailable = available;
+            lock.notifyAll();
+        }
+        if (restored) {
+            breaker.reset();
+        }
+    }
+
+    public boolean isNetworkAvailable() {
+        synchronized (lock) {
+            return networkAvailable;
+        }
+    }
+
+    public RtdbTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Queue a request for upload.
+     * @return false if the uploader is shut down and the request was discarded
+     */
+    public boolean enqueue(UploadRequest request) {
+        MainThreadGuard.assertNotMainThread("RtdbUploader.enqueue");
+        UploadRequest dropped = null;
+        boolean accepted;
+        synchronized (lock) {
+            accepted = !shuttingDown;
+            if (accepted) {
+                if (queue.size() >= capacity) {
+                    dropped = queue.pollFirst();
+                    droppedCount++;
+                    Log.w(TAG, "Queue full, dropped oldest: " + dropped);
+                }
+                queue.addLast(request);
+                lock.notifyAll();
+            }
+        }
+        // Callbacks run outside the lock so they may enqueue again
+        if (dropped != null) {
+            dropped.complete(false);
+        }
+        if (!accepted) {
+            request.complete(false);
+        }
+        return accepted;
+    }
+
+    public int getQueueSize() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /** Requests the server accepted (2xx). */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /** Extra attempts made after a transient failure. */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /** Failed attempts by class; one request can add several transient failures. */
+    public long getTransientFailureCount() {
+        return transientFailureCount.get();
+    }
+
+    public long getAuthFailureCount() {
+        return authFailureCount.get();
+    }
+
+    public long getClientErrorCount() {
+        return clientErrorCount.get();
+    }
+
+    /** Times a request had to wait for the network to come back before its attempt. */
+    public long getOfflineWaitCount() {
+        synchronized (lock) {
+            return offlineWaitCount;
+        }
+    }
+
+    /** Requests failed without a network attempt because the breaker was open or the device offline at shutdown. */
+    public long getShortCircuitedCount() {
+        return shortCircuitedCount.get();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    public long getCircuitOpenCount() {
+        return breaker.getOpenCount();
+    }
+
+    /**
+     * Stop accepting requests and let the worker flush what is already queued.
+     * Waits up to timeoutMs for the flush; 0 returns immediately.
+     */
+    public void shutdown(long timeoutMs) {
+        synchronized (lock) {
+            shuttingDown = true;
+            lock.notifyAll();
+        }
+        if (timeoutMs <= 0) return;
+        try {
+            worker.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private UploadRequest take() throws InterruptedException {
+        synchronized (lock) {
+            while (queue.isEmpty()) {
+                if (shuttingDown) return null;
+                lock.wait();
+            }
+            return queue.pollFirst();
+        }
+    }
+
+    private void runLoop() {
+        while (true) {
+            UploadRequest request;
+            try {
+                request = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (request == null) return;
+            boolean success = deliver(request);
+            ScopedWakeLock.Scope scope = openWakeScope();
+            try {
+                request.complete(success);
+            } finally {
+                if (scope != null) scope.close();
+            }
+        }
+    }
+
+    private ScopedWakeLock.Scope openWakeScope() {
+        ScopedWakeLock lock = wakeLock;
+        return lock != null ? lock.open() : null;
+    }
+
+    private boolean deliver(UploadRequest request) {
+        Listener l = listener;
+        TrackingMetrics m = metrics;
+        for (int attempt = 1; ; attempt++) {
+            if (!awaitNetwork() || !awaitCircuit()) {
+                shortCircuitedCount.incrementAndGet();
+                if (m != null) m.recordRequestFailed();
+                Log.w(TAG, "Offline or circuit open at shutdown, not sending " + request);
+                if (l != null) l.onFailed(request, 0, null);
+                return false;
+            }
+
+            int responseCode = 0;
+            Exception error = null;
+            long startedNs = System.nanoTime();
+            ScopedWakeLock.Scope scope = openWakeScope();
+            try {
+                responseCode = transport.send(request);
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                if (scope != null) scope.close();
+            }
+            boolean ok = error == null && responseCode >= 200 && responseCode < 300;
+            // Only attempts the server answered say anything about bytes sent and latency
+            if (m != null && error == null) {
+                int wireBytes = transport.getLastWireBytes();
+                long latencyMs = (System.nanoTime() - startedNs) / 1000000L;
+                m.recordAttempt(wireBytes >= 0 ? wireBytes : request.bodyLength, latencyMs, ok);
+            }
+            if (ok) {
+                int saved = transport.getLastBytesSaved();
+                if (m != null && saved > 0) m.recordCompressed(saved);
+                breaker.onSuccess();
+                sentCount.incrementAndGet();
+                if (l != null) l.onUploaded(request, responseCode);
+                return true;
+            }
+
+            RetryPolicy.Failure failure = error != null
+                ? RetryPolicy.classify(error) : RetryPolicy.classify(responseCode);
+            recordFailure(failure);
+            if (!retryPolicy.shouldRetry(failure, attempt) || isShuttingDown()) {
+                if (error != null) {
+                    Log.e(TAG, "Firebase request failed (" + failure + "): " + error.getMessage());
+                } else {
+                    Log.w(TAG, "Firebase response " + responseCode + " (" + failure + ") for " + request);
+                }
+                if (m != null) m.recordRequestFailed();
+                if (l != null) l.onFailed(request, responseCode, error);
+                return false;
+            }
+            retryCount.incrementAndGet();
+            if (m != null) m.recordRetry();
+            pause(retryPolicy.backoffMs(attempt, random));
+        }
+    }
+
+    private void recordFailure(RetryPolicy.Failure failure) {
+        switch (failure) {
+            case TRANSIENT:
+                transientFailureCount.incrementAndGet();
+                breaker.onFailure(System.currentTimeMillis());
+                break;
+            case AUTH:
+                authFailureCount.incrementAndGet();
+                break;
+            default:
+                clientErrorCount.incrementAndGet();
+                break;
+        }
+    }
+
+    /**
+     * Wait while there is no network, without a timeout: only connectivity or
+     * shutdown ends the wait.
+     * @return false if the uploader started shutting down while offline
+     */
+    private boolean awaitNetwork() {
+        synchronized (lock) {
+            if (networkAvailable) return true;
+            offlineWaitCount++;
+            while (!networkAvailable) {
+                if (shuttingDown) return false;
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Wait while the breaker is open.
+     * @return false if the uploader started shutting down while it was open
+     */
+    private boolean awaitCircuit() {
+        while (true) {
+            long waitMs = breaker.delayBeforeSendMs(System.currentTimeMillis());
+            if (waitMs <= 0) return true;
+            if (isShuttingDown()) return false;
+            pause(waitMs);
+        }
+    }
+
+    private boolean isShuttingDown() {
+        synchronized (lock) {
+            return shuttingDown;
+        }
+    }
+
+    /** Sleep up to delayMs; shutdown cuts it short so the remaining queue is flushed promptly. */
+    private void pause(long delayMs) {
+        long deadline = System.currentTimeMillis() + delayMs;
+        synchronized (lock) {
+            long remaining = delayMs;
+            while (!shuttingDown && remaining > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.poverse.app.tracking;
+
+/**
+ * Classifies recent fixes as stationary, walking or driving and tells the tracking
+ * service when its LocationRequest should change.
+ *
+ * Keeps a short window of fixes in primitive arrays, so feeding a fix does not allocate.
+ * A new state must be voted for on consecutive fixes before it is adopted, so a single
+ * noisy fix cannot flip the profile back and forth.
+ */
+public class SamplingEngine {
+    public interface Listener {
+        void onMotionStateChanged(MotionState from, MotionState to, SamplingProfile profile);
+    }
+
+    static final int WINDOW_SIZE = 6;
+    static final long MAX_WINDOW_MS = 3 * 60000;
+    public static final int DEFAULT_CONFIRMATIONS = 2;
+
+    private final SamplingPolicy policy;
+    private final int confirmations;
+
+    private final double[] latitudes = new double[WINDOW_SIZE];
+    private final double[] longitudes = new double[WINDOW_SIZE];
+    private final long[] times = new long[WINDOW_SIZE];
+    private int head = 0;
+    private int count = 0;
+
+    private MotionState state;
+    private MotionState candidate;
+    private int candidateVotes = 0;
+    private Listener listener;
+
+    public SamplingEngine(SamplingPolicy policy) {
+        this(policy, MotionState.WALKING, DEFAULT_CONFIRMATIONS);
+    }
+
+    public SamplingEngine(SamplingPolicy policy, MotionState initialState, int confirmations) {
+        this.policy = policy;
+        this.state = initialState;
+        this.confirmations = Math.max(1, confirmations);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized MotionState getState() {
+        return state;
+    }
+
+    public synchronized SamplingProfile getProfile() {
+        return policy.profileFor(state);
+    }
+
+    /**
+     * Feed one fix.
+     * @param speedMps reported ground speed, or a negative value when the fix has none
+     * @return true if the sampling profile changed and the location request must be reissued
+     */
+    public boolean onFix(double latitude, double longitude, float speedMps, long timeMs) {
+        MotionState from;
+        MotionState to;
+        SamplingProfile profile;
+        boolean changed;
+        synchronized (this) {
+            int newest = (head + count - 1 + WINDOW_SIZE) % WINDOW_SIZE;
+            float speed = speedMps;
+            if (speed < 0 && count > 0 && timeMs > times[newest]) {
+                speed = (float) (GeoMath.distanceMeters(latitudes[newest], longitudes[newest], latitude, longitude)
+                    * 1000.0 / (timeMs - times[newest]));
+            }
+
+            // Append, overwriting the oldest entry once the window is full
+            int slot = (head + count) % WINDOW_SIZE;
+            if (count == WINDOW_SIZE) {
+                head = (head + 1) % WINDOW_SIZE;
+            } else {
+                count++;
+            }
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            times[slot] = timeMs;
+
+            // Oldest entry still inside the time window
+            int oldest = head;
+            for (int i = 0; i < count - 1; i++) {
+                int idx = (head + i) % WINDOW_SIZE;
+                if (timeMs - times[idx] <= MAX_WINDOW_MS) break;
+                oldest = (idx + 1) % WINDOW_SIZE;
+            }
+            double displacement = GeoMath.distanceMeters(latitudes[oldest], longitudes[oldest], latitude, longitude);
+            long windowMs = timeMs - times[oldest];
+
+            MotionState vote = policy.classify(Math.max(speed, 0f), displacement, windowMs);
+            if (vote == state) {
+                candidate = null;
+                candidateVotes = 0;
+                return false;
+            }
+            if (vote != candidate) {
+                candidate = vote;
+                candidateVotes = 0;
+            }
+            if (++candidateVotes < confirmations) {
+                return false;
+            }
+
+            from = state;
+            to = vote;
+            SamplingProfile previous = policy.profileFor(from);
+            state = to;
+            candidate = null;
+            candidateVotes = 0;
+            profile = policy.profileFor(to);
+            changed = !previous.equals(profile);
+        }
+        notifyListener(from, to, profile);
+        return changed;
+    }
+
+    private void notifyListener(MotionState from, MotionState to, SamplingProfile profile) {
+        Listener l = listener;
+        if (l != null) {
+            l.onMotionStateChanged(from, to, profile);
+        }
+    }
+}
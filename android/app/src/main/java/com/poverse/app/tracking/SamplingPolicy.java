@@ -0,0 +1,18 @@
+package com.poverse.app.tracking;
+
+/**
+ * Decides how an agent is moving and how often to sample for that movement.
+ * Implementations must be pure functions of their arguments so traces replay
+ * deterministically.
+ */
+public interface SamplingPolicy {
+    /**
+     * Classify recent movement.
+     * @param speedMps best speed estimate for the latest fix
+     * @param displacementMeters straight-line distance covered across the window
+     * @param windowMs time spanned by the window
+     */
+    MotionState classify(float speedMps, double displacementMeters, long windowMs);
+
+    SamplingProfile profileFor(MotionState state);
+}
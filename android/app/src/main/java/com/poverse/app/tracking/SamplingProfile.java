@@ -0,0 +1,49 @@
+package com.poverse.app.tracking;
+
+/**
+ * Parameters for one LocationRequest. Priority values are the
+ * com.google.android.gms.location.Priority constants, mirrored here so the
+ * sampling logic stays testable on the JVM.
+ */
+public final class SamplingProfile {
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    public static final int PRIORITY_LOW_POWER = 104;
+
+    public final int priority;
+    public final long intervalMs;
+    public final float minDistanceMeters;
+
+    public SamplingProfile(int priority, long intervalMs, float minDistanceMeters) {
+        this.priority = priority;
+        this.intervalMs = intervalMs;
+        this.minDistanceMeters = minDistanceMeters;
+    }
+
+    public long getMinUpdateIntervalMs() {
+        return intervalMs / 2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SamplingProfile)) return false;
+        SamplingProfile other = (SamplingProfile) o;
+        return priority == other.priority
+            && intervalMs == other.intervalMs
+            && Float.compare(minDistanceMeters, other.minDistanceMeters) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = priority;
+        result = 31 * result + (int) (intervalMs ^ (intervalMs >>> 32));
+        result = 31 * result + Float.floatToIntBits(minDistanceMeters);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "priority=" + priority + " interval=" + intervalMs + "ms minDistance=" + minDistanceMeters + "m";
+    }
+}
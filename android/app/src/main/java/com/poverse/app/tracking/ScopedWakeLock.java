@@ -0,0 +1,89 @@
+package com.poverse.app.tracking;
+
+/**
+ * Reference-counted wake lock held only while tracking work is actually running.
+ *
+ * Each unit of work (processing a fix, sending a request) opens a {@link Scope}; the
+ * underlying lock is acquired when the first scope opens and released when the last one
+ * closes, so the CPU may sleep between fixes. Every acquisition carries a safety
+ * timeout in case a scope is leaked. Cumulative held time is tracked for diagnostics.
+ */
+public class ScopedWakeLock {
+    public static final long DEFAULT_TIMEOUT_MS = 60000;
+
+    /** The platform lock; PowerManager.WakeLock in the service, a fake in tests. */
+    public interface Lock {
+        void acquire(long timeoutMs);
+
+        void release();
+    }
+
+    /** One open unit of work. Closing more than once is harmless. */
+    public final class Scope implements AutoCloseable {
+        private boolean closed = false;
+
+        private Scope() {
+        }
+
+        @Override
+        public void close() {
+            synchronized (ScopedWakeLock.this) {
+                if (closed) return;
+                closed = true;
+            }
+            release();
+        }
+    }
+
+    private final Lock lock;
+    private final long timeoutMs;
+
+    private int refCount = 0;
+    private long heldSinceNs = 0;
+    private long heldTotalNs = 0;
+    private long acquireCount = 0;
+
+    public ScopedWakeLock(Lock lock) {
+        this(lock, DEFAULT_TIMEOUT_MS);
+    }
+
+    public ScopedWakeLock(Lock lock, long timeoutMs) {
+        this.lock = lock;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public synchronized Scope open() {
+        if (refCount++ == 0) {
+            lock.acquire(timeoutMs);
+            heldSinceNs = System.nanoTime();
+            acquireCount++;
+        }
+        return new Scope();
+    }
+
+    private synchronized void release() {
+        if (refCount == 0) return;
+        if (--refCount == 0) {
+            heldTotalNs += System.nanoTime() - heldSinceNs;
+            lock.release();
+        }
+    }
+
+    public synchronized boolean isHeld() {
+        return refCount > 0;
+    }
+
+    /** Total time the platform lock has been held, including a currently open hold. */
+    public synchronized long getHeldTimeMs() {
+        long total = heldTotalNs;
+        if (refCount > 0) {
+            total += System.nanoTime() - heldSinceNs;
+        }
+        return total / 1000000L;
+    }
+
+    /** How many times the platform lock was taken (not how many scopes were opened). */
+    public synchronized long getAcquireCount() {
+        return acquireCount;
+    }
+}
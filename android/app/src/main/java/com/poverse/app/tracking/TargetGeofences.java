@@ -0,0 +1,191 @@
+package com.poverse.app.tracking;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * On-device geofences around the agent's pending target assignments, used to spend
+ * high-accuracy GPS only where it matters.
+ *
+ * Once a target list has been supplied, fixes are checked against every target: inside
+ * an enter radius the sampling profile is left as the motion policy chose it, between
+ * targets high accuracy is capped to balanced power. The agent leaves a fence only
+ * beyond {@link #EXIT_FACTOR} times its radius, so a fix wobbling on the boundary does
+ * not flip the request back and forth. Balanced fixes are coarse, so a fix whose
+ * accuracy circle reaches the fence already counts as entering it.
+ *
+ * {@link #update(Collection)} takes the full assignment list and applies only the
+ * difference; the per-fix check walks flat arrays and does not allocate.
+ */
+public class TargetGeofences {
+    public static final float DEFAULT_ENTER_RADIUS_M = 250;
+    static final double EXIT_FACTOR = 1.5;
+
+    public static final class Target {
+        public final String id;
+        public final double latitude;
+        public final double longitude;
+        public final float radiusMeters;
+
+        public Target(String id, double latitude, double longitude, float radiusMeters) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radiusMeters = radiusMeters > 0 ? radiusMeters : DEFAULT_ENTER_RADIUS_M;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Target)) return false;
+            Target other = (Target) o;
+            return id.equals(other.id)
+                && Double.compare(latitude, other.latitude) == 0
+                && Double.compare(longitude, other.longitude) == 0
+                && Float.compare(radiusMeters, other.radiusMeters) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return id + " (" + latitude + ", " + longitude + " r=" + radiusMeters + "m)";
+        }
+    }
+
+    private final Map<String, Target> targets = new HashMap<>();
+
+    // Flat copy of targets for the per-fix check, rebuilt when the set changes
+    private String[] ids = new String[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private float[] radii = new float[0];
+
+    private boolean enabled = false;
+    private int insideIndex = -1;
+    private long enterCount = 0;
+
+    /**
+     * Replace the target set with the given assignments, touching only what changed.
+     * Enables precision switching, even for an empty list.
+     * @return true if any target was added, moved or removed
+     */
+    public synchronized boolean update(Collection<Target> next) {
+        enabled = true;
+        boolean changed = false;
+        Map<String, Target> incoming = new HashMap<>();
+        for (Target target : next) {
+            incoming.put(target.id, target);
+        }
+        for (Target target : incoming.values()) {
+            if (!target.equals(targets.put(target.id, target))) {
+                changed = true;
+            }
+        }
+        if (targets.keySet().retainAll(incoming.keySet())) {
+            changed = true;
+        }
+        if (changed) {
+            rebuild();
+        }
+        return changed;
+    }
+
+    /** Forget all targets and go back to the motion policy alone. */
+    public synchronized void disable() {
+        enabled = false;
+        targets.clear();
+        rebuild();
+    }
+
+    private void rebuild() {
+        String insideId = insideIndex >= 0 ? ids[insideIndex] : null;
+        int n = targets.size();
+        ids = new String[n];
+        latitudes = new double[n];
+        longitudes = new double[n];
+        radii = new float[n];
+        insideIndex = -1;
+        int i = 0;
+        for (Target target : targets.values()) {
+            ids[i] = target.id;
+            latitudes[i] = target.latitude;
+            longitudes[i] = target.longitude;
+            radii[i] = target.radiusMeters;
+            if (target.id.equals(insideId)) {
+                insideIndex = i;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Check one fix against the fences.
+     * @return true if the agent entered or left a fence, i.e. the profile may have changed
+     */
+    public synchronized boolean onFix(double latitude, double longitude, float accuracyMeters) {
+        if (!enabled) return false;
+        boolean wasInside = insideIndex >= 0;
+
+        if (wasInside) {
+            double distance = GeoMath.distanceMeters(latitude, longitude,
+                latitudes[insideIndex], longitudes[insideIndex]);
+            if (distance <= radii[insideIndex] * EXIT_FACTOR) {
+                return false;
+            }
+            insideIndex = -1;
+        }
+
+        // Nearest fence whose radius, widened by the fix's own uncertainty, covers the fix
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ids.length; i++) {
+            double distance = GeoMath.distanceMeters(latitude, longitude, latitudes[i], longitudes[i]);
+            double reach = radii[i] + Math.min(Math.max(accuracyMeters, 0f), radii[i]);
+            if (distance <= reach && distance < best) {
+                best = distance;
+                insideIndex = i;
+            }
+        }
+        if (insideIndex >= 0 && !wasInside) {
+            enterCount++;
+        }
+        return wasInside != (insideIndex >= 0);
+    }
+
+    /**
+     * The profile to request: unchanged inside a fence or while disabled, otherwise
+     * high accuracy is capped to balanced power.
+     */
+    public synchronized SamplingProfile adjust(SamplingProfile base) {
+        if (!enabled || insideIndex >= 0 || base.priority != SamplingProfile.PRIORITY_HIGH_ACCURACY) {
+            return base;
+        }
+        return new SamplingProfile(SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY,
+            base.intervalMs, base.minDistanceMeters);
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized boolean isInside() {
+        return insideIndex >= 0;
+    }
+
+    /** Id of the target whose fence the agent is in, or null. */
+    public synchronized String getInsideTargetId() {
+        return insideIndex >= 0 ? ids[insideIndex] : null;
+    }
+
+    public synchronized int size() {
+        return ids.length;
+    }
+
+    public synchronized long getEnterCount() {
+        return enterCount;
+    }
+}
@@ -0,0 +1,430 @@
+package com.poverse.app.tracking;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Plays a recorded trace (GPX, CSV or NMEA) back as if a location provider delivered it,
+ * so a field agent's day can be re-run in the lab and its writes, bytes and CPU compared
+ * between builds.
+ *
+ * Fix times keep the trace's spacing but are moved to start at the replay's base time,
+ * so the filters downstream see the same speeds however fast the replay runs; speed only
+ * shortens the waits between deliveries (0 delivers as fast as the sink takes them).
+ * With a max delay, fixes are held and handed over together like a batched request
+ * (TrackingMode.maxUpdateDelayMs) would.
+ */
+public final class TraceReplay {
+    /** Accuracy of points whose trace carries none (GPX, NMEA RMC). */
+    public static final float DEFAULT_ACCURACY_M = 10f;
+
+    private static final double KNOTS_TO_MPS = 0.514444;
+    private static final Pattern ISO_TIME = Pattern.compile(
+        "(\\d{4})-(\\d{2})-(\\d{2})[T ](\\d{2}):(\\d{2}):(\\d{2})(?:\\.(\\d+))?(Z|[+-]\\d{2}:?\\d{2})?");
+
+    /** One recorded fix; speedMps is negative when the trace has none. */
+    public static final class Point {
+        public final long timeMs;
+        public final double latitude;
+        public final double longitude;
+        public final float accuracy;
+        public final float speedMps;
+
+        public Point(long timeMs, double latitude, double longitude, float accuracy, float speedMps) {
+            this.timeMs = timeMs;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.speedMps = speedMps;
+        }
+
+        Point at(long newTimeMs) {
+            return new Point(newTimeMs, latitude, longitude, accuracy, speedMps);
+        }
+    }
+
+    public interface Sink {
+        /** One delivery, oldest first; called on the scheduler's thread. */
+        void onFixes(List<Point> fixes);
+
+        /** The last fix was delivered. */
+        void onFinished();
+    }
+
+    private final List<Point> points;
+    private final double speed;
+    private final long maxDelayMs;
+
+    private ScheduledExecutorService scheduler;
+    private Sink sink;
+    private ScheduledFuture<?> pending;
+    private long baseTimeMs;
+    private long startNs;
+    private int next;
+    private volatile int delivered;
+    private volatile boolean running;
+
+    /**
+     * points must be in time order (as parse returns them); speed 1 is real time, 60 plays
+     * an hour a minute, 0 as fast as possible.
+     */
+    public TraceReplay(List<Point> points, double speed, long maxDelayMs) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("Trace has no points");
+        }
+        this.points = Collections.unmodifiableList(new ArrayList<>(points));
+        this.speed = Math.max(0, speed);
+        this.maxDelayMs = Math.max(0, maxDelayMs);
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    /** Fixes handed to the sink so far. */
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public boolean isFinished() {
+        return delivered == points.size();
+    }
+
+    /** Start delivering; the first fix is stamped baseTimeMs. */
+    public synchronized void start(ScheduledExecutorService scheduler, long baseTimeMs, Sink sink) {
+        if (running) return;
+        running = true;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.baseTimeMs = baseTimeMs;
+        startNs = System.nanoTime();
+        next = 0;
+        delivered = 0;
+        scheduleNext();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    private void scheduleNext() {
+        long dueTraceMs = dueTime(next) - points.get(0).timeMs;
+        long delayNs = speed > 0 ? startNs + (long) (dueTraceMs * 1e6 / speed) - System.nanoTime() : 0;
+        pending = scheduler.schedule(this::deliverNext, Math.max(0, delayNs), TimeUnit.NANOSECONDS);
+    }
+
+    /** Trace time at which the delivery starting with point first is handed over. */
+    private long dueTime(int first) {
+        long last = points.get(points.size() - 1).timeMs;
+        return Math.min(points.get(first).timeMs + maxDelayMs, last);
+    }
+
+    private void deliverNext() {
+        List<Point> batch;
+        boolean finished;
+        synchronized (this) {
+            if (!running) return;
+            long due = dueTime(next);
+            long firstTimeMs = points.get(0).timeMs;
+            batch = new ArrayList<>();
+            while (next < points.size() && points.get(next).timeMs <= due) {
+                Point point = points.get(next++);
+                batch.add(point.at(baseTimeMs + point.timeMs - firstTimeMs));
+            }
+            finished = next == points.size();
+            if (finished) {
+                running = false;
+            }
+            pending = null;
+            delivered += batch.size();
+        }
+        sink.onFixes(batch);
+        if (finished) {
+            sink.onFinished();
+            return;
+        }
+        // Only after the sink returned, so deliveries never overlap or reorder
+        synchronized (this) {
+            if (running) {
+                scheduleNext();
+            }
+        }
+    }
+
+    /**
+     * Read a trace; name picks the format by extension (.gpx, .nmea or .csv), and
+     * anything else is sniffed from the first character. Points out of time order are
+     * dropped, as a location provider would never report them.
+     */
+    public static List<Point> parse(Reader reader, String name) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String lower = name != null ? name.toLowerCase(Locale.US) : "";
+        List<Point> points;
+        if (lower.endsWith(".gpx")) {
+            points = parseGpx(in);
+        } else if (lower.endsWith(".nmea")) {
+            points = parseNmea(in);
+        } else if (lower.endsWith(".csv")) {
+            points = parseCsv(in);
+        } else {
+            in.mark(1);
+            int first = in.read();
+            in.reset();
+            points = first == '<' ? parseGpx(in) : first == '$' ? parseNmea(in) : parseCsv(in);
+        }
+
+        List<Point> ordered = new ArrayList<>(points.size());
+        long lastTimeMs = Long.MIN_VALUE;
+        for (Point point : points) {
+            if (point.timeMs > lastTimeMs) {
+                ordered.add(point);
+                lastTimeMs = point.timeMs;
+            }
+        }
+        if (ordered.isEmpty()) {
+            throw new IOException("No timed points in " + name);
+        }
+        return ordered;
+    }
+
+    /** Track, route and waypoints, in document order; time and speed from their children. */
+    static List<Point> parseGpx(Reader reader) throws IOException {
+        final List<Point> points = new ArrayList<>();
+        DefaultHandler handler = new DefaultHandler() {
+            private final StringBuilder text = new StringBuilder();
+            private boolean inPoint;
+            private double latitude;
+            private double longitude;
+            private long timeMs;
+            private float speedMps;
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes)
+                    throws SAXException {
+                String tag = localName(localName, qName);
+                text.setLength(0);
+                if ("trkpt".equals(tag) || "rtept".equals(tag) || "wpt".equals(tag)) {
+                    try {
+                        latitude = Double.parseDouble(attributes.getValue("lat"));
+                        longitude = Double.parseDouble(attributes.getValue("lon"));
+                    } catch (NullPointerException | NumberFormatException e) {
+                        throw new SAXException("GPX point without lat/lon");
+                    }
+                    inPoint = true;
+                    timeMs = Long.MIN_VALUE;
+                    speedMps = -1;
+                }
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) throws SAXException {
+                if (!inPoint) return;
+                String tag = localName(localName, qName);
+                String value = text.toString().trim();
+                if ("time".equals(tag)) {
+                    timeMs = parseTime(value);
+                    if (timeMs == Long.MIN_VALUE) throw new SAXException("Bad GPX time: " + value);
+                } else if ("speed".equals(tag)) {
+                    speedMps = parseFloat(value, -1);
+                } else if ("trkpt".equals(tag) || "rtept".equals(tag) || "wpt".equals(tag)) {
+                    inPoint = false;
+                    // Untimed points cannot be replayed
+                    if (timeMs != Long.MIN_VALUE) {
+                        points.add(new Point(timeMs, latitude, longitude, DEFAULT_ACCURACY_M, speedMps));
+                    }
+                }
+            }
+        };
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(new InputSource(reader), handler);
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Unreadable GPX: " + e.getMessage(), e);
+        }
+        return points;
+    }
+
+    /**
+     * Comma-separated rows with a header naming the columns: time (or timestamp,
+     * timestamp_ms), lat (latitude), lng (lon, longitude) and optionally accuracy and
+     * speed. Times are epoch milliseconds or ISO 8601. Without a header the columns are
+     * time, lat, lng, accuracy, speed, as in the test traces.
+     */
+    static List<Point> parseCsv(BufferedReader reader) throws IOException {
+        int time = 0;
+        int lat = 1;
+        int lng = 2;
+        int accuracy = 3;
+        int speed = 4;
+        List<Point> points = new ArrayList<>();
+        String line;
+        boolean first = true;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] cols = line.split(",", -1);
+            if (first) {
+                first = false;
+                if (!Character.isDigit(cols[0].trim().charAt(0))) {
+                    time = lat = lng = accuracy = speed = -1;
+                    for (int i = 0; i < cols.length; i++) {
+                        String column = cols[i].trim().toLowerCase(Locale.US);
+                        if (column.equals("time") || column.startsWith("timestamp")) time = i;
+                        else if (column.equals("lat") || column.equals("latitude")) lat = i;
+                        else if (column.equals("lng") || column.equals("lon") || column.equals("longitude")) lng = i;
+                        else if (column.equals("accuracy")) accuracy = i;
+                        else if (column.equals("speed")) speed = i;
+                    }
+                    if (time < 0 || lat < 0 || lng < 0) {
+                        throw new IOException("CSV header needs time, lat and lng columns");
+                    }
+                    continue;
+                }
+            }
+            try {
+                long timeMs = parseTime(cols[time].trim());
+                if (timeMs == Long.MIN_VALUE) throw new NumberFormatException(cols[time]);
+                points.add(new Point(timeMs,
+                    Double.parseDouble(cols[lat].trim()),
+                    Double.parseDouble(cols[lng].trim()),
+                    accuracy >= 0 && accuracy < cols.length ? parseFloat(cols[accuracy], DEFAULT_ACCURACY_M) : DEFAULT_ACCURACY_M,
+                    speed >= 0 && speed < cols.length ? parseFloat(cols[speed], -1) : -1));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Bad CSV row: " + line);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Recommended minimum sentences ($GPRMC, $GNRMC, ...) with a valid fix; everything
+     * else is skipped, as are sentences whose checksum does not match.
+     */
+    static List<Point> parseNmea(BufferedReader reader) throws IOException {
+        List<Point> points = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() < 7 || line.charAt(0) != '$' || !line.startsWith("RMC", 3)) continue;
+            int star = line.indexOf('*');
+            if (star > 0) {
+                if (!checksumMatches(line, star)) continue;
+                line = line.substring(0, star);
+            }
+            String[] f = line.split(",", -1);
+            // $xxRMC,time,status,lat,N/S,lon,E/W,knots,course,date,...
+            if (f.length < 10 || !"A".equals(f[2]) || f[1].length() < 6 || f[9].length() != 6) continue;
+            try {
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+                calendar.clear();
+                int year = Integer.parseInt(f[9].substring(4, 6));
+                // RMC has a two-digit year; GPS receivers predate 2000 only just
+                calendar.set(year < 80 ? 2000 + year : 1900 + year,
+                    Integer.parseInt(f[9].substring(2, 4)) - 1,
+                    Integer.parseInt(f[9].substring(0, 2)),
+                    Integer.parseInt(f[1].substring(0, 2)),
+                    Integer.parseInt(f[1].substring(2, 4)),
+                    Integer.parseInt(f[1].substring(4, 6)));
+                long timeMs = calendar.getTimeInMillis();
+                if (f[1].length() > 7 && f[1].charAt(6) == '.') {
+                    timeMs += Math.round(Double.parseDouble(f[1].substring(6)) * 1000);
+                }
+                double latitude = degrees(f[3], 2) * ("S".equals(f[4]) ? -1 : 1);
+                double longitude = degrees(f[5], 3) * ("W".equals(f[6]) ? -1 : 1);
+                float speedMps = f[7].isEmpty() ? -1 : (float) (Double.parseDouble(f[7]) * KNOTS_TO_MPS);
+                points.add(new Point(timeMs, latitude, longitude, DEFAULT_ACCURACY_M, speedMps));
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                // A garbled sentence; receivers emit those
+            }
+        }
+        return points;
+    }
+
+    /** Epoch milliseconds or ISO 8601 (UTC unless an offset is given); MIN_VALUE if neither. */
+    static long parseTime(String value) {
+        Matcher m = ISO_TIME.matcher(value);
+        if (!m.matches()) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);
+        calendar.clear();
+        calendar.set(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) - 1, Integer.parseInt(m.group(3)),
+            Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)), Integer.parseInt(m.group(6)));
+        long timeMs = calendar.getTimeInMillis();
+        if (m.group(7) != null) {
+            String fraction = (m.group(7) + "00").substring(0, 3);
+            timeMs += Integer.parseInt(fraction);
+        }
+        String zone = m.group(8);
+        if (zone != null && !"Z".equals(zone)) {
+            String digits = zone.replace(":", "");
+            int offsetMinutes = Integer.parseInt(digits.substring(1, 3)) * 60 + Integer.parseInt(digits.substring(3, 5));
+            timeMs -= (zone.charAt(0) == '-' ? -1 : 1) * offsetMinutes * 60_000L;
+        }
+        return timeMs;
+    }
+
+    private static double degrees(String value, int degreeDigits) {
+        return Integer.parseInt(value.substring(0, degreeDigits)) + Double.parseDouble(value.substring(degreeDigits)) / 60;
+    }
+
+    private static boolean checksumMatches(String sentence, int star) {
+        int sum = 0;
+        for (int i = 1; i < star; i++) {
+            sum ^= sentence.charAt(i);
+        }
+        try {
+            return Integer.parseInt(sentence.substring(star + 1).trim(), 16) == sum;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static float parseFloat(String value, float fallback) {
+        value = value.trim();
+        if (value.isEmpty()) return fallback;
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String localName(String localName, String qName) {
+        return localName != null && !localName.isEmpty() ? localName : qName;
+    }
+}
@@ -0,0 +1,248 @@
+package com.poverse.app.tracking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for one tracking session, read by the plugin's
+ * getTrackingStats and trackingStats event so ops can see what a device's tracker does
+ * without extra database writes.
+ *
+ * A fix is received from the provider, then either filtered out or queued; queued
+ * fixes end up uploaded (confirmed by the server) or dropped (overwritten in a full
+ * ring, or an unbatched write that failed). Recording never allocates, so the hooks
+ * are safe on the per-fix path.
+ */
+public class TrackingMetrics {
+    /** Upper bucket bounds shared by both latency histograms; larger values go to overflow. */
+    public static final long[] LATENCY_BOUNDS_MS = {
+        25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000
+    };
+
+    /** Fixed-bucket latency histogram; percentiles resolve to a bucket's upper bound. */
+    public static final class Histogram {
+        private final long[] boundsMs;
+        // One slot per bound plus the overflow bucket
+        private final long[] counts;
+        private long count = 0;
+        private long sumMs = 0;
+        private long maxMs = 0;
+
+        public Histogram(long[] boundsMs) {
+            this.boundsMs = boundsMs.clone();
+            this.counts = new long[boundsMs.length + 1];
+        }
+
+        public synchronized void record(long latencyMs) {
+            long ms = Math.max(0, latencyMs);
+            int bucket = 0;
+            while (bucket < boundsMs.length && ms > boundsMs[bucket]) {
+                bucket++;
+            }
+            counts[bucket]++;
+            count++;
+            sumMs += ms;
+            if (ms > maxMs) maxMs = ms;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getMeanMs() {
+            return count == 0 ? 0 : sumMs / count;
+        }
+
+        public synchronized long getMaxMs() {
+            return maxMs;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile (0..1), capped at the
+         * largest value seen; 0 when empty.
+         */
+        public synchronized long percentileMs(double quantile) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(Math.max(0, Math.min(1, quantile)) * count);
+            long seen = 0;
+            for (int i = 0; i < boundsMs.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    return Math.min(boundsMs[i], maxMs);
+                }
+            }
+            return maxMs;
+        }
+
+        public long[] getBoundsMs() {
+            return boundsMs.clone();
+        }
+
+        /** Counts per bucket; the last entry is the overflow bucket. */
+        public synchronized long[] getBucketCounts() {
+            return counts.clone();
+        }
+    }
+
+    private final long startedMs;
+
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong largestDelivery = new AtomicLong();
+    private final AtomicLong fixesReceived = new AtomicLong();
+    private final AtomicLong fixesFiltered = new AtomicLong();
+    private final AtomicLong fixesQueued = new AtomicLong();
+    private final AtomicLong fixesUploaded = new AtomicLong();
+    private final AtomicLong fixesDropped = new AtomicLong();
+    private final AtomicLong requestsSent = new AtomicLong();
+    private final AtomicLong requestsFailed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong requestsCompressed = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private volatile int pendingFixes = 0;
+
+    private final Histogram httpLatency = new Histogram(LATENCY_BOUNDS_MS);
+    private final Histogram commitLatency = new Histogram(LATENCY_BOUNDS_MS);
+
+    public TrackingMetrics() {
+        this(System.currentTimeMillis());
+    }
+
+    public TrackingMetrics(long startedMs) {
+        this.startedMs = startedMs;
+    }
+
+    /** One provider callback carrying the given number of fixes (more than one when batched). */
+    public void recordDelivery(int fixCount) {
+        deliveries.incrementAndGet();
+        long largest;
+        while (fixCount > (largest = largestDelivery.get())
+                && !largestDelivery.compareAndSet(largest, fixCount)) {
+            // Raced with another delivery; re-read
+        }
+    }
+
+    public void recordFixReceived() {
+        fixesReceived.incrementAndGet();
+    }
+
+    public void recordFixFiltered() {
+        fixesFiltered.incrementAndGet();
+    }
+
+    public void recordFixQueued() {
+        fixesQueued.incrementAndGet();
+    }
+
+    public void recordFixesDropped(int count) {
+        fixesDropped.addAndGet(count);
+    }
+
+    /**
+     * A fix the server confirmed, with the time from the fix's own GPS timestamp to the
+     * commit; that includes any delay the provider held it for in a batched request.
+     */
+    public void recordFixUploaded(long commitLatencyMs) {
+        fixesUploaded.incrementAndGet();
+        commitLatency.record(commitLatencyMs);
+    }
+
+    /** One HTTP attempt the server answered: body bytes sent and the round trip. */
+    public void recordAttempt(int bytes, long latencyMs, boolean success) {
+        bytesSent.addAndGet(bytes);
+        httpLatency.record(latencyMs);
+        if (success) {
+            requestsSent.incrementAndGet();
+        }
+    }
+
+    /** A request given up on after its last attempt. */
+    public void recordRequestFailed() {
+        requestsFailed.incrementAndGet();
+    }
+
+    /** A request that went out gzipped, with the body bytes that saved. */
+    public void recordCompressed(int savedBytes) {
+        requestsCompressed.incrementAndGet();
+        bytesSaved.addAndGet(savedBytes);
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public void setPendingFixes(int pending) {
+        pendingFixes = pending;
+    }
+
+    public long getStartedMs() {
+        return startedMs;
+    }
+
+    /** Provider callbacks; with getFixesReceived gives the mean fixes per wake-up. */
+    public long getDeliveries() {
+        return deliveries.get();
+    }
+
+    public long getLargestDelivery() {
+        return largestDelivery.get();
+    }
+
+    public long getFixesReceived() {
+        return fixesReceived.get();
+    }
+
+    public long getFixesFiltered() {
+        return fixesFiltered.get();
+    }
+
+    public long getFixesQueued() {
+        return fixesQueued.get();
+    }
+
+    public long getFixesUploaded() {
+        return fixesUploaded.get();
+    }
+
+    public long getFixesDropped() {
+        return fixesDropped.get();
+    }
+
+    /** Fixes in the ring waiting for server confirmation, as of the last append or commit. */
+    public int getPendingFixes() {
+        return pendingFixes;
+    }
+
+    public long getRequestsSent() {
+        return requestsSent.get();
+    }
+
+    public long getRequestsFailed() {
+        return requestsFailed.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getRequestsCompressed() {
+        return requestsCompressed.get();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /** Per HTTP attempt, retries included. */
+    public Histogram getHttpLatency() {
+        return httpLatency;
+    }
+
+    /** Per fix, from its GPS timestamp (so provider batching counts) to the server confirming the write. */
+    public Histogram getCommitLatency() {
+        return commitLatency;
+    }
+}
@@ -0,0 +1,32 @@
+package com.poverse.app.tracking;
+
+/**
+ * How eagerly fixes are delivered, chosen per company.
+ *
+ * REALTIME wakes the app for every fix. LOW_WAKEUP lets the location provider hold
+ * fixes (in the GNSS chip where supported) and hand them over in one batch at most
+ * {@link #maxUpdateDelayMs} late, trading live-map freshness for far fewer CPU
+ * wake-ups; the trail itself keeps every point.
+ */
+public enum TrackingMode {
+    REALTIME("realtime", 0),
+    LOW_WAKEUP("lowWakeup", 2 * 60_000L);
+
+    /** Name used by the web app, the company document and the stats. */
+    public final String wireName;
+    /** LocationRequest max update delay; 0 delivers each fix as it comes. */
+    public final long maxUpdateDelayMs;
+
+    TrackingMode(String wireName, long maxUpdateDelayMs) {
+        this.wireName = wireName;
+        this.maxUpdateDelayMs = maxUpdateDelayMs;
+    }
+
+    /** Parses a wire name; unknown or missing values fall back to REALTIME. */
+    public static TrackingMode fromWireName(String name) {
+        for (TrackingMode mode : values()) {
+            if (mode.wireName.equals(name)) return mode;
+        }
+        return REALTIME;
+    }
+}
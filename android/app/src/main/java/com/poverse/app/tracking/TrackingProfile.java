@@ -0,0 +1,124 @@
+package com.poverse.app.tracking;
+
+/**
+ * Company-wide overrides of the tracker's sampling, batching and heartbeat, pushed from
+ * the server (trackingProfiles/{companyId}) so fleets can be tuned or throttled without
+ * an app release.
+ *
+ * Every field is optional. Interval, minimum distance and priority replace what the
+ * motion policy asks for while the agent moves; standing still keeps whichever of the
+ * two is less demanding, so a profile never samples a parked agent harder. Values are
+ * clamped to sane ranges, so a typo in the console cannot turn GPS up to every few
+ * milliseconds.
+ */
+public final class TrackingProfile {
+    public static final long UNSET = -1;
+    public static final TrackingProfile NONE = new TrackingProfile(UNSET, UNSET, 0, UNSET, UNSET);
+
+    static final long MIN_INTERVAL_MS = 1000;
+    static final long MAX_INTERVAL_MS = 60 * 60_000L;
+    static final float MAX_MIN_DISTANCE_M = 1000;
+    static final long MAX_BATCH_WINDOW_MS = 10 * 60_000L;
+    static final long MIN_HEARTBEAT_MS = 5000;
+    static final long MAX_HEARTBEAT_MS = 60 * 60_000L;
+
+    /** LocationRequest interval, or UNSET. */
+    public final long intervalMs;
+    /** Negative when unset. */
+    public final float minDistanceMeters;
+    /** One of the SamplingProfile priorities, or 0 when unset. */
+    public final int priority;
+    /** Batch window of fixes and heartbeats, 0 for no batching, or UNSET. */
+    public final long batchWindowMs;
+    /** Presence heartbeat interval, or UNSET. */
+    public final long heartbeatIntervalMs;
+
+    public TrackingProfile(long intervalMs, float minDistanceMeters, int priority,
+                           long batchWindowMs, long heartbeatIntervalMs) {
+        this.intervalMs = intervalMs < 0 ? UNSET : clamp(intervalMs, MIN_INTERVAL_MS, MAX_INTERVAL_MS);
+        this.minDistanceMeters = minDistanceMeters < 0 ? UNSET : Math.min(minDistanceMeters, MAX_MIN_DISTANCE_M);
+        this.priority = isPriority(priority) ? priority : 0;
+        this.batchWindowMs = batchWindowMs < 0 ? UNSET : Math.min(batchWindowMs, MAX_BATCH_WINDOW_MS);
+        this.heartbeatIntervalMs = heartbeatIntervalMs < 0
+            ? UNSET : clamp(heartbeatIntervalMs, MIN_HEARTBEAT_MS, MAX_HEARTBEAT_MS);
+    }
+
+    /** "high", "balanced" or "low" as a SamplingProfile priority; 0 for anything else. */
+    public static int priorityOf(String name) {
+        if ("high".equals(name)) return SamplingProfile.PRIORITY_HIGH_ACCURACY;
+        if ("balanced".equals(name)) return SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY;
+        if ("low".equals(name)) return SamplingProfile.PRIORITY_LOW_POWER;
+        return 0;
+    }
+
+    public boolean isEmpty() {
+        return equals(NONE);
+    }
+
+    /** The request for state, given what the motion policy asks for it. */
+    public SamplingProfile apply(MotionState state, SamplingProfile requested) {
+        if (isEmpty()) return requested;
+        boolean stationary = state == MotionState.STATIONARY;
+        long interval = requested.intervalMs;
+        if (intervalMs != UNSET) {
+            interval = stationary ? Math.max(interval, intervalMs) : intervalMs;
+        }
+        float minDistance = requested.minDistanceMeters;
+        if (minDistanceMeters >= 0) {
+            minDistance = stationary ? Math.max(minDistance, minDistanceMeters) : minDistanceMeters;
+        }
+        // Higher priority values draw less power
+        int requestPriority = requested.priority;
+        if (priority != 0) {
+            requestPriority = stationary ? Math.max(requestPriority, priority) : priority;
+        }
+        return new SamplingProfile(requestPriority, interval, minDistance);
+    }
+
+    public long batchWindowMs(long appValue) {
+        return batchWindowMs != UNSET ? batchWindowMs : appValue;
+    }
+
+    public long heartbeatIntervalMs(long appValue) {
+        return heartbeatIntervalMs != UNSET ? heartbeatIntervalMs : appValue;
+    }
+
+    private static boolean isPriority(int value) {
+        return value == SamplingProfile.PRIORITY_HIGH_ACCURACY
+            || value == SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY
+            || value == SamplingProfile.PRIORITY_LOW_POWER;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TrackingProfile)) return false;
+        TrackingProfile other = (TrackingProfile) o;
+        return intervalMs == other.intervalMs
+            && Float.compare(minDistanceMeters, other.minDistanceMeters) == 0
+            && priority == other.priority
+            && batchWindowMs == other.batchWindowMs
+            && heartbeatIntervalMs == other.heartbeatIntervalMs;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (intervalMs ^ (intervalMs >>> 32));
+        result = 31 * result + Float.floatToIntBits(minDistanceMeters);
+        result = 31 * result + priority;
+        result = 31 * result + (int) (batchWindowMs ^ (batchWindowMs >>> 32));
+        result = 31 * result + (int) (heartbeatIntervalMs ^ (heartbeatIntervalMs >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) return "app defaults";
+        return "interval=" + intervalMs + "ms minDistance=" + minDistanceMeters + "m priority=" + priority
+            + " batchWindow=" + batchWindowMs + "ms heartbeat=" + heartbeatIntervalMs + "ms";
+    }
+}
@@ -0,0 +1,278 @@
+package com.poverse.app.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary trail format.
+ *
+ * Coordinates are stored as E7 fixed-point integers (1e-7 degrees, ~1 cm), accuracy as
+ * whole decimetres and time in milliseconds. The first point is absolute; every later
+ * point stores zig-zag varint deltas from its predecessor, so a typical fix costs 6-9
+ * bytes instead of ~100 for the JSON map form.
+ *
+ *   byte    version (1)
+ *   varint  point count
+ *   point0  zz(latE7) zz(lngE7) varint(timeMs) varint(accuracyDm)
+ *   pointN  zz(dLatE7) zz(dLngE7) zz(dTimeMs) varint(accuracyDm)
+ *
+ * {@link #toBase64(byte[])} wraps a chunk in unpadded base64url so it can be stored as
+ * a single RTDB string. The same format is decoded by the web admin (trailCodec.ts).
+ */
+public final class TrailCodec {
+    public static final int VERSION = 1;
+    private static final double E7 = 1e7;
+    private static final int MAX_ACCURACY_DM = 65535;
+
+    private TrailCodec() {
+    }
+
+    /** Decoded points; arrays may be longer than count. */
+    public static final class Points {
+        public double[] latitudes = new double[0];
+        public double[] longitudes = new double[0];
+        public float[] accuracies = new float[0];
+        public long[] times = new long[0];
+        public int count;
+
+        void ensureCapacity(int n) {
+            if (latitudes.length >= n) return;
+            latitudes = new double[n];
+            longitudes = new double[n];
+            accuracies = new float[n];
+            times = new long[n];
+        }
+    }
+
+    /**
+     * Incremental encoder with a reusable output buffer. Points are appended one by one;
+     * {@link #toByteArray()} produces a self-contained chunk.
+     */
+    public static final class Encoder {
+        private byte[] body = new byte[256];
+        private int length = 0;
+        private int count = 0;
+        private int prevLat;
+        private int prevLng;
+        private long prevTime;
+
+        public void add(double latitude, double longitude, float accuracy, long timeMs) {
+            int lat = (int) Math.round(latitude * E7);
+            int lng = (int) Math.round(longitude * E7);
+            int accuracyDm = Math.min(MAX_ACCURACY_DM, Math.max(0, Math.round(accuracy * 10f)));
+            ensure(4 * 10);
+            if (count == 0) {
+                putVarint(zigzag(lat));
+                putVarint(zigzag(lng));
+                putVarint(timeMs);
+            } else {
+                putVarint(zigzag((long) lat - prevLat));
+                putVarint(zigzag((long) lng - prevLng));
+                putVarint(zigzag(timeMs - prevTime));
+            }
+            putVarint(accuracyDm);
+            prevLat = lat;
+            prevLng = lng;
+            prevTime = timeMs;
+            count++;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void reset() {
+            length = 0;
+            count = 0;
+        }
+
+        public byte[] toByteArray() {
+            byte[] out = new byte[1 + varintSize(count) + length];
+            out[0] = (byte) VERSION;
+            int pos = writeVarint(out, 1, count);
+            System.arraycopy(body, 0, out, pos, length);
+            return out;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra <= body.length) return;
+            byte[] grown = new byte[Math.max(body.length * 2, length + extra)];
+            System.arraycopy(body, 0, grown, 0, length);
+            body = grown;
+        }
+
+        private void putVarint(long value) {
+            length = writeVarint(body, length, value);
+        }
+    }
+
+    public static byte[] encode(double[] latitudes, double[] longitudes, float[] accuracies, long[] times, int count) {
+        Encoder encoder = new Encoder();
+        for (int i = 0; i < count; i++) {
+            encoder.add(latitudes[i], longitudes[i], accuracies[i], times[i]);
+        }
+        return encoder.toByteArray();
+    }
+
+    public static Points decode(byte[] data) {
+        Points points = new Points();
+        decode(data, points);
+        return points;
+    }
+
+    /**
+     * Decode a chunk into a reusable holder.
+     * @throws IllegalArgumentException on an unknown version or truncated data
+     */
+    public static void decode(byte[] data, Points out) {
+        if (data.length < 2 || data[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported trail chunk");
+        }
+        Reader reader = new Reader(data, 1);
+        long count = reader.varint();
+        if (count < 0 || count > data.length) {
+            throw new IllegalArgumentException("Corrupt trail chunk");
+        }
+        out.ensureCapacity((int) count);
+        out.count = (int) count;
+
+        long lat = 0;
+        long lng = 0;
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                lat = unzigzag(reader.varint());
+                lng = unzigzag(reader.varint());
+                time = reader.varint();
+            } else {
+                lat += unzigzag(reader.varint());
+                lng += unzigzag(reader.varint());
+                time += unzigzag(reader.varint());
+            }
+            out.latitudes[i] = lat / E7;
+            out.longitudes[i] = lng / E7;
+            out.times[i] = time;
+            out.accuracies[i] = reader.varint() / 10f;
+        }
+    }
+
+    public static String toBase64(byte[] data) {
+        return Base64Url.encode(data);
+    }
+
+    public static byte[] fromBase64(String text) {
+        return Base64Url.decode(text);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= data.length) {
+                    throw new IllegalArgumentException("Truncated trail chunk");
+                }
+                byte b = data[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+
+    /**
+     * Unpadded RFC 4648 base64url; java.util.Base64 needs API 26 and this module runs on 23.
+     */
+    static final class Base64Url {
+        private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+        private static final int[] INDEX = new int[128];
+
+        static {
+            Arrays.fill(INDEX, -1);
+            for (int i = 0; i < ALPHABET.length; i++) {
+                INDEX[ALPHABET[i]] = i;
+            }
+        }
+
+        private Base64Url() {
+        }
+
+        static String encode(byte[] data) {
+            StringBuilder out = new StringBuilder((data.length * 4 + 2) / 3);
+            int i = 0;
+            while (i + 2 < data.length) {
+                int n = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+                out.append(ALPHABET[n >>> 18]).append(ALPHABET[(n >>> 12) & 63])
+                    .append(ALPHABET[(n >>> 6) & 63]).append(ALPHABET[n & 63]);
+                i += 3;
+            }
+            int remaining = data.length - i;
+            if (remaining == 1) {
+                int n = (data[i] & 0xFF) << 16;
+                out.append(ALPHABET[n >>> 18]).append(ALPHABET[(n >>> 12) & 63]);
+            } else if (remaining == 2) {
+                int n = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8;
+                out.append(ALPHABET[n >>> 18]).append(ALPHABET[(n >>> 12) & 63]).append(ALPHABET[(n >>> 6) & 63]);
+            }
+            return out.toString();
+        }
+
+        static byte[] decode(String text) {
+            int length = text.length();
+            if (length % 4 == 1) {
+                throw new IllegalArgumentException("Invalid base64 length");
+            }
+            byte[] out = new byte[length * 3 / 4];
+            int pos = 0;
+            int buffer = 0;
+            int bits = 0;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                int value = c < 128 ? INDEX[c] : -1;
+                if (value < 0) {
+                    throw new IllegalArgumentException("Invalid base64 character: " + c);
+                }
+                buffer = (buffer << 6) | value;
+                bits += 6;
+                if (bits >= 8) {
+                    bits -= 8;
+                    out[pos++] = (byte) (buffer >> bits);
+                }
+            }
+            return out;
+        }
+    }
+}
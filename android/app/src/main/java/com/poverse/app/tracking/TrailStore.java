@@ -0,0 +1,158 @@
+package com.poverse.app.tracking;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * On-device copy of the agent's own trail, so the web app can draw today's route
+ * without an RTDB round trip and while offline.
+ *
+ * Every fix the tracker accepts is kept unsimplified in SQLite, clustered by local day
+ * and time (WITHOUT ROWID on (day, time_ms)), so a day or time range is one contiguous
+ * index scan. {@link #query} simplifies on the way out, at whatever tolerance the caller
+ * asks for. Days past {@link #RETENTION_DAYS} are deleted on open. The database runs in
+ * WAL mode: the tracking thread appends while the plugin reads without blocking it.
+ * One instance per process, shared by the service and the plugin.
+ */
+public final class TrailStore extends SQLiteOpenHelper {
+    private static final String TAG = "TrailStore";
+    private static final String DB_NAME = "poverse_trail.db";
+    private static final int DB_VERSION = 1;
+
+    public static final int RETENTION_DAYS = 30;
+
+    /** A query result: simplified points in time order plus what it took to produce them. */
+    public static final class Trail {
+        public double[] latitudes = new double[64];
+        public double[] longitudes = new double[64];
+        public float[] accuracies = new float[64];
+        public long[] times = new long[64];
+        public int count;
+        /** Stored fixes in the range before simplification. */
+        public int rawCount;
+        public long queryMs;
+
+        void add(double latitude, double longitude, float accuracy, long timeMs) {
+            if (count == times.length) {
+                int capacity = count * 2;
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                accuracies = Arrays.copyOf(accuracies, capacity);
+                times = Arrays.copyOf(times, capacity);
+            }
+            latitudes[count] = latitude;
+            longitudes[count] = longitude;
+            accuracies[count] = accuracy;
+            times[count] = timeMs;
+            count++;
+        }
+    }
+
+    private static TrailStore instance;
+
+    private SQLiteStatement insert;
+
+    public static synchronized TrailStore get(Context context) {
+        if (instance == null) {
+            instance = new TrailStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private TrailStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE fixes ("
+            + "day INTEGER NOT NULL, "
+            + "time_ms INTEGER NOT NULL, "
+            + "latitude REAL NOT NULL, "
+            + "longitude REAL NOT NULL, "
+            + "accuracy REAL NOT NULL, "
+            + "PRIMARY KEY (day, time_ms)) WITHOUT ROWID");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Nothing to migrate yet
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            Calendar cutoff = Calendar.getInstance();
+            cutoff.add(Calendar.DAY_OF_YEAR, -RETENTION_DAYS);
+            int removed = db.delete("fixes", "day < ?",
+                new String[] {Integer.toString(dayKey(cutoff.getTimeInMillis()))});
+            if (removed > 0) Log.d(TAG, "Expired " + removed + " fixes");
+        }
+    }
+
+    /** Local calendar day as yyyymmdd. */
+    public static int dayKey(long timeMs) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMs);
+        return calendar.get(Calendar.YEAR) * 10000
+            + (calendar.get(Calendar.MONTH) + 1) * 100
+            + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /** Store one accepted fix; a second fix with the same time is ignored. */
+    public synchronized void append(double latitude, double longitude, float accuracy, long timeMs) {
+        try {
+            if (insert == null) {
+                insert = getWritableDatabase().compileStatement(
+                    "INSERT OR IGNORE INTO fixes (day, time_ms, latitude, longitude, accuracy) VALUES (?, ?, ?, ?, ?)");
+            }
+            insert.bindLong(1, dayKey(timeMs));
+            insert.bindLong(2, timeMs);
+            insert.bindDouble(3, latitude);
+            insert.bindDouble(4, longitude);
+            insert.bindDouble(5, accuracy);
+            insert.executeInsert();
+        } catch (RuntimeException e) {
+            // A full disk must not take tracking down with it
+            Log.w(TAG, "Could not store fix: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fixes of the given day (yyyymmdd) between fromMs and toMs inclusive, simplified so
+     * no stored fix lies more than simplifyMeters off the result (0 keeps every fix).
+     */
+    public Trail query(int day, long fromMs, long toMs, double simplifyMeters) {
+        long startNs = System.nanoTime();
+        final Trail trail = new Trail();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(Math.max(0, simplifyMeters),
+            TrajectorySimplifier.DEFAULT_MAX_BUFFERED_POINTS, Long.MAX_VALUE, trail::add);
+
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT time_ms, latitude, longitude, accuracy FROM fixes"
+                    + " WHERE day = ? AND time_ms BETWEEN ? AND ? ORDER BY time_ms",
+                new String[] {Integer.toString(day), Long.toString(fromMs), Long.toString(toMs)})) {
+            while (cursor.moveToNext()) {
+                trail.rawCount++;
+                simplifier.add(cursor.getDouble(1), cursor.getDouble(2), cursor.getFloat(3), cursor.getLong(0));
+            }
+        }
+        simplifier.flush();
+        trail.queryMs = (System.nanoTime() - startNs) / 1_000_000;
+        return trail;
+    }
+
+    /** Forget every stored fix, e.g. when another agent signs in on this device. */
+    public synchronized void clear() {
+        getWritableDatabase().delete("fixes", null, null);
+    }
+}
@@ -0,0 +1,139 @@
+package com.poverse.app.tracking;
+
+/**
+ * Streaming, error-bounded trajectory simplifier (opening-window variant of
+ * Douglas-Peucker).
+ *
+ * Points since the last kept point (the anchor) are held in a fixed buffer. When the
+ * straight segment from the anchor to a new point would pass more than toleranceMeters
+ * from any buffered point, the newest buffered point is emitted and becomes the anchor.
+ * Every dropped point therefore lies within the tolerance of the emitted polyline.
+ * Memory is bounded by maxBufferedPoints, per-fix cost by the same, and a point is also
+ * forced out once maxIntervalMs passes since the anchor so a live trail never goes stale.
+ */
+public class TrajectorySimplifier {
+    public interface Sink {
+        void onPoint(double latitude, double longitude, float accuracy, long timeMs);
+    }
+
+    public static final double DEFAULT_TOLERANCE_METERS = 10;
+    public static final int DEFAULT_MAX_BUFFERED_POINTS = 32;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 5 * 60000;
+
+    private static final double METERS_PER_DEGREE = GeoMath.EARTH_RADIUS_M * Math.PI / 180.0;
+
+    private final double toleranceMeters;
+    private final int maxBufferedPoints;
+    private final long maxIntervalMs;
+    private final Sink sink;
+
+    private boolean hasAnchor = false;
+    private double anchorLat;
+    private double anchorLng;
+    private long anchorTime;
+    private double anchorCos;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final long[] times;
+    private int buffered = 0;
+
+    private long inputCount = 0;
+    private long emittedCount = 0;
+
+    public TrajectorySimplifier(double toleranceMeters, Sink sink) {
+        this(toleranceMeters, DEFAULT_MAX_BUFFERED_POINTS, DEFAULT_MAX_INTERVAL_MS, sink);
+    }
+
+    public TrajectorySimplifier(double toleranceMeters, int maxBufferedPoints, long maxIntervalMs, Sink sink) {
+        if (maxBufferedPoints < 1) {
+            throw new IllegalArgumentException("maxBufferedPoints must be >= 1");
+        }
+        this.toleranceMeters = toleranceMeters;
+        this.maxBufferedPoints = maxBufferedPoints;
+        this.maxIntervalMs = maxIntervalMs;
+        this.sink = sink;
+        this.latitudes = new double[maxBufferedPoints];
+        this.longitudes = new double[maxBufferedPoints];
+        this.accuracies = new float[maxBufferedPoints];
+        this.times = new long[maxBufferedPoints];
+    }
+
+    public void add(double latitude, double longitude, float accuracy, long timeMs) {
+        inputCount++;
+        if (!hasAnchor) {
+            emit(latitude, longitude, accuracy, timeMs);
+            return;
+        }
+        if (buffered > 0 && (buffered == maxBufferedPoints
+            || timeMs - anchorTime > maxIntervalMs
+            || exceedsTolerance(latitude, longitude))) {
+            int last = buffered - 1;
+            emit(latitudes[last], longitudes[last], accuracies[last], times[last]);
+        }
+        latitudes[buffered] = latitude;
+        longitudes[buffered] = longitude;
+        accuracies[buffered] = accuracy;
+        times[buffered] = timeMs;
+        buffered++;
+    }
+
+    /** Emit the newest held-back point, e.g. when tracking stops or the day rolls over. */
+    public void flush() {
+        if (buffered == 0) return;
+        int last = buffered - 1;
+        emit(latitudes[last], longitudes[last], accuracies[last], times[last]);
+    }
+
+    /** Forget all state; the next point starts a new trail. */
+    public void reset() {
+        hasAnchor = false;
+        buffered = 0;
+    }
+
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    public long getEmittedCount() {
+        return emittedCount;
+    }
+
+    private void emit(double latitude, double longitude, float accuracy, long timeMs) {
+        hasAnchor = true;
+        anchorLat = latitude;
+        anchorLng = longitude;
+        anchorTime = timeMs;
+        anchorCos = Math.cos(Math.toRadians(latitude));
+        buffered = 0;
+        emittedCount++;
+        sink.onPoint(latitude, longitude, accuracy, timeMs);
+    }
+
+    /**
+     * Would the segment anchor -> (lat, lng) pass too far from any buffered point?
+     * Works in a local equirectangular projection around the anchor, which is exact
+     * enough at trail scales.
+     */
+    private boolean exceedsTolerance(double latitude, double longitude) {
+        double ex = (longitude - anchorLng) * anchorCos * METERS_PER_DEGREE;
+        double ey = (latitude - anchorLat) * METERS_PER_DEGREE;
+        double lengthSq = ex * ex + ey * ey;
+        double toleranceSq = toleranceMeters * toleranceMeters;
+
+        for (int i = 0; i < buffered; i++) {
+            double px = (longitudes[i] - anchorLng) * anchorCos * METERS_PER_DEGREE;
+            double py = (latitudes[i] - anchorLat) * METERS_PER_DEGREE;
+            double t = lengthSq > 0 ? (px * ex + py * ey) / lengthSq : 0;
+            if (t < 0) t = 0;
+            else if (t > 1) t = 1;
+            double dx = px - t * ex;
+            double dy = py - t * ey;
+            if (dx * dx + dy * dy > toleranceSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package com.poverse.app.tracking;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single REST write against the Firebase Realtime Database.
+ * The path is relative to the database root and must end in ".json".
+ *
+ * The body is the first bodyLength bytes of body, so a sender that has at most one
+ * request in flight (LocationBatcher) can reuse both the request and its buffer.
+ */
+public final class UploadRequest {
+    public static final String METHOD_PUT = "PUT";
+    public static final String METHOD_PATCH = "PATCH";
+
+    /**
+     * Invoked exactly once per request: after the server answered, or when the request
+     * was dropped from a full queue or refused by a stopped uploader.
+     */
+    public interface Callback {
+        void onComplete(boolean success);
+    }
+
+    public final String method;
+    public final String path;
+    public final Callback callback;
+    // Replaced only through reuse(), by an owner that knows the request is not queued
+    public byte[] body;
+    public int bodyLength;
+
+    public UploadRequest(String method, String path, byte[] body, Callback callback) {
+        this(method, path, body, body.length, callback);
+    }
+
+    public UploadRequest(String method, String path, byte[] body, int bodyLength, Callback callback) {
+        if (bodyLength < 0 || bodyLength > body.length) {
+            throw new IllegalArgumentException("bodyLength out of range");
+        }
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        this.bodyLength = bodyLength;
+        this.callback = callback;
+    }
+
+    public static UploadRequest put(String path, String json) {
+        return put(path, json, null);
+    }
+
+    public static UploadRequest put(String path, String json, Callback callback) {
+        return new UploadRequest(METHOD_PUT, path, json.getBytes(StandardCharsets.UTF_8), callback);
+    }
+
+    public static UploadRequest patch(String path, String json) {
+        return patch(path, json, null);
+    }
+
+    public static UploadRequest patch(String path, String json, Callback callback) {
+        return new UploadRequest(METHOD_PATCH, path, json.getBytes(StandardCharsets.UTF_8), callback);
+    }
+
+    public static UploadRequest put(String path, PayloadWriter payload) {
+        return put(path, payload, null);
+    }
+
+    public static UploadRequest put(String path, PayloadWriter payload, Callback callback) {
+        return new UploadRequest(METHOD_PUT, path, payload.toByteArray(), callback);
+    }
+
+    /**
+     * Point a completed request at a new payload so it can be enqueued again without
+     * allocating. Only valid once its callback has run.
+     */
+    void reuse(byte[] body, int bodyLength) {
+        if (bodyLength < 0 || bodyLength > body.length) {
+            throw new IllegalArgumentException("bodyLength out of range");
+        }
+        this.body = body;
+        this.bodyLength = bodyLength;
+    }
+
+    /** Decoded body, for logging and tests. */
+    public String bodyAsString() {
+        return new String(body, 0, bodyLength, StandardCharsets.UTF_8);
+    }
+
+    void complete(boolean success) {
+        if (callback != null) {
+            callback.onComplete(success);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path + " (" + bodyLength + " bytes)";
+    }
+}
@@ -0,0 +1,98 @@
+package com.poverse.app.plugins;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BridgeMetricsTest {
+    private static final long MS = 1_000_000L;
+
+    private final List<String> sections = new ArrayList<>();
+    private BridgeMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new BridgeMetrics("NativeServices.", new BridgeMetrics.Tracer() {
+            @Override
+            public void beginAsyncSection(String name, int cookie) {
+                sections.add("begin " + name + " " + cookie);
+            }
+
+            @Override
+            public void endAsyncSection(String name, int cookie) {
+                sections.add("end " + name + " " + cookie);
+            }
+        });
+    }
+
+    @Test
+    public void recordsLatencyAndErrorsPerMethod() {
+        metrics.begin("getTrail", "1", 0);
+        metrics.begin("getTrail", "2", 5 * MS);
+        metrics.begin("startTracking", "3", 5 * MS);
+        metrics.settle("1", null, 3 * MS);
+        metrics.settle("2", null, 45 * MS);
+        metrics.settle("3", "userId is required", 6 * MS);
+
+        BridgeMetrics.MethodStats trail = metrics.getMethods().get("getTrail");
+        assertEquals(2, trail.getCalls());
+        assertEquals(0, trail.getErrors());
+        assertEquals(2, trail.getLatency().getCount());
+        assertEquals(40, trail.getLatency().getMaxMs());
+        assertNull(trail.getLastError());
+
+        BridgeMetrics.MethodStats start = metrics.getMethods().get("startTracking");
+        assertEquals(1, start.getErrors());
+        assertEquals(1, start.getLatency().getCount());
+        assertEquals("userId is required", start.getLastError());
+        assertEquals(0, metrics.getInFlightCount());
+    }
+
+    @Test
+    public void settlingTwiceOrUnknownCallIsIgnored() {
+        metrics.begin("getTrail", "1", 0);
+        metrics.settle("1", null, 2 * MS);
+        metrics.settle("1", "late", 9 * MS);
+        metrics.settle("never-started", null, 9 * MS);
+
+        BridgeMetrics.MethodStats trail = metrics.getMethods().get("getTrail");
+        assertEquals(1, trail.getLatency().getCount());
+        assertEquals(0, trail.getErrors());
+        assertEquals(2, sections.size());
+    }
+
+    @Test
+    public void abandonsOldestCallBeyondLimit() {
+        for (int i = 0; i <= BridgeMetrics.MAX_IN_FLIGHT; i++) {
+            metrics.begin("requestPermissions", "call" + i, i * MS);
+        }
+        assertEquals(BridgeMetrics.MAX_IN_FLIGHT, metrics.getInFlightCount());
+        BridgeMetrics.MethodStats stats = metrics.getMethods().get("requestPermissions");
+        assertEquals(BridgeMetrics.MAX_IN_FLIGHT + 1, stats.getCalls());
+        assertEquals(1, stats.getAbandoned());
+
+        // The abandoned call settling late records nothing
+        metrics.settle("call0", null, 100 * MS);
+        assertEquals(0, stats.getLatency().getCount());
+        metrics.settle("call1", null, 100 * MS);
+        assertEquals(1, stats.getLatency().getCount());
+    }
+
+    @Test
+    public void pairsTraceSectionsByCookie() {
+        metrics.begin("getTrail", "1", 0);
+        metrics.begin("getTrail", "2", 0);
+        metrics.settle("2", null, MS);
+        metrics.settle("1", null, MS);
+
+        assertEquals(List.of(
+            "begin NativeServices.getTrail 1",
+            "begin NativeServices.getTrail 2",
+            "end NativeServices.getTrail 2",
+            "end NativeServices.getTrail 1"), sections);
+    }
+}
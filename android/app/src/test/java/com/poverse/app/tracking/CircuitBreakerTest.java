@@ -0,0 +1,59 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 8000);
+        breaker.onFailure(0);
+        breaker.onFailure(10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.delayBeforeSendMs(20));
+
+        breaker.onFailure(20);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(900, breaker.delayBeforeSendMs(120));
+        assertEquals(1, breaker.getOpenCount());
+    }
+
+    @Test
+    public void successResetsTheFailureStreak() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 8000);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenProbeClosesOrReopensWithLongerCooldown() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 3000);
+        breaker.onFailure(0);
+        assertEquals(0, breaker.delayBeforeSendMs(1000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // Failed probe: cooldown doubles
+        breaker.onFailure(1000);
+        assertEquals(2000, breaker.delayBeforeSendMs(1000));
+
+        // ... up to the cap
+        breaker.delayBeforeSendMs(3000);
+        breaker.onFailure(3000);
+        assertEquals(3000, breaker.delayBeforeSendMs(3000));
+
+        breaker.delayBeforeSendMs(6000);
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(3, breaker.getOpenCount());
+
+        // A fresh outage starts from the base cooldown again
+        breaker.onFailure(10000);
+        assertEquals(1000, breaker.delayBeforeSendMs(10000));
+    }
+}
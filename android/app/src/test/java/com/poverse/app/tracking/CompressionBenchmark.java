@@ -0,0 +1,61 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Wire bytes for draining a 1,000-fix backlog through the real batcher, uploader and
+ * transport into a local endpoint, with and without gzip.
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*CompressionBenchmark'
+ */
+public class CompressionBenchmark {
+    private static final int FIXES = 1000;
+
+    @Test
+    public void gzipShrinksBacklogDrain() throws Exception {
+        long plain = drainBacklog(-1);
+        long gzip = drainBacklog(RtdbTransport.RECOMMENDED_GZIP_THRESHOLD_BYTES);
+
+        System.out.printf(Locale.US, "Wire bytes per %d buffered fixes: plain %d, gzip %d, saved %d (%.0f%%)%n",
+            FIXES, plain, gzip, plain - gzip, 100.0 * (plain - gzip) / plain);
+        assertTrue(gzip * 3 < plain);
+    }
+
+    /** Returns request body bytes the endpoint received for the whole drain. */
+    private static long drainBacklog(int gzipThresholdBytes) throws Exception {
+        File ringFile = File.createTempFile("fixes", ".ring");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FixRingBuffer ring = new FixRingBuffer(ringFile, FixRingBuffer.DEFAULT_CAPACITY);
+        try (LocalRtdbEndpoint endpoint = new LocalRtdbEndpoint()) {
+            for (int i = 0; i < FIXES; i++) {
+                // A walk: small moves, varying accuracy, one fix every 10 s
+                ring.append(12.9716 + i * 7e-6, 77.5946 - i * 3e-6, 4.5f + (i % 7), 1_700_000_000_000L + i * 10_000L);
+            }
+            RtdbTransport transport = new RtdbTransport(endpoint.url());
+            transport.setGzipThreshold(gzipThresholdBytes);
+            RtdbUploader uploader = new RtdbUploader(transport);
+            LocationBatcher batcher = new LocationBatcher(uploader, scheduler, ring, "agent-0001", 0,
+                LocationBatcher.DEFAULT_MAX_BATCH_SIZE);
+            batcher.flush();
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (ring.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            uploader.shutdown(2000);
+            assertEquals(0, ring.getPendingCount());
+            assertEquals(FIXES / LocationBatcher.DEFAULT_DRAIN_BATCH_SIZE, endpoint.received().size());
+            return endpoint.wireBytes();
+        } finally {
+            scheduler.shutdownNow();
+            ring.close();
+            ringFile.delete();
+        }
+    }
+}
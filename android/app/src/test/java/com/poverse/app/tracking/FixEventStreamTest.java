@@ -0,0 +1,99 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FixEventStreamTest {
+    private FixEventStream stream;
+    private final List<Long> wakeups = new ArrayList<>();
+    private final FixEventStream.Listener listener = wakeups::add;
+
+    @Before
+    public void setUp() {
+        stream = new FixEventStream(8);
+        stream.setForeground(true, 0);
+    }
+
+    private void offer(int i, long nowMs) {
+        stream.offer(12.97 + i * 1e-4, 77.59, 5f, 1_700_000_000_000L + i * 1000L, nowMs);
+    }
+
+    @Test
+    public void coalescesFixesIntoOneBatchPerInterval() {
+        stream.subscribe(listener, 2, 0);
+        assertTrue(wakeups.isEmpty());
+
+        offer(0, 0);
+        offer(1, 10);
+        offer(2, 20);
+        assertEquals(List.of(0L), wakeups);
+
+        FixEventStream.Batch batch = stream.poll(0);
+        assertEquals(3, batch.size());
+        assertEquals(1_700_000_000_000L, batch.timesMs[0]);
+        assertEquals(1_700_000_002_000L, batch.timesMs[2]);
+        assertEquals(0, batch.dropped);
+
+        // Two events per second: the next batch waits out the rest of 500 ms
+        offer(3, 100);
+        assertEquals(List.of(0L, 400L), wakeups);
+        assertNull(stream.poll(300));
+        assertEquals(200L, (long) wakeups.get(2));
+        assertEquals(1, stream.poll(500).size());
+        assertEquals(2, stream.getEmittedCount());
+    }
+
+    @Test
+    public void deliversNothingInTheBackground() {
+        stream.subscribe(listener, 1, 0);
+        stream.setForeground(false, 0);
+        for (int i = 0; i < 5; i++) offer(i, i * 100);
+        assertTrue(wakeups.isEmpty());
+        assertNull(stream.poll(1000));
+
+        stream.setForeground(true, 2000);
+        assertEquals(List.of(0L), wakeups);
+        assertEquals(5, stream.poll(2000).size());
+    }
+
+    @Test
+    public void fullBufferDropsOldestAndReportsIt() {
+        stream.subscribe(listener, 1, 0);
+        for (int i = 0; i < 11; i++) offer(i, 0);
+
+        FixEventStream.Batch batch = stream.poll(0);
+        assertEquals(8, batch.size());
+        assertEquals(3, batch.dropped);
+        assertEquals(1_700_000_003_000L, batch.timesMs[0]);
+        assertEquals(1_700_000_010_000L, batch.timesMs[7]);
+        assertEquals(3, stream.getDroppedCount());
+    }
+
+    @Test
+    public void newSubscriberGetsLatestFixAtOnce() {
+        offer(0, 0);
+        offer(1, 0);
+        assertEquals(0, stream.getPendingCount());
+
+        stream.subscribe(listener, 1, 50);
+        assertEquals(List.of(0L), wakeups);
+        FixEventStream.Batch batch = stream.poll(50);
+        assertEquals(1, batch.size());
+        assertEquals(1_700_000_001_000L, batch.timesMs[0]);
+    }
+
+    @Test
+    public void unsubscribeStopsBuffering() {
+        stream.subscribe(listener, 1, 0);
+        stream.unsubscribe();
+        offer(0, 0);
+        assertEquals(0, stream.getPendingCount());
+        assertNull(stream.poll(0));
+        assertTrue(wakeups.isEmpty());
+    }
+}
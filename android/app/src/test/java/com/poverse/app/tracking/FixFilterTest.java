@@ -0,0 +1,210 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FixFilterTest {
+    private static final double LAT = 12.9716;
+    private static final double LNG = 77.5946;
+    private static final double M_PER_DEG_LNG = GeoMath.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(LAT));
+
+    /** A recorded-style trace: ground truth plus what the provider reported. */
+    private static final class Trace {
+        final double[] trueLat;
+        final double[] trueLng;
+        final double[] lat;
+        final double[] lng;
+        final float[] accuracy;
+        final long[] times;
+        int glitches = 0;
+
+        Trace(int n) {
+            trueLat = new double[n];
+            trueLng = new double[n];
+            lat = new double[n];
+            lng = new double[n];
+            accuracy = new float[n];
+            times = new long[n];
+        }
+    }
+
+    /**
+     * Walks or drives a route of straight legs with 90 degree turns at the given speed.
+     * Every fix carries Gaussian noise consistent with its accuracy; every glitchEvery
+     * fixes a multipath burst of one or two fixes lands ~200 m off, claiming glitchAccuracy
+     * (a random 20-150 m when 0).
+     */
+    private static Trace route(long seed, int fixes, long intervalMs, double speedMps, double legMeters,
+                               float accuracy, int glitchEvery, float glitchAccuracy) {
+        Random random = new Random(seed);
+        Trace trace = new Trace(fixes);
+        double east = 0;
+        double north = 0;
+        double heading = 0;
+        double legLeft = legMeters;
+        int burst = 0;
+        double burstAngle = 0;
+        for (int i = 0; i < fixes; i++) {
+            if (i > 0) {
+                double step = speedMps * intervalMs / 1000.0;
+                while (step > 0) {
+                    double move = Math.min(step, legLeft);
+                    east += Math.sin(heading) * move;
+                    north += Math.cos(heading) * move;
+                    step -= move;
+                    legLeft -= move;
+                    if (legLeft <= 0) {
+                        heading += random.nextBoolean() ? Math.PI / 2 : -Math.PI / 2;
+                        legLeft = legMeters;
+                    }
+                }
+            }
+            trace.times[i] = 1_700_000_000_000L + i * intervalMs;
+            trace.trueLat[i] = LAT + north / GeoMath.METERS_PER_DEGREE_LAT;
+            trace.trueLng[i] = LNG + east / M_PER_DEG_LNG;
+
+            double noiseEast = random.nextGaussian() * accuracy / 1.5;
+            double noiseNorth = random.nextGaussian() * accuracy / 1.5;
+            float reported = accuracy;
+            if (burst == 0 && glitchEvery > 0 && i > 5 && i % glitchEvery == 0) {
+                burst = 1 + random.nextInt(2);
+                burstAngle = random.nextDouble() * 2 * Math.PI;
+            }
+            if (burst > 0) {
+                noiseEast = Math.sin(burstAngle) * 200;
+                noiseNorth = Math.cos(burstAngle) * 200;
+                reported = glitchAccuracy > 0 ? glitchAccuracy : 20 + random.nextInt(131);
+                trace.glitches++;
+                burst--;
+            }
+            trace.lat[i] = trace.trueLat[i] + noiseNorth / GeoMath.METERS_PER_DEGREE_LAT;
+            trace.lng[i] = trace.trueLng[i] + noiseEast / M_PER_DEG_LNG;
+            trace.accuracy[i] = reported;
+        }
+        return trace;
+    }
+
+    private static double pathLength(double[] lat, double[] lng, int n) {
+        double total = 0;
+        for (int i = 1; i < n; i++) {
+            total += GeoMath.distanceMeters(lat[i - 1], lng[i - 1], lat[i], lng[i]);
+        }
+        return total;
+    }
+
+    /** Replays the trace through a filter; returns the filtered path length. */
+    private static double filteredLength(Trace trace, FixFilter filter) {
+        int n = trace.times.length;
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (filter.accept(trace.lat[i], trace.lng[i], trace.accuracy[i], trace.times[i])) {
+                lat[kept] = filter.getLatitude();
+                lng[kept] = filter.getLongitude();
+                kept++;
+            }
+        }
+        return pathLength(lat, lng, kept);
+    }
+
+    @Test
+    public void noisyWalkPathLengthStaysCloseToTruth() {
+        // 40 minutes on foot, a fix every 5 s, indoor-style jumps every ~40 fixes
+        Trace trace = route(1, 480, 5000, 1.4, 150, 8, 40, 0);
+        int n = trace.times.length;
+        double truth = pathLength(trace.trueLat, trace.trueLng, n);
+        double raw = pathLength(trace.lat, trace.lng, n);
+        FixFilter filter = new FixFilter();
+        double filtered = filteredLength(trace, filter);
+
+        double rawError = Math.abs(raw - truth) / truth;
+        double filteredError = Math.abs(filtered - truth) / truth;
+        assertTrue("raw error " + rawError, rawError > 1.0);
+        assertTrue("filtered error " + filteredError, filteredError < 0.2);
+        assertTrue(filter.getRejectedCount() > 0);
+    }
+
+    @Test
+    public void noisyDrivePathLengthStaysCloseToTruth() {
+        // 20 minutes at 50 km/h, a fix every 2 s, glitches claiming a confident 10 m
+        Trace trace = route(2, 600, 2000, 14, 800, 6, 40, 10);
+        int n = trace.times.length;
+        double truth = pathLength(trace.trueLat, trace.trueLng, n);
+        double raw = pathLength(trace.lat, trace.lng, n);
+        FixFilter filter = new FixFilter();
+        double filtered = filteredLength(trace, filter);
+
+        double rawError = Math.abs(raw - truth) / truth;
+        double filteredError = Math.abs(filtered - truth) / truth;
+        assertTrue("raw error " + rawError, rawError > 0.25);
+        assertTrue("filtered error " + filteredError, filteredError < 0.03);
+        // Confident glitches cannot be weighed down, only gated out
+        assertTrue("rejected " + filter.getRejectedCount() + " of " + trace.glitches,
+            filter.getRejectedCount() >= trace.glitches * 0.9);
+        assertEquals(0, filter.getResetCount());
+    }
+
+    @Test
+    public void firstFixPassesThroughUnchanged() {
+        FixFilter filter = new FixFilter();
+        assertTrue(filter.accept(LAT, LNG, 12, 1000));
+        assertEquals(LAT, filter.getLatitude(), 1e-9);
+        assertEquals(LNG, filter.getLongitude(), 1e-9);
+        assertEquals(12, filter.getAccuracy(), 1e-3);
+    }
+
+    @Test
+    public void inaccurateFixBarelyMovesTheEstimate() {
+        FixFilter filter = new FixFilter();
+        for (int i = 0; i < 10; i++) {
+            filter.accept(LAT, LNG, 5, i * 10_000L);
+        }
+        // 200 m north, but claiming 150 m accuracy
+        assertTrue(filter.accept(LAT + 200 / GeoMath.METERS_PER_DEGREE_LAT, LNG, 150, 100_000));
+        double moved = GeoMath.distanceMeters(LAT, LNG, filter.getLatitude(), filter.getLongitude());
+        assertTrue("moved " + moved, moved < 30);
+        assertTrue(filter.getAccuracy() < 150);
+    }
+
+    @Test
+    public void rejectsImpossibleJump() {
+        FixFilter filter = new FixFilter();
+        for (int i = 0; i < 10; i++) {
+            filter.accept(LAT, LNG, 5, i * 1000L);
+        }
+        // 200 m in one second from standstill
+        assertFalse(filter.accept(LAT + 200 / GeoMath.METERS_PER_DEGREE_LAT, LNG, 5, 10_000));
+        assertEquals(LAT, filter.getLatitude(), 1e-5);
+        assertTrue(filter.accept(LAT, LNG, 5, 11_000));
+    }
+
+    @Test
+    public void restartsAfterRepeatedRejectionsOrLongGap() {
+        FixFilter filter = new FixFilter();
+        for (int i = 0; i < 10; i++) {
+            filter.accept(LAT, LNG, 5, i * 1000L);
+        }
+        double farLat = LAT + 0.05;
+        assertFalse(filter.accept(farLat, LNG, 5, 10_000));
+        assertFalse(filter.accept(farLat, LNG, 5, 11_000));
+        assertTrue(filter.accept(farLat, LNG, 5, 12_000));
+        assertEquals(farLat, filter.getLatitude(), 1e-9);
+        assertEquals(1, filter.getResetCount());
+
+        assertTrue(filter.accept(LAT, LNG, 5, 12_000 + FixFilter.MAX_GAP_MS + 1));
+        assertEquals(LAT, filter.getLatitude(), 1e-9);
+        assertEquals(2, filter.getResetCount());
+    }
+
+    @Test
+    public void rejectsOutOfOrderFixes() {
+        FixFilter filter = new FixFilter();
+        filter.accept(LAT, LNG, 5, 2000);
+        assertFalse(filter.accept(LAT, LNG, 5, 2000));
+        assertFalse(filter.accept(LAT, LNG, 5, 1000));
+    }
+}
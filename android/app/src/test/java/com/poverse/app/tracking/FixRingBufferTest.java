@@ -0,0 +1,95 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+public class FixRingBufferTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("fixes", ".ring");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void pendingFixesAndCursorSurviveReopen() throws Exception {
+        FixRingBuffer ring = new FixRingBuffer(file, 16);
+        for (int i = 0; i < 5; i++) {
+            ring.append(12.0 + i, 77.0 + i, 4f + i, 1000L * i);
+        }
+        ring.commit(2);
+        ring.close();
+
+        FixRingBuffer reopened = new FixRingBuffer(file, 16);
+        assertEquals(2, reopened.getReadSeq());
+        assertEquals(5, reopened.getWriteSeq());
+
+        double[] lat = new double[8];
+        double[] lng = new double[8];
+        float[] acc = new float[8];
+        long[] time = new long[8];
+        int n = reopened.read(reopened.getReadSeq(), 8, lat, lng, acc, time);
+        assertEquals(3, n);
+        assertEquals(14.0, lat[0], 0);
+        assertEquals(79.0, lng[0], 0);
+        assertEquals(6f, acc[0], 0);
+        assertEquals(2000L, time[0]);
+        reopened.close();
+    }
+
+    @Test
+    public void overwritesOldestWhenFull() throws Exception {
+        FixRingBuffer ring = new FixRingBuffer(file, 4);
+        int overwritten = 0;
+        for (int i = 0; i < 10; i++) {
+            if (ring.append(i, i, 1f, i)) overwritten++;
+        }
+        assertEquals(6, overwritten);
+        assertEquals(4, ring.getPendingCount());
+        assertEquals(6, ring.getReadSeq());
+
+        double[] lat = new double[4];
+        long[] time = new long[4];
+        int n = ring.read(0, 4, lat, new double[4], new float[4], time);
+        assertEquals(4, n);
+        assertEquals(6L, time[0]);
+        assertEquals(9L, time[3]);
+        ring.close();
+    }
+
+    @Test
+    public void commitNeverMovesBackwardsOrPastWriter() throws Exception {
+        FixRingBuffer ring = new FixRingBuffer(file, 8);
+        ring.append(1, 1, 1f, 1);
+        ring.append(2, 2, 1f, 2);
+        ring.commit(1);
+        ring.commit(0);
+        assertEquals(1, ring.getReadSeq());
+        ring.commit(100);
+        assertEquals(2, ring.getReadSeq());
+        assertEquals(0, ring.getPendingCount());
+        ring.close();
+    }
+
+    @Test
+    public void resetsOnCapacityMismatch() throws Exception {
+        FixRingBuffer ring = new FixRingBuffer(file, 8);
+        ring.append(1, 1, 1f, 1);
+        ring.close();
+
+        FixRingBuffer resized = new FixRingBuffer(file, 16);
+        assertEquals(0, resized.getPendingCount());
+        assertEquals(16, resized.getCapacity());
+        resized.close();
+    }
+}
@@ -0,0 +1,62 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Time to order 50, 200 and 1,000 stops scattered over a city, split into the distance
+ * matrix and nearest-neighbour plus 2-opt, and how much 2-opt shortens the greedy tour.
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*GeoEngineBenchmark'
+ */
+public class GeoEngineBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    // Roughly a 30 x 30 km city
+    private static final double SPREAD_DEGREES = 0.27;
+
+    @Test
+    public void cityStops() {
+        for (int stops : new int[] {50, 200, 1000}) {
+            Random random = new Random(stops);
+            double[] lats = new double[stops];
+            double[] lngs = new double[stops];
+            for (int i = 0; i < stops; i++) {
+                lats[i] = 12.85 + random.nextDouble() * SPREAD_DEGREES;
+                lngs[i] = 77.45 + random.nextDouble() * SPREAD_DEGREES;
+            }
+
+            GeoEngine.Plan plan = null;
+            for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                GeoEngine.distanceMatrix(lats, lngs);
+                plan = run(lats, lngs);
+            }
+            long matrixNs = 0;
+            long planNs = 0;
+            for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                long start = System.nanoTime();
+                GeoEngine.distanceMatrix(lats, lngs);
+                matrixNs += System.nanoTime() - start;
+                start = System.nanoTime();
+                plan = run(lats, lngs);
+                planNs += System.nanoTime() - start;
+            }
+
+            System.out.printf(Locale.US,
+                "%4d stops: matrix %.2f ms, plan %.2f ms, greedy %.1f km -> 2-opt %.1f km (%.1f%% shorter, %d reversals)%n",
+                stops, matrixNs / 1e6 / MEASURED_ROUNDS, planNs / 1e6 / MEASURED_ROUNDS,
+                plan.nearestNeighbourMeters / 1000, plan.totalMeters / 1000,
+                100 * (1 - plan.totalMeters / plan.nearestNeighbourMeters), plan.improvements);
+            assertTrue(plan.converged);
+            assertTrue(plan.totalMeters < plan.nearestNeighbourMeters);
+        }
+    }
+
+    private static GeoEngine.Plan run(double[] lats, double[] lngs) {
+        return GeoEngine.plan(12.9716, 77.5946, lats, lngs, null, GeoEngine.DEFAULT_SPEED_MPS, false,
+            GeoEngine.DEFAULT_TIME_BUDGET_MS * 10);
+    }
+}
@@ -0,0 +1,138 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class GeoEngineTest {
+    private static final double ORIGIN_LAT = 12.9716;
+    private static final double ORIGIN_LNG = 77.5946;
+    // About 111 m of latitude
+    private static final double STEP = 1e-3;
+
+    @Test
+    public void matrixMatchesGeoMath() {
+        double[] lats = {12.9716, 12.9352, 13.0358};
+        double[] lngs = {77.5946, 77.6245, 77.5970};
+        double[] matrix = GeoEngine.distanceMatrix(lats, lngs);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, matrix[i * 3 + i], 0);
+            for (int j = 0; j < 3; j++) {
+                assertEquals(GeoMath.distanceMeters(lats[i], lngs[i], lats[j], lngs[j]), matrix[i * 3 + j], 1e-6);
+                assertEquals(matrix[i * 3 + j], matrix[j * 3 + i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void stopsAlongALineAreVisitedInOrder() {
+        // Given out of order, due north of the origin
+        double[] lats = {ORIGIN_LAT + 3 * STEP, ORIGIN_LAT + STEP, ORIGIN_LAT + 4 * STEP, ORIGIN_LAT + 2 * STEP};
+        double[] lngs = new double[4];
+        Arrays.fill(lngs, ORIGIN_LNG);
+
+        GeoEngine.Plan plan = GeoEngine.plan(ORIGIN_LAT, ORIGIN_LNG, lats, lngs, null,
+            GeoEngine.DEFAULT_SPEED_MPS, false, GeoEngine.DEFAULT_TIME_BUDGET_MS);
+        assertArrayEquals(new int[] {1, 3, 0, 2}, plan.order);
+        assertEquals(4 * STEP * GeoMath.METERS_PER_DEGREE_LAT, plan.totalMeters, 0.5);
+        assertTrue(plan.converged);
+    }
+
+    @Test
+    public void twoOptLeavesNoShorterReversal() {
+        int stops = 40;
+        Random random = new Random(7);
+        double[] lats = new double[stops];
+        double[] lngs = new double[stops];
+        for (int i = 0; i < stops; i++) {
+            lats[i] = ORIGIN_LAT + random.nextDouble() * 50 * STEP;
+            lngs[i] = ORIGIN_LNG + random.nextDouble() * 50 * STEP;
+        }
+        GeoEngine.Plan plan = GeoEngine.plan(ORIGIN_LAT, ORIGIN_LNG, lats, lngs, null,
+            GeoEngine.DEFAULT_SPEED_MPS, false, GeoEngine.DEFAULT_TIME_BUDGET_MS);
+        assertTrue(plan.converged);
+        assertTrue(plan.improvements > 0);
+        assertTrue(plan.totalMeters < plan.nearestNeighbourMeters);
+
+        // Every segment reversal of the result is at least as long
+        double[] tourLats = new double[stops + 1];
+        double[] tourLngs = new double[stops + 1];
+        tourLats[0] = ORIGIN_LAT;
+        tourLngs[0] = ORIGIN_LNG;
+        for (int k = 0; k < stops; k++) {
+            tourLats[k + 1] = lats[plan.order[k]];
+            tourLngs[k + 1] = lngs[plan.order[k]];
+        }
+        for (int i = 1; i < stops; i++) {
+            for (int j = i + 1; j <= stops; j++) {
+                reverse(tourLats, i, j);
+                reverse(tourLngs, i, j);
+                assertTrue(length(tourLats, tourLngs) >= plan.totalMeters - 1e-3);
+                reverse(tourLats, i, j);
+                reverse(tourLngs, i, j);
+            }
+        }
+        assertEquals(plan.totalMeters, length(tourLats, tourLngs), 1e-3);
+    }
+
+    @Test
+    public void etasAddTravelAndDwellAtEarlierStops() {
+        double[] lats = {ORIGIN_LAT + STEP, ORIGIN_LAT + 2 * STEP};
+        double[] lngs = {ORIGIN_LNG, ORIGIN_LNG};
+        double[] dwell = {600, 60};
+
+        GeoEngine.Plan plan = GeoEngine.plan(ORIGIN_LAT, ORIGIN_LNG, lats, lngs, dwell, 5.0, true,
+            GeoEngine.DEFAULT_TIME_BUDGET_MS);
+        double leg = STEP * GeoMath.METERS_PER_DEGREE_LAT;
+        assertEquals(leg, plan.legMeters[0], 0.5);
+        assertEquals(leg / 5.0, plan.etaSeconds[0], 0.1);
+        assertEquals(2 * leg / 5.0 + 600, plan.etaSeconds[1], 0.1);
+        // Returning home counts the way back
+        assertEquals(4 * leg, plan.totalMeters, 1);
+    }
+
+    @Test
+    public void exhaustedBudgetKeepsAValidTour() {
+        int stops = 300;
+        double[] lats = new double[stops];
+        double[] lngs = new double[stops];
+        for (int i = 0; i < stops; i++) {
+            lats[i] = ORIGIN_LAT + ((i * 7919) % 101) * STEP;
+            lngs[i] = ORIGIN_LNG + ((i * 104729) % 97) * STEP;
+        }
+        GeoEngine.Plan plan = GeoEngine.plan(ORIGIN_LAT, ORIGIN_LNG, lats, lngs, null,
+            GeoEngine.DEFAULT_SPEED_MPS, false, 0);
+        assertFalse(plan.converged);
+        assertEquals(plan.nearestNeighbourMeters, plan.totalMeters, 0);
+        int[] sorted = plan.order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < stops; i++) assertEquals(i, sorted[i]);
+    }
+
+    @Test
+    public void noStopsIsAnEmptyPlan() {
+        GeoEngine.Plan plan = GeoEngine.plan(ORIGIN_LAT, ORIGIN_LNG, new double[0], new double[0], null,
+            GeoEngine.DEFAULT_SPEED_MPS, true, GeoEngine.DEFAULT_TIME_BUDGET_MS);
+        assertEquals(0, plan.size());
+        assertEquals(0, plan.totalMeters, 0);
+    }
+
+    private static double length(double[] lats, double[] lngs) {
+        double meters = 0;
+        for (int k = 1; k < lats.length; k++) {
+            meters += GeoMath.distanceMeters(lats[k - 1], lngs[k - 1], lats[k], lngs[k]);
+        }
+        return meters;
+    }
+
+    private static void reverse(double[] values, int from, int to) {
+        while (from < to) {
+            double swap = values[from];
+            values[from++] = values[to];
+            values[to--] = swap;
+        }
+    }
+}
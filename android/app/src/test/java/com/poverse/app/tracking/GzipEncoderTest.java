@@ -0,0 +1,59 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class GzipEncoderTest {
+    private static byte[] gunzip(GzipEncoder encoder) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(encoder.buffer(), 0, encoder.length()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void roundTripsThroughJdkGzip() throws Exception {
+        byte[] json = "{\"locationHistory/u1/1700000000000\":{\"latitude\":12.9716,\"longitude\":77.5946}}"
+            .getBytes(StandardCharsets.UTF_8);
+        try (GzipEncoder encoder = new GzipEncoder()) {
+            encoder.encode(json, 0, json.length);
+            assertArrayEquals(json, gunzip(encoder));
+        }
+    }
+
+    @Test
+    public void handlesEmptyAndIncompressibleInput() throws Exception {
+        byte[] random = new byte[70_000];
+        new Random(7).nextBytes(random);
+        try (GzipEncoder encoder = new GzipEncoder()) {
+            encoder.encode(random, 0, 0);
+            assertEquals(0, gunzip(encoder).length);
+
+            encoder.encode(random, 0, random.length);
+            assertArrayEquals(random, gunzip(encoder));
+        }
+    }
+
+    @Test
+    public void reusesItsBufferForASlice() throws Exception {
+        byte[] text = new byte[10_000];
+        Arrays.fill(text, (byte) 'a');
+        try (GzipEncoder encoder = new GzipEncoder()) {
+            encoder.encode(text, 0, text.length);
+            byte[] first = encoder.buffer();
+            assertTrue(encoder.length() < 100);
+
+            encoder.encode(text, 100, 5000);
+            assertSame(first, encoder.buffer());
+            assertArrayEquals(Arrays.copyOfRange(text, 100, 5100), gunzip(encoder));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.poverse.app.tracking;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the RTDB REST endpoint that can take gzip request bodies.
+ *
+ * Records every request as received on the wire and as decoded. With gzip disabled it
+ * answers compressed bodies like a JSON parser would (400) or like a server that
+ * checks Content-Encoding (415); it can also advertise its codings per RFC 7694, or
+ * refuse every body, e.g. like a rules error.
+ */
+class LocalRtdbEndpoint implements AutoCloseable {
+    static final class Received {
+        final String path;
+        final String encoding;
+        final int wireBytes;
+        final String body;
+
+        Received(String path, String encoding, int wireBytes, String body) {
+            this.path = path;
+            this.encoding = encoding;
+            this.wireBytes = wireBytes;
+            this.body = body;
+        }
+
+        boolean gzipped() {
+            return "gzip".equals(encoding);
+        }
+    }
+
+    private final HttpServer server;
+    private final List<Received> received = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean acceptsGzip = true;
+    private volatile int refusalCode = 415;
+    private volatile String advertisedEncodings;
+    private volatile int forcedCode = 0;
+
+    LocalRtdbEndpoint() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] raw;
+            try (InputStream in = exchange.getRequestBody()) {
+                raw = in.readAllBytes();
+            }
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            int code = 200;
+            byte[] body = raw;
+            if ("gzip".equals(encoding)) {
+                if (acceptsGzip) {
+                    body = gunzip(raw);
+                } else {
+                    code = refusalCode;
+                }
+            }
+            if (forcedCode != 0) {
+                code = forcedCode;
+            }
+            received.add(new Received(exchange.getRequestURI().getPath(), encoding, raw.length,
+                code == 200 ? new String(body, StandardCharsets.UTF_8) : null));
+
+            if (advertisedEncodings != null) {
+                exchange.getResponseHeaders().set("Accept-Encoding", advertisedEncodings);
+            }
+            byte[] response = (code == 200 ? "{}" : "{\"error\":\"bad body\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void refuseGzip(int code) {
+        acceptsGzip = false;
+        refusalCode = code;
+    }
+
+    void refuseEverything(int code) {
+        forcedCode = code;
+    }
+
+    void advertise(String encodings) {
+        advertisedEncodings = encodings;
+    }
+
+    List<Received> received() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    long wireBytes() {
+        long total = 0;
+        for (Received r : received()) {
+            total += r.wireBytes;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static byte[] gunzip(byte[] raw) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(raw))) {
+            return in.readAllBytes();
+        }
+    }
+}
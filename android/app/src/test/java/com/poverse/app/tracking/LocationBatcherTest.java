@@ -0,0 +1,277 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class LocationBatcherTest {
+    private ScheduledExecutorService scheduler;
+    private RtdbUploader uploader;
+    private File ringFile;
+    private FixRingBuffer fixes;
+    private final List<UploadRequest> sent = Collections.synchronizedList(new ArrayList<>());
+    // The batcher reuses its request buffer, so bodies are captured at send time
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+    private volatile int responseCode = 200;
+    private CountDownLatch uploaded;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        uploaded = new CountDownLatch(1);
+        uploader = new RtdbUploader(new RtdbTransport("http://localhost") {
+            @Override
+            public int send(UploadRequest request) {
+                sent.add(request);
+                bodies.add(request.bodyAsString());
+                uploaded.countDown();
+                return responseCode;
+            }
+        });
+        ringFile = File.createTempFile("fixes", ".ring");
+        fixes = new FixRingBuffer(ringFile, 64);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        uploader.shutdown(1000);
+        scheduler.shutdownNow();
+        fixes.close();
+        ringFile.delete();
+    }
+
+    @Test
+    public void flushesLocationTrailAndPresenceAsOnePatch() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 10);
+        batcher.addFix(12.5, 77.5, 5f, 1_700_000_000_000L);
+        batcher.addFix(12.6, 77.6, 6f, 1_700_000_010_000L);
+        batcher.addPresence(true, 1_700_000_015_000L);
+        batcher.flush();
+
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        assertEquals(1, sent.size());
+        UploadRequest request = sent.get(0);
+        assertEquals(UploadRequest.METHOD_PATCH, request.method);
+        assertEquals("/.json", request.path);
+
+        String body = bodies.get(0);
+        assertTrue(body.contains("\"userLocations/u1\":{\"latitude\":12.6,\"longitude\":77.6"));
+        assertTrue(body.contains("\"locationHistory/u1/1700000000000\":{\"latitude\":12.5"));
+        assertTrue(body.contains("\"locationHistory/u1/1700000010000\":{\"latitude\":12.6"));
+        assertTrue(body.contains("\"presence/u1\":{\"isOnline\":true,\"lastActive\":\"2023-11-14T22:13:35.000Z\""));
+        uploader.shutdown(1000);
+        assertEquals(0, batcher.getPendingFixCount());
+    }
+
+    @Test
+    public void flushesWhenBatchIsFull() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 3);
+        for (int i = 0; i < 3; i++) {
+            batcher.addFix(1, 2, 3f, 1000L + i);
+        }
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(0, batcher.getPendingFixCount());
+    }
+
+    @Test
+    public void flushesWhenWindowElapses() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 50, 100);
+        batcher.addPresence(true, 1000L);
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        String body = bodies.get(0);
+        assertFalse(body.contains("userLocations"));
+        assertTrue(body.startsWith("{\"presence/u1\""));
+    }
+
+    @Test
+    public void keepsFixesUntilServerConfirms() throws Exception {
+        responseCode = 503;
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 10);
+        batcher.addFix(1, 2, 3f, 1000L);
+        batcher.addFix(1, 2, 3f, 2000L);
+        batcher.flush();
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(2, fixes.getPendingCount());
+        assertEquals(0, fixes.getReadSeq());
+    }
+
+    @Test
+    public void drainsBacklogInConsecutiveBatches() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            fixes.append(1, 2, 3f, 1000L + i);
+        }
+        uploaded = new CountDownLatch(3);
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 10, 10,
+            LocationBatcher.DEFAULT_LARGE_BACKLOG, LocationBatcher.DEFAULT_METERED_DRAIN_INTERVAL_MS);
+        batcher.flush();
+
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(3, sent.size());
+        assertEquals(0, fixes.getPendingCount());
+        assertTrue(bodies.get(2).contains("locationHistory/u1/1024"));
+    }
+
+    @Test
+    public void buffersWhileOfflineThenDrainsInOneLargeBatch() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 0, 10);
+        batcher.setNetwork(false, false);
+        for (int i = 0; i < 25; i++) {
+            batcher.addFix(1, 2, 3f, 1000L + i);
+        }
+        batcher.addPresence(true, 2000L);
+        assertFalse(uploaded.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(25, batcher.getPendingFixCount());
+
+        batcher.setNetwork(true, false);
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(1, sent.size());
+        assertEquals(0, batcher.getPendingFixCount());
+        String body = bodies.get(0);
+        assertTrue(body.contains("locationHistory/u1/1000"));
+        assertTrue(body.contains("locationHistory/u1/1024"));
+        assertTrue(body.contains("\"userLocations/u1\":{\"latitude\":1,\"longitude\":2,\"accuracy\":3,\"timestamp\":\"1970-01-01T00:00:01.024Z\""));
+        assertTrue(body.contains("\"presence/u1\""));
+    }
+
+    @Test
+    public void drainsLargeBacklogSlowlyOnMeteredNetwork() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            fixes.append(1, 2, 3f, 1000L + i);
+        }
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 10, 50, 20, 60_000);
+        batcher.setNetwork(true, true);
+        batcher.flush();
+
+        // One regular batch plus the live position, then nothing until the drain interval
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(1, sent.size());
+        assertEquals(20, batcher.getPendingFixCount());
+        assertTrue(bodies.get(0).contains("locationHistory/u1/1009"));
+        assertFalse(bodies.get(0).contains("locationHistory/u1/1010"));
+        assertTrue(bodies.get(0).contains("\"timestamp\":\"1970-01-01T00:00:01.029Z\",\"source\""));
+
+        // Wi-Fi: the rest goes at once, without repeating the live position
+        uploaded = new CountDownLatch(1);
+        batcher.setNetwork(true, false);
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(2, sent.size());
+        assertEquals(0, batcher.getPendingFixCount());
+        assertTrue(bodies.get(1).contains("locationHistory/u1/1029"));
+        assertFalse(bodies.get(1).contains("userLocations"));
+    }
+
+    @Test
+    public void foldsPresenceIntoFixBatchesWhileOnline() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 0, 10);
+        long before = System.currentTimeMillis();
+        batcher.addFix(12.5, 77.5, 5f, 1_700_000_000_000L);
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+
+        String body = bodies.get(0);
+        assertTrue(body.contains("\"presence/u1\":{\"isOnline\":true"));
+        assertTrue(batcher.getLastPresenceMs() >= before);
+    }
+
+    @Test
+    public void doesNotFoldPresenceAfterGoingOffline() throws Exception {
+        uploaded = new CountDownLatch(2);
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 0, 10);
+        batcher.addPresence(false, 1000L);
+        batcher.addFix(12.5, 77.5, 5f, 2000L);
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        assertFalse(bodies.get(1).contains("presence/"));
+    }
+
+    @Test
+    public void metricsTrackQueuedUploadedAndOverwrittenFixes() throws Exception {
+        responseCode = 503;
+        File smallFile = File.createTempFile("small", ".ring");
+        FixRingBuffer small = new FixRingBuffer(smallFile, 4);
+        TrackingMetrics metrics = new TrackingMetrics();
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, small, "u1", 60_000, 10);
+        batcher.setMetrics(metrics);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 6; i++) {
+            batcher.addFix(1, 2, 3f, now - 1000 + i);
+        }
+        assertEquals(6, metrics.getFixesQueued());
+        assertEquals(2, metrics.getFixesDropped());
+        assertEquals(4, metrics.getPendingFixes());
+
+        responseCode = 200;
+        batcher.flush();
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(4, metrics.getFixesUploaded());
+        assertEquals(0, metrics.getPendingFixes());
+        assertEquals(4, metrics.getCommitLatency().getCount());
+        assertTrue(metrics.getCommitLatency().getMaxMs() >= 995);
+        small.close();
+        smallFile.delete();
+    }
+
+    @Test
+    public void withoutTrailWritesOnlyNewestFix() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 10);
+        batcher.setTrailEnabled(false);
+        TrackingMetrics metrics = new TrackingMetrics();
+        batcher.setMetrics(metrics);
+        batcher.addFix(12.5, 77.5, 5f, 1_700_000_000_000L);
+        batcher.addFix(12.6, 77.6, 6f, 1_700_000_010_000L);
+        batcher.flush();
+
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        String body = bodies.get(0);
+        assertTrue(body.contains("\"userLocations/u1\":{\"latitude\":12.6"));
+        assertFalse(body.contains("locationHistory/"));
+        // The superseded fix is done with too
+        assertEquals(0, batcher.getPendingFixCount());
+        assertEquals(1, metrics.getFixesUploaded());
+    }
+
+    @Test
+    public void emptyFlushSendsNothing() throws Exception {
+        LocationBatcher batcher = new LocationBatcher(uploader, scheduler, fixes, "u1", 50, 10);
+        batcher.flush();
+        assertFalse(uploaded.await(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void closedBatcherLeavesRingToItsSuccessor() throws Exception {
+        LocationBatcher first = new LocationBatcher(uploader, scheduler, fixes, "u1", 60_000, 10);
+        first.addFix(12.5, 77.5, 5f, 1000L);
+        first.close();
+        first.addFix(12.6, 77.6, 5f, 2000L);
+        first.flush();
+        assertFalse(uploaded.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, fixes.getPendingCount());
+
+        fixes.clear();
+        LocationBatcher second = new LocationBatcher(uploader, scheduler, fixes, "u2", 60_000, 10);
+        second.addFix(13.0, 78.0, 5f, 3000L);
+        second.flush();
+        assertTrue(uploaded.await(2, TimeUnit.SECONDS));
+        assertEquals(1, sent.size());
+        assertTrue(bodies.get(0).contains("\"userLocations/u2\""));
+        assertFalse(bodies.get(0).contains("u1"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class MainThreadGuardTest {
+
+    @After
+    public void tearDown() {
+        MainThreadGuard.uninstall();
+    }
+
+    @Test
+    public void strictModeThrowsOnTheInstalledThread() {
+        MainThreadGuard.install(Thread.currentThread(), true);
+        long before = MainThreadGuard.getViolationCount();
+        try {
+            MainThreadGuard.assertNotMainThread("test");
+            fail("expected a violation");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("test"));
+        }
+        assertEquals(before + 1, MainThreadGuard.getViolationCount());
+    }
+
+    @Test
+    public void lenientModeOnlyCounts() {
+        MainThreadGuard.install(Thread.currentThread(), false);
+        long before = MainThreadGuard.getViolationCount();
+        MainThreadGuard.assertNotMainThread("test");
+        MainThreadGuard.assertNotMainThread("test");
+        assertEquals(before + 2, MainThreadGuard.getViolationCount());
+    }
+
+    @Test
+    public void otherThreadsPass() throws Exception {
+        MainThreadGuard.install(new Thread(), true);
+        MainThreadGuard.assertNotMainThread("test");
+    }
+
+    @Test
+    public void batcherFlagsWorkPostedFromTheMainThread() throws Exception {
+        File file = File.createTempFile("fixes", ".ring");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FixRingBuffer ring = new FixRingBuffer(file, 16);
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://127.0.0.1:9"));
+        try {
+            LocationBatcher batcher = new LocationBatcher(uploader, scheduler, ring, "u1", 60_000L, 20);
+            MainThreadGuard.install(Thread.currentThread(), true);
+            try {
+                batcher.addFix(12.9, 77.6, 5f, 1000L);
+                fail("expected a violation");
+            } catch (IllegalStateException expected) {
+                // the fix never reached the ring
+            }
+            assertEquals(0, ring.getPendingCount());
+
+            // The same call from a worker thread is fine
+            scheduler.submit(() -> batcher.addFix(12.9, 77.6, 5f, 1000L)).get(5, TimeUnit.SECONDS);
+            assertEquals(1, ring.getPendingCount());
+        } finally {
+            MainThreadGuard.uninstall();
+            scheduler.shutdownNow();
+            uploader.shutdown(0);
+            ring.close();
+            file.delete();
+        }
+    }
+}
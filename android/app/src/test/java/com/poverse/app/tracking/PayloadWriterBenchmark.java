@@ -0,0 +1,101 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Allocated bytes per fix on the serialization path, measured with the JVM's per-thread
+ * allocation counter: the PayloadWriter batch path against the old JSON string path.
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*PayloadWriterBenchmark'
+ */
+public class PayloadWriterBenchmark {
+    private static final int WARMUP = 20000;
+    private static final int FIXES = 100000;
+
+    @Test
+    public void steadyStateFixPathAllocatesNothing() throws Exception {
+        Assume.assumeTrue(allocationCounterSupported());
+
+        File ringFile = File.createTempFile("fixes", ".ring");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FixRingBuffer ring = new FixRingBuffer(ringFile, FixRingBuffer.DEFAULT_CAPACITY);
+        // Completes every batch on the calling thread, so the whole path is measured
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://localhost"), 4) {
+            @Override
+            public boolean enqueue(UploadRequest request) {
+                request.complete(true);
+                return true;
+            }
+        };
+        try {
+            LocationBatcher batcher = new LocationBatcher(uploader, scheduler, ring, "agent-0001", 0,
+                LocationBatcher.DEFAULT_MAX_BATCH_SIZE);
+            for (int i = 0; i < WARMUP; i++) {
+                addFix(batcher, i);
+            }
+
+            long before = allocatedBytes();
+            for (int i = 0; i < FIXES; i++) {
+                addFix(batcher, WARMUP + i);
+            }
+            double batcherBytes = (double) (allocatedBytes() - before) / FIXES;
+
+            for (int i = 0; i < WARMUP; i++) {
+                legacyPayload(i);
+            }
+            before = allocatedBytes();
+            long sink = 0;
+            for (int i = 0; i < FIXES; i++) {
+                sink += legacyPayload(i).length;
+            }
+            double legacyBytes = (double) (allocatedBytes() - before) / FIXES;
+
+            System.out.printf(Locale.US, "Allocated per fix: legacy JSON %.1f bytes, PayloadWriter batch %.3f bytes (%d)%n",
+                legacyBytes, batcherBytes, sink % 10);
+            // The smallest object is 16 bytes, so anything under one byte per fix is a
+            // one-off cost (JIT, first ring wrap) rather than a per-fix allocation
+            assertTrue(batcherBytes < 1);
+            assertTrue(legacyBytes > 500);
+        } finally {
+            scheduler.shutdownNow();
+            uploader.shutdown(0);
+            ring.close();
+            ringFile.delete();
+        }
+    }
+
+    private static void addFix(LocationBatcher batcher, int i) {
+        batcher.addFix(12.9716 + i * 1e-6, 77.5946 - i * 1e-6, 4.5f + (i & 7), 1700000000000L + i * 10000L);
+    }
+
+    /** What sendLocationToFirebase used to do per fix, minus JSONObject (Android-only). */
+    private static byte[] legacyPayload(int i) {
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US)
+            .format(new Date(1700000000000L + i * 10000L));
+        String json = "{\"latitude\":" + (12.9716 + i * 1e-6) + ",\"longitude\":" + (77.5946 - i * 1e-6)
+            + ",\"accuracy\":" + (4.5f + (i & 7)) + ",\"timestamp\":\"" + timestamp
+            + "\",\"source\":\"native_service\"}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean allocationCounterSupported() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,97 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class PayloadWriterTest {
+
+    private static String json(PayloadWriter writer) {
+        return new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writesNestedObjectsWithCommas() {
+        PayloadWriter writer = new PayloadWriter(16);
+        writer.beginObject()
+            .key("presence/", "u1", "").beginObject()
+                .key("isOnline").value(true)
+                .key("lastActive").isoTimestamp(0)
+            .endObject()
+            .key("locationHistory/", "u1", 1700000000000L).beginObject()
+                .key("latitude").value(-12.5)
+                .key("n").value(42L)
+            .endObject()
+        .endObject();
+
+        assertEquals("{\"presence/u1\":{\"isOnline\":true,\"lastActive\":\"1970-01-01T00:00:00.000Z\"},"
+            + "\"locationHistory/u1/1700000000000\":{\"latitude\":-12.5,\"n\":42}}", json(writer));
+
+        // reset() makes the writer reusable
+        writer.reset().beginObject().key("a").value(false).endObject();
+        assertEquals("{\"a\":false}", json(writer));
+    }
+
+    @Test
+    public void timestampsMatchSimpleDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        PayloadWriter writer = new PayloadWriter();
+        Random random = new Random(7);
+        long[] fixed = {0L, 951782400000L, 951868799999L, 1709164800000L, 4102444799999L, -1L, -86400001L};
+        for (int i = 0; i < 5000 + fixed.length; i++) {
+            long ms = i < fixed.length ? fixed[i] : (long) (random.nextDouble() * 4102444800000L);
+            writer.reset().isoTimestamp(ms);
+            assertEquals(String.valueOf(ms), "\"" + format.format(new Date(ms)) + "\"", json(writer));
+        }
+    }
+
+    @Test
+    public void doublesRoundToRequestedDecimals() {
+        PayloadWriter writer = new PayloadWriter();
+        Random random = new Random(3);
+        for (int i = 0; i < 5000; i++) {
+            double v = (random.nextDouble() - 0.5) * 360;
+            writer.reset().value(v);
+            BigDecimal expected = new BigDecimal(v).setScale(7, RoundingMode.HALF_UP);
+            assertEquals(0, expected.compareTo(new BigDecimal(json(writer))));
+        }
+
+        writer.reset().value(12.0);
+        assertEquals("12", json(writer));
+        writer.reset().value(0.0000001);
+        assertEquals("0.0000001", json(writer));
+        writer.reset().value(-0.00000001);
+        assertEquals("0", json(writer));
+        writer.reset().value(4.7f, 2);
+        assertEquals("4.7", json(writer));
+        writer.reset().value(Double.NaN);
+        assertEquals("null", json(writer));
+        writer.reset().value(Long.MIN_VALUE);
+        assertEquals("-9223372036854775808", json(writer));
+    }
+
+    @Test
+    public void stringsAreEscapedAndUtf8Encoded() {
+        String text = "quote\" slash\\ tab\t \u00e9 \u4e2d \ud83d\ude00";
+        PayloadWriter writer = new PayloadWriter(8);
+        writer.value(text);
+
+        byte[] expected = "\"quote\\\" slash\\\\ tab\\u0009 \u00e9 \u4e2d \ud83d\ude00\"".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, writer.toByteArray());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsValueWithoutKey() {
+        new PayloadWriter().beginObject().value(1L);
+    }
+}
@@ -0,0 +1,144 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PresenceHeartbeatTest {
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long INTERVAL_MS = PresenceHeartbeat.DEFAULT_INTERVAL_MS;
+
+    /** Stands in for the batcher: every write, heartbeat or fix batch, refreshes presence. */
+    private static class CountingTarget implements PresenceHeartbeat.Target {
+        long lastPresenceMs = 0;
+        int heartbeatWrites = 0;
+        int fixWrites = 0;
+
+        @Override
+        public long getLastPresenceMs() {
+            return lastPresenceMs;
+        }
+
+        @Override
+        public void sendPresence(long timeMs) {
+            heartbeatWrites++;
+            lastPresenceMs = timeMs;
+        }
+
+        void fixBatch(long timeMs) {
+            fixWrites++;
+            lastPresenceMs = timeMs;
+        }
+
+        int totalWrites() {
+            return heartbeatWrites + fixWrites;
+        }
+    }
+
+    /** Replays one agent-hour with a fix batch every fixIntervalMs (0 = no fixes). */
+    private static CountingTarget simulateHour(long fixIntervalMs, boolean idle, long seed) {
+        CountingTarget target = new CountingTarget();
+        PresenceHeartbeat heartbeat = new PresenceHeartbeat(null, target, INTERVAL_MS, new Random(seed));
+        heartbeat.setIdle(idle);
+
+        long nextFix = fixIntervalMs > 0 ? 0 : Long.MAX_VALUE;
+        long nextTick = 0;
+        while (Math.min(nextFix, nextTick) < HOUR_MS) {
+            if (nextFix <= nextTick) {
+                target.fixBatch(nextFix);
+                nextFix += fixIntervalMs;
+            } else {
+                nextTick += heartbeat.onTick(nextTick);
+            }
+        }
+        return target;
+    }
+
+    @Test
+    public void movingAgentNeedsNoSeparateHeartbeats() {
+        CountingTarget target = simulateHour(10_000, false, 1);
+
+        // Timer baseline: 360 fix writes + 240 heartbeats
+        assertEquals(360, target.fixWrites);
+        assertTrue("heartbeats " + target.heartbeatWrites, target.heartbeatWrites <= 1);
+        assertTrue(target.totalWrites() < 600 * 0.65);
+    }
+
+    @Test
+    public void idleAgentHeartbeatIsStretched() {
+        CountingTarget awake = simulateHour(0, false, 2);
+        CountingTarget idle = simulateHour(0, true, 2);
+
+        // ~240 writes/hour at 15 s, ~60 once stretched 4x
+        assertTrue("awake " + awake.heartbeatWrites, awake.heartbeatWrites > 200 && awake.heartbeatWrites <= 270);
+        assertTrue("idle " + idle.heartbeatWrites, idle.heartbeatWrites > 50 && idle.heartbeatWrites <= 67);
+    }
+
+    @Test
+    public void slowFixesOnlyTopUpTheGaps() {
+        // Fixes every 60 s leave three heartbeat slots per minute
+        CountingTarget target = simulateHour(60_000, false, 3);
+        assertEquals(60, target.fixWrites);
+        assertTrue("heartbeats " + target.heartbeatWrites,
+            target.heartbeatWrites >= 120 && target.heartbeatWrites <= 180);
+    }
+
+    @Test
+    public void jitterSpreadsTicksWithinTenPercent() {
+        CountingTarget target = new CountingTarget();
+        PresenceHeartbeat a = new PresenceHeartbeat(null, target, INTERVAL_MS, new Random(11));
+        PresenceHeartbeat b = new PresenceHeartbeat(null, target, INTERVAL_MS, new Random(12));
+
+        long delayA = a.onTick(HOUR_MS);
+        long delayB = b.onTick(2 * HOUR_MS);
+        assertNotEquals(delayA, delayB);
+        for (long delay : new long[] {delayA, delayB}) {
+            assertTrue(delay >= INTERVAL_MS * 0.9 && delay <= INTERVAL_MS * 1.1);
+        }
+    }
+
+    @Test
+    public void skipsUntilIntervalAfterLastWrite() {
+        CountingTarget target = new CountingTarget();
+        target.lastPresenceMs = 100_000;
+        PresenceHeartbeat heartbeat = new PresenceHeartbeat(null, target, INTERVAL_MS, new Random(5));
+
+        long delay = heartbeat.onTick(105_000);
+        assertEquals(0, target.heartbeatWrites);
+        assertEquals(1, heartbeat.getSkippedCount());
+        assertTrue(delay >= 10_000 && delay <= 10_000 + INTERVAL_MS / 10);
+    }
+
+    @Test
+    public void startAnnouncesPresenceOnTheScheduler() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch sent = new CountDownLatch(1);
+        PresenceHeartbeat heartbeat = new PresenceHeartbeat(scheduler, new PresenceHeartbeat.Target() {
+            @Override
+            public long getLastPresenceMs() {
+                return 0;
+            }
+
+            @Override
+            public void sendPresence(long timeMs) {
+                sent.countDown();
+            }
+        });
+        try {
+            heartbeat.start();
+            assertTrue(sent.await(2, TimeUnit.SECONDS));
+            heartbeat.stop();
+            scheduler.shutdown();
+            assertTrue(scheduler.awaitTermination(2, TimeUnit.SECONDS));
+            assertEquals(1, heartbeat.getSentCount());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
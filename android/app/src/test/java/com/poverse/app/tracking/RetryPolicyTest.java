@@ -0,0 +1,55 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void classifiesStatusCodes() {
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(500));
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(503));
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(429));
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(408));
+        assertEquals(RetryPolicy.Failure.AUTH, RetryPolicy.classify(401));
+        assertEquals(RetryPolicy.Failure.AUTH, RetryPolicy.classify(403));
+        assertEquals(RetryPolicy.Failure.CLIENT, RetryPolicy.classify(400));
+        assertEquals(RetryPolicy.Failure.CLIENT, RetryPolicy.classify(404));
+    }
+
+    @Test
+    public void classifiesExceptions() {
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(new SocketTimeoutException()));
+        assertEquals(RetryPolicy.Failure.TRANSIENT, RetryPolicy.classify(new IOException("reset")));
+        assertEquals(RetryPolicy.Failure.CLIENT, RetryPolicy.classify(new IllegalArgumentException()));
+    }
+
+    @Test
+    public void retriesOnlyTransientFailuresWithinBudget() {
+        RetryPolicy policy = new RetryPolicy(3, 1000, 30000);
+        assertTrue(policy.shouldRetry(RetryPolicy.Failure.TRANSIENT, 1));
+        assertTrue(policy.shouldRetry(RetryPolicy.Failure.TRANSIENT, 2));
+        assertFalse(policy.shouldRetry(RetryPolicy.Failure.TRANSIENT, 3));
+        assertFalse(policy.shouldRetry(RetryPolicy.Failure.AUTH, 1));
+        assertFalse(policy.shouldRetry(RetryPolicy.Failure.CLIENT, 1));
+    }
+
+    @Test
+    public void backoffDoublesWithJitterAndCap() {
+        RetryPolicy policy = new RetryPolicy(10, 1000, 8000);
+        Random random = new Random(42);
+        long[] ceilings = {1000, 2000, 4000, 8000, 8000, 8000};
+        for (int attempt = 1; attempt <= ceilings.length; attempt++) {
+            long ceiling = ceilings[attempt - 1];
+            for (int i = 0; i < 50; i++) {
+                long delay = policy.backoffMs(attempt, random);
+                assertTrue(attempt + ": " + delay, delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+    }
+}
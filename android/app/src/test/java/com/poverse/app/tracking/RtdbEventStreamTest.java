@@ -0,0 +1,136 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RtdbEventStreamTest {
+    private static final String PATH = "/trackingProfiles/c1";
+
+    private HttpServer server;
+    // Events the open stream should write, taken by the server thread
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> values = new LinkedBlockingQueue<>();
+    private final AtomicInteger streams = new AtomicInteger();
+    private volatile String node = "{\"intervalMs\":30000}";
+    private RtdbEventStream stream;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext(PATH + ".json", exchange -> {
+            if ("text/event-stream".equals(exchange.getRequestHeaders().getFirst("Accept"))) {
+                serveStream(exchange);
+            } else {
+                byte[] body = node.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (stream != null) stream.stop();
+        events.add("close");
+        server.stop(0);
+    }
+
+    private void serveStream(HttpExchange exchange) throws IOException {
+        streams.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            write(out, "put", "{\"path\":\"/\",\"data\":" + node + "}");
+            while (true) {
+                String event = events.poll(5, TimeUnit.SECONDS);
+                if (event == null || event.equals("close")) break;
+                write(out, event, event.equals("keep-alive") ? "null" : "{\"path\":\"/intervalMs\",\"data\":1}");
+            }
+        } catch (InterruptedException | IOException e) {
+            // Client went away
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void write(OutputStream out, String event, String data) throws IOException {
+        out.write(("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private RtdbEventStream start() {
+        stream = new RtdbEventStream("http://127.0.0.1:" + server.getAddress().getPort() + "/", PATH,
+            values::add, new RetryPolicy(Integer.MAX_VALUE, 20, 100));
+        stream.start();
+        return stream;
+    }
+
+    @Test
+    public void deliversValueOnConnectAndAfterChanges() throws Exception {
+        start();
+        assertEquals("{\"intervalMs\":30000}", values.poll(5, TimeUnit.SECONDS));
+
+        node = "{\"intervalMs\":60000}";
+        events.add("patch");
+        assertEquals("{\"intervalMs\":60000}", values.poll(5, TimeUnit.SECONDS));
+
+        node = "null";
+        events.add("put");
+        assertEquals("null", values.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void skipsKeepAlivesAndUnchangedValues() throws Exception {
+        start();
+        assertNotNull(values.poll(5, TimeUnit.SECONDS));
+
+        events.add("keep-alive");
+        events.add("patch");
+        node = "{\"heartbeatIntervalMs\":60000}";
+        events.add("patch");
+        assertEquals("{\"heartbeatIntervalMs\":60000}", values.poll(5, TimeUnit.SECONDS));
+        assertTrue(values.isEmpty());
+    }
+
+    @Test
+    public void reconnectsAfterStreamDrops() throws Exception {
+        start();
+        assertNotNull(values.poll(5, TimeUnit.SECONDS));
+
+        node = "{\"intervalMs\":90000}";
+        events.add("close");
+        assertEquals("{\"intervalMs\":90000}", values.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, streams.get());
+    }
+
+    @Test
+    public void stopsDelivering() throws Exception {
+        start();
+        assertNotNull(values.poll(5, TimeUnit.SECONDS));
+        stream.stop();
+
+        node = "{\"intervalMs\":90000}";
+        events.add("patch");
+        assertNull(values.poll(300, TimeUnit.MILLISECONDS));
+    }
+}
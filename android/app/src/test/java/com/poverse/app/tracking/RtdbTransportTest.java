@@ -0,0 +1,136 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class RtdbTransportTest {
+    private LocalRtdbEndpoint endpoint;
+    private RtdbTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        endpoint = new LocalRtdbEndpoint();
+        transport = new RtdbTransport(endpoint.url());
+        transport.setGzipThreshold(1024);
+    }
+
+    @After
+    public void tearDown() {
+        endpoint.close();
+    }
+
+    /** A backlog-style multi-path PATCH with the given number of history entries. */
+    private static UploadRequest batch(int fixes) {
+        PayloadWriter json = new PayloadWriter().beginObject();
+        for (int i = 0; i < fixes; i++) {
+            json.key("locationHistory/", "agent-0001", 1_700_000_000_000L + i * 10_000L).beginObject()
+                .key("latitude").value(12.9716 + i * 1e-5)
+                .key("longitude").value(77.5946 - i * 1e-5)
+                .key("accuracy").value(4.5 + (i & 7), 2)
+                .key("timestamp").isoTimestamp(1_700_000_000_000L + i * 10_000L)
+                .endObject();
+        }
+        json.endObject();
+        return new UploadRequest(UploadRequest.METHOD_PATCH, "/.json", json.toByteArray(), null);
+    }
+
+    @Test
+    public void compressesLargeBodiesForAnEndpointThatTakesGzip() throws Exception {
+        UploadRequest request = batch(200);
+        assertEquals(200, transport.send(request));
+
+        List<LocalRtdbEndpoint.Received> received = endpoint.received();
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).gzipped());
+        assertEquals(request.bodyAsString(), received.get(0).body);
+        assertTrue(received.get(0).wireBytes * 4 < request.bodyLength);
+        assertEquals(received.get(0).wireBytes, transport.getLastWireBytes());
+        assertEquals(request.bodyLength - received.get(0).wireBytes, transport.getLastBytesSaved());
+        assertEquals(RtdbTransport.GzipSupport.SUPPORTED, transport.getGzipSupport());
+        assertEquals(1, transport.getCompressedCount());
+    }
+
+    @Test
+    public void smallBodiesGoUncompressed() throws Exception {
+        UploadRequest request = batch(2);
+        assertTrue(request.bodyLength < 1024);
+        assertEquals(200, transport.send(request));
+        assertFalse(endpoint.received().get(0).gzipped());
+        assertEquals(request.bodyLength, transport.getLastWireBytes());
+        assertEquals(0, transport.getLastBytesSaved());
+    }
+
+    @Test
+    public void fallsBackAndRemembersWhenGzipIsRefused() throws Exception {
+        endpoint.refuseGzip(415);
+        UploadRequest request = batch(200);
+        assertEquals(200, transport.send(request));
+        assertEquals(200, transport.send(request));
+
+        List<LocalRtdbEndpoint.Received> received = endpoint.received();
+        assertEquals(3, received.size());
+        assertTrue(received.get(0).gzipped());
+        assertFalse(received.get(1).gzipped());
+        assertEquals(request.bodyAsString(), received.get(1).body);
+        assertFalse(received.get(2).gzipped());
+        assertEquals(RtdbTransport.GzipSupport.UNSUPPORTED, transport.getGzipSupport());
+        assertEquals(0, transport.getCompressedCount());
+    }
+
+    @Test
+    public void badRequestForGzipBeforeSupportIsKnownFallsBack() throws Exception {
+        endpoint.refuseGzip(400);
+        UploadRequest request = batch(200);
+        assertEquals(200, transport.send(request));
+        assertEquals(2, endpoint.received().size());
+        assertEquals(RtdbTransport.GzipSupport.UNSUPPORTED, transport.getGzipSupport());
+    }
+
+    @Test
+    public void refusedGzipIsNotRetriedWhenThePlainBodyFailsToo() throws Exception {
+        endpoint.refuseGzip(400);
+        endpoint.refuseEverything(400);
+        UploadRequest request = batch(200);
+        assertEquals(400, transport.send(request));
+        assertEquals(RtdbTransport.GzipSupport.UNSUPPORTED, transport.getGzipSupport());
+
+        // The next large request goes out once, uncompressed
+        assertEquals(400, transport.send(request));
+        List<LocalRtdbEndpoint.Received> received = endpoint.received();
+        assertEquals(3, received.size());
+        assertFalse(received.get(2).gzipped());
+    }
+
+    @Test
+    public void compressionIsOffByDefault() throws Exception {
+        RtdbTransport plain = new RtdbTransport(endpoint.url());
+        assertEquals(200, plain.send(batch(200)));
+        assertFalse(endpoint.received().get(0).gzipped());
+        assertEquals(RtdbTransport.GzipSupport.UNKNOWN, plain.getGzipSupport());
+    }
+
+    @Test
+    public void learnsSupportFromAcceptEncoding() throws Exception {
+        endpoint.advertise("identity");
+        endpoint.refuseGzip(415);
+        assertEquals(200, transport.send(batch(2)));
+        assertEquals(RtdbTransport.GzipSupport.UNSUPPORTED, transport.getGzipSupport());
+
+        // Never tried compressed, so no refused attempt is wasted
+        assertEquals(200, transport.send(batch(200)));
+        assertEquals(2, endpoint.received().size());
+        assertFalse(endpoint.received().get(1).gzipped());
+    }
+
+    @Test
+    public void negativeThresholdDisablesCompression() throws Exception {
+        transport.setGzipThreshold(-1);
+        assertEquals(200, transport.send(batch(200)));
+        assertFalse(endpoint.received().get(0).gzipped());
+    }
+}
@@ -0,0 +1,324 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RtdbUploaderTest {
+    private HttpServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void dropsOldestWhenQueueIsFull() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        RtdbTransport blocking = new RtdbTransport("http://localhost") {
+            @Override
+            public int send(UploadRequest request) throws IOException {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                sent.add(request.path);
+                return 200;
+            }
+        };
+        RtdbUploader uploader = new RtdbUploader(blocking, 2);
+
+        // The worker picks up the first request and parks on the gate
+        uploader.enqueue(UploadRequest.put("/a.json", "1"));
+        waitForQueueSize(uploader, 0);
+        uploader.enqueue(UploadRequest.put("/b.json", "2"));
+        uploader.enqueue(UploadRequest.put("/c.json", "3"));
+        uploader.enqueue(UploadRequest.put("/d.json", "4"));
+
+        assertEquals(2, uploader.getQueueSize());
+        assertEquals(1, uploader.getDroppedCount());
+
+        gate.countDown();
+        uploader.shutdown(2000);
+        assertEquals(List.of("/a.json", "/c.json", "/d.json"), sent);
+    }
+
+    @Test
+    public void rejectsRequestsAfterShutdown() {
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://localhost") {
+            @Override
+            public int send(UploadRequest request) {
+                return 200;
+            }
+        });
+        uploader.shutdown(1000);
+        assertFalse(uploader.enqueue(UploadRequest.put("/a.json", "1")));
+    }
+
+    @Test
+    public void reusesOneConnectionAcrossWrites() throws Exception {
+        Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+        List<String> methods = Collections.synchronizedList(new ArrayList<>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            String override = exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+            methods.add(override != null ? override : exchange.getRequestMethod());
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            byte[] response = "{}".getBytes();
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        CountDownLatch done = new CountDownLatch(5);
+        RtdbUploader uploader = new RtdbUploader(
+            new RtdbTransport("http://127.0.0.1:" + server.getAddress().getPort()));
+        uploader.setListener(new RtdbUploader.Listener() {
+            @Override
+            public void onUploaded(UploadRequest request, int responseCode) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(UploadRequest request, int responseCode, Exception error) {
+                fail("upload failed: " + responseCode + " " + error);
+            }
+        });
+
+        for (int i = 0; i < 4; i++) {
+            uploader.enqueue(UploadRequest.put("/presence/u1.json", "{\"isOnline\":true}"));
+        }
+        uploader.enqueue(UploadRequest.patch("/.json", "{\"presence/u1/isOnline\":true}"));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(1, clientPorts.size());
+        assertEquals("PATCH", methods.get(4));
+    }
+
+    @Test
+    public void retriesTransientFailuresInOrder() throws Exception {
+        List<String> log = startFaultyServer(50, 503, 500);
+        RtdbUploader uploader = fastRetryUploader(4, 100, 1000);
+        CountDownLatch done = new CountDownLatch(2);
+        List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+        uploader.enqueue(UploadRequest.patch("/a.json", "1", success -> { results.add(success); done.countDown(); }));
+        uploader.enqueue(UploadRequest.patch("/b.json", "2", success -> { results.add(success); done.countDown(); }));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(List.of(true, true), results);
+        assertEquals(List.of("/a.json 503", "/a.json 500", "/a.json 200", "/b.json 200"), log);
+        assertEquals(2, uploader.getRetryCount());
+        assertEquals(2, uploader.getTransientFailureCount());
+        assertEquals(2, uploader.getSentCount());
+    }
+
+    @Test
+    public void metricsRecordBytesRetriesAndLatency() throws Exception {
+        startFaultyServer(30, 503, 400);
+        RtdbUploader uploader = fastRetryUploader(4, 100, 1000);
+        TrackingMetrics metrics = new TrackingMetrics();
+        uploader.setMetrics(metrics);
+        CountDownLatch done = new CountDownLatch(2);
+        uploader.enqueue(UploadRequest.put("/a.json", "12345", success -> done.countDown()));
+        uploader.enqueue(UploadRequest.put("/b.json", "123", success -> done.countDown()));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        // a: 503 then 400 (not retried); b: 200
+        assertEquals(5 + 5 + 3, metrics.getBytesSent());
+        assertEquals(1, metrics.getRetries());
+        assertEquals(1, metrics.getRequestsSent());
+        assertEquals(1, metrics.getRequestsFailed());
+        assertEquals(3, metrics.getHttpLatency().getCount());
+        assertTrue(metrics.getHttpLatency().getMaxMs() >= 30);
+    }
+
+        @Test
+    public void authAndClientErrorsAreNotRetried() throws Exception {
+        List<String> log = startFaultyServer(0, 401, 400);
+        RtdbUploader uploader = fastRetryUploader(4, 100, 1000);
+        CountDownLatch done = new CountDownLatch(2);
+        List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+        uploader.enqueue(UploadRequest.put("/a.json", "1", success -> { results.add(success); done.countDown(); }));
+        uploader.enqueue(UploadRequest.put("/b.json", "2", success -> { results.add(success); done.countDown(); }));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(List.of(false, false), results);
+        assertEquals(2, log.size());
+        assertEquals(0, uploader.getRetryCount());
+        assertEquals(1, uploader.getAuthFailureCount());
+        assertEquals(1, uploader.getClientErrorCount());
+        assertEquals(CircuitBreaker.State.CLOSED, uploader.getCircuitState());
+    }
+
+    @Test
+    public void circuitOpensDuringOutageAndRecovers() throws Exception {
+        int[] outage = new int[6];
+        Arrays.fill(outage, 503);
+        List<String> log = startFaultyServer(10, outage);
+        RtdbUploader uploader = fastRetryUploader(2, 3, 300);
+        CountDownLatch done = new CountDownLatch(6);
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < 6; i++) {
+            uploader.enqueue(UploadRequest.put("/r" + i + ".json", "1", success -> {
+                if (success) succeeded.incrementAndGet();
+                done.countDown();
+            }));
+        }
+
+        // Third consecutive failure opens the breaker; nothing else reaches the server meanwhile
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.OPEN, uploader.getCircuitState());
+        assertEquals(3, log.size());
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        assertEquals(CircuitBreaker.State.CLOSED, uploader.getCircuitState());
+        // Each failed half-open probe re-opened it with a doubled cooldown
+        assertEquals(4, uploader.getCircuitOpenCount());
+        assertEquals(9, log.size());
+        assertEquals(3, succeeded.get());
+        assertEquals(3, uploader.getSentCount());
+    }
+
+    @Test
+    public void shutdownFailsFastWhileCircuitIsOpen() throws Exception {
+        startFaultyServer(0, 503, 503);
+        CountDownLatch done = new CountDownLatch(2);
+        RtdbUploader uploader = new RtdbUploader(
+            new RtdbTransport("http://127.0.0.1:" + server.getAddress().getPort()), 8,
+            new RetryPolicy(1, 10, 10), new CircuitBreaker(1, 60_000, 60_000));
+        uploader.enqueue(UploadRequest.put("/a.json", "1", success -> done.countDown()));
+        uploader.enqueue(UploadRequest.put("/b.json", "2", success -> done.countDown()));
+        Thread.sleep(200);
+
+        long started = System.currentTimeMillis();
+        uploader.shutdown(2000);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - started < 1000);
+        assertEquals(1, uploader.getShortCircuitedCount());
+    }
+
+    @Test
+    public void holdsRequestsWhileOffline() throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://localhost") {
+            @Override
+            public int send(UploadRequest request) {
+                sent.add(request.path);
+                return 200;
+            }
+        });
+        uploader.setNetworkAvailable(false);
+        uploader.enqueue(UploadRequest.put("/a.json", "1"));
+        uploader.enqueue(UploadRequest.put("/b.json", "2"));
+        Thread.sleep(200);
+        assertTrue(sent.isEmpty());
+        assertEquals(1, uploader.getOfflineWaitCount());
+
+        uploader.setNetworkAvailable(true);
+        uploader.shutdown(2000);
+        assertEquals(List.of("/a.json", "/b.json"), sent);
+        assertEquals(0, uploader.getShortCircuitedCount());
+    }
+
+    @Test
+    public void shutdownFailsFastWhileOffline() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://localhost") {
+            @Override
+            public int send(UploadRequest request) {
+                attempts.incrementAndGet();
+                return 200;
+            }
+        });
+        uploader.setNetworkAvailable(false);
+        uploader.enqueue(UploadRequest.put("/a.json", "1", success -> {
+            if (!success) done.countDown();
+        }));
+        Thread.sleep(100);
+
+        long started = System.currentTimeMillis();
+        uploader.shutdown(2000);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - started < 1000);
+        assertEquals(0, attempts.get());
+        assertEquals(1, uploader.getShortCircuitedCount());
+    }
+
+    private RtdbUploader fastRetryUploader(int maxAttempts, int breakerThreshold, long cooldownMs) {
+        return new RtdbUploader(new RtdbTransport("http://127.0.0.1:" + server.getAddress().getPort()), 16,
+            new RetryPolicy(maxAttempts, 10, 40), new CircuitBreaker(breakerThreshold, cooldownMs, cooldownMs * 4));
+    }
+
+    /**
+     * Local RTDB stand-in: answers with the scripted status codes in order (200 once the
+     * script runs out), each after latencyMs. Returns the "path status" log.
+     */
+    private List<String> startFaultyServer(long latencyMs, int... script) throws IOException {
+        ConcurrentLinkedQueue<Integer> codes = new ConcurrentLinkedQueue<>();
+        for (int code : script) {
+            codes.add(code);
+        }
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Integer scripted = codes.poll();
+            int code = scripted != null ? scripted : 200;
+            log.add(exchange.getRequestURI().getPath() + " " + code);
+            byte[] response = (code == 200 ? "{}" : "{\"error\":\"injected\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+        return log;
+    }
+
+    private static void waitForQueueSize(RtdbUploader uploader, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (uploader.getQueueSize() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
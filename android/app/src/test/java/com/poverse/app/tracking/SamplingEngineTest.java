@@ -0,0 +1,103 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a recorded shop / walk / drive / walk / shop trace through a simulated fused
+ * provider that honours the engine's current interval and min-distance.
+ */
+public class SamplingEngineTest {
+    private static final long FIXED_INTERVAL_MS = 10000;
+
+    @Test
+    public void followsRecordedTraceThroughEveryMotionState() throws Exception {
+        List<double[]> trace = Traces.load(Traces.SHOP_WALK_DRIVE);
+        SamplingEngine engine = new SamplingEngine(new DefaultSamplingPolicy());
+        List<MotionState> states = new ArrayList<>();
+        states.add(engine.getState());
+        engine.setListener((from, to, profile) -> states.add(to));
+
+        int adaptiveFixes = replay(trace, engine);
+        int fixedFixes = replay(trace, null);
+
+        assertEquals(List.of(
+            MotionState.WALKING,
+            MotionState.STATIONARY,
+            MotionState.WALKING,
+            MotionState.DRIVING,
+            MotionState.WALKING,
+            MotionState.STATIONARY), states);
+        assertEquals(194, fixedFixes);
+        assertEquals(91, adaptiveFixes);
+    }
+
+    @Test
+    public void stationaryUsesBalancedPower() {
+        SamplingProfile profile = new DefaultSamplingPolicy().profileFor(MotionState.STATIONARY);
+        assertEquals(SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, profile.priority);
+    }
+
+    @Test
+    public void singleOutlierDoesNotSwitchState() {
+        SamplingEngine engine = new SamplingEngine(new DefaultSamplingPolicy(), MotionState.STATIONARY, 2);
+        long t = 0;
+        for (int i = 0; i < 5; i++) {
+            assertFalse(engine.onFix(12.9716, 77.5946, 0.1f, t += 60000));
+        }
+        assertFalse(engine.onFix(12.9726, 77.5946, 9f, t += 10000));
+        assertFalse(engine.onFix(12.9716, 77.5946, 0.1f, t += 60000));
+        assertEquals(MotionState.STATIONARY, engine.getState());
+    }
+
+    @Test
+    public void acceptsPluggablePolicy() throws Exception {
+        SamplingProfile slow = new SamplingProfile(SamplingProfile.PRIORITY_LOW_POWER, 300000, 100);
+        SamplingPolicy alwaysStill = new SamplingPolicy() {
+            @Override
+            public MotionState classify(float speedMps, double displacementMeters, long windowMs) {
+                return MotionState.STATIONARY;
+            }
+
+            @Override
+            public SamplingProfile profileFor(MotionState state) {
+                return slow;
+            }
+        };
+        SamplingEngine engine = new SamplingEngine(alwaysStill, MotionState.STATIONARY, 1);
+        int fixes = replay(Traces.load(Traces.SHOP_WALK_DRIVE), engine);
+        assertEquals(MotionState.STATIONARY, engine.getState());
+        assertTrue("fixes: " + fixes, fixes <= 8);
+    }
+
+    /**
+     * Deliver trace points the way FusedLocationProvider would for the current request.
+     * A null engine replays the old fixed 10 s / 5 m request.
+     */
+    private static int replay(List<double[]> trace, SamplingEngine engine) {
+        int delivered = 0;
+        long lastTime = Long.MIN_VALUE / 2;
+        double lastLat = 0;
+        double lastLng = 0;
+        for (double[] p : trace) {
+            long time = (long) p[Traces.TIME];
+            long interval = engine != null ? engine.getProfile().intervalMs : FIXED_INTERVAL_MS;
+            float minDistance = engine != null ? engine.getProfile().minDistanceMeters : 5;
+            if (time - lastTime < interval) continue;
+            if (delivered > 0 && GeoMath.distanceMeters(lastLat, lastLng, p[Traces.LAT], p[Traces.LNG]) < minDistance) continue;
+
+            delivered++;
+            lastTime = time;
+            lastLat = p[Traces.LAT];
+            lastLng = p[Traces.LNG];
+            if (engine != null) {
+                engine.onFix(p[Traces.LAT], p[Traces.LNG], (float) p[Traces.SPEED], time);
+            }
+        }
+        return delivered;
+    }
+}
@@ -0,0 +1,114 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScopedWakeLockTest {
+
+    private static class FakeLock implements ScopedWakeLock.Lock {
+        final AtomicBoolean held = new AtomicBoolean();
+        final AtomicInteger acquires = new AtomicInteger();
+        volatile long lastTimeoutMs;
+
+        @Override
+        public void acquire(long timeoutMs) {
+            assertFalse("acquired twice", held.getAndSet(true));
+            acquires.incrementAndGet();
+            lastTimeoutMs = timeoutMs;
+        }
+
+        @Override
+        public void release() {
+            assertTrue("released while not held", held.getAndSet(false));
+        }
+    }
+
+    @Test
+    public void nestedScopesShareOneAcquisition() {
+        FakeLock platform = new FakeLock();
+        ScopedWakeLock lock = new ScopedWakeLock(platform);
+
+        ScopedWakeLock.Scope outer = lock.open();
+        ScopedWakeLock.Scope inner = lock.open();
+        assertTrue(platform.held.get());
+        inner.close();
+        assertTrue(platform.held.get());
+        outer.close();
+
+        assertFalse(platform.held.get());
+        assertEquals(1, platform.acquires.get());
+        assertEquals(ScopedWakeLock.DEFAULT_TIMEOUT_MS, platform.lastTimeoutMs);
+    }
+
+    @Test
+    public void closingTwiceReleasesOnce() {
+        FakeLock platform = new FakeLock();
+        ScopedWakeLock lock = new ScopedWakeLock(platform);
+        ScopedWakeLock.Scope first = lock.open();
+        ScopedWakeLock.Scope second = lock.open();
+
+        first.close();
+        first.close();
+        assertTrue(lock.isHeld());
+        second.close();
+        assertFalse(lock.isHeld());
+    }
+
+    @Test
+    public void heldTimeCountsOnlyOpenScopes() throws Exception {
+        ScopedWakeLock lock = new ScopedWakeLock(new FakeLock());
+        for (int i = 0; i < 3; i++) {
+            ScopedWakeLock.Scope scope = lock.open();
+            try {
+                Thread.sleep(20);
+            } finally {
+                scope.close();
+            }
+            Thread.sleep(40);
+        }
+        long held = lock.getHeldTimeMs();
+        assertTrue("held " + held, held >= 60 && held < 120);
+        assertEquals(3, lock.getAcquireCount());
+    }
+
+    @Test
+    public void uploaderHoldsLockOnlyWhileSending() throws Exception {
+        FakeLock platform = new FakeLock();
+        ScopedWakeLock lock = new ScopedWakeLock(platform);
+        AtomicBoolean heldDuringSend = new AtomicBoolean(true);
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://localhost") {
+            @Override
+            public int send(UploadRequest request) {
+                heldDuringSend.compareAndSet(true, platform.held.get());
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 200;
+            }
+        });
+        uploader.setWakeLock(lock);
+
+        long started = System.nanoTime();
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            uploader.enqueue(UploadRequest.put("/a.json", "1", success -> done.countDown()));
+            Thread.sleep(60);
+        }
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        uploader.shutdown(1000);
+        long wallMs = (System.nanoTime() - started) / 1000000L;
+
+        assertTrue(heldDuringSend.get());
+        assertFalse(platform.held.get());
+        // ~50 ms of sending in ~300 ms of wall time; the old lock was held throughout
+        assertTrue("held " + lock.getHeldTimeMs() + " of " + wallMs, lock.getHeldTimeMs() < wallMs / 2);
+    }
+}
@@ -0,0 +1,114 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes, request bytes and CPU per hour of tracking, from replaying a recorded trace
+ * through the filter, batcher and uploader as fast as they take it, once per
+ * TrackingMode. Each provider delivery ends in one flush, as on the device.
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*ShiftReplayBenchmark'
+ */
+public class ShiftReplayBenchmark {
+
+    @Test
+    public void shopWalkDriveTrace() throws Exception {
+        List<TraceReplay.Point> trace = TraceReplay.parse(new InputStreamReader(
+            getClass().getResourceAsStream(Traces.SHOP_WALK_DRIVE), StandardCharsets.UTF_8), "shop_walk_drive.csv");
+        double hours = (trace.get(trace.size() - 1).timeMs - trace.get(0).timeMs) / 3_600_000.0;
+
+        Result realtime = replay(trace, TrackingMode.REALTIME);
+        Result lowWakeup = replay(trace, TrackingMode.LOW_WAKEUP);
+        report("realtime", realtime, hours, trace.size());
+        report("lowWakeup", lowWakeup, hours, trace.size());
+
+        assertEquals(realtime.accepted, lowWakeup.accepted);
+        assertTrue(lowWakeup.deliveries * 10 < realtime.deliveries);
+        assertTrue(lowWakeup.writes * 5 < realtime.writes);
+    }
+
+    private static Result replay(List<TraceReplay.Point> trace, TrackingMode mode) throws Exception {
+        File ringFile = File.createTempFile("fixes", ".ring");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        ScheduledExecutorService replayThread = Executors.newSingleThreadScheduledExecutor();
+        FixRingBuffer ring = new FixRingBuffer(ringFile, FixRingBuffer.DEFAULT_CAPACITY);
+        final Result result = new Result();
+        // Completes every request on the calling thread and counts it
+        RtdbUploader uploader = new RtdbUploader(new RtdbTransport("http://localhost"), 4) {
+            @Override
+            public boolean enqueue(UploadRequest request) {
+                result.writes++;
+                result.bytes += request.bodyLength;
+                request.complete(true);
+                return true;
+            }
+        };
+        try {
+            // Only the flush at the end of each delivery sends
+            final LocationBatcher batcher = new LocationBatcher(uploader, scheduler, ring, "agent-0001",
+                Long.MAX_VALUE / 4, LocationBatcher.DEFAULT_MAX_BATCH_SIZE);
+            final FixFilter filter = new FixFilter();
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final CountDownLatch finished = new CountDownLatch(1);
+            new TraceReplay(trace, 0, mode.maxUpdateDelayMs).start(replayThread, 1_700_000_000_000L,
+                new TraceReplay.Sink() {
+                    @Override
+                    public void onFixes(List<TraceReplay.Point> fixes) {
+                        long start = threads.getCurrentThreadCpuTime();
+                        result.deliveries++;
+                        for (TraceReplay.Point fix : fixes) {
+                            if (filter.accept(fix.latitude, fix.longitude, fix.accuracy, fix.timeMs)) {
+                                result.accepted++;
+                                batcher.addFix(filter.getLatitude(), filter.getLongitude(), filter.getAccuracy(),
+                                    fix.timeMs);
+                            }
+                        }
+                        batcher.flush();
+                        result.cpuNs += threads.getCurrentThreadCpuTime() - start;
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        finished.countDown();
+                    }
+                });
+            assertTrue(finished.await(30, TimeUnit.SECONDS));
+            assertEquals(0, ring.getPendingCount());
+            return result;
+        } finally {
+            replayThread.shutdownNow();
+            scheduler.shutdownNow();
+            uploader.shutdown(0);
+            ring.close();
+            ringFile.delete();
+        }
+    }
+
+    private static void report(String mode, Result result, double hours, int fixes) {
+        System.out.printf(Locale.US,
+            "%-9s per hour: %5.0f wake-ups, %5.0f writes, %7.1f KB, %6.2f ms CPU (%d of %d fixes kept)%n",
+            mode, result.deliveries / hours, result.writes / hours, result.bytes / hours / 1024,
+            result.cpuNs / 1e6 / hours, result.accepted, fixes);
+    }
+
+    private static final class Result {
+        int deliveries;
+        int accepted;
+        long writes;
+        long bytes;
+        long cpuNs;
+    }
+}
@@ -0,0 +1,121 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TargetGeofencesTest {
+    // ~111 m per 0.001 degree of latitude
+    private static final double LAT = 12.9716;
+    private static final double LNG = 77.5946;
+
+    private static final SamplingProfile HIGH = new SamplingProfile(SamplingProfile.PRIORITY_HIGH_ACCURACY, 10000, 5);
+
+    @Test
+    public void disabledUntilTargetsAreSupplied() {
+        TargetGeofences fences = new TargetGeofences();
+        assertFalse(fences.onFix(LAT, LNG, 10));
+        assertSame(HIGH, fences.adjust(HIGH));
+
+        fences.update(Collections.<TargetGeofences.Target>emptyList());
+        assertTrue(fences.isEnabled());
+        assertEquals(SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, fences.adjust(HIGH).priority);
+        assertEquals(HIGH.intervalMs, fences.adjust(HIGH).intervalMs);
+    }
+
+    @Test
+    public void entersWithinRadiusAndLeavesPastHysteresis() {
+        TargetGeofences fences = new TargetGeofences();
+        fences.update(Collections.singletonList(new TargetGeofences.Target("shop", LAT, LNG, 100)));
+
+        assertFalse(fences.onFix(LAT + 0.002, LNG, 5));        // ~222 m out
+        assertTrue(fences.onFix(LAT + 0.0008, LNG, 5));        // ~89 m
+        assertEquals("shop", fences.getInsideTargetId());
+        assertSame(HIGH, fences.adjust(HIGH));
+
+        assertFalse(fences.onFix(LAT + 0.0012, LNG, 5));       // ~133 m, inside 1.5x
+        assertTrue(fences.isInside());
+        assertTrue(fences.onFix(LAT + 0.0016, LNG, 5));        // ~178 m
+        assertFalse(fences.isInside());
+        assertEquals(1, fences.getEnterCount());
+    }
+
+    @Test
+    public void coarseFixCountsWhenItsAccuracyReachesTheFence() {
+        TargetGeofences fences = new TargetGeofences();
+        fences.update(Collections.singletonList(new TargetGeofences.Target("shop", LAT, LNG, 100)));
+        assertFalse(fences.onFix(LAT + 0.0015, LNG, 20));      // ~167 m, +/-20 m
+        assertTrue(fences.onFix(LAT + 0.0015, LNG, 80));       // +/-80 m reaches the fence
+    }
+
+    @Test
+    public void updateAppliesOnlyTheDifference() {
+        TargetGeofences fences = new TargetGeofences();
+        TargetGeofences.Target a = new TargetGeofences.Target("a", LAT, LNG, 0);
+        TargetGeofences.Target b = new TargetGeofences.Target("b", LAT + 0.01, LNG, 0);
+        assertEquals(TargetGeofences.DEFAULT_ENTER_RADIUS_M, a.radiusMeters, 0);
+
+        assertTrue(fences.update(Arrays.asList(a, b)));
+        assertFalse(fences.update(Arrays.asList(b, new TargetGeofences.Target("a", LAT, LNG, 0))));
+        assertTrue(fences.onFix(LAT, LNG, 5));
+
+        // Unrelated changes keep the agent inside "a"
+        assertTrue(fences.update(Arrays.asList(a, new TargetGeofences.Target("b", LAT + 0.02, LNG, 0))));
+        assertEquals("a", fences.getInsideTargetId());
+
+        // Completing "a" drops its fence at once
+        assertTrue(fences.update(Collections.singletonList(b)));
+        assertFalse(fences.isInside());
+        assertEquals(1, fences.size());
+    }
+
+    @Test
+    public void replayKeepsHighAccuracyOnlyNearTheDestination() throws Exception {
+        List<double[]> trace = Traces.load(Traces.SHOP_WALK_DRIVE);
+        double[] destination = trace.get(trace.size() - 1);
+
+        int baseline = replayHighAccuracyFixes(trace, null);
+        TargetGeofences fences = new TargetGeofences();
+        fences.update(Collections.singletonList(
+            new TargetGeofences.Target("dest", destination[Traces.LAT], destination[Traces.LNG], 0)));
+        int geofenced = replayHighAccuracyFixes(trace, fences);
+
+        assertEquals(1, fences.getEnterCount());
+        assertTrue("baseline " + baseline + ", geofenced " + geofenced, geofenced < baseline / 3);
+
+        // Arrival is still sampled precisely: every fix near the destination was high accuracy
+        fences = new TargetGeofences();
+        fences.update(Collections.singletonList(
+            new TargetGeofences.Target("dest", destination[Traces.LAT], destination[Traces.LNG], 0)));
+        SamplingEngine engine = new SamplingEngine(new DefaultSamplingPolicy());
+        for (double[] fix : trace) {
+            engine.onFix(fix[Traces.LAT], fix[Traces.LNG], (float) fix[Traces.SPEED], (long) fix[Traces.TIME]);
+            fences.onFix(fix[Traces.LAT], fix[Traces.LNG], (float) fix[Traces.ACCURACY]);
+            double distance = GeoMath.distanceMeters(fix[Traces.LAT], fix[Traces.LNG],
+                destination[Traces.LAT], destination[Traces.LNG]);
+            if (distance < 150 && engine.getState() != MotionState.STATIONARY) {
+                assertEquals(SamplingProfile.PRIORITY_HIGH_ACCURACY, fences.adjust(engine.getProfile()).priority);
+            }
+        }
+    }
+
+    /** Fixes during which high accuracy would have been requested. */
+    private static int replayHighAccuracyFixes(List<double[]> trace, TargetGeofences fences) {
+        SamplingEngine engine = new SamplingEngine(new DefaultSamplingPolicy());
+        int high = 0;
+        for (double[] fix : trace) {
+            engine.onFix(fix[Traces.LAT], fix[Traces.LNG], (float) fix[Traces.SPEED], (long) fix[Traces.TIME]);
+            SamplingProfile profile = engine.getProfile();
+            if (fences != null) {
+                fences.onFix(fix[Traces.LAT], fix[Traces.LNG], (float) fix[Traces.ACCURACY]);
+                profile = fences.adjust(profile);
+            }
+            if (profile.priority == SamplingProfile.PRIORITY_HIGH_ACCURACY) high++;
+        }
+        return high;
+    }
+}
@@ -0,0 +1,170 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TraceReplayTest {
+    private static final long BASE = 1_800_000_000_000L;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void readsCsvByHeader() throws Exception {
+        List<TraceReplay.Point> points = TraceReplay.parse(new InputStreamReader(
+            getClass().getResourceAsStream(Traces.SHOP_WALK_DRIVE), StandardCharsets.UTF_8), "shop_walk_drive.csv");
+
+        assertEquals(Traces.load(Traces.SHOP_WALK_DRIVE).size(), points.size());
+        TraceReplay.Point first = points.get(0);
+        assertEquals(1717400000000L, first.timeMs);
+        assertEquals(12.9715961, first.latitude, 1e-9);
+        assertEquals(77.5945952, first.longitude, 1e-9);
+        assertEquals(11.3f, first.accuracy, 1e-6);
+        assertEquals(0.04f, first.speedMps, 1e-6);
+
+        String reordered = "lng,lat,time\n77.5,12.9,2024-06-03T07:33:20Z\n";
+        TraceReplay.Point point = TraceReplay.parse(new StringReader(reordered), "day.csv").get(0);
+        assertEquals(1717400000000L, point.timeMs);
+        assertEquals(12.9, point.latitude, 1e-9);
+        assertEquals(TraceReplay.DEFAULT_ACCURACY_M, point.accuracy, 0);
+        assertTrue(point.speedMps < 0);
+    }
+
+    @Test
+    public void readsGpxTrackPoints() throws Exception {
+        String gpx = "<?xml version=\"1.0\"?>\n"
+            + "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\"><trk><trkseg>"
+            + "<trkpt lat=\"12.97\" lon=\"77.59\"><ele>900</ele><time>2024-06-03T07:33:20Z</time></trkpt>"
+            + "<trkpt lat=\"12.98\" lon=\"77.60\"><time>2024-06-03T13:03:22.5+05:30</time><speed>1.5</speed></trkpt>"
+            + "<trkpt lat=\"12.99\" lon=\"77.61\"></trkpt>"
+            + "</trkseg></trk></gpx>";
+
+        // The untimed point cannot be replayed
+        List<TraceReplay.Point> points = TraceReplay.parse(new StringReader(gpx), "day.gpx");
+        assertEquals(2, points.size());
+        assertEquals(1717400000000L, points.get(0).timeMs);
+        assertTrue(points.get(0).speedMps < 0);
+        assertEquals(1717400002500L, points.get(1).timeMs);
+        assertEquals(77.60, points.get(1).longitude, 1e-9);
+        assertEquals(1.5f, points.get(1).speedMps, 1e-6);
+    }
+
+    @Test
+    public void readsValidRmcSentences() throws Exception {
+        String nmea = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47\n"
+            + "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A\n"
+            + "$GPRMC,123520,V,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W\n"
+            + "$GPRMC,123521,A,4807.038,S,01131.000,W,022.4,084.4,230394,003.1,W*00\n"
+            + "$GNRMC,123522.50,A,4807.038,S,01131.000,W,,,230394,,\n";
+
+        // Sniffed: no extension
+        List<TraceReplay.Point> points = TraceReplay.parse(new StringReader(nmea), "capture");
+        assertEquals(2, points.size());
+        TraceReplay.Point first = points.get(0);
+        assertEquals(764426119000L, first.timeMs);
+        assertEquals(48.1173, first.latitude, 1e-9);
+        assertEquals(11.516666, first.longitude, 1e-6);
+        assertEquals(22.4 * 0.514444, first.speedMps, 1e-4);
+        assertEquals(764426122500L, points.get(1).timeMs);
+        assertEquals(-48.1173, points.get(1).latitude, 1e-9);
+        assertEquals(-11.516666, points.get(1).longitude, 1e-6);
+        assertTrue(points.get(1).speedMps < 0);
+    }
+
+    @Test
+    public void dropsPointsOutOfTimeOrder() throws Exception {
+        String csv = "1000,1,1\n3000,1,1\n2000,1,1\n3000,1,1\n4000,1,1\n";
+        List<TraceReplay.Point> points = TraceReplay.parse(new StringReader(csv), "t.csv");
+        assertEquals(3, points.size());
+        assertEquals(4000, points.get(2).timeMs);
+    }
+
+    @Test
+    public void holdsFixesUpToMaxDelayAndRebasesTimes() throws Exception {
+        List<TraceReplay.Point> points = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            points.add(new TraceReplay.Point(5000 + i * 10_000L, 12.97, 77.59, 5, 1));
+        }
+        Recorder recorder = new Recorder();
+        TraceReplay replay = new TraceReplay(points, 0, 30_000);
+        replay.start(scheduler, BASE, recorder);
+
+        assertTrue(recorder.finished.await(2, TimeUnit.SECONDS));
+        assertEquals(3, recorder.deliveries.size());
+        assertEquals(4, recorder.deliveries.get(0).size());
+        assertEquals(4, recorder.deliveries.get(1).size());
+        assertEquals(2, recorder.deliveries.get(2).size());
+        assertEquals(BASE, recorder.deliveries.get(0).get(0).timeMs);
+        assertEquals(BASE + 90_000, recorder.deliveries.get(2).get(1).timeMs);
+        assertTrue(replay.isFinished());
+        assertEquals(10, replay.getDelivered());
+    }
+
+    @Test
+    public void waitsTraceTimeDividedBySpeed() throws Exception {
+        List<TraceReplay.Point> points = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            points.add(new TraceReplay.Point(i * 1000L, 12.97, 77.59, 5, -1));
+        }
+        Recorder recorder = new Recorder();
+        long start = System.nanoTime();
+        new TraceReplay(points, 10, 0).start(scheduler, BASE, recorder);
+
+        assertTrue(recorder.finished.await(2, TimeUnit.SECONDS));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        // Two seconds of trace at 10x
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= 190);
+        assertEquals(3, recorder.deliveries.size());
+        assertEquals(BASE + 2000, recorder.deliveries.get(2).get(0).timeMs);
+    }
+
+    @Test
+    public void stopEndsPlayback() throws Exception {
+        List<TraceReplay.Point> points = new ArrayList<>();
+        points.add(new TraceReplay.Point(0, 12.97, 77.59, 5, -1));
+        points.add(new TraceReplay.Point(60_000, 12.97, 77.59, 5, -1));
+        Recorder recorder = new Recorder();
+        TraceReplay replay = new TraceReplay(points, 1, 0);
+        replay.start(scheduler, BASE, recorder);
+
+        assertTrue(recorder.first.await(2, TimeUnit.SECONDS));
+        replay.stop();
+        Thread.sleep(50);
+        assertEquals(1, replay.getDelivered());
+        assertFalse(replay.isFinished());
+        assertEquals(1, recorder.finished.getCount());
+    }
+
+    private static final class Recorder implements TraceReplay.Sink {
+        final List<List<TraceReplay.Point>> deliveries = new ArrayList<>();
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void onFixes(List<TraceReplay.Point> fixes) {
+            deliveries.add(fixes);
+            first.countDown();
+        }
+
+        @Override
+        public void onFinished() {
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.poverse.app.tracking;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded traces under src/test/resources/traces.
+ * Each row is {timestamp_ms, latitude, longitude, accuracy, speed}.
+ */
+final class Traces {
+    static final String SHOP_WALK_DRIVE = "/traces/shop_walk_drive.csv";
+
+    static final int TIME = 0;
+    static final int LAT = 1;
+    static final int LNG = 2;
+    static final int ACCURACY = 3;
+    static final int SPEED = 4;
+
+    private Traces() {
+    }
+
+    static List<double[]> load(String resource) throws Exception {
+        List<double[]> points = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            Traces.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] cols = line.split(",");
+                double[] point = new double[cols.length];
+                for (int i = 0; i < cols.length; i++) {
+                    point[i] = Double.parseDouble(cols[i]);
+                }
+                points.add(point);
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,80 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TrackingMetricsTest {
+
+    @Test
+    public void histogramBucketsByUpperBound() {
+        TrackingMetrics.Histogram histogram = new TrackingMetrics.Histogram(new long[] {10, 100, 1000});
+        histogram.record(10);
+        histogram.record(11);
+        histogram.record(-5);
+        histogram.record(5000);
+
+        assertArrayEquals(new long[] {2, 1, 0, 1}, histogram.getBucketCounts());
+        assertEquals(4, histogram.getCount());
+        assertEquals(5000, histogram.getMaxMs());
+        assertEquals((10 + 11 + 0 + 5000) / 4, histogram.getMeanMs());
+    }
+
+    @Test
+    public void percentilesResolveToBucketBounds() {
+        TrackingMetrics.Histogram histogram = new TrackingMetrics.Histogram(TrackingMetrics.LATENCY_BOUNDS_MS);
+        assertEquals(0, histogram.percentileMs(0.5));
+
+        // 90 fast requests, 9 slow ones and one outlier past the last bound
+        for (int i = 0; i < 90; i++) histogram.record(40);
+        for (int i = 0; i < 9; i++) histogram.record(2000);
+        histogram.record(400_000);
+
+        assertEquals(50, histogram.percentileMs(0.5));
+        assertEquals(50, histogram.percentileMs(0.9));
+        assertEquals(2500, histogram.percentileMs(0.99));
+        assertEquals(400_000, histogram.percentileMs(1.0));
+    }
+
+    @Test
+    public void percentileNeverExceedsLargestValue() {
+        TrackingMetrics.Histogram histogram = new TrackingMetrics.Histogram(TrackingMetrics.LATENCY_BOUNDS_MS);
+        histogram.record(120);
+        histogram.record(130);
+        assertEquals(130, histogram.percentileMs(0.5));
+    }
+
+    @Test
+    public void attemptsCountBytesAndSuccessesSeparately() {
+        TrackingMetrics metrics = new TrackingMetrics(1000L);
+        metrics.recordAttempt(300, 80, false);
+        metrics.recordRetry();
+        metrics.recordAttempt(300, 60, true);
+
+        assertEquals(1000L, metrics.getStartedMs());
+        assertEquals(600, metrics.getBytesSent());
+        assertEquals(1, metrics.getRequestsSent());
+        assertEquals(1, metrics.getRetries());
+        assertEquals(2, metrics.getHttpLatency().getCount());
+    }
+
+    @Test
+    public void deliveriesTrackBatchSizes() {
+        TrackingMetrics metrics = new TrackingMetrics(0L);
+        metrics.recordDelivery(1);
+        metrics.recordDelivery(24);
+        metrics.recordDelivery(3);
+
+        assertEquals(3, metrics.getDeliveries());
+        assertEquals(24, metrics.getLargestDelivery());
+    }
+
+    @Test
+    public void trackingModeParsesWireNames() {
+        assertEquals(TrackingMode.LOW_WAKEUP, TrackingMode.fromWireName("lowWakeup"));
+        assertEquals(TrackingMode.REALTIME, TrackingMode.fromWireName("realtime"));
+        assertEquals(TrackingMode.REALTIME, TrackingMode.fromWireName(null));
+        assertEquals(TrackingMode.REALTIME, TrackingMode.fromWireName("bogus"));
+        assertEquals(0, TrackingMode.REALTIME.maxUpdateDelayMs);
+    }
+}
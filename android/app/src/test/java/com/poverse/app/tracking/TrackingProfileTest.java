@@ -0,0 +1,89 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TrackingProfileTest {
+    private static final SamplingProfile WALKING = new SamplingProfile(
+        SamplingProfile.PRIORITY_HIGH_ACCURACY, 10000, 5);
+    private static final SamplingProfile STATIONARY = new SamplingProfile(
+        SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, 60000, 25);
+
+    @Test
+    public void emptyProfileKeepsPolicyRequest() {
+        assertTrue(TrackingProfile.NONE.isEmpty());
+        assertSame(WALKING, TrackingProfile.NONE.apply(MotionState.WALKING, WALKING));
+        assertEquals(500, TrackingProfile.NONE.batchWindowMs(500));
+        assertEquals(15000, TrackingProfile.NONE.heartbeatIntervalMs(15000));
+    }
+
+    @Test
+    public void replacesMovingRequestField() {
+        TrackingProfile throttle = new TrackingProfile(30000, TrackingProfile.UNSET,
+            SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, TrackingProfile.UNSET, TrackingProfile.UNSET);
+
+        SamplingProfile moving = throttle.apply(MotionState.DRIVING, WALKING);
+        assertEquals(SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, moving.priority);
+        assertEquals(30000, moving.intervalMs);
+        assertEquals(5f, moving.minDistanceMeters, 0f);
+
+        // Faster than the app default is allowed too
+        TrackingProfile eager = new TrackingProfile(2000, 0, 0, TrackingProfile.UNSET, TrackingProfile.UNSET);
+        assertEquals(2000, eager.apply(MotionState.WALKING, WALKING).intervalMs);
+        assertEquals(0f, eager.apply(MotionState.WALKING, WALKING).minDistanceMeters, 0f);
+    }
+
+    @Test
+    public void neverSamplesStationaryAgentHarder() {
+        TrackingProfile eager = new TrackingProfile(2000, 1, SamplingProfile.PRIORITY_HIGH_ACCURACY,
+            TrackingProfile.UNSET, TrackingProfile.UNSET);
+        assertEquals(STATIONARY, eager.apply(MotionState.STATIONARY, STATIONARY));
+
+        TrackingProfile lazy = new TrackingProfile(120000, 100, SamplingProfile.PRIORITY_LOW_POWER,
+            TrackingProfile.UNSET, TrackingProfile.UNSET);
+        assertEquals(new SamplingProfile(SamplingProfile.PRIORITY_LOW_POWER, 120000, 100),
+            lazy.apply(MotionState.STATIONARY, STATIONARY));
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        TrackingProfile typo = new TrackingProfile(5, 1e6f, 7, 1L << 40, 10);
+        assertEquals(TrackingProfile.MIN_INTERVAL_MS, typo.intervalMs);
+        assertEquals(TrackingProfile.MAX_MIN_DISTANCE_M, typo.minDistanceMeters, 0f);
+        assertEquals(0, typo.priority);
+        assertEquals(TrackingProfile.MAX_BATCH_WINDOW_MS, typo.batchWindowMs);
+        assertEquals(TrackingProfile.MIN_HEARTBEAT_MS, typo.heartbeatIntervalMs);
+    }
+
+    @Test
+    public void zeroBatchWindowDisablesBatching() {
+        TrackingProfile profile = new TrackingProfile(TrackingProfile.UNSET, TrackingProfile.UNSET, 0,
+            0, 60000);
+        assertEquals(0, profile.batchWindowMs(5000));
+        assertEquals(60000, profile.heartbeatIntervalMs(15000));
+    }
+
+    @Test
+    public void parsesPriorityNames() {
+        assertEquals(SamplingProfile.PRIORITY_HIGH_ACCURACY, TrackingProfile.priorityOf("high"));
+        assertEquals(SamplingProfile.PRIORITY_BALANCED_POWER_ACCURACY, TrackingProfile.priorityOf("balanced"));
+        assertEquals(SamplingProfile.PRIORITY_LOW_POWER, TrackingProfile.priorityOf("low"));
+        assertEquals(0, TrackingProfile.priorityOf("turbo"));
+        assertEquals(0, TrackingProfile.priorityOf(null));
+    }
+
+    @Test
+    public void policySwapsProfileLive() {
+        ProfiledSamplingPolicy policy = new ProfiledSamplingPolicy(new DefaultSamplingPolicy());
+        SamplingEngine engine = new SamplingEngine(policy);
+        long before = engine.getProfile().intervalMs;
+
+        policy.setTrackingProfile(new TrackingProfile(45000, TrackingProfile.UNSET, 0,
+            TrackingProfile.UNSET, TrackingProfile.UNSET));
+        assertEquals(45000, engine.getProfile().intervalMs);
+
+        policy.setTrackingProfile(null);
+        assertEquals(before, engine.getProfile().intervalMs);
+    }
+}
@@ -0,0 +1,97 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Bytes per point and encode/decode throughput of TrailCodec against the JSON maps the
+ * trackers write today (one RTDB push node per point).
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*TrailCodecBenchmark'
+ */
+public class TrailCodecBenchmark {
+    private static final int ROUNDS = 200;
+    // RTDB push keys are 20 characters, quoted, plus the ':' separator and ','
+    private static final int PUSH_KEY_OVERHEAD = 24;
+
+    @Test
+    public void compareWithJsonMaps() throws Exception {
+        List<double[]> trace = Traces.load(Traces.SHOP_WALK_DRIVE);
+        int n = trace.size();
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        float[] acc = new float[n];
+        long[] time = new long[n];
+        for (int i = 0; i < n; i++) {
+            double[] p = trace.get(i);
+            lat[i] = p[Traces.LAT];
+            lng[i] = p[Traces.LNG];
+            acc[i] = (float) p[Traces.ACCURACY];
+            time[i] = (long) p[Traces.TIME];
+        }
+
+        long jsonBytes = 0;
+        for (int i = 0; i < n; i++) {
+            jsonBytes += jsonMap(lat[i], lng[i], acc[i], time[i]).getBytes(StandardCharsets.UTF_8).length
+                + PUSH_KEY_OVERHEAD;
+        }
+        byte[] chunk = TrailCodec.encode(lat, lng, acc, time, n);
+        String base64 = TrailCodec.toBase64(chunk);
+
+        // Warm up, then time
+        TrailCodec.Encoder encoder = new TrailCodec.Encoder();
+        TrailCodec.Points points = new TrailCodec.Points();
+        for (int r = 0; r < ROUNDS; r++) {
+            encodeAll(encoder, lat, lng, acc, time);
+            TrailCodec.decode(chunk, points);
+            jsonMap(lat[r % n], lng[r % n], acc[r % n], time[r % n]);
+        }
+
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            encodeAll(encoder, lat, lng, acc, time);
+        }
+        double encodeNs = (double) (System.nanoTime() - start) / ((long) ROUNDS * n);
+
+        start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            TrailCodec.decode(chunk, points);
+        }
+        double decodeNs = (double) (System.nanoTime() - start) / ((long) ROUNDS * n);
+
+        start = System.nanoTime();
+        long sink = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int i = 0; i < n; i++) {
+                sink += jsonMap(lat[i], lng[i], acc[i], time[i]).length();
+            }
+        }
+        double jsonNs = (double) (System.nanoTime() - start) / ((long) ROUNDS * n);
+
+        System.out.printf("JSON maps:     %.1f bytes/point, %.0f ns/point to serialise%n",
+            (double) jsonBytes / n, jsonNs);
+        System.out.printf("TrailCodec:    %.1f bytes/point binary, %.1f base64, %.0f ns/point encode, %.0f ns/point decode%n",
+            (double) chunk.length / n, (double) base64.length() / n, encodeNs, decodeNs);
+        assertTrue(sink > 0);
+        assertTrue(chunk.length * 8 < jsonBytes);
+    }
+
+    private static void encodeAll(TrailCodec.Encoder encoder, double[] lat, double[] lng, float[] acc, long[] time) {
+        encoder.reset();
+        for (int i = 0; i < lat.length; i++) {
+            encoder.add(lat[i], lng[i], acc[i], time[i]);
+        }
+        encoder.toByteArray();
+    }
+
+    /** Same shape as updateLocationInDatabase's map once serialised by the RTDB SDK. */
+    private static String jsonMap(double lat, double lng, float accuracy, long time) {
+        return "{\"accuracy\":" + (double) accuracy
+            + ",\"latitude\":" + lat
+            + ",\"longitude\":" + lng
+            + ",\"timestamp\":" + time + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+public class TrailCodecTest {
+
+    @Test
+    public void roundTripsRecordedTraceWithinE7() throws Exception {
+        List<double[]> trace = Traces.load(Traces.SHOP_WALK_DRIVE);
+        TrailCodec.Encoder encoder = new TrailCodec.Encoder();
+        for (double[] p : trace) {
+            encoder.add(p[Traces.LAT], p[Traces.LNG], (float) p[Traces.ACCURACY], (long) p[Traces.TIME]);
+        }
+        byte[] chunk = encoder.toByteArray();
+        TrailCodec.Points decoded = TrailCodec.decode(chunk);
+
+        assertEquals(trace.size(), decoded.count);
+        for (int i = 0; i < trace.size(); i++) {
+            double[] p = trace.get(i);
+            assertEquals(p[Traces.LAT], decoded.latitudes[i], 1e-7);
+            assertEquals(p[Traces.LNG], decoded.longitudes[i], 1e-7);
+            assertEquals((float) p[Traces.ACCURACY], decoded.accuracies[i], 0.05f);
+            assertEquals((long) p[Traces.TIME], decoded.times[i]);
+        }
+        assertTrue("bytes/point " + (double) chunk.length / trace.size(), chunk.length < trace.size() * 10);
+    }
+
+    @Test
+    public void handlesHemispheresAndOutOfOrderTimes() {
+        double[] lat = {-33.8688, 51.5074, 0, 89.9999999};
+        double[] lng = {151.2093, -0.1278, -179.9999999, 179.9999999};
+        float[] acc = {3.5f, 0f, 6553.5f, 10000f};
+        long[] time = {1_700_000_000_000L, 1_699_999_000_000L, 1_700_000_500_000L, 1_700_000_500_001L};
+        TrailCodec.Points decoded = TrailCodec.decode(TrailCodec.encode(lat, lng, acc, time, 4));
+
+        assertArrayEquals(lat, Arrays.copyOf(decoded.latitudes, 4), 1e-7);
+        assertArrayEquals(lng, Arrays.copyOf(decoded.longitudes, 4), 1e-7);
+        assertArrayEquals(time, Arrays.copyOf(decoded.times, 4));
+        assertEquals(6553.5f, decoded.accuracies[3], 0f); // clamped
+    }
+
+    @Test
+    public void base64MatchesJdkUrlEncoding() {
+        Random random = new Random(7);
+        for (int length = 0; length < 40; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String expected = Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+            assertEquals(expected, TrailCodec.toBase64(data));
+            assertArrayEquals(data, TrailCodec.fromBase64(expected));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedChunk() {
+        byte[] chunk = TrailCodec.encode(new double[]{12.97}, new double[]{77.59}, new float[]{5f},
+            new long[]{1_700_000_000_000L}, 1);
+        TrailCodec.decode(Arrays.copyOf(chunk, chunk.length - 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownVersion() {
+        TrailCodec.decode(new byte[]{9, 0});
+    }
+}
@@ -0,0 +1,81 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Compression ratio and per-fix CPU cost of TrajectorySimplifier on recorded traces.
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*TrajectorySimplifierBenchmark'
+ */
+public class TrajectorySimplifierBenchmark {
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    @Test
+    public void shopWalkDriveTrace() throws Exception {
+        List<double[]> trace = Traces.load(Traces.SHOP_WALK_DRIVE);
+        for (double tolerance : new double[]{5, 10, 25}) {
+            Result result = run(trace, tolerance);
+            report("shop_walk_drive", tolerance, trace.size(), result);
+            assertTrue(result.kept < trace.size());
+        }
+        // Straight walking and driving dominate; 10 m must remove most points
+        assertTrue(run(trace, 10).ratio(trace.size()) >= 3.0);
+    }
+
+    private static Result run(List<double[]> trace, double tolerance) {
+        int n = trace.size();
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        float[] acc = new float[n];
+        long[] time = new long[n];
+        for (int i = 0; i < n; i++) {
+            double[] p = trace.get(i);
+            lat[i] = p[Traces.LAT];
+            lng[i] = p[Traces.LNG];
+            acc[i] = (float) p[Traces.ACCURACY];
+            time[i] = (long) p[Traces.TIME];
+        }
+
+        long[] kept = new long[1];
+        TrajectorySimplifier.Sink sink = (la, ln, a, t) -> kept[0]++;
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            feed(new TrajectorySimplifier(tolerance, sink), lat, lng, acc, time);
+        }
+        kept[0] = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < MEASURED_ROUNDS; r++) {
+            feed(new TrajectorySimplifier(tolerance, sink), lat, lng, acc, time);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Result result = new Result();
+        result.kept = kept[0] / MEASURED_ROUNDS;
+        result.nanosPerFix = (double) elapsed / ((long) MEASURED_ROUNDS * n);
+        return result;
+    }
+
+    private static void feed(TrajectorySimplifier simplifier, double[] lat, double[] lng, float[] acc, long[] time) {
+        for (int i = 0; i < lat.length; i++) {
+            simplifier.add(lat[i], lng[i], acc[i], time[i]);
+        }
+        simplifier.flush();
+    }
+
+    private static void report(String trace, double tolerance, int points, Result result) {
+        System.out.printf("%s tolerance=%.0fm: %d -> %d points (%.1fx), %.0f ns/fix%n",
+            trace, tolerance, points, result.kept, result.ratio(points), result.nanosPerFix);
+    }
+
+    private static final class Result {
+        long kept;
+        double nanosPerFix;
+
+        double ratio(int points) {
+            return (double) points / kept;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.poverse.app.tracking;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrajectorySimplifierTest {
+    private static final double TOLERANCE_M = 10;
+
+    @Test
+    public void straightSegmentCollapsesToEndpoints() {
+        List<double[]> kept = new ArrayList<>();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE_M, collect(kept));
+        for (int i = 0; i <= 20; i++) {
+            simplifier.add(12.97 + i * 0.0001, 77.59, 5f, i * 10000L);
+        }
+        simplifier.flush();
+
+        assertEquals(2, kept.size());
+        assertEquals(12.97, kept.get(0)[0], 1e-9);
+        assertEquals(12.972, kept.get(1)[0], 1e-9);
+    }
+
+    @Test
+    public void keepsCorner() {
+        List<double[]> kept = new ArrayList<>();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE_M, collect(kept));
+        for (int i = 0; i <= 10; i++) {
+            simplifier.add(12.97 + i * 0.0001, 77.59, 5f, i * 10000L);
+        }
+        for (int i = 1; i <= 10; i++) {
+            simplifier.add(12.971, 77.59 + i * 0.0001, 5f, (10 + i) * 10000L);
+        }
+        simplifier.flush();
+
+        assertEquals(3, kept.size());
+        assertEquals(12.971, kept.get(1)[0], 1e-9);
+        assertEquals(77.59, kept.get(1)[1], 1e-9);
+    }
+
+    @Test
+    public void everyDroppedPointStaysWithinTolerance() throws Exception {
+        List<double[]> trace = Traces.load(Traces.SHOP_WALK_DRIVE);
+        List<double[]> kept = new ArrayList<>();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE_M, collect(kept));
+        for (double[] p : trace) {
+            simplifier.add(p[Traces.LAT], p[Traces.LNG], (float) p[Traces.ACCURACY], (long) p[Traces.TIME]);
+        }
+        simplifier.flush();
+
+        int segment = 0;
+        for (double[] p : trace) {
+            long time = (long) p[Traces.TIME];
+            while (segment < kept.size() - 2 && time > (long) kept.get(segment + 1)[3]) {
+                segment++;
+            }
+            double[] a = kept.get(segment);
+            double[] b = kept.get(segment + 1);
+            double error = distanceToSegment(p[Traces.LAT], p[Traces.LNG], a, b);
+            assertTrue("error " + error + "m at " + time, error <= TOLERANCE_M + 0.01);
+        }
+    }
+
+    @Test
+    public void forcesPointWhenBufferIsFull() {
+        List<double[]> kept = new ArrayList<>();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE_M, 4, Long.MAX_VALUE, collect(kept));
+        for (int i = 0; i <= 10; i++) {
+            simplifier.add(12.97 + i * 0.0001, 77.59, 5f, i * 1000L);
+        }
+        // Anchor, then one point every time four are held back
+        assertEquals(3, kept.size());
+        assertEquals(11, simplifier.getInputCount());
+    }
+
+    @Test
+    public void forcesPointAfterMaxInterval() {
+        List<double[]> kept = new ArrayList<>();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE_M, 32, 60000, collect(kept));
+        for (int i = 0; i <= 12; i++) {
+            simplifier.add(12.97, 77.59, 5f, i * 10000L);
+        }
+        assertEquals(2, kept.size());
+        assertEquals(60000L, (long) kept.get(1)[3]);
+    }
+
+    private static TrajectorySimplifier.Sink collect(List<double[]> out) {
+        return (lat, lng, accuracy, time) -> out.add(new double[]{lat, lng, accuracy, time});
+    }
+
+    private static double distanceToSegment(double lat, double lng, double[] a, double[] b) {
+        double metersPerDegree = GeoMath.EARTH_RADIUS_M * Math.PI / 180.0;
+        double cos = Math.cos(Math.toRadians(a[0]));
+        double ex = (b[1] - a[1]) * cos * metersPerDegree;
+        double ey = (b[0] - a[0]) * metersPerDegree;
+        double px = (lng - a[1]) * cos * metersPerDegree;
+        double py = (lat - a[0]) * metersPerDegree;
+        double lengthSq = ex * ex + ey * ey;
+        double t = lengthSq > 0 ? Math.max(0, Math.min(1, (px * ex + py * ey) / lengthSq)) : 0;
+        return Math.hypot(px - t * ex, py - t * ey);
+    }
+}
@@ -77,7 +77,7 @@ import WarningAmberIcon from "@mui/icons-material/WarningAmber";
 import FilterListIcon from "@mui/icons-material/FilterList";
 import Image from "next/image";
 import { useAppStore, useIsSuperAdmin, useHasHydrated } from "@/store";
-import { User, UserRole, Company } from "@/types/auth";
+import { User, UserRole, Company, TrackingMode } from "@/types/auth";
 import { Target } from "@/types/target";
 import { isNativeApp } from "@/lib/platform";
 import { DownloadAppButton } from "@/components";
@@ -151,6 +151,7 @@ export default function SuperAdminDashboardPage() {
     industry: "",
     adminLimit: 5,
     agentLimit: 50,
+    trackingMode: "realtime" as TrackingMode,
   });
   
   // User Dialog
@@ -294,6 +295,7 @@ export default function SuperAdminDashboardPage() {
       industry: "",
       adminLimit: 5,
       agentLimit: 50,
+      trackingMode: "realtime",
     });
     setFormError(null);
     setFormSuccess(null);
@@ -317,6 +319,7 @@ export default function SuperAdminDashboardPage() {
       industry: company.industry || "",
       adminLimit: company.adminLimit || 5,
       agentLimit: company.agentLimit || 50,
+      trackingMode: company.trackingMode || "realtime",
     });
     setFormError(null);
     setFormSuccess(null);
@@ -2021,6 +2024,28 @@ export default function SuperAdminDashboardPage() {
                 </Stack>
               </Paper>
             </Grid>
+
+            {/* Location Tracking Section */}
+            <Grid size={{ xs: 12 }}>
+              <Typography variant="subtitle2" fontWeight={600} color="primary" sx={{ mb: 1, mt: 1 }}>
+                📍 Location Tracking
+              </Typography>
+              <Divider />
+            </Grid>
+
+            <Grid size={{ xs: 12 }}>
+              <FormControl fullWidth>
+                <InputLabel>Tracking Mode</InputLabel>
+                <Select
+                  value={companyFormData.trackingMode}
+                  label="Tracking Mode"
+                  onChange={(e) => setCompanyFormData({ ...companyFormData, trackingMode: e.target.value as TrackingMode })}
+                >
+                  <MenuItem value="realtime">Real-time (live map, higher battery use)</MenuItem>
+                  <MenuItem value="lowWakeup">Low wake-up (full trail, live position up to 2 min late)</MenuItem>
+                </Select>
+              </FormControl>
+            </Grid>
           </Grid>
         </DialogContent>
         <DialogActions sx={{ p: 2.5, bgcolor: "grey.50" }}>
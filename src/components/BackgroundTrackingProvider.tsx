@@ -1,13 +1,21 @@
 "use client";
 
-import { useEffect, useRef, useCallback } from "react";
+import { useEffect, useRef, useCallback, useState } from "react";
 import { registerPlugin } from "@capacitor/core";
 import { Geolocation } from "@capacitor/geolocation";
 import { useAppStore } from "@/store";
 import { isNativeApp } from "@/lib/platform";
 import { updateUserLocation, saveLastActiveLocation } from "@/lib/locationTracking";
 import { updatePresence } from "@/lib/chat";
-import NativeServices from "@/lib/nativeServices";
+import NativeServices, { subscribeToNativeFixes } from "@/lib/nativeServices";
+import { subscribeToAgentAssignments } from "@/lib/adminTargets";
+import { getCompanyById } from "@/lib/company";
+import {
+  getAttendanceSettings,
+  getShiftEndsAt,
+  hasAttendanceSettings,
+  subscribeToTodayAttendance,
+} from "@/lib/attendance";
 import { 
   initializeNetworkMonitoring, 
   subscribeToNetworkStatus, 
@@ -45,6 +53,14 @@ export default function BackgroundTrackingProvider() {
   const networkUnsubscribeRef = useRef<(() => void) | null>(null);
   const presenceIntervalRef = useRef<ReturnType<typeof setInterval> | null>(null);
   const lastKnownLocationRef = useRef<{ lat: number; lng: number; accuracy: number | null } | null>(null);
+  // Set while the native service tracks; the WebView then only follows its fixes
+  const nativeFixUnsubscribeRef = useRef<(() => void) | null>(null);
+  // End of the shift the agent is checked in for (ms since epoch); null when off shift.
+  // The app only tracks on shift: from check-in until check-out or this time.
+  const [shiftEndsAt, setShiftEndsAt] = useState<number | null>(null);
+  // Whether tracking follows shifts at all; false for companies without attendance,
+  // whose agents are tracked from login as before. null until known.
+  const [shiftGated, setShiftGated] = useState<boolean | null>(null);
 
   // Handle presence updates based on network and tracking status
   const updatePresenceStatus = useCallback(async (forceOnline?: boolean) => {
@@ -126,6 +142,82 @@ export default function BackgroundTrackingProvider() {
     };
   }, [user?.id, updatePresenceStatus]);
 
+  // Follow today's attendance: on shift from check-in until check-out or the shift's end
+  useEffect(() => {
+    if (!isNativeApp() || !isAuthenticated || !user?.id || !user.companyId) {
+      setShiftEndsAt(null);
+      setShiftGated(isNativeApp() && isAuthenticated && !!user?.id ? false : null);
+      return;
+    }
+    const companyId = user.companyId;
+    let cancelled = false;
+    let shiftTimer: ReturnType<typeof setTimeout> | null = null;
+
+    // Unreadable (e.g. offline): stay undecided and leave a running session alone
+    hasAttendanceSettings(companyId)
+      .then((gated) => {
+        if (!cancelled) setShiftGated(gated);
+      })
+      .catch((error) => {
+        console.error("Failed to read attendance settings:", error);
+      });
+
+    const unsubscribe = subscribeToTodayAttendance(user.id, async (record) => {
+      if (shiftTimer) {
+        clearTimeout(shiftTimer);
+        shiftTimer = null;
+      }
+      if (!record?.checkIn || record.checkOut) {
+        setShiftEndsAt(null);
+        return;
+      }
+      try {
+        const settings = await getAttendanceSettings(companyId);
+        if (cancelled) return;
+        const endsAt = getShiftEndsAt(record.checkIn.timestamp, settings);
+        const remainingMs = endsAt - Date.now();
+        if (remainingMs <= 0) {
+          setShiftEndsAt(null);
+          return;
+        }
+        setShiftEndsAt(endsAt);
+        shiftTimer = setTimeout(() => setShiftEndsAt(null), remainingMs);
+      } catch (error) {
+        console.error("Failed to read attendance settings:", error);
+      }
+    });
+
+    return () => {
+      cancelled = true;
+      if (shiftTimer) clearTimeout(shiftTimer);
+      unsubscribe();
+    };
+  }, [isAuthenticated, user?.id, user?.companyId]);
+
+  // Hand pending assignments to the native tracker so it only uses high-accuracy GPS near them
+  useEffect(() => {
+    if (!isNativeApp() || !isAuthenticated || !user?.id || !user.companyId) return;
+    const userId = user.id;
+
+    const unsubscribe = subscribeToAgentAssignments(user.companyId, userId, (assignments) => {
+      const byTarget = new Map<string, { id: string; latitude: number; longitude: number }>();
+      for (const assignment of assignments) {
+        const location = assignment.location;
+        if (!location || typeof location.latitude !== "number" || typeof location.longitude !== "number") continue;
+        byTarget.set(assignment.targetId, {
+          id: assignment.targetId,
+          latitude: location.latitude,
+          longitude: location.longitude,
+        });
+      }
+      NativeServices.setTrackingTargets({ userId, targets: Array.from(byTarget.values()) }).catch((err) => {
+        console.warn("Failed to update native tracking targets:", err);
+      });
+    });
+
+    return () => unsubscribe();
+  }, [isAuthenticated, user?.id, user?.companyId]);
+
   useEffect(() => {
     let cancelled = false;
 
@@ -242,6 +334,11 @@ export default function BackgroundTrackingProvider() {
     const stopWatcher = async (stopNative = true, keepStatus = false) => {
       const watcherId = watcherIdRef.current;
       
+      if (nativeFixUnsubscribeRef.current) {
+        nativeFixUnsubscribeRef.current();
+        nativeFixUnsubscribeRef.current = null;
+      }
+      
       // Stop native location tracking service (optional)
       if (stopNative) {
         try {
@@ -282,8 +379,14 @@ export default function BackgroundTrackingProvider() {
         await stopWatcher();
         return;
       }
+      // Attendance not known yet: a session resumed after a reboot keeps running meanwhile
+      if (shiftGated === null) return;
+      if (shiftGated && shiftEndsAt === null) {
+        await stopWatcher();
+        return;
+      }
 
-      if (watcherIdRef.current || startingRef.current) return;
+      if (watcherIdRef.current || nativeFixUnsubscribeRef.current || startingRef.current) return;
 
       startingRef.current = true;
       lastBackgroundUpdateRef.current = null;
@@ -291,17 +394,37 @@ export default function BackgroundTrackingProvider() {
       // Start native location tracking service (runs independently of WebView)
       // This ensures location and presence updates continue even when app is killed
       try {
+        // Unreadable company (e.g. offline): the service keeps its last mode
+        const company = user.companyId ? await getCompanyById(user.companyId) : null;
         await NativeServices.startLocationTracking({
           userId: user.id,
           companyId: user.companyId || '',
           firebaseUrl: FIREBASE_DATABASE_URL,
-          userName: user.name || 'User'
+          userName: user.name || 'User',
+          trackingMode: company?.trackingMode,
+          // Without a shift the service runs until stopped and is resumed after a reboot
+          shiftEndsAt: shiftGated && shiftEndsAt !== null ? shiftEndsAt : undefined,
         });
         console.log("Native location tracking service started");
       } catch (nativeErr) {
         console.warn("Native location service not available, using web-based tracking:", nativeErr);
+        await startWebWatchers();
+        return;
       }
       
+      // The service writes location and presence itself; the WebView holds no GPS of its own
+      startingRef.current = false;
+      if (cancelled) return;
+      nativeFixUnsubscribeRef.current = subscribeToNativeFixes(({ fixes }) => {
+        const fix = fixes[fixes.length - 1];
+        if (!fix || cancelled) return;
+        lastKnownLocationRef.current = { lat: fix.latitude, lng: fix.longitude, accuracy: fix.accuracy };
+        setBackgroundTrackingActive(true);
+      });
+    };
+
+    // Fallback when the native service cannot run: track from the WebView
+    const startWebWatchers = async () => {
       if (!BackgroundGeolocation) {
         console.warn("BackgroundGeolocation plugin not available, using fallback watcher only");
         startingRef.current = false;
@@ -404,14 +527,15 @@ export default function BackgroundTrackingProvider() {
 
     return () => {
       cancelled = true;
-      // Keep native service running when app is closed and user is authenticated
-      if (isNativeApp() && isAuthenticated) {
+      // Keep native service running when app is closed and the agent may be tracked;
+      // on shift it stops itself at the shift's end
+      if (isNativeApp() && isAuthenticated && (shiftGated !== true || shiftEndsAt !== null)) {
         stopWatcher(false, true);
       } else {
         stopWatcher();
       }
     };
-  }, [isAuthenticated, user?.id, user?.companyId, user?.name, setBackgroundTrackingActive]);
+  }, [isAuthenticated, user?.id, user?.companyId, user?.name, shiftEndsAt, shiftGated, setBackgroundTrackingActive]);
 
   return null;
 }
@@ -2,6 +2,8 @@
 
 import { useState, useEffect, useCallback, useRef } from "react";
 import { Geolocation, Position } from "@capacitor/geolocation";
+import { useIsBackgroundTrackingActive } from "@/store";
+import { subscribeToNativeFixes } from "@/lib/nativeServices";
 
 export interface GeolocationState {
   latitude: number | null;
@@ -50,6 +52,10 @@ export function useGeolocation(options: UseGeolocationOptions = {}) {
   const [permissionChecked, setPermissionChecked] = useState(false);
   const watchIdRef = useRef<string | number | null>(null);
 
+  // The native tracker already holds GPS while it runs; watching reuses its fixes
+  const isBackgroundTrackingActive = useIsBackgroundTrackingActive();
+  const followNativeFixes = isNativeApp() && !!mergedOptions.watchPosition && isBackgroundTrackingActive;
+
   // Check permission status using Capacitor for native, web API for browser
   const checkPermission = useCallback(async (): Promise<PermissionState | null> => {
     if (typeof navigator === "undefined") {
@@ -194,6 +200,11 @@ export function useGeolocation(options: UseGeolocationOptions = {}) {
           }
         }
 
+        if (followNativeFixes) {
+          // Positions arrive from the native stream (see effect below)
+          return;
+        }
+
         if (mergedOptions.watchPosition) {
           // Clear existing watch
           if (watchIdRef.current !== null && typeof watchIdRef.current === "string") {
@@ -263,7 +274,7 @@ export function useGeolocation(options: UseGeolocationOptions = {}) {
         geoOptions
       );
     }
-  }, [mergedOptions.timeout, mergedOptions.watchPosition, handleCapacitorSuccess, handleWebSuccess, handleError]);
+  }, [mergedOptions.timeout, mergedOptions.watchPosition, followNativeFixes, handleCapacitorSuccess, handleWebSuccess, handleError]);
 
   // Clear watch
   const clearWatch = useCallback(async () => {
@@ -290,10 +301,33 @@ export function useGeolocation(options: UseGeolocationOptions = {}) {
 
   // Auto-request location when watchPosition is enabled and permission is granted
   useEffect(() => {
+    if (followNativeFixes) return;
     if (mergedOptions.watchPosition && state.permissionStatus === "granted" && !state.latitude && !state.loading) {
       requestLocation();
     }
-  }, [mergedOptions.watchPosition, state.permissionStatus, state.latitude, state.loading, requestLocation]);
+  }, [followNativeFixes, mergedOptions.watchPosition, state.permissionStatus, state.latitude, state.loading, requestLocation]);
+
+  // Follow the native tracker's fixes instead of a second watchPosition session
+  useEffect(() => {
+    if (!followNativeFixes) return;
+    if (watchIdRef.current !== null && typeof watchIdRef.current === "string") {
+      Geolocation.clearWatch({ id: watchIdRef.current });
+      watchIdRef.current = null;
+    }
+    return subscribeToNativeFixes(({ fixes }) => {
+      const fix = fixes[fixes.length - 1];
+      if (!fix) return;
+      setState({
+        latitude: fix.latitude,
+        longitude: fix.longitude,
+        accuracy: fix.accuracy,
+        error: null,
+        loading: false,
+        permissionStatus: "granted",
+        timestamp: fix.timestamp,
+      });
+    });
+  }, [followNativeFixes]);
 
   // Cleanup on unmount
   useEffect(() => {
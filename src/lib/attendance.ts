@@ -54,6 +54,32 @@ export const timeToMinutes = (time: string): number => {
   return hours * 60 + minutes;
 };
 
+// Tracking keeps running this long after the shift ends, for overtime and the trip out
+export const SHIFT_END_GRACE_MINUTES = 30;
+
+// When tracking for a check-in stops (ms since epoch): the shift end after check-in plus
+// the grace period. Overnight shifts (end before start) end on the next day unless the
+// check-in was already past midnight; a check-in after the shift still gets the grace.
+export const getShiftEndsAt = (
+  checkInTimestamp: string,
+  settings: Pick<AttendanceSettings, "shiftStartTime" | "shiftEndTime">,
+  graceMinutes: number = SHIFT_END_GRACE_MINUTES
+): number => {
+  const checkInAt = new Date(checkInTimestamp);
+  const startMinutes = timeToMinutes(settings.shiftStartTime);
+  const endMinutes = timeToMinutes(settings.shiftEndTime);
+  const checkInMinutes = checkInAt.getHours() * 60 + checkInAt.getMinutes();
+  
+  const shiftEnd = new Date(checkInAt);
+  shiftEnd.setHours(Math.floor(endMinutes / 60), endMinutes % 60, 0, 0);
+  if (endMinutes <= startMinutes && checkInMinutes > endMinutes) {
+    shiftEnd.setDate(shiftEnd.getDate() + 1);
+  }
+  
+  const graceMs = graceMinutes * 60000;
+  return Math.max(shiftEnd.getTime(), checkInAt.getTime()) + graceMs;
+};
+
 // Calculate minutes difference
 export const getMinutesDifference = (time1: string, time2: string): number => {
   return timeToMinutes(time1) - timeToMinutes(time2);
@@ -99,6 +125,13 @@ export const getAttendanceSettings = async (
   };
 };
 
+// Whether a company has set up attendance; companies that have not never check in,
+// so their agents are tracked without a shift
+export const hasAttendanceSettings = async (companyId: string): Promise<boolean> => {
+  const snapshot = await get(ref(realtimeDb, `${ATTENDANCE_SETTINGS_PATH}/${companyId}`));
+  return snapshot.exists();
+};
+
 // Update attendance settings
 export const updateAttendanceSettings = async (
   companyId: string,
@@ -50,6 +50,7 @@ export async function createCompany(
       agentLimit: data.agentLimit || 100,
       adminCount: 0,
       agentCount: 0,
+      trackingMode: data.trackingMode || "realtime",
       createdAt: new Date().toISOString(),
       createdBy,
       isActive: true,
@@ -110,6 +111,7 @@ export async function getAllCompanies(): Promise<Company[]> {
         agentLimit: data.agentLimit || 100,
         adminCount: data.adminCount || 0,
         agentCount: data.agentCount || 0,
+        trackingMode: data.trackingMode || "realtime",
         createdAt: data.createdAt,
         createdBy: data.createdBy,
         isActive: data.isActive,
@@ -158,6 +160,7 @@ export async function getCompanyById(companyId: string): Promise<Company | null>
       agentLimit: data.agentLimit || 100,
       adminCount: data.adminCount || 0,
       agentCount: data.agentCount || 0,
+      trackingMode: data.trackingMode || "realtime",
       createdAt: data.createdAt,
       createdBy: data.createdBy,
       isActive: data.isActive,
@@ -8,6 +8,8 @@ import {
   remove,
   DataSnapshot,
 } from "firebase/database";
+import { isNativeApp } from "./platform";
+import NativeServices from "./nativeServices";
 
 // Realtime Database paths
 const LOCATIONS_PATH = "locations";
@@ -225,7 +227,9 @@ export const calculateDistance = (
   return R * c;
 };
 
-// Get location stats for today (simplified - no history)
+// Get location stats for today. In the app the tracked agent's own day comes from the
+// native trail store (offline, no download); for anyone else, or elsewhere, only the
+// current location is known
 export const getTodayLocationStats = async (
   userId: string
 ): Promise<{
@@ -234,6 +238,33 @@ export const getTodayLocationStats = async (
   lastLocation: LocationHistoryEntry | null;
   totalDistanceTraveled: number;
 }> => {
+  if (isNativeApp()) {
+    const trail = await NativeServices.getTrail().catch(() => null);
+    // The device only holds the trail of the agent it tracks
+    if (trail?.userId === userId && trail.points && trail.points.length > 0) {
+      const toEntry = (point: (typeof trail.points)[number], id: string): LocationHistoryEntry => ({
+        id,
+        userId,
+        latitude: point.latitude,
+        longitude: point.longitude,
+        accuracy: point.accuracy,
+        timestamp: new Date(point.timestamp).toISOString(),
+      });
+      let distance = 0;
+      for (let i = 1; i < trail.points.length; i++) {
+        const a = trail.points[i - 1];
+        const b = trail.points[i];
+        distance += calculateDistance(a.latitude, a.longitude, b.latitude, b.longitude);
+      }
+      return {
+        totalUpdates: trail.rawCount,
+        firstLocation: toEntry(trail.points[0], "first"),
+        lastLocation: toEntry(trail.points[trail.points.length - 1], "last"),
+        totalDistanceTraveled: distance,
+      };
+    }
+  }
+
   const current = await getUserLocation(userId);
   
   if (!current) {
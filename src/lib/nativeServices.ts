@@ -7,12 +7,55 @@
  */
 
 import type { PluginListenerHandle } from '@capacitor/core';
+import type { TrackingMode } from '@/types/auth';
 
 export interface StartLocationTrackingOptions {
   userId: string;
   companyId: string;
   firebaseUrl: string;
   userName?: string;
+  /**
+   * Buffer fixes and heartbeats for this many ms and send them as one
+   * multi-path PATCH, keeping every fix under locationHistory. 0 (default)
+   * writes only the newest position, immediately, and keeps no trail.
+   */
+  batchWindowMs?: number;
+  /** Flush a batch early once it holds this many fixes (default 20) */
+  maxBatchSize?: number;
+  /**
+   * Send batches of at least this many bytes gzipped, if the endpoint accepts
+   * it (default -1, off: RTDB REST does not advertise gzip bodies; 4096 compresses
+   * backlog drains only on an endpoint that takes them).
+   */
+  gzipThresholdBytes?: number;
+  /** The company's tracking mode; defaults to "realtime" */
+  trackingMode?: TrackingMode;
+  /**
+   * End of the agent's shift (ms since epoch, see getShiftEndsAt). Tracking stops by
+   * itself then and is only resumed after a reboot before it; without it (companies
+   * without attendance) tracking runs until stopped and is resumed after a reboot
+   */
+  shiftEndsAt?: number;
+  /**
+   * Debuggable builds only: play a recorded GPX, CSV or NMEA trace instead of the GPS.
+   * path is absolute or relative to the app's external files dir; speed is a multiple
+   * of real time (default 1, 0 as fast as possible). Fix times start at the call
+   */
+  replay?: { path: string; speed?: number };
+}
+
+export interface TrackingTarget {
+  id: string;
+  latitude: number;
+  longitude: number;
+  /** Enter radius; defaults to 250 m. The fence is left at 1.5x this distance */
+  radiusMeters?: number;
+}
+
+export interface SetTrackingTargetsOptions {
+  userId: string;
+  /** The agent's full pending list; the native side applies only the difference */
+  targets: TrackingTarget[];
 }
 
 export interface ShowIncomingCallOptions {
@@ -46,6 +89,164 @@ export interface LocationTrackingResult {
   backgroundPermission?: boolean;
 }
 
+export interface LatencyHistogram {
+  count: number;
+  meanMs: number;
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  maxMs: number;
+  /** Upper bucket bounds; counts has one extra trailing overflow bucket */
+  boundsMs: number[];
+  counts: number[];
+}
+
+/** Overrides pushed per company; priority is the Android LocationRequest priority */
+export interface TrackingProfile {
+  intervalMs?: number;
+  minDistanceMeters?: number;
+  priority?: number;
+  batchWindowMs?: number;
+  heartbeatIntervalMs?: number;
+}
+
+export interface TrackingStats {
+  active: boolean;
+  wakeLockHeldMs: number;
+  wakeLockAcquisitions: number;
+  trackingMode: TrackingMode;
+  /** The company's server profile (trackingProfiles/{companyId}), absent when it has none */
+  trackingProfile?: TrackingProfile;
+  /** Progress of a trace replay, when the session was started with one */
+  replay?: { fixes: number; delivered: number; finished: boolean };
+  /** The fields below are absent until tracking has started in this app process */
+  sinceMs?: number;
+  fixes?: {
+    received: number;
+    /** Provider callbacks, and the most fixes one carried (above 1 when batched) */
+    deliveries: number;
+    largestDelivery: number;
+    /** Rejected before queueing, e.g. replayed or out-of-order fixes */
+    filtered: number;
+    queued: number;
+    /** Confirmed by the server */
+    uploaded: number;
+    /** Overwritten in a full buffer, or an unbatched write that failed */
+    dropped: number;
+    /** Buffered on the device waiting for server confirmation */
+    pending: number;
+  };
+  requests?: {
+    sent: number;
+    failed: number;
+    retries: number;
+    bytesSent: number;
+    /** Requests sent gzipped, and the body bytes that saved */
+    compressed: number;
+    bytesSaved: number;
+  };
+  /** Per HTTP attempt */
+  httpLatency?: LatencyHistogram;
+  /** Per fix, from its GPS fix time (including provider batching delay) to the server confirming it */
+  commitLatency?: LatencyHistogram;
+}
+
+export interface BridgeMethodMetrics {
+  calls: number;
+  /** Rejected calls; their latency is in the histogram too */
+  errors: number;
+  /** Calls that never settled and were given up on */
+  abandoned: number;
+  lastError?: string;
+  /** From the method starting natively until it resolved or rejected */
+  latency: LatencyHistogram;
+}
+
+export interface BridgeMetrics {
+  /** Keyed by plugin method name, e.g. "getTrail" */
+  methods: Record<string, BridgeMethodMetrics>;
+  /** Calls started and not yet settled, this one included */
+  inFlight: number;
+}
+
+/** One fix accepted by the native tracker's filter */
+export interface NativeFix {
+  latitude: number;
+  longitude: number;
+  accuracy: number;
+  /** Fix time, ms since epoch */
+  timestamp: number;
+}
+
+export interface LocationBatchEvent {
+  /** Oldest first; the last entry is the current position */
+  fixes: NativeFix[];
+  /** Fixes lost to the native buffer overflowing since the previous event */
+  dropped: number;
+}
+
+export interface GetTrailOptions {
+  /** Local day, YYYY-MM-DD; defaults to today */
+  date?: string;
+  /** Optional time range within the day, ms since epoch */
+  from?: number;
+  to?: number;
+  /** Max distance any stored fix may lie off the returned line; default 10, 0 keeps all */
+  simplifyMeters?: number;
+}
+
+export interface TrailResult {
+  points: NativeFix[];
+  /** Stored fixes in the range before simplification */
+  rawCount: number;
+  queryMs: number;
+  /** Agent the fixes belong to: the last user tracked on this device */
+  userId?: string;
+}
+
+export interface RouteStop {
+  id: string;
+  latitude: number;
+  longitude: number;
+  /** Time spent at the stop; default 15 minutes */
+  dwellSeconds?: number;
+}
+
+export interface OptimizeRouteOptions {
+  origin: { latitude: number; longitude: number };
+  stops: RouteStop[];
+  /** Straight-line travel speed allowing for road detours; default 6 m/s */
+  speedMps?: number;
+  returnToOrigin?: boolean;
+  /** Cap on 2-opt improvement time; default 2000 */
+  timeBudgetMs?: number;
+}
+
+export interface OptimizedStop {
+  id: string;
+  /** Position of the stop in the request's stops */
+  index: number;
+  /** Metres from the previous stop (or the origin) */
+  distanceFromPrevious: number;
+  /** Seconds from the previous stop (or the origin) */
+  durationFromPrevious: number;
+  /** Arrival, in seconds after leaving the origin, including dwell at earlier stops */
+  etaSeconds: number;
+}
+
+export interface OptimizeRouteResult {
+  /** Stops in visiting order */
+  stops: OptimizedStop[];
+  /** Metres, including the leg home when returnToOrigin */
+  totalDistance: number;
+  /** Length of the nearest-neighbour tour before 2-opt */
+  nearestNeighbourDistance: number;
+  improvements: number;
+  /** False when the time budget cut 2-opt short */
+  converged: boolean;
+  computeMs: number;
+}
+
 export interface NativeServicesPlugin {
   /**
    * Start background location tracking service
@@ -61,7 +262,49 @@ export interface NativeServicesPlugin {
   /**
    * Check if location tracking is currently active
    */
-  isLocationTrackingActive(): Promise<{ active: boolean }>;
+  isLocationTrackingActive(): Promise<{
+    active: boolean;
+    /** Cumulative CPU wake lock time of the current or last tracking session (Android) */
+    wakeLockHeldMs?: number;
+    wakeLockAcquisitions?: number;
+  }>;
+  
+  /**
+   * Geofence the agent's assigned targets so high-accuracy GPS is used only near
+   * them; between targets the tracker stays on balanced power (Android)
+   */
+  setTrackingTargets(options: SetTrackingTargetsOptions): Promise<{ success: boolean; count?: number }>;
+  
+  /**
+   * Counters and latency histograms of the native tracker (Android)
+   */
+  getTrackingStats(): Promise<TrackingStats>;
+  
+  /**
+   * Per-method latency and error counts of this plugin's own bridge calls (Android)
+   */
+  getBridgeMetrics(): Promise<BridgeMetrics>;
+  
+  /**
+   * Push the native tracker's fixes as locationBatch events, at most
+   * maxEventsPerSecond (default 1) and only while the app is in the foreground.
+   * Prefer subscribeToNativeFixes, which shares one stream between callers (Android)
+   */
+  startLocationStream(options?: { maxEventsPerSecond?: number }): Promise<{ success: boolean }>;
+  
+  stopLocationStream(): Promise<{ success: boolean }>;
+  
+  /**
+   * The signed-in agent's own trail for a day, read and simplified from the
+   * on-device store; works offline and downloads nothing (Android)
+   */
+  getTrail(options?: GetTrailOptions): Promise<TrailResult>;
+  
+  /**
+   * Order route stops with nearest neighbour plus 2-opt on a native background
+   * thread, with straight-line legs and ETAs (Android)
+   */
+  optimizeRoute(options: OptimizeRouteOptions): Promise<OptimizeRouteResult>;
   
   /**
    * Show native incoming call notification with full-screen UI
@@ -101,6 +344,22 @@ export interface NativeServicesPlugin {
     listenerFunc: (event: { action: string; callId?: string }) => void
   ): Promise<PluginListenerHandle> & PluginListenerHandle;
 
+  /**
+   * Tracking stats pushed every 30 s while the native tracker runs (Android)
+   */
+  addListener(
+    eventName: "trackingStats",
+    listenerFunc: (stats: TrackingStats) => void
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Batches of native fixes while startLocationStream is active (Android)
+   */
+  addListener(
+    eventName: "locationBatch",
+    listenerFunc: (event: LocationBatchEvent) => void
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
   removeAllListeners(): Promise<void>;
 }
 
@@ -144,4 +403,39 @@ const NativeServices: NativeServicesPlugin = new Proxy({} as NativeServicesPlugi
   }
 });
 
+/**
+ * Follow the native tracker's position instead of opening a second GPS session in
+ * the WebView. All subscribers share one native stream, started with the first and
+ * stopped with the last. Returns the unsubscribe function.
+ */
+const nativeFixSubscribers = new Set<(event: LocationBatchEvent) => void>();
+let nativeFixHandle: PluginListenerHandle | null = null;
+// Start and stop run in order, so a quick unmount/remount cannot leave the stream off
+let nativeFixQueue: Promise<void> = Promise.resolve();
+
+export function subscribeToNativeFixes(
+  listener: (event: LocationBatchEvent) => void
+): () => void {
+  nativeFixSubscribers.add(listener);
+  if (nativeFixSubscribers.size === 1) {
+    nativeFixQueue = nativeFixQueue.then(async () => {
+      if (nativeFixSubscribers.size === 0 || nativeFixHandle) return;
+      nativeFixHandle = await NativeServices.addListener("locationBatch", (event) => {
+        nativeFixSubscribers.forEach((subscriber) => subscriber(event));
+      });
+      await NativeServices.startLocationStream({ maxEventsPerSecond: 1 });
+    }).catch((e) => console.warn('[NativeServices] Location stream unavailable:', e));
+  }
+  return () => {
+    if (!nativeFixSubscribers.delete(listener) || nativeFixSubscribers.size > 0) return;
+    nativeFixQueue = nativeFixQueue.then(async () => {
+      if (nativeFixSubscribers.size > 0 || !nativeFixHandle) return;
+      const handle = nativeFixHandle;
+      nativeFixHandle = null;
+      await handle.remove();
+      await NativeServices.stopLocationStream();
+    }).catch(() => undefined);
+  };
+}
+
 export default NativeServices;
@@ -0,0 +1,94 @@
+/**
+ * Offline Queue Plugin for PO-VERSE
+ * TypeScript bridge to the native offline action queue (Android):
+ * - Durable SQLite storage that Android does not evict like IndexedDB
+ * - Background delivery of actions with a native write, without the WebView
+ */
+
+import type { AnyOfflineAction, SyncStatus } from "@/types/offline";
+
+/** Fields merged into a database path, like update(ref(realtimeDb, path), value) */
+export interface NativeWrite {
+  /** Relative to the database root, no leading "/" */
+  path: string;
+  value: Record<string, unknown>;
+}
+
+export interface EnqueueOptions {
+  action: AnyOfflineAction;
+  /** Lets the app deliver the action by itself; it then never appears in peekBatch */
+  write?: NativeWrite;
+  /** Realtime Database URL for native writes */
+  databaseUrl?: string;
+}
+
+export interface QueueCounts {
+  pending: number;
+  conflict: number;
+  failed: number;
+  /** Pending actions the app delivers in the background */
+  nativePending: number;
+}
+
+export interface OfflineQueuePlugin {
+  enqueue(options: EnqueueOptions): Promise<{ queued: boolean; seq: number }>;
+
+  /** Oldest pending actions without a native write, left queued until acked */
+  peekBatch(options?: { userId?: string; limit?: number }): Promise<{ actions: AnyOfflineAction[] }>;
+
+  list(options?: {
+    userId?: string;
+    status?: Exclude<SyncStatus, "syncing" | "synced">;
+  }): Promise<{ actions: AnyOfflineAction[] }>;
+
+  /** Remove actions the server took */
+  ack(options: { ids: string[] }): Promise<{ removed: number }>;
+
+  markConflict(options: {
+    id: string;
+    conflictData: NonNullable<AnyOfflineAction["conflictData"]>;
+  }): Promise<{ success: boolean }>;
+
+  /** Count a failed attempt; the action is parked as failed after maxRetries (default 3) */
+  markFailed(options: { id: string; error: string; maxRetries?: number }): Promise<{ success: boolean }>;
+
+  /** Put a conflicted or failed action back in line, optionally replaced */
+  requeue(options: { id: string; action?: AnyOfflineAction }): Promise<{ success: boolean }>;
+
+  getCounts(options?: { userId?: string }): Promise<QueueCounts>;
+
+  clear(options?: { userId?: string }): Promise<{ removed: number }>;
+
+  /** Deliver native writes as soon as a network is up */
+  syncNow(): Promise<{ success: boolean }>;
+}
+
+let _plugin: OfflineQueuePlugin | null = null;
+let _initialized = false;
+
+function _getPlugin(): OfflineQueuePlugin | null {
+  if (!_initialized) {
+    _initialized = true;
+    try {
+      // eslint-disable-next-line @typescript-eslint/no-require-imports
+      const core = require("@capacitor/core") as { registerPlugin: typeof import("@capacitor/core").registerPlugin };
+      _plugin = core.registerPlugin<OfflineQueuePlugin>("OfflineQueue");
+    } catch (e) {
+      console.warn("[OfflineQueue] Failed to register plugin:", e);
+    }
+  }
+  return _plugin;
+}
+
+// Callers check isNativeApp() first; outside the app there is no queue to talk to
+const OfflineQueue: OfflineQueuePlugin = new Proxy({} as OfflineQueuePlugin, {
+  get: (_target, prop: string) => {
+    const plugin = _getPlugin();
+    if (!plugin) {
+      return () => Promise.reject(new Error("OfflineQueue plugin not available"));
+    }
+    return (plugin as unknown as Record<string, unknown>)[prop];
+  },
+});
+
+export default OfflineQueue;
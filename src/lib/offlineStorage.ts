@@ -1,5 +1,6 @@
 // Offline Storage and Sync Library
-// Uses IndexedDB for persistent offline storage
+// Uses IndexedDB for persistent offline storage; in the native app the action
+// queue lives in the OfflineQueue plugin's SQLite store instead
 
 import {
   OfflineAction,
@@ -21,7 +22,11 @@ import {
   AttendanceCheckinAction,
   AttendanceCheckoutAction,
   MessageSendAction,
+  LocationUpdateAction,
 } from "@/types/offline";
+import { realtimeDb } from "./firebase";
+import { isNativeApp } from "./platform";
+import OfflineQueue, { NativeWrite } from "./offlineQueue";
 
 // Re-export types for convenience
 export type { CachedTarget, CachedVisit, CachedAttendance };
@@ -182,14 +187,53 @@ export const queueOfflineAction = async <T extends AnyOfflineAction>(
     payload,
   };
 
-  await dbPut(OFFLINE_STORES.ACTIONS, action);
+  if (isNativeApp()) {
+    await enqueueNative(action as AnyOfflineAction);
+  } else {
+    await dbPut(OFFLINE_STORES.ACTIONS, action);
+  }
   return id;
 };
 
+// Actions the app can deliver by itself, even after the WebView is gone. Mirrors
+// updateUserLocation, merged rather than set so the user's name is kept.
+const nativeWriteFor = (action: AnyOfflineAction): NativeWrite | undefined => {
+  if (action.type !== "location_update") return undefined;
+  const { payload } = action as LocationUpdateAction;
+  return {
+    path: `locations/${action.userId}`,
+    value: {
+      userId: action.userId,
+      latitude: payload.latitude,
+      longitude: payload.longitude,
+      accuracy: payload.accuracy ?? null,
+      timestamp: payload.timestamp,
+      isOnline: true,
+      ...(action.companyId ? { companyId: action.companyId } : {}),
+    },
+  };
+};
+
+const enqueueNative = async (action: AnyOfflineAction): Promise<void> => {
+  const write = nativeWriteFor(action);
+  await OfflineQueue.enqueue({
+    action,
+    write,
+    databaseUrl: write ? realtimeDb.app.options.databaseURL : undefined,
+  });
+};
+
 export const getQueuedActions = async (
   userId?: string,
   status?: SyncStatus
 ): Promise<AnyOfflineAction[]> => {
+  if (isNativeApp()) {
+    // The native queue only holds what is still to sync, already in order
+    if (status === "syncing" || status === "synced") return [];
+    const { actions } = await OfflineQueue.list({ userId, status });
+    return actions;
+  }
+
   let actions = await dbGetAll<AnyOfflineAction>(OFFLINE_STORES.ACTIONS);
 
   if (userId) {
@@ -210,6 +254,16 @@ export const getPendingActions = async (userId?: string): Promise<AnyOfflineActi
   return getQueuedActions(userId, "pending");
 };
 
+// The next actions the sync engine has to deliver. In the native app this is one
+// batch, without the actions the app delivers by itself in the background.
+export const getActionsToSync = async (userId: string, limit = 50): Promise<AnyOfflineAction[]> => {
+  if (isNativeApp()) {
+    const { actions } = await OfflineQueue.peekBatch({ userId, limit });
+    return actions;
+  }
+  return getPendingActions(userId);
+};
+
 export const getFailedActions = async (userId?: string): Promise<AnyOfflineAction[]> => {
   return getQueuedActions(userId, "failed");
 };
@@ -223,6 +277,17 @@ export const updateActionStatus = async (
   status: SyncStatus,
   error?: string
 ): Promise<void> => {
+  if (isNativeApp()) {
+    if (error) {
+      await OfflineQueue.markFailed({ id: actionId, error, maxRetries: DEFAULT_OFFLINE_SETTINGS.maxRetries });
+    } else if (status === "pending") {
+      await OfflineQueue.requeue({ id: actionId });
+    } else if (status === "synced") {
+      await OfflineQueue.ack({ ids: [actionId] });
+    }
+    return;
+  }
+
   const action = await dbGet<AnyOfflineAction>(OFFLINE_STORES.ACTIONS, actionId);
   if (!action) return;
 
@@ -236,10 +301,19 @@ export const updateActionStatus = async (
 };
 
 export const markActionSynced = async (actionId: string): Promise<void> => {
+  if (isNativeApp()) {
+    await OfflineQueue.ack({ ids: [actionId] });
+    return;
+  }
   await dbDelete(OFFLINE_STORES.ACTIONS, actionId);
 };
 
 export const markActionFailed = async (actionId: string, error: string): Promise<void> => {
+  if (isNativeApp()) {
+    await OfflineQueue.markFailed({ id: actionId, error, maxRetries: DEFAULT_OFFLINE_SETTINGS.maxRetries });
+    return;
+  }
+
   const action = await dbGet<AnyOfflineAction>(OFFLINE_STORES.ACTIONS, actionId);
   if (!action) return;
 
@@ -255,6 +329,11 @@ export const markActionConflict = async (
   localData: unknown,
   serverData: unknown
 ): Promise<void> => {
+  if (isNativeApp()) {
+    await OfflineQueue.markConflict({ id: actionId, conflictData: { localData, serverData } });
+    return;
+  }
+
   const action = await dbGet<AnyOfflineAction>(OFFLINE_STORES.ACTIONS, actionId);
   if (!action) return;
 
@@ -269,6 +348,22 @@ export const resolveConflict = async (
   resolution: ConflictResolution,
   mergedData?: unknown
 ): Promise<void> => {
+  if (isNativeApp()) {
+    const { actions } = await OfflineQueue.list({ status: "conflict" });
+    const action = actions.find((a) => a.id === actionId);
+    if (!action || !action.conflictData) return;
+    if (resolution === "server_wins") {
+      await OfflineQueue.ack({ ids: [actionId] });
+    } else if (resolution === "local_wins" || resolution === "merge") {
+      const resolved = { ...action, conflictData: { ...action.conflictData, resolution } };
+      if (resolution === "merge" && mergedData) {
+        (resolved as any).payload = mergedData;
+      }
+      await OfflineQueue.requeue({ id: actionId, action: resolved as AnyOfflineAction });
+    }
+    return;
+  }
+
   const action = await dbGet<AnyOfflineAction>(OFFLINE_STORES.ACTIONS, actionId);
   if (!action || !action.conflictData) return;
 
@@ -288,6 +383,10 @@ export const resolveConflict = async (
 };
 
 export const clearQueue = async (userId?: string): Promise<void> => {
+  if (isNativeApp()) {
+    await OfflineQueue.clear({ userId });
+    return;
+  }
   if (userId) {
     const actions = await getQueuedActions(userId);
     for (const action of actions) {
@@ -400,10 +499,20 @@ export const updateOfflineSettings = async (updates: Partial<OfflineSettings>):
 // ==================== OFFLINE STATE ====================
 
 export const getOfflineState = async (userId?: string): Promise<OfflineState> => {
-  const actions = await getQueuedActions(userId);
-  const pendingActions = actions.filter((a) => a.status === "pending").length;
-  const failedActions = actions.filter((a) => a.status === "failed").length;
-  const conflictCount = actions.filter((a) => a.status === "conflict").length;
+  let pendingActions: number;
+  let failedActions: number;
+  let conflictCount: number;
+  if (isNativeApp()) {
+    const counts = await OfflineQueue.getCounts({ userId });
+    pendingActions = counts.pending;
+    failedActions = counts.failed;
+    conflictCount = counts.conflict;
+  } else {
+    const actions = await getQueuedActions(userId);
+    pendingActions = actions.filter((a) => a.status === "pending").length;
+    failedActions = actions.filter((a) => a.status === "failed").length;
+    conflictCount = actions.filter((a) => a.status === "conflict").length;
+  }
 
   // Calculate approximate cache size
   const targets = await getCachedTargets();
@@ -536,7 +645,11 @@ export const importOfflineData = async (jsonData: string): Promise<void> => {
 
   if (data.actions) {
     for (const action of data.actions) {
-      await dbPut(OFFLINE_STORES.ACTIONS, action);
+      if (isNativeApp()) {
+        await enqueueNative(action);
+      } else {
+        await dbPut(OFFLINE_STORES.ACTIONS, action);
+      }
     }
   }
 
@@ -557,8 +670,31 @@ export const importOfflineData = async (jsonData: string): Promise<void> => {
 
 // ==================== INITIALIZE ====================
 
+// Actions queued in IndexedDB before the native queue existed move over once
+const migrateActionsToNative = async (): Promise<void> => {
+  const actions = await dbGetAll<AnyOfflineAction>(OFFLINE_STORES.ACTIONS);
+  if (actions.length === 0) return;
+  actions.sort((a, b) => new Date(a.timestamp).getTime() - new Date(b.timestamp).getTime());
+  for (const action of actions) {
+    await enqueueNative(action);
+    if (action.status === "conflict" && action.conflictData) {
+      await OfflineQueue.markConflict({ id: action.id, conflictData: action.conflictData });
+    }
+  }
+  await dbClear(OFFLINE_STORES.ACTIONS);
+  console.log(`Moved ${actions.length} offline actions to the native queue`);
+};
+
 export const initializeOfflineSupport = async (): Promise<void> => {
   await initOfflineDB();
+
+  if (isNativeApp()) {
+    try {
+      await migrateActionsToNative();
+    } catch (error) {
+      console.warn("Offline actions stay in IndexedDB for now:", error);
+    }
+  }
   
   // Listen for online/offline events
   window.addEventListener("online", async () => {
@@ -16,7 +16,7 @@ import {
   LocationUpdateAction,
 } from "@/types/offline";
 import {
-  getPendingActions,
+  getActionsToSync,
   markActionSynced,
   markActionFailed,
   markActionConflict,
@@ -58,7 +58,7 @@ export const syncOfflineActions = async (userId: string, companyId: string): Pro
   };
 
   try {
-    const actions = await getPendingActions(userId);
+    const actions = await getActionsToSync(userId);
 
     for (const action of actions) {
       try {
@@ -15,6 +15,8 @@ import {
   RouteStep,
 } from "@/types/route";
 import { TargetVisit } from "@/types/target";
+import { isNativeApp } from "./platform";
+import NativeServices, { OptimizeRouteResult } from "./nativeServices";
 
 // Firebase path
 const ROUTES_PATH = "optimizedRoutes";
@@ -290,6 +292,27 @@ const haversineDistance = (
   return R * c;
 };
 
+// Nearest neighbour plus 2-opt in native code, off the WebView thread; null when
+// not in the app or the plugin fails, so callers fall back to the JS version
+const optimizeRouteNative = async (
+  origin: { latitude: number; longitude: number },
+  waypoints: { id: string; latitude: number; longitude: number }[],
+  returnToOrigin?: boolean
+): Promise<OptimizeRouteResult | null> => {
+  if (!isNativeApp() || waypoints.length <= 1) return null;
+  try {
+    const result = await NativeServices.optimizeRoute({
+      origin: { latitude: origin.latitude, longitude: origin.longitude },
+      stops: waypoints.map((wp) => ({ id: wp.id, latitude: wp.latitude, longitude: wp.longitude })),
+      returnToOrigin,
+    });
+    return result?.stops?.length === waypoints.length ? result : null;
+  } catch (error) {
+    console.warn("Native route optimization unavailable:", error);
+    return null;
+  }
+};
+
 // ==================== CREATE OPTIMIZED ROUTE ====================
 
 export const createOptimizedRoute = async (
@@ -317,6 +340,7 @@ export const createOptimizedRoute = async (
     
     let waypointOrder: number[];
     let directionsResult: DirectionsResponse | undefined;
+    let nativePlan: OptimizeRouteResult | null = null;
     
     if (options.algorithm === "google" && waypointData.length > 1) {
       // Use Google Directions API with optimization
@@ -337,17 +361,24 @@ export const createOptimizedRoute = async (
         }
       } else {
         // Fallback to nearest neighbor
-        waypointOrder = optimizeRouteNearestNeighbor(origin, waypointData);
+        nativePlan = await optimizeRouteNative(origin, waypointData, options.returnToOrigin);
+        waypointOrder = nativePlan
+          ? nativePlan.stops.map((stop) => stop.index)
+          : optimizeRouteNearestNeighbor(origin, waypointData);
       }
     } else {
       // Use nearest neighbor algorithm
-      waypointOrder = optimizeRouteNearestNeighbor(origin, waypointData);
+      nativePlan = await optimizeRouteNative(origin, waypointData, options.returnToOrigin);
+      waypointOrder = nativePlan
+        ? nativePlan.stops.map((stop) => stop.index)
+        : optimizeRouteNearestNeighbor(origin, waypointData);
     }
     
     // Build waypoints in optimized order
     const waypoints: RouteWaypoint[] = waypointOrder.map((originalIndex, newOrder) => {
       const target = limitedTargets[originalIndex];
       const leg = directionsResult?.routes[0].legs[newOrder];
+      const nativeStop = nativePlan?.stops[newOrder];
       
       return {
         id: target.id,
@@ -360,8 +391,10 @@ export const createOptimizedRoute = async (
         },
         visitStatus: "pending",
         order: newOrder,
-        distanceFromPrevious: leg?.distance.value,
-        durationFromPrevious: leg?.duration.value,
+        distanceFromPrevious: leg?.distance.value ??
+          (nativeStop ? Math.round(nativeStop.distanceFromPrevious) : undefined),
+        durationFromPrevious: leg?.duration.value ??
+          (nativeStop ? Math.round(nativeStop.durationFromPrevious) : undefined),
       };
     });
     
@@ -396,8 +429,13 @@ export const createOptimizedRoute = async (
     })) || [];
     
     // Calculate totals
-    const totalDistance = legs.reduce((sum, leg) => sum + leg.distance.value, 0);
-    const totalDuration = legs.reduce((sum, leg) => sum + leg.duration.value, 0);
+    // Straight-line estimates from the native planner when there are no Directions legs
+    const totalDistance = legs.length > 0 || !nativePlan
+      ? legs.reduce((sum, leg) => sum + leg.distance.value, 0)
+      : Math.round(nativePlan.totalDistance);
+    const totalDuration = legs.length > 0
+      ? legs.reduce((sum, leg) => sum + leg.duration.value, 0)
+      : waypoints.reduce((sum, wp) => sum + (wp.durationFromPrevious || 0), 0);
     
     const route: OptimizedRoute = {
       id: `route_${Date.now()}`,
@@ -0,0 +1,141 @@
+// Compact Trail Codec
+// Decoder/encoder for the binary trail chunks produced by the native trackers
+// (TrailCodec.java / TrailCodec.kt), used by admin route playback.
+//
+// Layout: version byte, varint count, then per point
+//   zigzag(latE7) zigzag(lngE7) varint(timeMs) varint(accuracyDm)      first point
+//   zigzag(dLatE7) zigzag(dLngE7) zigzag(dTimeMs) varint(accuracyDm)   later points
+// Chunks are stored as unpadded base64url strings.
+
+export interface TrailPoint {
+  latitude: number;
+  longitude: number;
+  accuracy: number;
+  timestamp: number;
+}
+
+const TRAIL_CODEC_VERSION = 1;
+const E7 = 1e7;
+const BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+// Arithmetic instead of bit ops: timestamps exceed 32 bits but stay below 2^53
+const zigzag = (value: number): number => (value >= 0 ? value * 2 : -value * 2 - 1);
+const unzigzag = (value: number): number => (value % 2 === 0 ? value / 2 : -(value + 1) / 2);
+
+const fromBase64Url = (text: string): Uint8Array => {
+  const out = new Uint8Array(Math.floor((text.length * 3) / 4));
+  let pos = 0;
+  let buffer = 0;
+  let bits = 0;
+  for (let i = 0; i < text.length; i++) {
+    const value = BASE64URL.indexOf(text[i]);
+    if (value < 0) throw new Error(`Invalid base64 character: ${text[i]}`);
+    buffer = ((buffer << 6) | value) & 0xffffff;
+    bits += 6;
+    if (bits >= 8) {
+      bits -= 8;
+      out[pos++] = (buffer >> bits) & 0xff;
+    }
+  }
+  return out;
+};
+
+const toBase64Url = (bytes: number[]): string => {
+  let out = "";
+  let i = 0;
+  for (; i + 2 < bytes.length; i += 3) {
+    const n = (bytes[i] << 16) | (bytes[i + 1] << 8) | bytes[i + 2];
+    out += BASE64URL[n >>> 18] + BASE64URL[(n >>> 12) & 63] + BASE64URL[(n >>> 6) & 63] + BASE64URL[n & 63];
+  }
+  const remaining = bytes.length - i;
+  if (remaining === 1) {
+    const n = bytes[i] << 16;
+    out += BASE64URL[n >>> 18] + BASE64URL[(n >>> 12) & 63];
+  } else if (remaining === 2) {
+    const n = (bytes[i] << 16) | (bytes[i + 1] << 8);
+    out += BASE64URL[n >>> 18] + BASE64URL[(n >>> 12) & 63] + BASE64URL[(n >>> 6) & 63];
+  }
+  return out;
+};
+
+const writeVarint = (out: number[], value: number): void => {
+  let v = value;
+  while (v >= 0x80) {
+    out.push((v % 0x80) | 0x80);
+    v = Math.floor(v / 0x80);
+  }
+  out.push(v);
+};
+
+// Decode a base64url trail chunk into points, oldest first
+export const decodeTrail = (chunk: string): TrailPoint[] => {
+  const data = fromBase64Url(chunk);
+  if (data.length < 2 || data[0] !== TRAIL_CODEC_VERSION) {
+    throw new Error("Unsupported trail chunk");
+  }
+
+  let pos = 1;
+  const readVarint = (): number => {
+    let result = 0;
+    let multiplier = 1;
+    while (pos < data.length) {
+      const b = data[pos++];
+      result += (b & 0x7f) * multiplier;
+      if ((b & 0x80) === 0) return result;
+      multiplier *= 0x80;
+    }
+    throw new Error("Truncated trail chunk");
+  };
+
+  const count = readVarint();
+  const points: TrailPoint[] = [];
+  let lat = 0;
+  let lng = 0;
+  let time = 0;
+  for (let i = 0; i < count; i++) {
+    if (i === 0) {
+      lat = unzigzag(readVarint());
+      lng = unzigzag(readVarint());
+      time = readVarint();
+    } else {
+      lat += unzigzag(readVarint());
+      lng += unzigzag(readVarint());
+      time += unzigzag(readVarint());
+    }
+    points.push({
+      latitude: lat / E7,
+      longitude: lng / E7,
+      accuracy: readVarint() / 10,
+      timestamp: time,
+    });
+  }
+  return points;
+};
+
+// Encode points into a base64url trail chunk (mainly for tests and fixtures)
+export const encodeTrail = (points: TrailPoint[]): string => {
+  const out: number[] = [TRAIL_CODEC_VERSION];
+  writeVarint(out, points.length);
+  let prevLat = 0;
+  let prevLng = 0;
+  let prevTime = 0;
+  points.forEach((point, i) => {
+    const lat = Math.round(point.latitude * E7);
+    const lng = Math.round(point.longitude * E7);
+    const accuracyDm = Math.min(65535, Math.max(0, Math.round(point.accuracy * 10)));
+    if (i === 0) {
+      writeVarint(out, zigzag(lat));
+      writeVarint(out, zigzag(lng));
+      writeVarint(out, point.timestamp);
+    } else {
+      writeVarint(out, zigzag(lat - prevLat));
+      writeVarint(out, zigzag(lng - prevLng));
+      writeVarint(out, zigzag(point.timestamp - prevTime));
+    }
+    writeVarint(out, accuracyDm);
+    prevLat = lat;
+    prevLng = lng;
+    prevTime = point.timestamp;
+  });
+  return toBase64Url(out);
+};
@@ -18,6 +18,13 @@ export interface User {
   isActive: boolean;
 }
 
+/**
+ * How the native tracker takes fixes. "realtime" wakes the device for every fix;
+ * "lowWakeup" lets the GPS hardware hold fixes and deliver them together up to
+ * 2 minutes late, so the trail keeps every point but the live position lags.
+ */
+export type TrackingMode = "realtime" | "lowWakeup";
+
 export interface Company {
   id: string;
   name: string;
@@ -37,6 +44,8 @@ export interface Company {
   agentLimit: number;
   adminCount: number;
   agentCount: number;
+  /** Defaults to "realtime" when unset */
+  trackingMode?: TrackingMode;
   createdAt: string;
   createdBy: string;
   isActive: boolean;
@@ -80,6 +89,7 @@ export interface CreateCompanyData {
   userLimit?: number;
   adminLimit?: number;
   agentLimit?: number;
+  trackingMode?: TrackingMode;
 }
 
 export interface CompanyResponse {